@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.http;
+
+import cloud.piranha.http.impl.DefaultHttpServerResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for writing a response with the default HTTP server.
+ *
+ * <p>
+ * Compares the header encoder of DefaultHttpServerResponse with the fragment
+ * at a time writing it replaced. Every write on a socket output stream is a
+ * send system call, so besides the throughput the <code>syscalls</code> and
+ * <code>responses</code> counters are reported; dividing them gives the
+ * number of system calls per response.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DefaultHttpServerResponseBenchmark {
+
+    /**
+     * Stores the body.
+     */
+    private static final byte[] BODY = "<html><body>Hello World</body></html>".getBytes(ISO_8859_1);
+
+    /**
+     * Stores the (unconnected) socket writing to the counters.
+     */
+    private Socket socket;
+
+    /**
+     * The counters.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        /**
+         * Stores the number of responses.
+         */
+        public long responses;
+
+        /**
+         * Stores the number of system calls.
+         */
+        public long syscalls;
+
+        /**
+         * Reset the counters.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            responses = 0;
+            syscalls = 0;
+        }
+    }
+
+    /**
+     * The output stream counting the writes, each of which would be a system
+     * call on a socket.
+     */
+    static class CountingOutputStream extends OutputStream {
+
+        /**
+         * Stores the counters.
+         */
+        Counters counters;
+
+        @Override
+        public void write(int b) {
+            counters.syscalls++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            counters.syscalls++;
+        }
+    }
+
+    /**
+     * Stores the output stream.
+     */
+    private final CountingOutputStream outputStream = new CountingOutputStream();
+
+    /**
+     * Setup the benchmark.
+     */
+    @Setup
+    public void setup() {
+        socket = new Socket() {
+            @Override
+            public OutputStream getOutputStream() {
+                return outputStream;
+            }
+        };
+    }
+
+    /**
+     * Write the response with the header encoder.
+     *
+     * @param counters the counters.
+     * @throws IOException when an I/O error occurs.
+     */
+    @Benchmark
+    public void write(Counters counters) throws IOException {
+        outputStream.counters = counters;
+        DefaultHttpServerResponse response = new DefaultHttpServerResponse(socket);
+        response.setStatus(200);
+        response.setHeader("Content-Type", "text/html;charset=UTF-8");
+        response.setHeader("Content-Length", Integer.toString(BODY.length));
+        response.setHeader("Cache-Control", "no-cache");
+        response.writeStatusLine();
+        response.writeHeaders();
+        response.getOutputStream().write(BODY);
+        response.getOutputStream().flush();
+        counters.responses++;
+    }
+
+    /**
+     * Write the response a fragment at a time.
+     *
+     * @param counters the counters.
+     * @throws IOException when an I/O error occurs.
+     */
+    @Benchmark
+    public void writeLegacy(Counters counters) throws IOException {
+        outputStream.counters = counters;
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.computeIfAbsent("Content-Type", key -> new ArrayList<>()).add("text/html;charset=UTF-8");
+        headers.computeIfAbsent("Content-Length", key -> new ArrayList<>()).add(Integer.toString(BODY.length));
+        headers.computeIfAbsent("Cache-Control", key -> new ArrayList<>()).add("no-cache");
+        OutputStream output = socket.getOutputStream();
+        output.write("HTTP/1.1".getBytes());
+        output.write(" ".getBytes());
+        output.write(Integer.toString(200).getBytes());
+        output.write("\r\n".getBytes());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            output.write(header.getKey().getBytes());
+            output.write(": ".getBytes());
+            for (String value : header.getValue()) {
+                output.write(value.getBytes());
+            }
+            output.write("\r\n".getBytes());
+        }
+        output.write("\r\n".getBytes());
+        output.write(BODY);
+        output.flush();
+        counters.responses++;
+    }
+}
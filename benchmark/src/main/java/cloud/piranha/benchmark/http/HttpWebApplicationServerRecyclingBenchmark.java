@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.http;
+
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.api.HttpServerResponse;
+import cloud.piranha.http.webapp.HttpWebApplicationServer;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for processing a request with and without recycling.
+ *
+ * <p>
+ * Runs a small GET request through HttpWebApplicationServer.process with
+ * recycling of the request/response pair off and on. Run it with
+ * <code>-prof gc</code> to compare the allocation rate per operation
+ * (gc.alloc.rate.norm), which is where recycling pays off.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HttpWebApplicationServerRecyclingBenchmark {
+
+    /**
+     * Defines the response body.
+     */
+    private static final byte[] HELLO = "Hello World".getBytes();
+
+    /**
+     * Stores the recycling flag.
+     */
+    @Param({"false", "true"})
+    public boolean recycling;
+
+    /**
+     * Stores the server.
+     */
+    private HttpWebApplicationServer server;
+
+    /**
+     * Stores the request.
+     */
+    private BenchmarkHttpServerRequest request;
+
+    /**
+     * Stores the response.
+     */
+    private BenchmarkHttpServerResponse response;
+
+    /**
+     * Setup the server.
+     */
+    @Setup
+    public void setup() {
+        server = new HttpWebApplicationServer();
+        server.setRecycling(recycling);
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        webApplication.setContextPath("/context");
+        webApplication.addServlet("hello", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setContentType("text/plain");
+                response.getOutputStream().write(HELLO);
+            }
+        });
+        webApplication.addServletMapping("hello", "/hello");
+        server.addWebApplication(webApplication);
+        server.initialize();
+        server.start();
+        request = new BenchmarkHttpServerRequest();
+        response = new BenchmarkHttpServerResponse();
+    }
+
+    /**
+     * Stop the server.
+     */
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Process a request.
+     *
+     * @return the number of bytes written.
+     */
+    @Benchmark
+    public int process() {
+        response.outputStream.reset();
+        server.process(request, response);
+        return response.outputStream.size();
+    }
+
+    /**
+     * The HttpServerRequest for a GET of /context/hello.
+     */
+    static class BenchmarkHttpServerRequest implements HttpServerRequest {
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getHeaders(String name) {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public Iterator<String> getHeaderNames() {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public String getLocalAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getLocalHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 8080;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getQueryParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public String getQueryString() {
+            return null;
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 50000;
+        }
+
+        @Override
+        public String getRequestTarget() {
+            return "/context/hello";
+        }
+    }
+
+    /**
+     * The HttpServerResponse writing to a reusable byte array output stream.
+     */
+    static class BenchmarkHttpServerResponse implements HttpServerResponse {
+
+        /**
+         * Stores the output stream.
+         */
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(512);
+
+        @Override
+        public void addHeader(String name, String value) {
+        }
+
+        @Override
+        public void closeResponse() {
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+        }
+
+        @Override
+        public void setStatus(int status) {
+        }
+
+        @Override
+        public void writeHeaders() {
+        }
+
+        @Override
+        public void writeStatusLine() {
+        }
+    }
+}
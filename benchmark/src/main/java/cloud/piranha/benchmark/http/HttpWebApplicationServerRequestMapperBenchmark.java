@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.http;
+
+import cloud.piranha.http.webapp.HttpWebApplicationServerRequestMapper;
+import cloud.piranha.webapp.api.WebApplication;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for routing a request URI to a web application.
+ *
+ * <p>
+ * Compares the context path tree of HttpWebApplicationServerRequestMapper
+ * with the repeated scan over all context paths it replaced, for 10, 100 and
+ * 1000 deployed web applications.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HttpWebApplicationServerRequestMapperBenchmark {
+
+    /**
+     * Stores the number of contexts.
+     */
+    @Param({"10", "100", "1000"})
+    public int contexts;
+
+    /**
+     * Stores the mapper.
+     */
+    private HttpWebApplicationServerRequestMapper mapper;
+
+    /**
+     * Stores the mappings for the legacy routing.
+     */
+    private ConcurrentHashMap<String, WebApplication> mappings;
+
+    /**
+     * Stores the request URIs.
+     */
+    private String[] requestUris;
+
+    /**
+     * Stores the index of the next request URI.
+     */
+    private int index;
+
+    /**
+     * Setup the contexts and request URIs.
+     */
+    @Setup
+    public void setup() {
+        mapper = new HttpWebApplicationServerRequestMapper();
+        mappings = new ConcurrentHashMap<>();
+        // One web application behind every context path, as each one starts
+        // a session reaper thread and routing does not depend on it.
+        WebApplication webApplication = new DefaultWebApplication();
+        for (int i = 0; i < contexts; i++) {
+            mapper.addMapping(webApplication, "/tenant" + i);
+            mappings.put("/tenant" + i, webApplication);
+        }
+        requestUris = new String[256];
+        for (int i = 0; i < requestUris.length; i++) {
+            requestUris[i] = "/tenant" + (i * 7919 % contexts) + "/api/orders/" + i;
+        }
+    }
+
+    /**
+     * Route a request URI with the context path tree.
+     *
+     * @return the web application.
+     */
+    @Benchmark
+    public WebApplication findMapping() {
+        return mapper.findMapping(nextRequestUri());
+    }
+
+    /**
+     * Route a request URI by scanning all context paths until no longer one
+     * matches.
+     *
+     * @return the web application.
+     */
+    @Benchmark
+    public WebApplication findMappingLegacy() {
+        String path = nextRequestUri();
+        String result = null;
+        for (;;) {
+            String found = null;
+            Enumeration<String> prefixes = mappings.keys();
+            while (prefixes.hasMoreElements()) {
+                String prefix = prefixes.nextElement();
+                if (path.startsWith(prefix)) {
+                    found = prefix;
+                    break;
+                }
+            }
+            if (found != null && (result == null || found.length() > result.length())) {
+                result = found;
+            } else {
+                break;
+            }
+        }
+        return result != null ? mappings.get(result) : null;
+    }
+
+    /**
+     * {@return the next request URI}
+     */
+    private String nextRequestUri() {
+        index = (index + 1) & (requestUris.length - 1);
+        return requestUris[index];
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.webapp.impl.DefaultHttpHeaderManager;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The benchmark for the header lookups of DefaultHttpHeaderManager.
+ *
+ * <p>
+ * Compares the case-insensitive header table of DefaultHttpHeaderManager
+ * with the upper cased HashMap keys it replaced, for a browser-like request
+ * with 20 headers. Every operation looks up the headers a container and
+ * its filters typically read, parses a date header and lists the header
+ * names.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DefaultHttpHeaderManagerBenchmark {
+
+    /**
+     * Stores the request headers.
+     */
+    private static final String[][] HEADERS = {
+        {"Host", "www.example.com"},
+        {"Connection", "keep-alive"},
+        {"Cache-Control", "max-age=0"},
+        {"sec-ch-ua", "\"Chromium\";v=\"118\""},
+        {"sec-ch-ua-mobile", "?0"},
+        {"sec-ch-ua-platform", "\"Linux\""},
+        {"Upgrade-Insecure-Requests", "1"},
+        {"User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36"},
+        {"Accept", "text/html,application/xhtml+xml,application/xml;q=0.9"},
+        {"Sec-Fetch-Site", "none"},
+        {"Sec-Fetch-Mode", "navigate"},
+        {"Sec-Fetch-User", "?1"},
+        {"Sec-Fetch-Dest", "document"},
+        {"Accept-Encoding", "gzip, deflate, br"},
+        {"Accept-Language", "en-US,en;q=0.9"},
+        {"Cookie", "JSESSIONID=0123456789abcdef"},
+        {"If-Modified-Since", "Sun, 06 Nov 1994 08:49:37 GMT"},
+        {"If-None-Match", "\"etag\""},
+        {"Referer", "https://www.example.com/"},
+        {"X-Forwarded-For", "10.0.0.1"}
+    };
+
+    /**
+     * Stores the header names looked up, in the case callers use.
+     */
+    private static final String[] LOOKUPS = {
+        "host", "Content-Type", "content-length", "Accept-Language",
+        "Cookie", "Authorization", "X-Forwarded-For", "accept-encoding"
+    };
+
+    /**
+     * Stores the header manager.
+     */
+    private DefaultHttpHeaderManager manager;
+
+    /**
+     * Stores the legacy header manager.
+     */
+    private LegacyHttpHeaderManager legacyManager;
+
+    /**
+     * Setup the header managers.
+     */
+    @Setup
+    public void setup() {
+        manager = new DefaultHttpHeaderManager();
+        legacyManager = new LegacyHttpHeaderManager();
+        for (String[] header : HEADERS) {
+            manager.addHeader(header[0], header[1]);
+            legacyManager.addHeader(header[0], header[1]);
+        }
+    }
+
+    /**
+     * Read the headers with the header table.
+     *
+     * @param blackhole the blackhole.
+     */
+    @Benchmark
+    public void readHeaders(Blackhole blackhole) {
+        for (String name : LOOKUPS) {
+            blackhole.consume(manager.getHeader(name));
+        }
+        blackhole.consume(manager.getDateHeader("If-Modified-Since"));
+        Enumeration<String> names = manager.getHeaderNames();
+        while (names.hasMoreElements()) {
+            blackhole.consume(names.nextElement());
+        }
+    }
+
+    /**
+     * Read the headers with the upper cased HashMap keys.
+     *
+     * @param blackhole the blackhole.
+     */
+    @Benchmark
+    public void readHeadersLegacy(Blackhole blackhole) {
+        for (String name : LOOKUPS) {
+            blackhole.consume(legacyManager.getHeader(name));
+        }
+        blackhole.consume(legacyManager.getDateHeader("If-Modified-Since"));
+        Enumeration<String> names = legacyManager.getHeaderNames();
+        while (names.hasMoreElements()) {
+            blackhole.consume(names.nextElement());
+        }
+    }
+
+    /**
+     * The header lookups of DefaultHttpHeaderManager before the header table.
+     */
+    static class LegacyHttpHeaderManager {
+
+        /**
+         * Stores the headers.
+         */
+        private final HashMap<String, List<String>> headers = new HashMap<>();
+
+        /**
+         * Stores the names.
+         */
+        private final HashMap<String, String> names = new HashMap<>();
+
+        /**
+         * Stores the Locale.
+         */
+        private final Locale locale = new Locale("en", "US", "ISO-8859-1");
+
+        /**
+         * Add the header.
+         *
+         * @param name the name.
+         * @param value the value.
+         */
+        void addHeader(String name, String value) {
+            if (headers.containsKey(name.toUpperCase(locale))) {
+                headers.get(name.toUpperCase(locale)).add(value);
+            } else {
+                List<String> values = new ArrayList<>();
+                values.add(value);
+                headers.put(name.toUpperCase(locale), values);
+                names.put(name.toUpperCase(locale), name);
+            }
+        }
+
+        /**
+         * {@return the date header}
+         * @param name the header name.
+         */
+        long getDateHeader(String name) {
+            long result = -1;
+            if (headers.containsKey(name.toUpperCase(locale))) {
+                String value = headers.get(name.toUpperCase(locale)).get(0);
+                try {
+                    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
+                    result = format.parse(value).getTime();
+                } catch (ParseException exception) {
+                    throw new IllegalArgumentException(
+                            "Cannot convert header to a date", exception);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * {@return the header}
+         * @param name the header name.
+         */
+        String getHeader(String name) {
+            String result = null;
+            if (headers.containsKey(name.toUpperCase(locale))) {
+                result = headers.get(name.toUpperCase(locale)).get(0);
+            }
+            return result;
+        }
+
+        /**
+         * {@return the header names}
+         */
+        Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(new ArrayList<>(names.values()));
+        }
+    }
+}
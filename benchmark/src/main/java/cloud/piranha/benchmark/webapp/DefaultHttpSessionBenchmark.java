@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.webapp.impl.DefaultHttpSession;
+import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import java.util.Enumeration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for using the attributes of one session from many threads.
+ *
+ * <p>
+ * Models concurrent requests on the same session, with 4 threads reading and
+ * replacing a small set of attributes while no attribute listeners are
+ * registered.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+public class DefaultHttpSessionBenchmark {
+
+    /**
+     * Stores the attribute names.
+     */
+    private static final String[] NAMES = {"user", "locale", "cart", "csrf", "flash", "theme", "history", "preferences"};
+
+    /**
+     * Stores the session.
+     */
+    private final DefaultHttpSession session;
+
+    /**
+     * Constructor.
+     */
+    public DefaultHttpSessionBenchmark() {
+        session = new DefaultHttpSession(new DefaultWebApplication());
+        session.setSessionManager(new DefaultHttpSessionManager());
+        for (String name : NAMES) {
+            session.setAttribute(name, name);
+        }
+    }
+
+    /**
+     * Read an attribute.
+     *
+     * @return the attribute value.
+     */
+    @Benchmark
+    public Object getAttribute() {
+        return session.getAttribute(NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)]);
+    }
+
+    /**
+     * Replace an attribute.
+     */
+    @Benchmark
+    public void setAttribute() {
+        String name = NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)];
+        session.setAttribute(name, name);
+    }
+
+    /**
+     * Enumerate the attribute names.
+     *
+     * @return the number of attribute names.
+     */
+    @Benchmark
+    public int getAttributeNames() {
+        int count = 0;
+        Enumeration<String> names = session.getAttributeNames();
+        while (names.hasMoreElements()) {
+            names.nextElement();
+            count++;
+        }
+        return count;
+    }
+}
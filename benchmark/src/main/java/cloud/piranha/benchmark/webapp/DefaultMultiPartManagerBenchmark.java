@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.extension.apache.fileupload.ApacheMultiPartManager;
+import cloud.piranha.webapp.api.MultiPartManager;
+import cloud.piranha.webapp.impl.DefaultMultiPartManager;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.Part;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The benchmark for parsing a multipart/form-data upload.
+ *
+ * <p>
+ * Compares the DefaultMultiPartManager with the ApacheMultiPartManager for an
+ * upload of a form field and a file of 1 MB and 1 GB, which is generated while
+ * it is read so the body itself takes no heap. Both store the file in a
+ * temporary file. The heap is limited to 64 MB to show neither keeps the file
+ * in memory, run with "-prof gc" to compare the allocation per upload.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DefaultMultiPartManagerBenchmark {
+
+    /**
+     * Stores the boundary.
+     */
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    /**
+     * Stores the size of the file.
+     */
+    @Param({"1048576", "1073741824"})
+    public long size;
+
+    /**
+     * Stores the Apache multipart manager.
+     */
+    private ApacheMultiPartManager apacheManager;
+
+    /**
+     * Stores the default multipart manager.
+     */
+    private DefaultMultiPartManager defaultManager;
+
+    /**
+     * Stores the location.
+     */
+    private Path location;
+
+    /**
+     * Stores the multipart config.
+     */
+    private MultipartConfigElement multipartConfig;
+
+    /**
+     * Stores the web application.
+     */
+    private DefaultWebApplication webApplication;
+
+    /**
+     * Setup the web application and the managers.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @Setup
+    public void setup() throws IOException {
+        location = Files.createTempDirectory("multipart");
+        multipartConfig = new MultipartConfigElement(location.toString(), -1, -1, 10240);
+        webApplication = new DefaultWebApplication();
+        webApplication.setAttribute(ServletContext.TEMPDIR, location.toFile());
+        apacheManager = new ApacheMultiPartManager();
+        defaultManager = new DefaultMultiPartManager();
+    }
+
+    /**
+     * Remove the location.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(location);
+    }
+
+    /**
+     * Parse the upload with the DefaultMultiPartManager.
+     *
+     * @param blackhole the blackhole.
+     * @throws Exception when a serious error occurs.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        parse(defaultManager, blackhole);
+    }
+
+    /**
+     * Parse the upload with the ApacheMultiPartManager.
+     *
+     * @param blackhole the blackhole.
+     * @throws Exception when a serious error occurs.
+     */
+    @Benchmark
+    public void parseApache(Blackhole blackhole) throws Exception {
+        parse(apacheManager, blackhole);
+    }
+
+    /**
+     * Parse the upload and delete its parts.
+     *
+     * @param manager the multipart manager.
+     * @param blackhole the blackhole.
+     * @throws Exception when a serious error occurs.
+     */
+    private void parse(MultiPartManager manager, Blackhole blackhole) throws Exception {
+        UploadInputStream input = new UploadInputStream(size);
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setMethod("POST");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContentLength((int) input.length);
+        request.setInputStream(input);
+        request.setMultipartConfig(multipartConfig);
+        for (Part part : manager.getParts(webApplication, request)) {
+            blackhole.consume(part.getSize());
+            part.delete();
+        }
+    }
+
+    /**
+     * The input stream of an upload, which generates the file content while
+     * it is read.
+     */
+    static class UploadInputStream extends InputStream {
+
+        /**
+         * Stores the bytes in front of the file content.
+         */
+        private final byte[] head;
+
+        /**
+         * Stores the total length.
+         */
+        private final long length;
+
+        /**
+         * Stores the position.
+         */
+        private long position;
+
+        /**
+         * Stores the bytes after the file content.
+         */
+        private final byte[] tail;
+
+        /**
+         * Constructor.
+         *
+         * @param size the size of the file content.
+         */
+        UploadInputStream(long size) {
+            head = ("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"description\"\r\n"
+                    + "\r\n"
+                    + "A large upload\r\n"
+                    + "--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n"
+                    + "\r\n").getBytes(UTF_8);
+            tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(UTF_8);
+            length = head.length + size + tail.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (position == length) {
+                return -1;
+            }
+            int read = (int) Math.min(count, length - position);
+            for (int i = 0; i < read; i++) {
+                long index = position + i;
+                if (index < head.length) {
+                    bytes[offset + i] = head[(int) index];
+                } else if (index >= length - tail.length) {
+                    bytes[offset + i] = tail[(int) (index - length + tail.length)];
+                } else {
+                    bytes[offset + i] = (byte) index;
+                }
+            }
+            position += read;
+            return read;
+        }
+    }
+}
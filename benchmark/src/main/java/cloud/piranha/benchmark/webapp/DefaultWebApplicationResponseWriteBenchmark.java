@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import jakarta.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for writing a body to a DefaultWebApplicationResponse.
+ *
+ * <p>
+ * Compares writing the body with a single bulk write, which is copied into
+ * the buffer or bypasses it, with writing it a byte at a time, which is what
+ * every write ended up as before the output stream overrode the bulk write.
+ * The body is written the way a static resource is served, in 8 KB pieces.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DefaultWebApplicationResponseWriteBenchmark {
+
+    /**
+     * Stores the size of the pieces the body is written in.
+     */
+    private static final int PIECE_SIZE = 8192;
+
+    /**
+     * Stores the body size.
+     */
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    /**
+     * Stores the body.
+     */
+    private byte[] body;
+
+    /**
+     * Stores the output stream discarding everything.
+     */
+    private final OutputStream outputStream = OutputStream.nullOutputStream();
+
+    /**
+     * Setup the body.
+     */
+    @Setup
+    public void setup() {
+        body = new byte[size];
+        Arrays.fill(body, (byte) 'x');
+    }
+
+    /**
+     * Write the body with bulk writes.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @Benchmark
+    public void write() throws IOException {
+        DefaultWebApplicationResponse response = createResponse();
+        ServletOutputStream output = response.getOutputStream();
+        for (int offset = 0; offset < size; offset += PIECE_SIZE) {
+            output.write(body, offset, Math.min(PIECE_SIZE, size - offset));
+        }
+        response.closeResponse();
+    }
+
+    /**
+     * Write the body a byte at a time.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @Benchmark
+    public void writeLegacy() throws IOException {
+        DefaultWebApplicationResponse response = createResponse();
+        ServletOutputStream output = response.getOutputStream();
+        for (int i = 0; i < size; i++) {
+            output.write(body[i]);
+        }
+        response.closeResponse();
+    }
+
+    /**
+     * Create the response.
+     *
+     * @return the response.
+     */
+    private DefaultWebApplicationResponse createResponse() {
+        DefaultWebApplicationResponse response = new DefaultWebApplicationResponse();
+        response.setUnderlyingOutputStream(outputStream);
+        response.setContentType("application/octet-stream");
+        return response;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.webapp.impl.DefaultHttpSession;
+import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
+import cloud.piranha.webapp.impl.HttpSessionReaper;
+import jakarta.servlet.http.HttpSession;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmark for reaping expired sessions.
+ *
+ * <p>
+ * Every operation advances the clock by one second and reaps the sessions
+ * that expired. The sessions have a timeout of 30 minutes and every expired
+ * session is replaced by a new one, so the number of sessions stays the
+ * same. Compares the HttpSessionReaper with the scan over all the sessions
+ * it replaced, which every web application ran every 5 seconds.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HttpSessionReaperBenchmark {
+
+    /**
+     * Stores the timeout in seconds.
+     */
+    private static final int TIMEOUT = 1800;
+
+    /**
+     * Stores the number of sessions.
+     */
+    @Param({"1000000"})
+    public int sessions;
+
+    /**
+     * Stores the clock.
+     */
+    private long now;
+
+    /**
+     * Stores the reaper.
+     */
+    private HttpSessionReaper reaper;
+
+    /**
+     * Stores the session manager.
+     */
+    private ReplacingHttpSessionManager sessionManager;
+
+    /**
+     * Setup the sessions.
+     */
+    @Setup
+    public void setup() {
+        now = System.currentTimeMillis();
+        reaper = new HttpSessionReaper();
+        sessionManager = new ReplacingHttpSessionManager();
+        sessionManager.setReaper(reaper);
+        Random random = new Random(0);
+        for (int i = 0; i < sessions; i++) {
+            sessionManager.addSession(now - random.nextInt(TIMEOUT * 1000));
+        }
+    }
+
+    /**
+     * Reap with the HttpSessionReaper.
+     *
+     * @return the number of expired sessions.
+     */
+    @Benchmark
+    public int reap() {
+        now += 1000;
+        sessionManager.now = now;
+        return reaper.reap(now);
+    }
+
+    /**
+     * Reap by checking every session.
+     *
+     * @return the number of expired sessions.
+     */
+    @Benchmark
+    public int reapLegacy() {
+        now += 1000;
+        sessionManager.now = now;
+        return sessionManager.reapLegacy(now);
+    }
+
+    /**
+     * A session manager that replaces every destroyed session with a new
+     * one.
+     */
+    static class ReplacingHttpSessionManager extends DefaultHttpSessionManager {
+
+        /**
+         * Stores the clock.
+         */
+        long now;
+
+        /**
+         * Stores the sequence of the session ids.
+         */
+        private long sequence;
+
+        /**
+         * Add a session.
+         *
+         * @param lastAccessedTime the last accessed time.
+         */
+        void addSession(long lastAccessedTime) {
+            DefaultHttpSession session = new DefaultHttpSession(null, Long.toString(sequence++), false);
+            session.setSessionManager(this);
+            session.setMaxInactiveInterval(TIMEOUT);
+            session.setLastAccessedTime(lastAccessedTime);
+            sessions.put(session.getId(), session);
+            reaper.schedule(session);
+        }
+
+        @Override
+        public synchronized void destroySession(HttpSession session) {
+            super.destroySession(session);
+            addSession(now);
+        }
+
+        /**
+         * Reap by checking every session.
+         *
+         * @param now the time in milliseconds.
+         * @return the number of expired sessions.
+         */
+        int reapLegacy(long now) {
+            int expired = 0;
+            ArrayList<String> keys = new ArrayList<>(sessions.keySet());
+            for (String sessionId : keys) {
+                HttpSession session = sessions.get(sessionId);
+                if (session != null && session.getLastAccessedTime() + (session.getMaxInactiveInterval() * 1000L) < now) {
+                    session.invalidate();
+                    expired++;
+                }
+            }
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.benchmark.webapp;
+
+import cloud.piranha.webapp.impl.UrlEncodedParameters;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The benchmark for decoding an application/x-www-form-urlencoded body.
+ *
+ * <p>
+ * Compares UrlEncodedParameters with the String.split and URLDecoder based
+ * parsing it replaced, for a form body with 10 and 200 fields of which 3 are
+ * read.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class UrlEncodedParametersBenchmark {
+
+    /**
+     * Stores the number of fields.
+     */
+    @Param({"10", "200"})
+    public int fields;
+
+    /**
+     * Stores the form body.
+     */
+    private byte[] body;
+
+    /**
+     * Setup the form body.
+     */
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                builder.append('&');
+            }
+            builder.append("field").append(i).append("=some+value+with+%22escapes%22+%26+more+").append(i);
+        }
+        body = builder.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Decode the form body with UrlEncodedParameters.
+     *
+     * @param blackhole the blackhole.
+     */
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        UrlEncodedParameters parameters = UrlEncodedParameters.parse(body, 0, body.length, 10000);
+        blackhole.consume(parameters.getValue("field0"));
+        blackhole.consume(parameters.getValue("field5"));
+        blackhole.consume(parameters.getValue("field9"));
+    }
+
+    /**
+     * Decode the form body with String.split and URLDecoder.
+     *
+     * @param blackhole the blackhole.
+     */
+    @Benchmark
+    public void decodeLegacy(Blackhole blackhole) {
+        Map<String, String[]> parameters = new HashMap<>();
+        String[] pairs = new String(body).trim().split("&");
+        for (int i = 0; i < pairs.length; i++) {
+            String[] pair = pairs[i].trim().split("=");
+            if (pair.length == 2) {
+                parameters.put(URLDecoder.decode(pair[0], UTF_8), new String[]{URLDecoder.decode(pair[1], UTF_8)});
+            } else if (!"".equals(URLDecoder.decode(pair[0], UTF_8))) {
+                parameters.put(URLDecoder.decode(pair[0], UTF_8), new String[]{""});
+            }
+        }
+        blackhole.consume(parameters.get("field0")[0]);
+        blackhole.consume(parameters.get("field5")[0]);
+        blackhole.consume(parameters.get("field9")[0]);
+    }
+}
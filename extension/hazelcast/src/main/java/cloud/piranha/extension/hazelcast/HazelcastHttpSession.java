@@ -32,6 +32,9 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpSession;
 import jakarta.servlet.http.HttpSessionContext;
@@ -39,6 +42,12 @@ import jakarta.servlet.http.HttpSessionContext;
 /**
  * The Hazelcast HttpSession.
  *
+ * <p>
+ * The session keeps track of the attributes that were set or removed since it
+ * was loaded so only those have to be written back. Note a change to a mutable
+ * attribute value is only seen when the attribute is set again.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HazelcastHttpSession implements HttpSession, Serializable {
@@ -48,6 +57,11 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
      */
     private HashMap<String, Serializable> attributes = new HashMap<>();
 
+    /**
+     * Stores the names of the attributes changed since the session was loaded.
+     */
+    private transient Set<String> changedAttributes;
+
     /**
      * Stores the creation time.
      */
@@ -68,6 +82,11 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
      */
     private int maxInactiveInterval;
 
+    /**
+     * Stores if the max inactive interval changed since the session was loaded.
+     */
+    private transient boolean maxInactiveIntervalChanged;
+
     /**
      * Stores if the session is new.
      */
@@ -232,6 +251,7 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
     @Override
     public void invalidate() {
         verifyValid("invalidate");
+        sessionManager.destroySession(this);
         this.valid = false;
     }
 
@@ -269,6 +289,7 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
     @Override
     public void removeAttribute(String name) {
         verifyValid("removeAttribute");
+        attributeChanged(name);
         sessionManager.attributeRemoved(this, name, this.attributes.remove(name));
     }
 
@@ -300,6 +321,7 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
                 added = false;
             }
             Object oldValue = attributes.put(name, (Serializable) value);
+            attributeChanged(name);
             if (added) {
                 sessionManager.attributeAdded(this, name, value);
             } else {
@@ -328,6 +350,7 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
     @Override
     public void setMaxInactiveInterval(int maxInactiveInterval) {
         this.maxInactiveInterval = maxInactiveInterval;
+        this.maxInactiveIntervalChanged = true;
     }
 
     /**
@@ -358,6 +381,83 @@ public class HazelcastHttpSession implements HttpSession, Serializable {
         this.sessionManager = sessionManager;
     }
 
+    /**
+     * Record an attribute was set or removed.
+     *
+     * @param name the attribute name.
+     */
+    private void attributeChanged(String name) {
+        if (changedAttributes == null) {
+            changedAttributes = new HashSet<>();
+        }
+        changedAttributes.add(name);
+    }
+
+    /**
+     * Forget the changes made so far.
+     */
+    void clearChanges() {
+        changedAttributes = null;
+        maxInactiveIntervalChanged = false;
+    }
+
+    /**
+     * Create the update that writes back the changes made so far.
+     *
+     * <p>
+     * An unchanged session is only written back to record the access when the
+     * stored last accessed time is at least the given interval old.
+     * </p>
+     *
+     * @param accessedTime the time the session was accessed.
+     * @param accessInterval the access interval (in milliseconds).
+     * @return the update, or null if there is nothing to write back.
+     */
+    HazelcastHttpSessionUpdate createUpdate(long accessedTime, long accessInterval) {
+        if (changedAttributes == null && !maxInactiveIntervalChanged
+                && accessedTime - lastAccessedTime < accessInterval) {
+            return null;
+        }
+        HashMap<String, Serializable> changed = new HashMap<>();
+        if (changedAttributes != null) {
+            changedAttributes.forEach(name -> changed.put(name, attributes.get(name)));
+        }
+        return new HazelcastHttpSessionUpdate(changed, accessedTime,
+                maxInactiveIntervalChanged ? maxInactiveInterval : null, accessInterval);
+    }
+
+    /**
+     * {@return true if the session is valid, false otherwise}
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Apply an update to the session.
+     *
+     * @param changed the changed attributes, a null value marks a removed
+     * attribute.
+     * @param lastAccessedTime the last accessed time.
+     * @param maxInactiveInterval the max inactive interval, or null if it is
+     * unchanged.
+     */
+    void update(Map<String, Serializable> changed, long lastAccessedTime, Integer maxInactiveInterval) {
+        changed.forEach((name, value) -> {
+            if (value != null) {
+                attributes.put(name, value);
+            } else {
+                attributes.remove(name);
+            }
+        });
+        if (lastAccessedTime > this.lastAccessedTime) {
+            this.lastAccessedTime = lastAccessedTime;
+        }
+        if (maxInactiveInterval != null) {
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+    }
+
     /**
      * Verify if the session is valid.
      * 
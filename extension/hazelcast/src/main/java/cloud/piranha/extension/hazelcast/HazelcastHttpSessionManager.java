@@ -28,28 +28,66 @@
 package cloud.piranha.extension.hazelcast;
 
 import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import java.util.concurrent.ConcurrentHashMap;
 import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
-import java.util.UUID;
-import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import jakarta.servlet.http.HttpSessionEvent;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 /**
  * The Hazelcast HTTP session manager.
  *
+ * <p>
+ * A session is loaded from the Hazelcast map at most once per request. When
+ * the request is done the attributes it changed are written back with an
+ * EntryProcessor instead of writing back the entire session. A session that
+ * was only read is written back at most once per access interval to record
+ * the access. Optionally a near cache is used so read-mostly sessions are
+ * served locally.
+ * </p>
+ *
+ * <p>
+ * The sessions are not reaped by the session reaper. Instead every entry has
+ * a time to live of its max inactive interval plus the access interval, which
+ * is renewed when the session is written back, and Hazelcast expires it. The
+ * session listeners are told about an expired session on the member that
+ * owns it.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HazelcastHttpSessionManager extends DefaultHttpSessionManager {
 
+    /**
+     * Stores the access interval (in milliseconds).
+     */
+    protected long accessInterval = 60000;
+
     /**
      * Stores the hazelcast instance.
      */
     private HazelcastInstance hazelcast;
 
+    /**
+     * Stores the hazelcast session map.
+     */
+    private IMap<String, HttpSession> map;
+
+    /**
+     * Stores the session loaded for each request that is in progress.
+     */
+    private final ConcurrentHashMap<HttpServletRequest, HazelcastHttpSession> requestSessions = new ConcurrentHashMap<>();
+
     /**
      * Constructor.
      */
@@ -63,11 +101,42 @@ public class HazelcastHttpSessionManager extends DefaultHttpSessionManager {
      * @param name the name used for the hazelcast session map.
      */
     public HazelcastHttpSessionManager(String name) {
+        this(name, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name used for the hazelcast session map.
+     * @param nearCache true to serve sessions from a near cache.
+     */
+    public HazelcastHttpSessionManager(String name, boolean nearCache) {
         super();
         Config config = new Config();
         config.setInstanceName(name);
-        hazelcast = Hazelcast.newHazelcastInstance();
-        sessions = hazelcast.getMap(name);
+        if (nearCache) {
+            config.getMapConfig(name).setNearCacheConfig(new NearCacheConfig(name)
+                    .setInMemoryFormat(InMemoryFormat.BINARY)
+                    .setInvalidateOnChange(true));
+        }
+        hazelcast = Hazelcast.getOrCreateHazelcastInstance(config);
+        map = hazelcast.getMap(name);
+        map.addLocalEntryListener((EntryExpiredListener<String, HttpSession>) this::sessionExpired);
+        sessions = map;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hazelcast the hazelcast instance.
+     * @param name the name used for the hazelcast session map.
+     */
+    public HazelcastHttpSessionManager(HazelcastInstance hazelcast, String name) {
+        super();
+        this.hazelcast = hazelcast;
+        map = hazelcast.getMap(name);
+        map.addLocalEntryListener((EntryExpiredListener<String, HttpSession>) this::sessionExpired);
+        sessions = map;
     }
 
     /**
@@ -82,11 +151,16 @@ public class HazelcastHttpSessionManager extends DefaultHttpSessionManager {
         String key = null;
         if (session != null) {
             String oldSessionId = session.getId();
-            sessions.remove(oldSessionId);
-            key = UUID.randomUUID().toString();
             HazelcastHttpSession newSession = (HazelcastHttpSession) session;
+            key = sessionIdGenerator.generateId();
             newSession.setId(key);
-            sessions.put(key, (HazelcastHttpSession) session);
+            long timeToLive = getTimeToLive(newSession.getMaxInactiveInterval(), accessInterval);
+            while (map.putIfAbsent(key, newSession, timeToLive, MILLISECONDS) != null) {
+                key = sessionIdGenerator.generateId();
+                newSession.setId(key);
+            }
+            newSession.clearChanges();
+            map.remove(oldSessionId);
             idListeners.stream().forEach(idListener -> idListener.sessionIdChanged(new HttpSessionEvent(session), oldSessionId));
         } else {
             throw new IllegalStateException("No session active");
@@ -95,31 +169,142 @@ public class HazelcastHttpSessionManager extends DefaultHttpSessionManager {
     }
 
     @Override
-    public synchronized HttpSession createSession(HttpServletRequest request) {
-        String key = UUID.randomUUID().toString();
-        while(sessions.containsKey(key)) {
-            key = UUID.randomUUID().toString();
-        }
+    public HttpSession createSession(HttpServletRequest request) {
+        String key = sessionIdGenerator.generateId();
         HazelcastHttpSession result = new HazelcastHttpSession(webApplication, key, true);
+        result.setMaxInactiveInterval(sessionTimeout * 60);
         result.setSessionManager(this);
-        sessions.put(key, result);
+        long timeToLive = getTimeToLive(result.getMaxInactiveInterval(), accessInterval);
+        while (map.putIfAbsent(key, result, timeToLive, MILLISECONDS) != null) {
+            key = sessionIdGenerator.generateId();
+            result.setId(key);
+        }
+        result.clearChanges();
+        cacheSession(request, result);
         HttpServletResponse response = (HttpServletResponse) webApplication.getResponse(request);
-        Cookie cookie = new Cookie(name, key);
-        response.addCookie(cookie);
+        response.addCookie(createSessionCookie(request, key));
         sessionListeners.stream().forEach(sessionListener -> sessionListener.sessionCreated(new HttpSessionEvent(result)));
         return result;
     }
 
+    @Override
+    public void destroySession(HttpSession session) {
+        if (map.remove(session.getId()) == null) {
+            return;
+        }
+        sessionListeners.stream().forEach(sessionListener -> sessionListener.sessionDestroyed(new HttpSessionEvent(session)));
+    }
+
+    /**
+     * {@return the access interval (in milliseconds)}
+     */
+    public long getAccessInterval() {
+        return accessInterval;
+    }
+
     @Override
     public HttpSession getSession(HttpServletRequest request, String currentSessionId) {
-        HazelcastHttpSession result;
-        HttpServletResponse response = (HttpServletResponse) webApplication.getResponse(request);
-        result = (HazelcastHttpSession) sessions.get(currentSessionId);
-        result.setSessionManager(this);
-        result.setServletContext(webApplication);
-        Cookie cookie = new Cookie(name, currentSessionId);
-        response.addCookie(cookie);
-        result.setNew(false);
+        HazelcastHttpSession session = requestSessions.get(request);
+        if (session != null && session.getId().equals(currentSessionId) && session.isValid()) {
+            return session;
+        }
+        HazelcastHttpSession result = (HazelcastHttpSession) map.get(currentSessionId);
+        if (result != null) {
+            result.setSessionManager(this);
+            result.setServletContext(webApplication);
+            result.setNew(false);
+            cacheSession(request, result);
+        }
         return result;
     }
+
+    @Override
+    public boolean hasSession(String sessionId) {
+        return sessionId != null ? map.containsKey(sessionId) : false;
+    }
+
+    /**
+     * Write back the changes the request made to its session.
+     *
+     * @param request the request.
+     */
+    @Override
+    public void releaseSession(HttpServletRequest request) {
+        HazelcastHttpSession session = requestSessions.remove(request);
+        if (session != null) {
+            writeSession(session);
+        }
+    }
+
+    /**
+     * Notify the session listeners a session expired.
+     *
+     * @param event the entry event.
+     */
+    private void sessionExpired(EntryEvent<String, HttpSession> event) {
+        if (event.getOldValue() instanceof HazelcastHttpSession session) {
+            session.setSessionManager(this);
+            session.setServletContext(webApplication);
+            sessionListeners.stream().forEach(sessionListener -> sessionListener.sessionDestroyed(new HttpSessionEvent(session)));
+        }
+    }
+
+    /**
+     * Set the access interval (in milliseconds).
+     *
+     * <p>
+     * A session that was only read is written back to record the access once
+     * its stored last accessed time is at least this old.
+     * </p>
+     *
+     * @param accessInterval the access interval.
+     */
+    public void setAccessInterval(long accessInterval) {
+        this.accessInterval = accessInterval;
+    }
+
+    /**
+     * {@return the time to live (in milliseconds) of a session entry, or 0 if
+     * the session never expires}
+     *
+     * <p>
+     * A session that was only read is not written back within the access
+     * interval, so the access interval is added to keep the entry alive until
+     * it is written back again.
+     * </p>
+     *
+     * @param maxInactiveInterval the max inactive interval (in seconds).
+     * @param accessInterval the access interval (in milliseconds).
+     */
+    static long getTimeToLive(int maxInactiveInterval, long accessInterval) {
+        return maxInactiveInterval > 0 ? maxInactiveInterval * 1000L + accessInterval : 0;
+    }
+
+    /**
+     * Remember the session loaded for the request.
+     *
+     * @param request the request.
+     * @param session the session.
+     */
+    private void cacheSession(HttpServletRequest request, HazelcastHttpSession session) {
+        HazelcastHttpSession previous = requestSessions.put(request, session);
+        if (previous != null && previous != session) {
+            writeSession(previous);
+        }
+    }
+
+    /**
+     * Write back the changes made to the session.
+     *
+     * @param session the session.
+     */
+    private void writeSession(HazelcastHttpSession session) {
+        if (session.isValid()) {
+            HazelcastHttpSessionUpdate update = session.createUpdate(System.currentTimeMillis(), accessInterval);
+            if (update != null) {
+                map.executeOnKey(session.getId(), update);
+                session.clearChanges();
+            }
+        }
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.extension.hazelcast;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import jakarta.servlet.http.HttpSession;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * The EntryProcessor that writes back the changes a request made to a
+ * Hazelcast HttpSession.
+ *
+ * <p>
+ * The update is applied on the member owning the session so only the changed
+ * attributes travel over the wire instead of the entire session. The time to
+ * live of the entry is renewed so the session only expires once it is not
+ * accessed for longer than its max inactive interval.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class HazelcastHttpSessionUpdate implements EntryProcessor<String, HttpSession, Object> {
+
+    /**
+     * Stores the serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stores the access interval (in milliseconds).
+     */
+    private final long accessInterval;
+
+    /**
+     * Stores the changed attributes, a null value marks a removed attribute.
+     */
+    private final HashMap<String, Serializable> attributes;
+
+    /**
+     * Stores the last accessed time.
+     */
+    private final long lastAccessedTime;
+
+    /**
+     * Stores the max inactive interval, or null if it is unchanged.
+     */
+    private final Integer maxInactiveInterval;
+
+    /**
+     * Constructor.
+     *
+     * @param attributes the changed attributes.
+     * @param lastAccessedTime the last accessed time.
+     * @param maxInactiveInterval the max inactive interval, or null if it is
+     * unchanged.
+     * @param accessInterval the access interval (in milliseconds).
+     */
+    public HazelcastHttpSessionUpdate(HashMap<String, Serializable> attributes,
+            long lastAccessedTime, Integer maxInactiveInterval, long accessInterval) {
+        this.accessInterval = accessInterval;
+        this.attributes = attributes;
+        this.lastAccessedTime = lastAccessedTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    @Override
+    public Object process(Map.Entry<String, HttpSession> entry) {
+        if (entry.getValue() instanceof HazelcastHttpSession session) {
+            session.update(attributes, lastAccessedTime, maxInactiveInterval);
+            if (entry instanceof ExtendedMapEntry<String, HttpSession> extendedEntry) {
+                extendedEntry.setValue(session, HazelcastHttpSessionManager.getTimeToLive(
+                        session.getMaxInactiveInterval(), accessInterval), MILLISECONDS);
+            } else {
+                entry.setValue(session);
+            }
+        }
+        return null;
+    }
+}
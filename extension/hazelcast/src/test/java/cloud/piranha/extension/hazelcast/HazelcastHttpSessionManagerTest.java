@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.extension.hazelcast;
+
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HazelcastHttpSessionManager class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HazelcastHttpSessionManagerTest {
+
+    /**
+     * Shutdown the Hazelcast instances.
+     */
+    @AfterAll
+    static void afterAll() {
+        Hazelcast.shutdownAll();
+    }
+
+    /**
+     * Create a request linked to a response.
+     *
+     * @param webApp the web application.
+     * @return the request.
+     */
+    private DefaultWebApplicationRequest createRequest(DefaultWebApplication webApp) {
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        webApp.linkRequestAndResponse(request, new DefaultWebApplicationResponse());
+        return request;
+    }
+
+    /**
+     * Create a web application using the given session manager.
+     *
+     * @param sessionManager the session manager.
+     * @return the web application.
+     */
+    private DefaultWebApplication createWebApplication(HazelcastHttpSessionManager sessionManager) {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        sessionManager.setWebApplication(webApp);
+        webApp.setHttpSessionManager(sessionManager);
+        return webApp;
+    }
+
+    /**
+     * Test getSession method loads the session once per request.
+     */
+    @Test
+    void testGetSession() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testGetSession");
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        String sessionId = sessionManager.createSession(createRequest(webApp)).getId();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.getSession(request, sessionId);
+        assertSame(session, sessionManager.getSession(request, sessionId));
+        assertNotSame(session, sessionManager.getSession(createRequest(webApp), sessionId));
+        assertFalse(session.isNew());
+        assertNull(sessionManager.getSession(request, "unknown"));
+    }
+
+    /**
+     * Test the session loaded for a request is not kept in a request
+     * attribute the application can see or remove.
+     */
+    @Test
+    void testGetSessionRequestAttributes() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testGetSessionRequestAttributes");
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        String sessionId = sessionManager.createSession(createRequest(webApp)).getId();
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.getSession(request, sessionId);
+        for (String name : Collections.list(request.getAttributeNames())) {
+            assertFalse(request.getAttribute(name) instanceof HttpSession, name);
+            request.removeAttribute(name);
+        }
+        assertSame(session, sessionManager.getSession(request, sessionId));
+        sessionManager.releaseSession(request);
+    }
+
+    /**
+     * Test a session expires once it is not accessed for longer than its max
+     * inactive interval.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testExpiry() throws Exception {
+        Config config = new Config();
+        config.setInstanceName("testExpiry");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager(
+                Hazelcast.newHazelcastInstance(config), "testExpiry");
+        sessionManager.setAccessInterval(0);
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        CountDownLatch destroyed = new CountDownLatch(1);
+        sessionManager.addListener(new HttpSessionListener() {
+            @Override
+            public void sessionDestroyed(HttpSessionEvent event) {
+                destroyed.countDown();
+            }
+        });
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.createSession(request);
+        session.setMaxInactiveInterval(1);
+        sessionManager.releaseSession(request);
+        assertTrue(sessionManager.hasSession(session.getId()));
+        assertTrue(destroyed.await(30, TimeUnit.SECONDS));
+        assertFalse(sessionManager.hasSession(session.getId()));
+        assertNull(sessionManager.getSession(createRequest(webApp), session.getId()));
+    }
+
+    /**
+     * Test invalidate method removes the session.
+     */
+    @Test
+    void testInvalidate() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testInvalidate");
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.createSession(request);
+        session.invalidate();
+        assertFalse(sessionManager.hasSession(session.getId()));
+        assertNull(sessionManager.getSession(request, session.getId()));
+        sessionManager.releaseSession(request);
+    }
+
+    /**
+     * Test releaseSession method writes back the changed attributes.
+     */
+    @Test
+    void testReleaseSession() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testReleaseSession");
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.createSession(request);
+        session.setAttribute("removed", "value");
+        sessionManager.releaseSession(request);
+
+        request = createRequest(webApp);
+        session = sessionManager.getSession(request, session.getId());
+        session.setAttribute("name", "value");
+        session.removeAttribute("removed");
+        session.setMaxInactiveInterval(120);
+        assertEquals("value", sessionManager.getSession(createRequest(webApp), session.getId()).getAttribute("removed"));
+        sessionManager.releaseSession(request);
+
+        session = sessionManager.getSession(createRequest(webApp), session.getId());
+        assertEquals("value", session.getAttribute("name"));
+        assertNull(session.getAttribute("removed"));
+        assertEquals(120, session.getMaxInactiveInterval());
+    }
+
+    /**
+     * Test releaseSession method keeps changes made by other requests.
+     */
+    @Test
+    void testReleaseSessionConcurrentRequests() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testReleaseSessionConcurrentRequests");
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        String sessionId = sessionManager.createSession(createRequest(webApp)).getId();
+        DefaultWebApplicationRequest request1 = createRequest(webApp);
+        DefaultWebApplicationRequest request2 = createRequest(webApp);
+        sessionManager.getSession(request1, sessionId).setAttribute("name1", "value1");
+        sessionManager.getSession(request2, sessionId).setAttribute("name2", "value2");
+        sessionManager.releaseSession(request1);
+        sessionManager.releaseSession(request2);
+
+        HttpSession session = sessionManager.getSession(createRequest(webApp), sessionId);
+        assertEquals("value1", session.getAttribute("name1"));
+        assertEquals("value2", session.getAttribute("name2"));
+    }
+
+    /**
+     * Test the near cache.
+     */
+    @Test
+    void testNearCache() {
+        HazelcastHttpSessionManager sessionManager = new HazelcastHttpSessionManager("testNearCache", true);
+        DefaultWebApplication webApp = createWebApplication(sessionManager);
+        DefaultWebApplicationRequest request = createRequest(webApp);
+        HttpSession session = sessionManager.createSession(request);
+        session.setAttribute("name", "value");
+        sessionManager.releaseSession(request);
+        assertEquals("value", sessionManager.getSession(createRequest(webApp), session.getId()).getAttribute("name"));
+    }
+}
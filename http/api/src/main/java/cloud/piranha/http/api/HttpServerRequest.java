@@ -28,7 +28,9 @@
 package cloud.piranha.http.api;
 
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * The HttpServerRequest API.
@@ -127,4 +129,27 @@ public interface HttpServerRequest {
     default String getProtocol() {
         return "HTTP/1.1";
     }
+
+    /**
+     * Get the trailer fields.
+     *
+     * <p>
+     * The names are in lower case and the values of a field that is sent
+     * more than once are joined with a comma.
+     * </p>
+     *
+     * @return the trailer fields, or an empty map if there are none.
+     * @throws IllegalStateException when the trailer fields are not ready.
+     */
+    default Map<String, String> getTrailerFields() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@return true if the trailer fields can be read, which for a chunked
+     * request body is once the body has been read}
+     */
+    default boolean isTrailerFieldsReady() {
+        return true;
+    }
 }
@@ -61,6 +61,27 @@ public interface HttpServerResponse {
         getOutputStream().close();
     }
 
+    /**
+     * Commit a response head the caller writes to the output stream itself.
+     *
+     * <p>
+     * A processor that encodes the status line and headers itself, instead of
+     * using {@link #writeStatusLine()} and {@link #writeHeaders()}, calls this
+     * right before writing them. It tells the server whether the headers
+     * delimit the body, with a Content-Length or chunked encoding, in which
+     * case the connection can be kept open for the next request. By default
+     * the connection is closed after the response.
+     * </p>
+     *
+     * @param bodyDelimited true if the headers delimit the body, false if the
+     * connection has to be closed to end it.
+     * @return true if the connection is kept alive after the response, false
+     * if it is closed, in which case the head should say "Connection: close".
+     */
+    default boolean commitHead(boolean bodyDelimited) {
+        return false;
+    }
+
     /**
      * Get the header.
      *
@@ -30,11 +30,16 @@ package cloud.piranha.http.impl;
 import java.io.IOException;
 import java.lang.System.Logger;
 import java.net.ServerSocket;
+import java.net.Socket;
 import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -66,11 +71,63 @@ public class DefaultHttpServer implements HttpServer {
      */
     protected ExecutorService executorService;
 
+    /**
+     * Stores the connections waiting for their next request.
+     */
+    protected final Set<Socket> idleConnections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Stores the persistent connections waiting for their next request after
+     * having served at least one.
+     */
+    protected final Set<Socket> keepAliveConnections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Stores the keep alive timeout (in milliseconds).
+     */
+    protected int keepAliveTimeout;
+
+    /**
+     * Stores the maximum number of request headers.
+     */
+    protected int maxHeaderCount;
+
+    /**
+     * Stores the maximum size of the request head (in bytes).
+     */
+    protected int maxHeaderSize;
+
+    /**
+     * Stores the maximum number of requests per connection.
+     */
+    protected int maxKeepAliveRequests;
+
+    /**
+     * Stores the maximum number of worker threads.
+     */
+    protected int maxWorkerThreads;
+
+    /**
+     * Stores the minimum number of worker threads.
+     */
+    protected int minWorkerThreads;
+
     /**
      * Stores the processor.
      */
     protected HttpServerProcessor processor;
 
+    /**
+     * Stores the number of connections rejected because the server was too
+     * busy.
+     */
+    protected final AtomicLong rejectedConnectionCount = new AtomicLong();
+
+    /**
+     * Stores the Retry-After (in seconds) sent with a 503 response.
+     */
+    protected int retryAfter;
+
     /**
      * Stores the port we are listening on.
      */
@@ -106,13 +163,21 @@ public class DefaultHttpServer implements HttpServer {
      */
     protected ThreadFactory threadFactory;
 
+    /**
+     * Stores the virtual threads flag.
+     */
+    protected boolean virtualThreads;
+
+    /**
+     * Stores the maximum number of connections waiting for a worker thread.
+     */
+    protected int workerQueueSize;
+
     /**
      * Constructor
      */
     public DefaultHttpServer() {
-        threadFactory = new DefaultHttpServerThreadFactory();
-        serverPort = 8765;
-        serverStopRequest = false;
+        this(8765, null, false);
     }
 
     /**
@@ -121,8 +186,7 @@ public class DefaultHttpServer implements HttpServer {
      * @param serverPort the server port.
      */
     public DefaultHttpServer(int serverPort) {
-        this.serverPort = serverPort;
-        threadFactory = new DefaultHttpServerThreadFactory();
+        this(serverPort, null, false);
     }
 
     /**
@@ -138,9 +202,17 @@ public class DefaultHttpServer implements HttpServer {
         this.serverPort = serverPort;
         this.serverStopRequest = false;
         this.ssl = ssl;
+        this.keepAliveTimeout = 20000;
+        this.maxKeepAliveRequests = 100;
+        this.maxHeaderCount = DefaultHttpServerRequest.DEFAULT_MAX_HEADER_COUNT;
+        this.maxHeaderSize = DefaultHttpServerRequest.DEFAULT_MAX_HEADER_SIZE;
+        this.maxWorkerThreads = 200;
+        this.minWorkerThreads = 10;
+        this.retryAfter = 5;
+        this.virtualThreads = Boolean.getBoolean("piranha.virtualThreads");
+        this.workerQueueSize = 100;
     }
 
-
     /**
      * Constructor
      *
@@ -149,13 +221,115 @@ public class DefaultHttpServer implements HttpServer {
      * @param soTimeout the SO_TIMEOUT.
      */
     public DefaultHttpServer(int serverPort, HttpServerProcessor processor, int soTimeout) {
-        this.threadFactory = new DefaultHttpServerThreadFactory();
-        this.processor = processor;
-        this.serverPort = serverPort;
-        this.serverStopRequest = false;
+        this(serverPort, processor, false);
         this.soTimeout = soTimeout;
     }
 
+    /**
+     * Close persistent connections that are waiting for their next request.
+     *
+     * <p>
+     * This frees up their worker threads for the connections waiting in the
+     * worker queue. Clients expect an idle persistent connection to be closed
+     * at any time and retry their request on a new connection.
+     * </p>
+     *
+     * @param count the maximum number of connections to close.
+     * @return the number of connections closed.
+     */
+    protected int closeKeepAliveConnections(int count) {
+        int closed = 0;
+        Iterator<Socket> iterator = keepAliveConnections.iterator();
+        while (closed < count && iterator.hasNext()) {
+            Socket socket = iterator.next();
+            if (keepAliveConnections.remove(socket)) {
+                try {
+                    socket.close();
+                } catch (IOException exception) {
+                    LOGGER.log(DEBUG, "An I/O error occurred while closing an idle connection", exception);
+                }
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * {@return the number of worker threads that are busy}
+     */
+    public int getActiveWorkerCount() {
+        if (executorService instanceof ThreadPoolExecutor executor) {
+            return executor.getActiveCount();
+        }
+        return 0;
+    }
+
+    /**
+     * {@return the number of worker threads}
+     */
+    public int getWorkerThreadCount() {
+        if (executorService instanceof ThreadPoolExecutor executor) {
+            return executor.getPoolSize();
+        }
+        return 0;
+    }
+
+    /**
+     * {@return the keep alive timeout (in milliseconds)}
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * {@return the maximum number of request headers}
+     */
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    /**
+     * {@return the maximum size of the request head (in bytes)}
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * {@return the maximum number of requests per connection}
+     */
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * {@return the maximum number of worker threads}
+     */
+    public int getMaxWorkerThreads() {
+        return maxWorkerThreads;
+    }
+
+    /**
+     * {@return the minimum number of worker threads}
+     */
+    public int getMinWorkerThreads() {
+        return minWorkerThreads;
+    }
+
+    /**
+     * {@return the number of connections rejected because the server was too busy}
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnectionCount.get();
+    }
+
+    /**
+     * {@return the Retry-After (in seconds) sent with a 503 response}
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
     /**
      * {@return the SO_TIMEOUT}
      */
@@ -163,6 +337,30 @@ public class DefaultHttpServer implements HttpServer {
         return soTimeout;
     }
 
+    /**
+     * {@return the virtual threads flag}
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * {@return the number of connections waiting for a worker thread}
+     */
+    public int getWorkerQueueDepth() {
+        if (executorService instanceof ThreadPoolExecutor executor) {
+            return executor.getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * {@return the maximum number of connections waiting for a worker thread}
+     */
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
     /**
      * @see HttpServer#isRunning()
      */
@@ -182,7 +380,21 @@ public class DefaultHttpServer implements HttpServer {
     public void start() {
         LOGGER.log(DEBUG, () -> "Starting HTTP server on port " + serverPort);
         try {
-            executorService = Executors.newCachedThreadPool(threadFactory);
+            executorService = null;
+            if (virtualThreads) {
+                executorService = DefaultHttpServerVirtualThreads.newExecutorService();
+                if (executorService == null) {
+                    LOGGER.log(WARNING, "Virtual threads need JDK 21 or later, using platform threads instead");
+                }
+            }
+            if (executorService == null) {
+                DefaultHttpServerWorkQueue workQueue = new DefaultHttpServerWorkQueue(workerQueueSize);
+                DefaultHttpServerWorkerPool executor = new DefaultHttpServerWorkerPool(
+                        Math.min(minWorkerThreads, maxWorkerThreads), maxWorkerThreads,
+                        workQueue, threadFactory);
+                workQueue.setExecutor(executor);
+                executorService = executor;
+            }
             serverStopRequest = false;
             if (ssl) {
                 SSLContext context = SSLContext.getDefault();
@@ -226,6 +438,13 @@ public class DefaultHttpServer implements HttpServer {
                 LOGGER.log(WARNING, "An I/O error occurred while stopping the HTTP server", exception);
             }
         }
+        for (Socket socket : idleConnections) {
+            try {
+                socket.close();
+            } catch (IOException exception) {
+                LOGGER.log(DEBUG, "An I/O error occurred while closing an idle connection", exception);
+            }
+        }
         if (executorService != null) {
             executorService.shutdown();
             try {
@@ -238,6 +457,132 @@ public class DefaultHttpServer implements HttpServer {
         LOGGER.log(DEBUG, () -> "Stopped HTTP server on port " + serverPort);
     }
 
+    /**
+     * Set the keep alive timeout.
+     *
+     * <p>
+     * This is the time (in milliseconds) an idle persistent connection waits
+     * for the next request before it is closed. A value of 0 means wait
+     * indefinitely. When all worker threads are busy idle persistent
+     * connections are closed right away to serve the connections waiting in
+     * the worker queue.
+     * </p>
+     *
+     * @param keepAliveTimeout the keep alive timeout.
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Set the maximum number of request headers.
+     *
+     * <p>
+     * A request with more headers is answered with a 431 (Request Header
+     * Fields Too Large).
+     * </p>
+     *
+     * @param maxHeaderCount the maximum number of request headers.
+     */
+    public void setMaxHeaderCount(int maxHeaderCount) {
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Set the maximum size of the request head.
+     *
+     * <p>
+     * This is the maximum size (in bytes) of the request line and the headers
+     * together. A larger request head is answered with a 431 (Request Header
+     * Fields Too Large).
+     * </p>
+     *
+     * @param maxHeaderSize the maximum size of the request head.
+     */
+    public void setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Set the maximum number of worker threads.
+     *
+     * <p>
+     * Each connection is handled by one worker thread. When all of them are
+     * busy new connections wait in the worker queue.
+     * </p>
+     *
+     * @param maxWorkerThreads the maximum number of worker threads.
+     */
+    public void setMaxWorkerThreads(int maxWorkerThreads) {
+        this.maxWorkerThreads = maxWorkerThreads;
+    }
+
+    /**
+     * Set the minimum number of worker threads.
+     *
+     * <p>
+     * Worker threads above this number are stopped after being idle for a
+     * minute.
+     * </p>
+     *
+     * @param minWorkerThreads the minimum number of worker threads.
+     */
+    public void setMinWorkerThreads(int minWorkerThreads) {
+        this.minWorkerThreads = minWorkerThreads;
+    }
+
+    /**
+     * Set the Retry-After (in seconds) sent with a 503 response.
+     *
+     * @param retryAfter the Retry-After.
+     */
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Set the virtual threads flag.
+     *
+     * <p>
+     * When set (and running on JDK 21 or later) each connection is handled on
+     * its own virtual thread instead of on a worker thread from the pool, and
+     * the worker pool settings do not apply. It defaults to the
+     * 'piranha.virtualThreads' system property.
+     * </p>
+     *
+     * @param virtualThreads the virtual threads flag.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Set the maximum number of connections waiting for a worker thread.
+     *
+     * <p>
+     * When the worker queue is full new connections are answered with a 503
+     * (Service Unavailable) by the acceptor thread and closed.
+     * </p>
+     *
+     * @param workerQueueSize the maximum number of waiting connections.
+     */
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    /**
+     * Set the maximum number of requests per connection.
+     *
+     * <p>
+     * A value of 1 disables persistent connections.
+     * </p>
+     *
+     * @param maxKeepAliveRequests the maximum number of requests.
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
     @Override
     public int getServerPort() {
         return serverPort;
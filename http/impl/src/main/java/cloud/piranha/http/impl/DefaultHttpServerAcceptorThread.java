@@ -27,12 +27,21 @@
  */
 package cloud.piranha.http.impl;
 
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.lang.System.Logger;
 
+import javax.net.ssl.SSLSocket;
+
 /**
  * The acceptor thread used by the default implementation of HTTP server.
  *
@@ -41,6 +50,12 @@ import java.lang.System.Logger;
  * connection it hands it off for processing to a processing thread.
  * </p>
  *
+ * <p>
+ * If all worker threads are busy and the worker queue is full the connection
+ * is answered with a 503 (Service Unavailable) right away, so an overloaded
+ * server does not need a thread to turn a client away.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 class DefaultHttpServerAcceptorThread implements Runnable {
@@ -51,6 +66,22 @@ class DefaultHttpServerAcceptorThread implements Runnable {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServerAcceptorThread.class.getPackageName());
 
+    /**
+     * Stores the maximum number of rejected connections waiting for their 503
+     * response.
+     */
+    private static final int REJECT_QUEUE_SIZE = 64;
+
+    /**
+     * Stores the SO_TIMEOUT (in milliseconds) of a rejected connection.
+     */
+    private static final int REJECT_TIMEOUT = 1000;
+
+    /**
+     * Stores the executor that sends the 503 responses.
+     */
+    private final ThreadPoolExecutor rejectExecutor;
+
     /**
      * Stores the HTTP server.
      */
@@ -63,6 +94,12 @@ class DefaultHttpServerAcceptorThread implements Runnable {
      */
     public DefaultHttpServerAcceptorThread(DefaultHttpServer server) {
         this.server = server;
+        this.rejectExecutor = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REJECT_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "DefaultHttpServer-RejectThread");
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     /**
@@ -73,11 +110,81 @@ class DefaultHttpServerAcceptorThread implements Runnable {
         while (!server.serverStopRequest) {
             try {
                 Socket socket = server.serverSocket.accept();
-                server.executorService.execute(new DefaultHttpServerProcessingThread(server, socket));
+                try {
+                    server.executorService.execute(new DefaultHttpServerProcessingThread(server, socket));
+                    if (server.executorService instanceof DefaultHttpServerWorkerPool pool) {
+                        int waiting = pool.getSubmittedCount() - pool.getPoolSize();
+                        if (waiting > 0) {
+                            server.closeKeepAliveConnections(waiting);
+                        }
+                    }
+                } catch (RejectedExecutionException ree) {
+                    server.closeKeepAliveConnections(server.workerQueueSize);
+                    reject(socket);
+                }
             } catch (IOException exception) {
             } catch (Throwable throwable) {
                 LOGGER.log(WARNING, "An error occurred while accepting a socket connection", throwable);
             }
         }
+        rejectExecutor.shutdown();
+    }
+
+    /**
+     * Close the socket.
+     *
+     * @param socket the socket.
+     */
+    private void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "Unable to close the rejected connection", exception);
+        }
+    }
+
+    /**
+     * Reject the connection.
+     *
+     * <p>
+     * The 503 response is sent by a separate thread so a slow client cannot
+     * hold up accepting connections. An SSL connection is closed without a
+     * response, as sending one would mean doing the TLS handshake first.
+     * </p>
+     *
+     * @param socket the socket.
+     */
+    private void reject(Socket socket) {
+        server.rejectedConnectionCount.incrementAndGet();
+        LOGGER.log(DEBUG, "Rejecting connection, all worker threads are busy");
+        if (socket instanceof SSLSocket) {
+            close(socket);
+            return;
+        }
+        try {
+            rejectExecutor.execute(() -> sendServiceUnavailable(socket));
+        } catch (RejectedExecutionException ree) {
+            close(socket);
+        }
+    }
+
+    /**
+     * Send the 503 response and close the connection.
+     *
+     * @param socket the socket.
+     */
+    private void sendServiceUnavailable(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(REJECT_TIMEOUT);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("HTTP/1.1 503 Service Unavailable\r\n"
+                    + "Retry-After: " + server.retryAfter + "\r\n"
+                    + "Content-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(US_ASCII));
+            outputStream.flush();
+            socket.shutdownOutput();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "Unable to send the 503 response", exception);
+        }
     }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The chunked request body input stream used by the default implementation of
+ * HTTP server.
+ *
+ * <p>
+ * This input stream decodes a request body sent with
+ * <code>Transfer-Encoding: chunked</code>. Chunk extensions are ignored and
+ * the trailer fields after the last chunk are read and kept, so the
+ * connection is positioned at the next request once the body has been read.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerChunkedInputStream extends InputStream {
+
+    /**
+     * Stores the maximum number of hex digits in a chunk size.
+     */
+    private static final int MAX_CHUNK_SIZE_DIGITS = 15;
+
+    /**
+     * Stores the finished flag.
+     */
+    private boolean finished;
+
+    /**
+     * Stores the connection input stream.
+     */
+    private final InputStream inputStream;
+
+    /**
+     * Stores the maximum size of a chunk size line and of the trailer fields.
+     */
+    private final int maxLineSize;
+
+    /**
+     * Stores the number of bytes remaining in the current chunk.
+     */
+    private long remaining;
+
+    /**
+     * Stores the started flag.
+     */
+    private boolean started;
+
+    /**
+     * Stores the trailer fields.
+     */
+    private Map<String, String> trailerFields;
+
+    /**
+     * Constructor.
+     *
+     * @param inputStream the connection input stream.
+     * @param maxLineSize the maximum size of a chunk size line and of the
+     * trailer fields.
+     */
+    DefaultHttpServerChunkedInputStream(InputStream inputStream, int maxLineSize) {
+        this.inputStream = inputStream;
+        this.maxLineSize = maxLineSize;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (finished || remaining == 0) {
+            return 0;
+        }
+        return (int) Math.min(inputStream.available(), remaining);
+    }
+
+    /**
+     * Skip whatever the application did not read of the request body.
+     *
+     * @param limit the maximum number of bytes we are willing to skip.
+     * @return true if the body was fully consumed, false otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    boolean drain(long limit) throws IOException {
+        byte[] skipBuffer = new byte[2048];
+        long drained = 0;
+        int read = read(skipBuffer, 0, skipBuffer.length);
+        while (read != -1) {
+            drained += read;
+            if (drained > limit) {
+                return false;
+            }
+            read = read(skipBuffer, 0, skipBuffer.length);
+        }
+        return true;
+    }
+
+    /**
+     * {@return the trailer fields, or null if the body has not been read}
+     */
+    Map<String, String> getTrailerFields() {
+        return trailerFields;
+    }
+
+    /**
+     * Make sure we are positioned inside a chunk.
+     *
+     * @return true if there are chunk bytes to read, false at the end of the
+     * body.
+     * @throws IOException when an I/O error occurs.
+     */
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (remaining > 0) {
+            return true;
+        }
+        if (started) {
+            readLineEnd(readByte());
+        }
+        started = true;
+        remaining = readChunkSize();
+        if (remaining == 0) {
+            readTrailers();
+            finished = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = readByte();
+        remaining--;
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = inputStream.read(bytes, offset, (int) Math.min(length, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of chunked request body");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    /**
+     * Read a byte of the chunk framing.
+     *
+     * @return the byte.
+     * @throws IOException when an I/O error occurs or the stream ended.
+     */
+    private int readByte() throws IOException {
+        int read = inputStream.read();
+        if (read == -1) {
+            throw new EOFException("Unexpected end of chunked request body");
+        }
+        return read;
+    }
+
+    /**
+     * Read the chunk size line.
+     *
+     * @return the chunk size.
+     * @throws IOException when an I/O error occurs or the line is invalid.
+     */
+    private long readChunkSize() throws IOException {
+        long size = 0;
+        int digits = 0;
+        int read = readByte();
+        int digit = Character.digit(read, 16);
+        while (digit != -1) {
+            if (++digits > MAX_CHUNK_SIZE_DIGITS) {
+                throw new IOException("Chunk size too large");
+            }
+            size = size << 4 | digit;
+            read = readByte();
+            digit = Character.digit(read, 16);
+        }
+        if (digits == 0) {
+            throw new IOException("Invalid chunk size");
+        }
+        int lineSize = digits;
+        while (read != '\r' && read != '\n') {
+            if (++lineSize > maxLineSize) {
+                throw new IOException("Chunk extensions too large");
+            }
+            read = readByte();
+        }
+        readLineEnd(read);
+        return size;
+    }
+
+    /**
+     * Read the end of a line.
+     *
+     * @param read the byte that was read last.
+     * @throws IOException when an I/O error occurs or this is not a line end.
+     */
+    private void readLineEnd(int read) throws IOException {
+        if (read == '\r') {
+            read = readByte();
+        }
+        if (read != '\n') {
+            throw new IOException("Invalid chunk framing");
+        }
+    }
+
+    /**
+     * Read the trailer fields, which end with an empty line.
+     *
+     * <p>
+     * A line without a colon is ignored, and the values of a field that is
+     * sent more than once are joined with a comma.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs or they are too large.
+     */
+    private void readTrailers() throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        StringBuilder line = new StringBuilder();
+        int size = 0;
+        int read = readByte();
+        while (read != '\n' || !line.isEmpty()) {
+            if (read == '\n') {
+                addTrailer(fields, line);
+                line.setLength(0);
+            } else if (read != '\r') {
+                line.append((char) read);
+            }
+            if (++size > maxLineSize) {
+                throw new IOException("Trailer fields too large");
+            }
+            read = readByte();
+        }
+        trailerFields = fields.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Add a trailer field line to the trailer fields.
+     *
+     * @param fields the trailer fields.
+     * @param line the trailer field line.
+     */
+    private static void addTrailer(Map<String, String> fields, CharSequence line) {
+        String field = line.toString();
+        int colon = field.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String name = field.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        String value = field.substring(colon + 1).trim();
+        fields.merge(name, value, (first, second) -> first + "," + second);
+    }
+
+    /**
+     * The connection is owned by the server, so closing the request body
+     * does not close the underlying stream.
+     */
+    @Override
+    public void close() {
+        // nothing to do here.
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The header encoder used by the default implementation of HTTP server.
+ *
+ * <p>
+ * The status line and headers of a response are encoded into a single byte
+ * array, so the whole response head can go out in one write. Common status
+ * lines and header names are encoded once up front.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerHeaderEncoder {
+
+    /**
+     * Stores the CRLF.
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * Stores the pre-encoded header names (including the colon and space).
+     */
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    /**
+     * Stores the pre-encoded status lines, indexed by status code.
+     */
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    static {
+        for (String name : new String[]{
+            "Cache-Control", "Connection", "Content-Encoding", "Content-Language",
+            "Content-Length", "Content-Type", "Date", "ETag", "Expires", "Keep-Alive",
+            "Last-Modified", "Location", "Retry-After", "Server", "Set-Cookie",
+            "Transfer-Encoding", "Vary"}) {
+            HEADER_NAMES.put(name, (name + ": ").getBytes(US_ASCII));
+        }
+        Object[] reasons = {
+            100, "Continue", 101, "Switching Protocols",
+            200, "OK", 201, "Created", 202, "Accepted", 204, "No Content", 206, "Partial Content",
+            301, "Moved Permanently", 302, "Found", 303, "See Other", 304, "Not Modified",
+            307, "Temporary Redirect", 308, "Permanent Redirect",
+            400, "Bad Request", 401, "Unauthorized", 403, "Forbidden", 404, "Not Found",
+            405, "Method Not Allowed", 406, "Not Acceptable", 408, "Request Timeout",
+            409, "Conflict", 410, "Gone", 411, "Length Required", 412, "Precondition Failed",
+            413, "Payload Too Large", 415, "Unsupported Media Type", 416, "Range Not Satisfiable",
+            417, "Expectation Failed", 429, "Too Many Requests", 431, "Request Header Fields Too Large",
+            500, "Internal Server Error", 501, "Not Implemented", 502, "Bad Gateway",
+            503, "Service Unavailable", 504, "Gateway Timeout", 505, "HTTP Version Not Supported"
+        };
+        for (int i = 0; i < reasons.length; i += 2) {
+            STATUS_LINES[(Integer) reasons[i]] = ("HTTP/1.1 " + reasons[i] + " " + reasons[i + 1] + "\r\n").getBytes(US_ASCII);
+        }
+    }
+
+    /**
+     * Stores the buffer.
+     */
+    private byte[] buffer = new byte[1024];
+
+    /**
+     * Stores the number of bytes in the buffer.
+     */
+    private int length;
+
+    /**
+     * Append bytes.
+     *
+     * @param bytes the bytes.
+     * @param offset the offset.
+     * @param count the number of bytes.
+     */
+    void append(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * Append a string.
+     *
+     * <p>
+     * ASCII is copied as is, anything else is encoded as UTF-8.
+     * </p>
+     *
+     * @param string the string.
+     */
+    void append(String string) {
+        int count = string.length();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                length -= i;
+                byte[] bytes = string.getBytes(UTF_8);
+                append(bytes, 0, bytes.length);
+                return;
+            }
+            buffer[length++] = (byte) c;
+        }
+    }
+
+    /**
+     * {@return the buffer}
+     */
+    byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Make sure there is room for the given number of bytes.
+     *
+     * @param count the number of bytes.
+     */
+    private void ensureCapacity(int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+
+    /**
+     * Encode the end of the headers.
+     */
+    void endHeaders() {
+        append(CRLF, 0, CRLF.length);
+    }
+
+    /**
+     * Encode a header.
+     *
+     * @param name the name.
+     * @param values the values, joined by a comma.
+     */
+    void header(String name, Iterable<String> values) {
+        byte[] encodedName = HEADER_NAMES.get(name);
+        if (encodedName != null) {
+            append(encodedName, 0, encodedName.length);
+        } else {
+            append(name);
+            append(": ");
+        }
+        boolean first = true;
+        for (String value : values) {
+            if (value != null) {
+                if (!first) {
+                    append(",");
+                }
+                append(value);
+                first = false;
+            }
+        }
+        append(CRLF, 0, CRLF.length);
+    }
+
+    /**
+     * {@return the number of bytes in the buffer}
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Reset the encoder so it can be used for the next response.
+     */
+    void reset() {
+        length = 0;
+    }
+
+    /**
+     * Encode the status line.
+     *
+     * @param status the status code.
+     * @param reason the reason phrase, or null for the standard one.
+     */
+    void statusLine(int status, String reason) {
+        if (reason == null && status >= 0 && status < STATUS_LINES.length && STATUS_LINES[status] != null) {
+            append(STATUS_LINES[status], 0, STATUS_LINES[status].length);
+        } else {
+            append("HTTP/1.1 ");
+            append(Integer.toString(status));
+            append(" ");
+            if (reason != null) {
+                append(reason);
+            }
+            append(CRLF, 0, CRLF.length);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The connection input buffer used by the default implementation of HTTP
+ * server.
+ *
+ * <p>
+ * One buffer is used for all the requests on a connection. The request head
+ * is parsed in place, and the bytes of the head are kept at the start of the
+ * buffer for as long as the request is active so header names and values can
+ * be decoded lazily. Reading the body only refills the part of the buffer
+ * after the head.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerInputBuffer extends InputStream {
+
+    /**
+     * Stores the default buffer size.
+     */
+    static final int DEFAULT_SIZE = 8192;
+
+    /**
+     * Stores the buffer.
+     */
+    private byte[] buffer;
+
+    /**
+     * Stores the underlying input stream.
+     */
+    private final InputStream inputStream;
+
+    /**
+     * Stores the end of the valid bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Stores the end of the retained request head.
+     */
+    private int mark;
+
+    /**
+     * Stores the read position.
+     */
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * @param inputStream the underlying input stream.
+     */
+    DefaultHttpServerInputBuffer(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[DEFAULT_SIZE];
+    }
+
+    /**
+     * {@return the buffer}
+     */
+    byte[] array() {
+        return buffer;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + inputStream.available();
+    }
+
+    /**
+     * Read more bytes for the request head.
+     *
+     * <p>
+     * The buffer grows when it is full, but never beyond the given maximum.
+     * </p>
+     *
+     * @param maximum the maximum buffer size.
+     * @return the number of bytes read, 0 if the buffer is at its maximum
+     * size, or -1 at the end of the stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    int fillHead(int maximum) throws IOException {
+        if (limit == buffer.length) {
+            if (buffer.length >= maximum) {
+                return 0;
+            }
+            byte[] larger = new byte[Math.min(buffer.length * 2, maximum)];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read > 0) {
+            limit += read;
+        }
+        return read;
+    }
+
+    /**
+     * {@return the end of the valid bytes in the buffer}
+     */
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Mark the end of the request head.
+     *
+     * <p>
+     * The bytes before this point are retained until the next request.
+     * </p>
+     *
+     * @param headEnd the end of the request head.
+     */
+    void markHead(int headEnd) {
+        position = headEnd;
+        mark = headEnd;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && refill() <= 0) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int buffered = limit - position;
+        if (buffered == 0) {
+            if (length >= buffer.length - mark) {
+                return inputStream.read(bytes, offset, length);
+            }
+            if (refill() <= 0) {
+                return -1;
+            }
+            buffered = limit - position;
+        }
+        int count = Math.min(buffered, length);
+        System.arraycopy(buffer, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Start the next request.
+     *
+     * <p>
+     * Releases the head of the previous request and moves any bytes already
+     * read (e.g. a pipelined request) to the start of the buffer.
+     * </p>
+     */
+    void recycle() {
+        int remaining = limit - position;
+        if (remaining > 0 && position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        mark = 0;
+    }
+
+    /**
+     * Wait for the first byte of the next request.
+     *
+     * @return true if there are bytes of the next request, false at the end
+     * of the stream.
+     * @throws IOException when an I/O error occurs, e.g. the read timed out.
+     */
+    boolean awaitRequest() throws IOException {
+        recycle();
+        return limit > 0 || fillHead(buffer.length) > 0;
+    }
+
+    /**
+     * Refill the part of the buffer after the request head.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    private int refill() throws IOException {
+        position = mark;
+        limit = mark;
+        if (mark == buffer.length) {
+            int read = inputStream.read();
+            if (read == -1) {
+                return -1;
+            }
+            byte[] larger = new byte[buffer.length + DEFAULT_SIZE];
+            System.arraycopy(buffer, 0, larger, 0, mark);
+            buffer = larger;
+            buffer[limit++] = (byte) read;
+            return 1;
+        }
+        int read = inputStream.read(buffer, mark, buffer.length - mark);
+        if (read > 0) {
+            limit += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        if (count <= 0) {
+            return 0;
+        }
+        int buffered = limit - position;
+        if (buffered > 0) {
+            int skipped = (int) Math.min(buffered, count);
+            position += skipped;
+            return skipped;
+        }
+        return inputStream.skip(count);
+    }
+
+    /**
+     * The connection is owned by the server, so closing the buffer does not
+     * close the underlying stream.
+     */
+    @Override
+    public void close() {
+        // nothing to do here.
+    }
+}
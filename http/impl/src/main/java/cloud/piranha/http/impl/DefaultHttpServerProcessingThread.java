@@ -29,18 +29,31 @@ package cloud.piranha.http.impl;
 
 import cloud.piranha.http.api.HttpServerProcessorEndState;
 import static cloud.piranha.http.api.HttpServerProcessorEndState.COMPLETED;
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import java.lang.System.Logger;
 
 /**
  * A processing thread used by the default implementation of HTTP server.
  *
  * <p>
- * This thread is used to process a HTTP Server Request and generate a HTTP
- * Server Response. It does so by giving it to a HTTP Server Processor.
+ * This thread is used to process the HTTP Server Requests coming in on a
+ * connection and generate the HTTP Server Responses. It does so by giving each
+ * of them to a HTTP Server Processor.
+ * </p>
+ *
+ * <p>
+ * As long as both the client and the response allow it the connection is kept
+ * alive and the next request (which may already have been pipelined by the
+ * client) is processed on the same connection, until either the keep alive
+ * timeout or the maximum number of requests per connection is reached. When
+ * connections are waiting for a worker thread the connection is closed after
+ * the current request, so the worker can move on to them.
  * </p>
  *
  * @author Manfred Riem (mriem@manorrock.com)
@@ -53,6 +66,12 @@ class DefaultHttpServerProcessingThread implements Runnable {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServerProcessingThread.class.getPackageName());
 
+    /**
+     * Stores the maximum number of unread request body bytes we skip to keep
+     * a connection alive.
+     */
+    private static final long MAX_SWALLOW_SIZE = 2 * 1024 * 1024L;
+
     /**
      * Stores the server.
      */
@@ -82,26 +101,71 @@ class DefaultHttpServerProcessingThread implements Runnable {
         HttpServerProcessorEndState state = COMPLETED;
         DefaultHttpServerResponse response = null;
         try {
-            DefaultHttpServerRequest request = new DefaultHttpServerRequest(socket);
-            response = new DefaultHttpServerResponse(socket);
-            state = server.processor.process(request, response);
+            socket.setTcpNoDelay(true);
+            DefaultHttpServerInputBuffer inputBuffer
+                    = new DefaultHttpServerInputBuffer(socket.getInputStream());
+            DefaultHttpServerHeaderEncoder headerEncoder = new DefaultHttpServerHeaderEncoder();
+            if (server.keepAliveTimeout > 0) {
+                socket.setSoTimeout(server.keepAliveTimeout);
+            }
+            int requestCount = 0;
+            while (!server.serverStopRequest) {
+                server.idleConnections.add(socket);
+                DefaultHttpServerRequest request;
+                try {
+                    if (requestCount > 0 && inputBuffer.available() == 0 && !awaitKeepAliveRequest(inputBuffer)) {
+                        break;
+                    }
+                    request = new DefaultHttpServerRequest(socket, inputBuffer,
+                            server.maxHeaderSize, server.maxHeaderCount);
+                } finally {
+                    server.idleConnections.remove(socket);
+                }
+                if (request.getParseError() != 0) {
+                    sendError(request.getParseError());
+                    break;
+                }
+                if (!request.isValid()) {
+                    break;
+                }
+                requestCount++;
+                response = new DefaultHttpServerResponse(socket, headerEncoder);
+                request.setResponse(response);
+                response.setKeepAlive(request.isKeepAlive()
+                        && requestCount < server.maxKeepAliveRequests
+                        && !server.serverStopRequest
+                        && server.getWorkerQueueDepth() == 0);
+                state = server.processor.process(request, response);
+                if (state != COMPLETED) {
+                    response.disableKeepAlive();
+                    break;
+                }
+                if (!response.isKeepAlive() || !request.finish(MAX_SWALLOW_SIZE)) {
+                    response.disableKeepAlive();
+                    break;
+                }
+                response.closeResponse();
+                response = null;
+            }
+        } catch (IOException exception) {
+            LOGGER.log(WARNING, "An I/O error occurred during processing of the request", exception);
         } finally {
             if (state == COMPLETED) {
                 try {
-                    socket.shutdownInput();
+                    if (response != null && !socket.isClosed()) {
+                        socket.shutdownInput();
 
-                    // Give the client a chance to start reading the stream.
-                    // If we disconnect right away the client may get an
-                    // Unexpected Exception: java.net.SocketException: Connection reset
-                    //
-                    // If we don't disconnect the client may hang.
-                    try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
+                        // Give the client a chance to start reading the stream.
+                        // If we disconnect right away the client may get an
+                        // Unexpected Exception: java.net.SocketException: Connection reset
+                        //
+                        // If we don't disconnect the client may hang.
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
 
-                    if (response != null) {
                         response.closeResponse();
                     } else {
                         socket.close();
@@ -112,4 +176,51 @@ class DefaultHttpServerProcessingThread implements Runnable {
             }
         }
     }
+
+    /**
+     * Wait for the next request on an idle persistent connection.
+     *
+     * <p>
+     * While it waits the server may close the connection to free up this
+     * worker thread. The connection stops being idle as soon as the first
+     * byte of the next request arrives, so a request that is being received
+     * is never dropped.
+     * </p>
+     *
+     * @param inputBuffer the connection input buffer.
+     * @return true if the next request arrived, false if the connection was
+     * closed or timed out.
+     */
+    private boolean awaitKeepAliveRequest(DefaultHttpServerInputBuffer inputBuffer) {
+        server.keepAliveConnections.add(socket);
+        boolean arrived;
+        try {
+            arrived = inputBuffer.awaitRequest();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "Connection was closed while waiting for the next request");
+            arrived = false;
+        }
+        return server.keepAliveConnections.remove(socket) && arrived;
+    }
+
+    /**
+     * Send an error for a request that could not be parsed.
+     *
+     * @param status the status code.
+     */
+    private void sendError(int status) {
+        String reason = switch (status) {
+            case 431 -> "Request Header Fields Too Large";
+            default -> "Bad Request";
+        };
+        try {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("HTTP/1.1 " + status + " " + reason + "\r\n"
+                    + "Content-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(US_ASCII));
+            outputStream.flush();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "Unable to send the error response", exception);
+        }
+    }
 }
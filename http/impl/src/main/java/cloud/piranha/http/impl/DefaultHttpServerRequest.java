@@ -28,23 +28,32 @@
 package cloud.piranha.http.impl;
 
 import cloud.piranha.http.api.HttpServerRequest;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import java.lang.System.Logger;
 
 /**
  * The default implementation of HTTP Server Request.
  *
+ * <p>
+ * The request head is parsed in place in the connection input buffer. Header
+ * names and values are kept as offsets into that buffer and are only turned
+ * into strings when they are asked for.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultHttpServerRequest implements HttpServerRequest {
@@ -56,24 +65,94 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
             DefaultHttpServerRequest.class.getPackageName());
 
     /**
-     * Stores the headers.
+     * Stores the default maximum number of headers.
+     */
+    static final int DEFAULT_MAX_HEADER_COUNT = 100;
+
+    /**
+     * Stores the default maximum size of the request head.
+     */
+    static final int DEFAULT_MAX_HEADER_SIZE = 16384;
+
+    /**
+     * Stores the well-known methods so they do not need to be allocated.
+     */
+    private static final String[] METHODS = {
+        "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT"
+    };
+
+    /**
+     * Stores the bytes the head was parsed from.
+     */
+    private byte[] bytes;
+
+    /**
+     * Stores the connection input buffer.
+     */
+    private final DefaultHttpServerInputBuffer connectionInputBuffer;
+
+    /**
+     * Stores the expect continue flag, true while the client waits for a 100
+     * Continue before it sends the body.
+     */
+    private boolean expectContinue;
+
+    /**
+     * Stores the number of headers.
+     */
+    private int headerCount;
+
+    /**
+     * Stores the header names (decoded lazily).
+     */
+    private String[] headerNames;
+
+    /**
+     * Stores the distinct header names.
+     */
+    private List<String> headerNameList;
+
+    /**
+     * Stores the header offsets (name start, name end, value start, value end
+     * per header).
+     */
+    private int[] headerOffsets;
+
+    /**
+     * Stores the header values (decoded lazily).
      */
-    private final Map<String, List<String>> headers;
+    private String[] headerValues;
 
     /**
      * Stores the input stream.
      */
     private InputStream inputStream;
 
+    /**
+     * Stores the maximum size of the request head, which also bounds the
+     * trailer fields of a chunked body.
+     */
+    private final int maxHeaderSize;
+
+    /**
+     * Stores the content length (-1 if none).
+     */
+    private long contentLength;
+
     /**
      * Stores the method.
      */
     private String method;
 
     /**
-     * Stores the query parameters.
+     * Stores the parse error status (0 if none).
+     */
+    private int parseError;
+
+    /**
+     * Stores the protocol
      */
-    private Map<String, List<String>> queryParameters;
+    private String protocol;
 
     /**
      * Stores the query string.
@@ -85,26 +164,59 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
      */
     private String requestTarget;
 
+    /**
+     * Stores the response, used to send the 100 Continue.
+     */
+    private DefaultHttpServerResponse response;
+
     /**
      * Stores the socket.
      */
     private final Socket socket;
 
     /**
-     * Stores the protocol
+     * Constructor.
+     *
+     * @param socket the socket.
      */
-    private String protocol;
+    public DefaultHttpServerRequest(Socket socket) {
+        this(socket, getSocketInputStream(socket));
+    }
 
     /**
      * Constructor.
      *
      * @param socket the socket.
+     * @param inputStream the input stream to read the request from.
      */
-    public DefaultHttpServerRequest(Socket socket) {
-        this.headers = new HashMap<>(1);
+    public DefaultHttpServerRequest(Socket socket, InputStream inputStream) {
+        this(socket, new DefaultHttpServerInputBuffer(inputStream),
+                DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_HEADER_COUNT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The connection input buffer is shared by all the requests on a
+     * persistent connection. The request only consumes its own request line,
+     * headers and body from it.
+     * </p>
+     *
+     * @param socket the socket.
+     * @param connectionInputBuffer the connection input buffer.
+     * @param maxHeaderSize the maximum size of the request head.
+     * @param maxHeaderCount the maximum number of headers.
+     */
+    DefaultHttpServerRequest(Socket socket, DefaultHttpServerInputBuffer connectionInputBuffer,
+            int maxHeaderSize, int maxHeaderCount) {
         this.socket = socket;
+        this.connectionInputBuffer = connectionInputBuffer;
+        this.contentLength = -1;
+        this.headerOffsets = new int[64];
+        this.maxHeaderSize = maxHeaderSize;
         protocol = "HTTP/1.1";
-        parse();
+        parse(maxHeaderSize, maxHeaderCount);
     }
 
     /**
@@ -114,50 +226,197 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
      * @param value the value.
      */
     public void addHeader(String name, String value) {
-        if (!headers.containsKey(name)) {
-            ArrayList<String> values = new ArrayList<>();
-            values.add(value);
-            headers.put(name, values);
-        } else {
-            headers.get(name).add(value);
+        ensureHeaderCapacity();
+        if (headerNames == null) {
+            headerNames = new String[headerOffsets.length / 4];
+            headerValues = new String[headerOffsets.length / 4];
         }
+        headerNames[headerCount] = name;
+        headerValues[headerCount] = value;
+        headerCount++;
+        headerNameList = null;
+    }
+
+    /**
+     * Make sure there is room for one more header.
+     */
+    private void ensureHeaderCapacity() {
+        if ((headerCount + 1) * 4 > headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+            if (headerNames != null) {
+                headerNames = Arrays.copyOf(headerNames, headerOffsets.length / 4);
+                headerValues = Arrays.copyOf(headerValues, headerOffsets.length / 4);
+            }
+        }
+    }
+
+    /**
+     * Find the next header with the given name.
+     *
+     * @param name the name (matched case-insensitively).
+     * @param from the header index to start at.
+     * @return the header index, or -1 if not found.
+     */
+    private int findHeader(String name, int from) {
+        for (int i = from; i < headerCount; i++) {
+            if (headerNames != null && headerNames[i] != null) {
+                if (headerNames[i].equalsIgnoreCase(name)) {
+                    return i;
+                }
+            } else if (regionEqualsIgnoreCase(headerOffsets[i * 4], headerOffsets[i * 4 + 1], name)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
     public String getHeader(String name) {
-        String header = null;
-        if (headers.get(name) != null) {
-            header = headers.get(name).isEmpty() ? null : headers.get(name).get(0);
+        int index = findHeader(name, 0);
+        return index == -1 ? null : getHeaderValue(index);
+    }
+
+    /**
+     * Get the header name.
+     *
+     * @param index the header index.
+     * @return the name.
+     */
+    private String getHeaderName(int index) {
+        if (headerNames == null) {
+            headerNames = new String[headerOffsets.length / 4];
+            headerValues = new String[headerOffsets.length / 4];
+        }
+        if (headerNames[index] == null) {
+            int start = headerOffsets[index * 4];
+            headerNames[index] = new String(bytes, start, headerOffsets[index * 4 + 1] - start, ISO_8859_1);
         }
-        return header;
+        return headerNames[index];
     }
 
     @Override
     public Iterator<String> getHeaderNames() {
-        return headers.keySet().iterator();
+        if (headerNameList == null) {
+            List<String> names = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                String name = getHeaderName(i);
+                if (findHeader(name, 0) == i) {
+                    names.add(name);
+                }
+            }
+            headerNameList = names;
+        }
+        return headerNameList.iterator();
+    }
+
+    /**
+     * Get the header value.
+     *
+     * @param index the header index.
+     * @return the value.
+     */
+    private String getHeaderValue(int index) {
+        if (headerValues == null) {
+            headerNames = new String[headerOffsets.length / 4];
+            headerValues = new String[headerOffsets.length / 4];
+        }
+        if (headerValues[index] == null) {
+            int start = headerOffsets[index * 4 + 2];
+            headerValues[index] = new String(bytes, start, headerOffsets[index * 4 + 3] - start, ISO_8859_1);
+        }
+        return headerValues[index];
     }
 
     @Override
     public Iterator<String> getHeaders(String name) {
-        return headers.get(name) == null
-                ? Collections.EMPTY_LIST.iterator()
-                : headers.get(name).iterator();
+        int index = findHeader(name, 0);
+        if (index == -1) {
+            return Collections.emptyIterator();
+        }
+        List<String> values = new ArrayList<>(1);
+        while (index != -1) {
+            values.add(getHeaderValue(index));
+            index = findHeader(name, index + 1);
+        }
+        return values.iterator();
     }
 
+    /**
+     * Get the input stream.
+     *
+     * <p>
+     * A chunked body is decoded. If the client sent
+     * <code>Expect: 100-continue</code> the 100 Continue is only sent when the
+     * body is first read, so a request that is rejected without reading its
+     * body is never transmitted.
+     * </p>
+     *
+     * @return the input stream.
+     */
     @Override
     public InputStream getInputStream() {
-        InputStream result = inputStream;
-
         if (inputStream == null) {
-            try {
-                inputStream = socket.getInputStream();
-                result = inputStream;
-            } catch (IOException exception) {
-                LOGGER.log(WARNING, "An I/O error occurred while acquiring input stream", exception);
+            InputStream body = connectionInputBuffer;
+            if (expectContinue) {
+                body = new FilterInputStream(connectionInputBuffer) {
+                    @Override
+                    public int read() throws IOException {
+                        sendContinue();
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] bytes, int offset, int length) throws IOException {
+                        sendContinue();
+                        return in.read(bytes, offset, length);
+                    }
+
+                    @Override
+                    public long skip(long count) throws IOException {
+                        sendContinue();
+                        return in.skip(count);
+                    }
+                };
+            }
+            String transferEncoding = getHeader("Transfer-Encoding");
+            if (transferEncoding == null) {
+                inputStream = new DefaultHttpServerRequestInputStream(body, getContentLength());
+            } else if (transferEncoding.trim().toLowerCase().endsWith("chunked")) {
+                inputStream = new DefaultHttpServerChunkedInputStream(body, maxHeaderSize);
+            } else {
+                inputStream = body;
             }
         }
+        return inputStream;
+    }
 
-        return result;
+    /**
+     * Get the content length.
+     *
+     * <p>
+     * A request without a Content-Length (and without a Transfer-Encoding)
+     * header does not have a body, see RFC 7230 section 3.3.3.
+     * </p>
+     *
+     * @return the content length, or 0 if not set.
+     */
+    private long getContentLength() {
+        return Math.max(contentLength, 0);
+    }
+
+    /**
+     * Get the socket input stream.
+     *
+     * @param socket the socket.
+     * @return the socket input stream, or an empty stream.
+     */
+    private static InputStream getSocketInputStream(Socket socket) {
+        try {
+            return socket.getInputStream();
+        } catch (IOException exception) {
+            LOGGER.log(WARNING, "An I/O error occurred while acquiring input stream", exception);
+            return InputStream.nullInputStream();
+        }
     }
 
     @Override
@@ -180,32 +439,102 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
         return method;
     }
 
+    /**
+     * {@return the parse error status, or 0 if the request was parsed}
+     */
+    int getParseError() {
+        return parseError;
+    }
+
+    /**
+     * Get the first value of the given query parameter.
+     *
+     * <p>
+     * The query string is scanned in a single pass and only the names that
+     * contain an escape and the value found are decoded, nothing is kept.
+     * </p>
+     *
+     * @param name the name.
+     * @return the value, an empty string for a parameter without a value, or
+     * null if not there.
+     */
     @Override
     public String getQueryParameter(String name) {
-        String result = null;
-        synchronized (this) {
-            if (queryParameters == null && queryString != null) {
-                queryParameters = new HashMap<>();
-                String[] params = queryString.split("&");
-                for (String param : params) {
-                    String parameterName = URLDecoder.decode(param.split("=")[0], StandardCharsets.UTF_8);
-                    String parameterValue = URLDecoder.decode(param.split("=")[1], StandardCharsets.UTF_8);
-                    if (queryParameters.containsKey(parameterName)) {
-                        List<String> values = queryParameters.get(parameterName);
-                        values.add(parameterValue);
-                    } else {
-                        List<String> values = new ArrayList<>();
-                        values.add(parameterValue);
-                        queryParameters.put(parameterName, values);
-                    }
-                }
+        if (queryString == null) {
+            return null;
+        }
+        int length = queryString.length();
+        int start = 0;
+        while (start < length) {
+            int end = queryString.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            int equals = queryString.indexOf('=', start);
+            if (equals == -1 || equals > end) {
+                equals = end;
             }
+            if (equals > start && nameMatches(name, start, equals)) {
+                return equals < end ? decode(queryString, equals + 1, end) : "";
+            }
+            start = end + 1;
         }
-        if (queryParameters != null) {
-            result = queryParameters.get(name) != null
-                    ? queryParameters.get(name).get(0) : null;
+        return null;
+    }
+
+    /**
+     * Does the encoded name in the given range of the query string match.
+     *
+     * @param name the name.
+     * @param start the start of the encoded name.
+     * @param end the end of the encoded name.
+     * @return true if it does, false otherwise.
+     */
+    private boolean nameMatches(String name, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = queryString.charAt(i);
+            if (c == '%' || c == '+') {
+                return decode(queryString, start, end).equals(name);
+            }
         }
-        return result;
+        return end - start == name.length() && queryString.regionMatches(start, name, 0, end - start);
+    }
+
+    /**
+     * Decode a range of a URL encoded string.
+     *
+     * <p>
+     * The string holds the raw bytes as ISO-8859-1 characters, the decoded
+     * bytes are UTF-8. A '+' is a space and an invalid escape is kept as is.
+     * </p>
+     *
+     * @param string the string.
+     * @param start the start.
+     * @param end the end.
+     * @return the decoded string.
+     */
+    private static String decode(String string, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        int index = start;
+        while (index < end) {
+            char c = string.charAt(index);
+            int high;
+            int low;
+            if (c == '+') {
+                bytes[length++] = ' ';
+                index++;
+            } else if (c == '%' && index + 2 < end
+                    && (high = Character.digit(string.charAt(index + 1), 16)) != -1
+                    && (low = Character.digit(string.charAt(index + 2), 16)) != -1) {
+                bytes[length++] = (byte) (high << 4 | low);
+                index += 3;
+            } else {
+                bytes[length++] = (byte) c;
+                index++;
+            }
+        }
+        return new String(bytes, 0, length, UTF_8);
     }
 
     @Override
@@ -233,6 +562,117 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
         return requestTarget;
     }
 
+    @Override
+    public Map<String, String> getTrailerFields() {
+        if (!(getInputStream() instanceof DefaultHttpServerChunkedInputStream chunkedInputStream)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> trailerFields = chunkedInputStream.getTrailerFields();
+        if (trailerFields == null) {
+            throw new IllegalStateException("Trailer fields are not ready");
+        }
+        return trailerFields;
+    }
+
+    @Override
+    public boolean isTrailerFieldsReady() {
+        return !(getInputStream() instanceof DefaultHttpServerChunkedInputStream chunkedInputStream)
+                || chunkedInputStream.getTrailerFields() != null;
+    }
+
+    /**
+     * Is this a request that was actually received.
+     *
+     * @return true if the request line was parsed, false if the connection
+     * was closed (or timed out) before a request came in, or the request was
+     * malformed.
+     */
+    boolean isValid() {
+        return parseError == 0 && method != null && requestTarget != null;
+    }
+
+    /**
+     * Does the client want to keep the connection open after this request.
+     *
+     * <p>
+     * HTTP/1.1 connections are persistent unless the client sends
+     * 'Connection: close', HTTP/1.0 connections are only persistent when the
+     * client sends 'Connection: keep-alive'.
+     * </p>
+     *
+     * @return true if it does, false otherwise.
+     */
+    boolean isKeepAlive() {
+        boolean keepAlive = "HTTP/1.1".equals(protocol);
+        String connection = getHeader("Connection");
+        if (connection != null) {
+            for (String token : connection.split(",")) {
+                token = token.trim();
+                if ("close".equalsIgnoreCase(token)) {
+                    return false;
+                }
+                if ("keep-alive".equalsIgnoreCase(token)) {
+                    keepAlive = true;
+                }
+            }
+        }
+        return keepAlive;
+    }
+
+    /**
+     * Finish the request.
+     *
+     * <p>
+     * Skips the part of the request body the application did not read so the
+     * next request on the connection can be parsed.
+     * </p>
+     *
+     * @param limit the maximum number of unread body bytes to skip.
+     * @return true if the connection is positioned at the next request, false
+     * otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    boolean finish(long limit) throws IOException {
+        getInputStream();
+        if (expectContinue) {
+            // The client may or may not send the body it was never asked for.
+            return false;
+        }
+        if (inputStream instanceof DefaultHttpServerRequestInputStream bodyInputStream) {
+            return bodyInputStream.drain(limit);
+        }
+        if (inputStream instanceof DefaultHttpServerChunkedInputStream chunkedInputStream) {
+            return chunkedInputStream.drain(limit);
+        }
+        return false;
+    }
+
+    /**
+     * Send the 100 Continue the client is waiting for, if any.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void sendContinue() throws IOException {
+        if (expectContinue) {
+            expectContinue = false;
+            response.writeContinue();
+        }
+    }
+
+    /**
+     * Set the response.
+     *
+     * @param response the response that belongs to this request.
+     */
+    void setResponse(DefaultHttpServerResponse response) {
+        this.response = response;
+        String expect = getHeader("Expect");
+        expectContinue = "HTTP/1.1".equals(protocol) && expect != null
+                && "100-continue".equalsIgnoreCase(expect.trim());
+        response.setExpectContinue(expectContinue);
+        response.setKeepAliveHeader("HTTP/1.0".equals(protocol));
+    }
+
     /**
      * Set the method.
      *
@@ -254,70 +694,272 @@ public class DefaultHttpServerRequest implements HttpServerRequest {
     /**
      * Parse the request.
      *
+     * <p>
+     * Scans the connection input buffer for the line ends of the request line
+     * and the headers, reading more from the socket only when the head is not
+     * complete yet.
+     * </p>
+     *
+     * @param maxHeaderSize the maximum size of the request head.
+     * @param maxHeaderCount the maximum number of headers.
      */
-    private void parse() {
+    private void parse(int maxHeaderSize, int maxHeaderCount) {
+        DefaultHttpServerInputBuffer input = connectionInputBuffer;
+        input.recycle();
         try {
-            InputStream parseStream = socket.getInputStream();
-            StringBuilder line = new StringBuilder();
-            int read = parseStream.read();
+            int lineStart = 0;
+            int scan = 0;
             boolean requestLineParsed = false;
-            if (read != -1) {
-                while (read != -1 && parseStream.available() > 0) {
-                    if ('\r' != (char) read) {
-                        line.append((char) read);
+            while (true) {
+                byte[] buffer = input.array();
+                int limit = input.limit();
+                int lineEnd = -1;
+                for (int i = scan; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        lineEnd = i;
+                        break;
+                    }
+                }
+                if (lineEnd == -1) {
+                    scan = limit;
+                    if (limit >= maxHeaderSize) {
+                        parseError = 431;
+                        return;
                     }
-                    read = parseStream.read();
-                    if ('\n' == (char) read) {
-                        if (line.length() > 0) {
-                            if (!requestLineParsed) {
-                                parseRequestLine(line.toString());
-                                requestLineParsed = true;
-                            } else {
-                                parseHeader(line.toString());
-                            }
-                            line = new StringBuilder();
-                            read = parseStream.read();
-                        } else {
-                            read = -1;
+                    int read = input.fillHead(maxHeaderSize);
+                    if (read == -1) {
+                        if (lineStart != limit || requestLineParsed) {
+                            parseError = 400;
                         }
+                        return;
                     }
+                    continue;
                 }
+                scan = lineEnd + 1;
+                if (scan > maxHeaderSize) {
+                    parseError = 431;
+                    return;
+                }
+                int end = lineEnd > lineStart && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                if (!requestLineParsed) {
+                    if (end > lineStart) {
+                        bytes = buffer;
+                        if (!parseRequestLine(lineStart, end)) {
+                            parseError = 400;
+                            return;
+                        }
+                        requestLineParsed = true;
+                    }
+                } else if (end == lineStart) {
+                    bytes = buffer;
+                    input.markHead(scan);
+                    if (!parseContentLength()) {
+                        parseError = 400;
+                    }
+                    return;
+                } else {
+                    if (headerCount == maxHeaderCount) {
+                        parseError = 431;
+                        return;
+                    }
+                    if (!parseHeader(lineStart, end)) {
+                        parseError = 400;
+                        return;
+                    }
+                }
+                lineStart = scan;
             }
+        } catch (SocketTimeoutException exception) {
+            LOGGER.log(DEBUG, "Timed out while waiting for the request");
         } catch (IOException exception) {
-            LOGGER.log(WARNING, "An I/O error occurred while parsing the request", exception);
+            if (socket.isClosed()) {
+                LOGGER.log(DEBUG, "Connection was closed while waiting for the request");
+            } else {
+                LOGGER.log(WARNING, "An I/O error occurred while parsing the request", exception);
+            }
         }
     }
 
+    /**
+     * Parse the Content-Length headers.
+     *
+     * <p>
+     * Several Content-Length headers, or a comma separated list of values,
+     * are only accepted when all the values are the same, see RFC 7230
+     * section 3.3.2.
+     * </p>
+     *
+     * @return true if there is no Content-Length or it is valid, false if a
+     * value is not a non-negative number or the values differ.
+     */
+    private boolean parseContentLength() {
+        int index = findHeader("Content-Length", 0);
+        while (index != -1) {
+            for (String value : getHeaderValue(index).split(",", -1)) {
+                value = value.trim();
+                if (value.isEmpty() || !value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                    LOGGER.log(DEBUG, "Invalid Content-Length");
+                    return false;
+                }
+                long length;
+                try {
+                    length = Long.parseLong(value);
+                } catch (NumberFormatException nfe) {
+                    LOGGER.log(DEBUG, "Invalid Content-Length");
+                    return false;
+                }
+                if (contentLength != -1 && contentLength != length) {
+                    LOGGER.log(DEBUG, "Conflicting Content-Length values");
+                    return false;
+                }
+                contentLength = length;
+            }
+            index = findHeader("Content-Length", index + 1);
+        }
+        return true;
+    }
+
     /**
      * Parse the header.
      *
-     * @param line the header line.
+     * @param start the start of the header line.
+     * @param end the end of the header line.
+     * @return true if the header line is valid, false otherwise.
      */
-    private void parseHeader(String line) {
-        String name = line.substring(0, line.indexOf(':')).trim();
-        String value = line.substring(line.indexOf(':') + 1).trim();
-        addHeader(name, value);
+    private boolean parseHeader(int start, int end) {
+        byte[] buffer = connectionInputBuffer.array();
+        int colon = start;
+        while (colon < end && buffer[colon] != ':') {
+            colon++;
+        }
+        if (colon == end || colon == start) {
+            return false;
+        }
+        int nameEnd = colon;
+        while (nameEnd > start && buffer[nameEnd - 1] <= ' ') {
+            nameEnd--;
+        }
+        int valueStart = colon + 1;
+        while (valueStart < end && buffer[valueStart] <= ' ') {
+            valueStart++;
+        }
+        int valueEnd = end;
+        while (valueEnd > valueStart && buffer[valueEnd - 1] <= ' ') {
+            valueEnd--;
+        }
+        ensureHeaderCapacity();
+        int offset = headerCount * 4;
+        headerOffsets[offset] = start;
+        headerOffsets[offset + 1] = nameEnd;
+        headerOffsets[offset + 2] = valueStart;
+        headerOffsets[offset + 3] = valueEnd;
+        headerCount++;
+        return true;
     }
 
     /**
      * Parse the request line.
      *
-     * @param line the request line.
+     * @param start the start of the request line.
+     * @param end the end of the request line.
+     * @return true if the request line is valid, false otherwise.
+     */
+    private boolean parseRequestLine(int start, int end) {
+        byte[] buffer = connectionInputBuffer.array();
+        int firstSpace = indexOf(buffer, start, end, (byte) ' ');
+        int secondSpace = firstSpace == -1 ? -1 : indexOf(buffer, firstSpace + 1, end, (byte) ' ');
+        if (firstSpace <= start || secondSpace == -1) {
+            return false;
+        }
+        method = null;
+        for (String knownMethod : METHODS) {
+            if (regionEquals(buffer, start, firstSpace, knownMethod)) {
+                method = knownMethod;
+                break;
+            }
+        }
+        if (method == null) {
+            method = new String(buffer, start, firstSpace - start, ISO_8859_1);
+        }
+        int question = indexOf(buffer, firstSpace + 1, secondSpace, (byte) '?');
+        if (question == -1) {
+            requestTarget = new String(buffer, firstSpace + 1, secondSpace - firstSpace - 1, ISO_8859_1);
+        } else {
+            requestTarget = new String(buffer, firstSpace + 1, question - firstSpace - 1, ISO_8859_1);
+            queryString = new String(buffer, question + 1, secondSpace - question - 1, ISO_8859_1);
+        }
+        if (regionEquals(buffer, secondSpace + 1, end, "HTTP/1.1")) {
+            protocol = "HTTP/1.1";
+        } else if (regionEquals(buffer, secondSpace + 1, end, "HTTP/1.0")) {
+            protocol = "HTTP/1.0";
+        } else {
+            protocol = new String(buffer, secondSpace + 1, end - secondSpace - 1, ISO_8859_1);
+        }
+        return true;
+    }
+
+    /**
+     * Find a byte.
+     *
+     * @param buffer the buffer.
+     * @param start the start.
+     * @param end the end.
+     * @param value the byte to find.
+     * @return the index, or -1 if not found.
      */
-    private void parseRequestLine(String line) {
-        int index = line.indexOf(' ');
-        setMethod(line.substring(0, index));
-        line = line.substring(index + 1);
-        index = line.indexOf(' ');
-        requestTarget = line.substring(0, index);
-        if (requestTarget.contains("?")) {
-            queryString = requestTarget.substring(requestTarget.indexOf("?") + 1);
-            requestTarget = requestTarget.substring(0, requestTarget.indexOf("?"));
+    private static int indexOf(byte[] buffer, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
         }
-        String protocolRequestLine = line.substring(index + 1);
-        if (!protocol.isEmpty()) {
-            protocol = protocolRequestLine;
+        return -1;
+    }
+
+    /**
+     * Compare a region of the buffer with an ASCII string.
+     *
+     * @param buffer the buffer.
+     * @param start the start of the region.
+     * @param end the end of the region.
+     * @param value the string.
+     * @return true if they are equal, false otherwise.
+     */
+    private static boolean regionEquals(byte[] buffer, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare a region of the head with an ASCII string ignoring case.
+     *
+     * @param start the start of the region.
+     * @param end the end of the region.
+     * @param value the string.
+     * @return true if they are equal, false otherwise.
+     */
+    private boolean regionEqualsIgnoreCase(int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            int b = bytes[start + i];
+            int c = value.charAt(i);
+            if (b != c) {
+                int lower = c | 0x20;
+                if (lower < 'a' || lower > 'z' || (b | 0x20) != lower) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
     @Override
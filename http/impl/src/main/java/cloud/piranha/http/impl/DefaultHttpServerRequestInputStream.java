@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The request body input stream used by the default implementation of HTTP
+ * server.
+ *
+ * <p>
+ * This input stream limits reading to the Content-Length of the request so
+ * the bytes of the next (pipelined) request on the same connection are never
+ * handed to the current request.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerRequestInputStream extends InputStream {
+
+    /**
+     * Stores the connection input stream.
+     */
+    private final InputStream inputStream;
+
+    /**
+     * Stores the number of bytes remaining.
+     */
+    private long remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param inputStream the connection input stream.
+     * @param contentLength the content length.
+     */
+    DefaultHttpServerRequestInputStream(InputStream inputStream, long contentLength) {
+        this.inputStream = inputStream;
+        this.remaining = contentLength;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(inputStream.available(), remaining);
+    }
+
+    /**
+     * Skip whatever the application did not read of the request body.
+     *
+     * @param limit the maximum number of bytes we are willing to skip.
+     * @return true if the body was fully consumed, false otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    boolean drain(long limit) throws IOException {
+        if (remaining > limit) {
+            return false;
+        }
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = inputStream.read();
+        if (read != -1) {
+            remaining--;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = inputStream.read(bytes, offset, (int) Math.min(length, remaining));
+        if (read > 0) {
+            remaining -= read;
+        }
+        return read;
+    }
+
+    /**
+     * The connection is owned by the server, so closing the request body
+     * does not close the underlying stream.
+     */
+    @Override
+    public void close() {
+        // nothing to do here.
+    }
+}
@@ -28,11 +28,12 @@
 package cloud.piranha.http.impl;
 
 import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Iterator;
 import java.util.Map;
 import java.lang.System.Logger;
 
@@ -40,6 +41,7 @@ import cloud.piranha.http.api.HttpServerResponse;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The default implementation of HTTP Server Response.
@@ -54,11 +56,72 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
     private static final Logger LOGGER = System.getLogger(
             DefaultHttpServerResponse.class.getPackageName());
 
+    /**
+     * Stores the 100 Continue interim response.
+     */
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(US_ASCII);
+
+    /**
+     * Stores the maximum number of body bytes copied after the response head
+     * to send both in a single write.
+     */
+    private static final int MAX_COALESCE_SIZE = 16384;
+
+    /**
+     * Stores the closed flag.
+     */
+    private boolean closed;
+
+    /**
+     * Stores the committed flag, true once anything was written to the output
+     * stream.
+     */
+    private boolean committed;
+
+    /**
+     * Stores the expect continue flag, true while the client waits for a 100
+     * Continue before it sends the request body.
+     */
+    private boolean expectContinue;
+
+    /**
+     * Stores the header encoder, which holds the response head until it is
+     * written out together with the first body bytes.
+     */
+    private final DefaultHttpServerHeaderEncoder headerEncoder;
+
     /**
      * Stores the headers.
      */
     private final Map<String, List<String>> headers;
 
+    /**
+     * Stores the headers written flag.
+     */
+    private boolean headersWritten;
+
+    /**
+     * Stores the keep alive flag.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Stores the keep alive header flag, true when the client only keeps the
+     * connection alive if the response says so (HTTP/1.0).
+     */
+    private boolean keepAliveHeader;
+
+    /**
+     * Stores the lock guarding the keep alive state.
+     *
+     * <p>
+     * A lock instead of synchronized, as the socket may be closed while it is
+     * held and a virtual thread blocked inside synchronized pins its carrier
+     * thread.
+     * </p>
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Stores the output stream.
      */
@@ -80,25 +143,91 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
      * @param socket the socket.
      */
     public DefaultHttpServerResponse(Socket socket) {
+        this(socket, new DefaultHttpServerHeaderEncoder());
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The header encoder is shared by all the responses on a persistent
+     * connection.
+     * </p>
+     *
+     * @param socket the socket.
+     * @param headerEncoder the header encoder.
+     */
+    DefaultHttpServerResponse(Socket socket, DefaultHttpServerHeaderEncoder headerEncoder) {
         this.headers = new HashMap<>(1);
         this.socket = socket;
+        this.headerEncoder = headerEncoder;
+        headerEncoder.reset();
     }
 
     @Override
     public void addHeader(String name, String value) {
-        List<String> values = headers.get(name);
-        if (values == null) {
-            synchronized (this) {
-                values = new ArrayList<>();
+        headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+    }
+
+    /**
+     * Close the response.
+     *
+     * <p>
+     * When the connection is kept alive the output is flushed, but the socket
+     * stays open for the next request.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @Override
+    public void closeResponse() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            getOutputStream().flush();
+            if (!isKeepAlive()) {
+                socket.close();
             }
+        } finally {
+            lock.unlock();
         }
-        values.add(value);
     }
 
     @Override
-    public void closeResponse() throws IOException {
-        HttpServerResponse.super.closeResponse();
-        socket.close();
+    public boolean commitHead(boolean bodyDelimited) {
+        lock.lock();
+        try {
+            if (!bodyDelimited || expectContinue) {
+                keepAlive = false;
+            }
+            committed = true;
+            headersWritten = true;
+            return keepAlive;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Disable keep alive.
+     *
+     * <p>
+     * If the response was already closed while keep alive was still enabled,
+     * which can happen for asynchronous processing, the socket is closed now.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void disableKeepAlive() throws IOException {
+        lock.lock();
+        try {
+            keepAlive = false;
+            if (closed && !socket.isClosed()) {
+                socket.close();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -106,11 +235,68 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
         return headers.get(name) == null ? null : headers.get(name).get(0);
     }
 
+    /**
+     * Get the header, matching the name case-insensitively.
+     *
+     * @param name the header name.
+     * @return the value, or null if not found.
+     */
+    private String getHeaderIgnoreCase(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
     @Override
     public OutputStream getOutputStream() {
         if (outputStream == null) {
             try {
-                outputStream = socket.getOutputStream();
+                outputStream = new FilterOutputStream(socket.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        committed = true;
+                        writeHead();
+                        out.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        committed = true;
+                        if (headerEncoder.length() > 0 && length <= MAX_COALESCE_SIZE) {
+                            headerEncoder.append(bytes, offset, length);
+                            writeHead();
+                        } else {
+                            writeHead();
+                            out.write(bytes, offset, length);
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        writeHead();
+                        out.flush();
+                    }
+
+                    /**
+                     * Write out the pending response head, if any.
+                     *
+                     * @throws IOException when an I/O error occurs.
+                     */
+                    private void writeHead() throws IOException {
+                        if (headerEncoder.length() > 0) {
+                            out.write(headerEncoder.array(), 0, headerEncoder.length());
+                            headerEncoder.reset();
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                };
             } catch (IOException exception) {
                 LOGGER.log(WARNING, () -> "An I/O error occurred while acquiring the output stream", exception);
             }
@@ -119,6 +305,48 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
         return outputStream;
     }
 
+    /**
+     * Is the connection kept alive after this response.
+     *
+     * <p>
+     * If the status line and headers were neither written through this
+     * response nor committed with {@link #commitHead(boolean)} we cannot tell
+     * how the response is delimited, so in that case the connection is not
+     * kept alive.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    boolean isKeepAlive() {
+        lock.lock();
+        try {
+            return keepAlive && headersWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Is the response body delimited by its headers.
+     *
+     * <p>
+     * The connection can only be kept open if the client can tell where the
+     * response ends without us closing the connection.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isSelfDelimited() {
+        if (status / 100 == 1 || status == 204 || status == 304) {
+            return true;
+        }
+        String transferEncoding = getHeaderIgnoreCase("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase().endsWith("chunked")) {
+            return true;
+        }
+        return getHeaderIgnoreCase("Content-Length") != null;
+    }
+
     @Override
     public void setHeader(String name, String value) {
         ArrayList<String> values = new ArrayList<>();
@@ -126,46 +354,117 @@ public class DefaultHttpServerResponse implements HttpServerResponse {
         headers.put(name, values);
     }
 
-    @Override
-    public void setStatus(int status) {
-        this.status = status;
+    /**
+     * Set the expect continue flag.
+     *
+     * <p>
+     * If the response is written while the client still waits for the 100
+     * Continue the connection is not kept alive, as we cannot tell whether
+     * the client is going to send the request body.
+     * </p>
+     *
+     * @param expectContinue the expect continue flag.
+     */
+    void setExpectContinue(boolean expectContinue) {
+        this.expectContinue = expectContinue;
     }
 
     /**
-     * Write the header.
+     * Set the keep alive header flag.
      *
-     * @param name the header name.
-     * @throws IOException when an I/O error occurs.
+     * <p>
+     * An HTTP/1.0 client closes the connection after the response unless it
+     * has a 'Connection: keep-alive' header, so that header is added when the
+     * connection is kept alive.
+     * </p>
+     *
+     * @param keepAliveHeader the keep alive header flag.
      */
-    private void writeHeader(String name) throws IOException {
-        OutputStream output = getOutputStream();
-        output.write(name.getBytes());
-        output.write(": ".getBytes());
-        Iterator<String> values = headers.get(name).iterator();
-        while (values.hasNext()) {
-            output.write(values.next().getBytes());
-            if (values.hasNext()) {
-                output.write(",".getBytes());
-            }
+    void setKeepAliveHeader(boolean keepAliveHeader) {
+        this.keepAliveHeader = keepAliveHeader;
+    }
+
+    /**
+     * Set the keep alive flag.
+     *
+     * <p>
+     * Only a response that is self-delimited will keep the connection alive,
+     * which is determined when the headers are written.
+     * </p>
+     *
+     * @param keepAlive the keep alive flag.
+     */
+    void setKeepAlive(boolean keepAlive) {
+        lock.lock();
+        try {
+            this.keepAlive = keepAlive;
+        } finally {
+            lock.unlock();
         }
-        output.write("\n".getBytes());
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
     }
 
     @Override
     public void writeHeaders() throws IOException {
-        for (String name : headers.keySet()) {
-            writeHeader(name);
+        lock.lock();
+        try {
+            String connection = getHeaderIgnoreCase("Connection");
+            if ("close".equalsIgnoreCase(connection) || !isSelfDelimited() || expectContinue) {
+                keepAlive = false;
+            }
+            if (!keepAlive && !"close".equalsIgnoreCase(connection)) {
+                headers.keySet().removeIf("Connection"::equalsIgnoreCase);
+                setHeader("Connection", "close");
+            } else if (keepAlive && keepAliveHeader && connection == null) {
+                setHeader("Connection", "keep-alive");
+            }
+            headersWritten = true;
+        } finally {
+            lock.unlock();
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            headerEncoder.header(header.getKey(), header.getValue());
         }
-        OutputStream output = getOutputStream();
-        output.write("\n".getBytes());
+        headerEncoder.endHeaders();
     }
 
+    /**
+     * Write a 100 Continue interim response.
+     *
+     * <p>
+     * Once the final response has started it is too late for that, and the
+     * client will send the body anyway.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void writeContinue() throws IOException {
+        expectContinue = false;
+        if (!committed) {
+            OutputStream output = socket.getOutputStream();
+            output.write(CONTINUE);
+            output.flush();
+        }
+    }
+
+    /**
+     * Write the status line.
+     *
+     * <p>
+     * The status line and headers are encoded into the header encoder and go
+     * out together with the first body bytes, or when the response is
+     * flushed.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void writeStatusLine() throws IOException {
-        OutputStream output = getOutputStream();
-        output.write("HTTP/1.0".getBytes());
-        output.write(" ".getBytes());
-        output.write(Integer.toString(status).getBytes());
-        output.write("\n".getBytes());
+        committed = true;
+        headerEncoder.statusLine(status, null);
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The virtual thread support used by the default implementation of HTTP
+ * server.
+ *
+ * <p>
+ * Virtual threads need JDK 21 or later. This is the JDK 17 version which does
+ * not support them, the JDK 21 version of this class is in the
+ * META-INF/versions/21 directory of the multi-release JAR.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class DefaultHttpServerVirtualThreads {
+
+    /**
+     * Constructor.
+     */
+    private DefaultHttpServerVirtualThreads() {
+    }
+
+    /**
+     * Create an executor service that runs each task on its own virtual
+     * thread.
+     *
+     * @return the executor service, or null if virtual threads are not
+     * supported.
+     */
+    static ExecutorService newExecutorService() {
+        return null;
+    }
+}
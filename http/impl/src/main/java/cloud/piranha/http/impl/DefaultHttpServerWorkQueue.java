@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The work queue used by the default implementation of HTTP server.
+ *
+ * <p>
+ * A plain bounded queue makes a thread pool executor queue work as soon as
+ * the core threads are busy, and only add threads once the queue is full.
+ * This queue refuses work when no worker thread is idle and the pool can
+ * still grow, so the pool first grows to its maximum size, then queues up to
+ * the queue capacity, and only then rejects work.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerWorkQueue extends LinkedBlockingQueue<Runnable>
+        implements RejectedExecutionHandler {
+
+    /**
+     * Stores the serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stores the executor.
+     */
+    private transient DefaultHttpServerWorkerPool executor;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the capacity.
+     */
+    DefaultHttpServerWorkQueue(int capacity) {
+        super(Math.max(1, capacity));
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        if (executor != null) {
+            int poolSize = executor.getPoolSize();
+            if (executor.getSubmittedCount() > poolSize
+                    && poolSize < executor.getMaximumPoolSize()) {
+                return false;
+            }
+        }
+        return super.offer(runnable);
+    }
+
+    /**
+     * Queue the work the executor could not start a thread for (it reached
+     * its maximum size in the meantime), or reject it if the queue is full.
+     *
+     * @param runnable the runnable.
+     * @param executor the executor.
+     */
+    @Override
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown() || !super.offer(runnable)) {
+            throw new RejectedExecutionException("The work queue is full");
+        }
+    }
+
+    /**
+     * Set the executor.
+     *
+     * @param executor the executor.
+     */
+    void setExecutor(DefaultHttpServerWorkerPool executor) {
+        this.executor = executor;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.impl;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The worker pool used by the default implementation of HTTP server.
+ *
+ * <p>
+ * It keeps track of the work that was submitted but has not finished yet,
+ * so the work queue can tell whether an idle worker thread will pick up new
+ * work or whether a new thread is needed.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultHttpServerWorkerPool extends ThreadPoolExecutor {
+
+    /**
+     * Stores the number of submitted tasks that have not finished yet.
+     */
+    private final AtomicInteger submittedCount = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param minThreads the minimum number of threads.
+     * @param maxThreads the maximum number of threads.
+     * @param workQueue the work queue.
+     * @param threadFactory the thread factory.
+     */
+    DefaultHttpServerWorkerPool(int minThreads, int maxThreads,
+            DefaultHttpServerWorkQueue workQueue, ThreadFactory threadFactory) {
+        super(minThreads, maxThreads, 60, TimeUnit.SECONDS, workQueue, threadFactory, workQueue);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        submittedCount.decrementAndGet();
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        submittedCount.incrementAndGet();
+        try {
+            super.execute(runnable);
+        } catch (RejectedExecutionException ree) {
+            submittedCount.decrementAndGet();
+            throw ree;
+        }
+    }
+
+    /**
+     * {@return the number of submitted tasks that have not finished yet}
+     */
+    int getSubmittedCount() {
+        return submittedCount.get();
+    }
+}
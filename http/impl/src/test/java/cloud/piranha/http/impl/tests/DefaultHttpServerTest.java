@@ -29,19 +29,30 @@ package cloud.piranha.http.impl.tests;
 
 import cloud.piranha.http.api.HttpServer;
 import cloud.piranha.http.api.HttpServerProcessor;
+import cloud.piranha.http.api.HttpServerProcessorEndState;
+import static cloud.piranha.http.api.HttpServerProcessorEndState.COMPLETED;
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.api.HttpServerResponse;
 import cloud.piranha.http.impl.DefaultHttpServer;
 import cloud.piranha.http.tests.HttpServerTest;
 import cloud.piranha.http.tests.TestHttpServerProcessor;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * The JUnit tests for the DefaultHttpServer class.
@@ -103,4 +114,538 @@ class DefaultHttpServerTest extends HttpServerTest {
             server.stop();
         }
     }
+
+    /**
+     * Test pipelined requests on a persistent connection.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAlivePipelining() throws Exception {
+        HttpServer server = createServer(8753, DefaultHttpServerTest::echo);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8753)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "POST /second HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n\r\nbody"
+                    + "GET /third HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.indexOf("/first:") < response.indexOf("/second:body"));
+            assertTrue(response.indexOf("/second:body") < response.indexOf("/third:"));
+            assertTrue(response.contains("Connection: close"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the maximum number of requests per connection.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxKeepAliveRequests() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8752, DefaultHttpServerTest::echo, false);
+        server.setMaxKeepAliveRequests(2);
+        assertEquals(2, server.getMaxKeepAliveRequests());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8752)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("GET /1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /2 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /3 HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.contains("/2:"));
+            assertTrue(!response.contains("/3:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request head larger than the maximum header size.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxHeaderSize() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8749, DefaultHttpServerTest::echo, false);
+        server.setMaxHeaderSize(1024);
+        assertEquals(1024, server.getMaxHeaderSize());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8749)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("GET / HTTP/1.1\r\nHost: localhost\r\nX-Large: " + "x".repeat(2048) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 431 "));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request with more headers than the maximum header count.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxHeaderCount() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8748, DefaultHttpServerTest::echo, false);
+        server.setMaxHeaderCount(3);
+        assertEquals(3, server.getMaxHeaderCount());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8748)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("GET / HTTP/1.1\r\nHost: localhost\r\nA: 1\r\nB: 2\r\nC: 3\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 431 "));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request with an invalid or conflicting Content-Length is
+     * answered with a 400.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testInvalidContentLength() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8736, DefaultHttpServerTest::echo, false);
+        server.start();
+        try {
+            for (String contentLength : List.of("Content-Length: abc\r\n", "Content-Length: -4\r\n",
+                    "Content-Length: +4\r\n", "Content-Length: 4, 5\r\n",
+                    "Content-Length: 4\r\nContent-Length: 5\r\n")) {
+                try (Socket socket = new Socket("localhost", 8736)) {
+                    OutputStream outputStream = socket.getOutputStream();
+                    outputStream.write(("POST / HTTP/1.1\r\nHost: localhost\r\n" + contentLength + "\r\nbody")
+                            .getBytes(StandardCharsets.UTF_8));
+                    outputStream.flush();
+                    String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                    assertTrue(response.startsWith("HTTP/1.1 400 "), contentLength);
+                }
+            }
+            try (Socket socket = new Socket("localhost", 8736)) {
+                OutputStream outputStream = socket.getOutputStream();
+                outputStream.write(("POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4, 4\r\n"
+                        + "Connection: close\r\n\r\nbody").getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.startsWith("HTTP/1.1 200 "));
+                assertTrue(response.endsWith("/:body"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a connection is answered with a 503 when the worker queue is full.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testServiceUnavailable() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        DefaultHttpServer server = new DefaultHttpServer(8746, (request, response) -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return echo(request, response);
+        }, false);
+        server.setMinWorkerThreads(1);
+        server.setMaxWorkerThreads(1);
+        server.setWorkerQueueSize(1);
+        server.setRetryAfter(7);
+        server.start();
+        try (Socket busy = new Socket("localhost", 8746);
+                Socket queued = new Socket("localhost", 8746);
+                Socket rejected = new Socket("localhost", 8746)) {
+            String response = new String(rejected.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 503 "));
+            assertTrue(response.contains("Retry-After: 7\r\n"));
+            assertEquals(1, server.getRejectedConnectionCount());
+            assertEquals(1, server.getWorkerQueueDepth());
+            latch.countDown();
+            queued.getOutputStream().write("GET /queued HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            busy.getOutputStream().write("GET /busy HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            assertTrue(new String(busy.getInputStream().readAllBytes(), StandardCharsets.UTF_8).endsWith("/busy:"));
+            assertTrue(new String(queued.getInputStream().readAllBytes(), StandardCharsets.UTF_8).endsWith("/queued:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test idle persistent connections are closed when they hold all worker
+     * threads and a new connection is waiting.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testIdleKeepAliveConnections() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8740, DefaultHttpServerTest::echo, false);
+        server.setMinWorkerThreads(2);
+        server.setMaxWorkerThreads(2);
+        server.setWorkerQueueSize(1);
+        server.setKeepAliveTimeout(60000);
+        server.start();
+        try (Socket idle1 = new Socket("localhost", 8740);
+                Socket idle2 = new Socket("localhost", 8740)) {
+            assertTrue(request(idle1, "/idle1").endsWith("/idle1:"));
+            assertTrue(request(idle2, "/idle2").endsWith("/idle2:"));
+            long start = System.currentTimeMillis();
+            try (Socket socket = new Socket("localhost", 8740)) {
+                socket.getOutputStream().write("GET /new HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.endsWith("/new:"));
+            }
+            assertTrue(System.currentTimeMillis() - start < 30000);
+            assertEquals(0, server.getRejectedConnectionCount());
+            assertTrue(isClosed(idle1) || isClosed(idle2));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test an HTTP/1.0 connection that is kept alive is told so in the
+     * response.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAliveHTTP10() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8737, DefaultHttpServerTest::echo, false);
+        server.setKeepAliveTimeout(60000);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8737)) {
+            socket.getOutputStream().write("GET /first HTTP/1.0\r\nConnection: keep-alive\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder response = new StringBuilder();
+            while (!response.toString().endsWith("/first:")) {
+                response.append((char) socket.getInputStream().read());
+            }
+            assertTrue(response.toString().contains("\r\nConnection: keep-alive\r\n"), response.toString());
+            socket.getOutputStream().write("GET /second HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            String second = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(second.contains("\r\nConnection: close\r\n"), second);
+            assertTrue(second.endsWith("/second:"), second);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a persistent connection that is receiving its next request is not
+     * closed to free up its worker thread.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAliveConnectionReceivingRequest() throws Exception {
+        TestHttpServer server = new TestHttpServer(8738);
+        server.setKeepAliveTimeout(60000);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8738)) {
+            assertTrue(request(socket, "/first").endsWith("/first:"));
+            socket.getOutputStream().write("GET /second HTTP/1.1\r\n".getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+            Thread.sleep(200);
+            assertEquals(0, server.closeIdleConnections());
+            socket.getOutputStream().write("Host: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8).endsWith("/second:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test an idle worker thread is reused instead of starting a new one.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWorkerThreadReuse() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8739, DefaultHttpServerTest::echo, false);
+        server.setMinWorkerThreads(1);
+        server.setMaxWorkerThreads(10);
+        server.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                try (Socket socket = new Socket("localhost", 8739)) {
+                    socket.getOutputStream().write("GET /reuse HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                            .getBytes(StandardCharsets.UTF_8));
+                    assertTrue(new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8).endsWith("/reuse:"));
+                }
+                Thread.sleep(100);
+            }
+            assertTrue(server.getWorkerThreadCount() <= 2);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the virtual threads mode (which uses platform threads before JDK
+     * 21).
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testVirtualThreads() throws Exception {
+        DefaultHttpServer server = new DefaultHttpServer(8745, DefaultHttpServerTest::echo, false);
+        server.setVirtualThreads(true);
+        assertTrue(server.isVirtualThreads());
+        server.start();
+        try (Socket socket = new Socket("localhost", 8745)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("GET /virtual HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.endsWith("/virtual:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request head that arrives in several segments.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testSegmentedRequestHead() throws Exception {
+        HttpServer server = createServer(8747, DefaultHttpServerTest::echo);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8747)) {
+            socket.setTcpNoDelay(true);
+            OutputStream outputStream = socket.getOutputStream();
+            for (String segment : new String[]{"PO", "ST /seg", "mented HTTP/1.1\r", "\nHost: local",
+                "host\r\nContent-Le", "ngth: 4\r\nConnection: close\r\n", "\r", "\nbody"}) {
+                outputStream.write(segment.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                Thread.sleep(10);
+            }
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"));
+            assertTrue(response.endsWith("/segmented:body"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a chunked request body followed by a pipelined request.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChunkedRequestBody() throws Exception {
+        HttpServer server = createServer(8744, DefaultHttpServerTest::echo);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8744)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("POST /chunked HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                    + "5;name=value\r\nHello\r\n6\r\n World\r\n0\r\nChecksum: 1234\r\n\r\n"
+                    + "GET /next HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.contains("/chunked:Hello World"));
+            assertTrue(response.endsWith("/next:"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test the 100 Continue is sent when the body is read.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testExpectContinue() throws Exception {
+        HttpServer server = createServer(8743, DefaultHttpServerTest::echo);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8743)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("POST /continue HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n"
+                    + "Expect: 100-continue\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            byte[] interim = socket.getInputStream().readNBytes(25);
+            assertEquals("HTTP/1.1 100 Continue\r\n\r\n", new String(interim, StandardCharsets.UTF_8));
+            outputStream.write("body".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"));
+            assertTrue(response.endsWith("/continue:body"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test no 100 Continue is sent when the request is rejected without
+     * reading the body.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testExpectContinue2() throws Exception {
+        HttpServer server = createServer(8742, (request, response) -> {
+            try {
+                response.setStatus(413);
+                response.setHeader("Content-Length", "0");
+                response.writeStatusLine();
+                response.writeHeaders();
+            } catch (IOException ioe) {
+            }
+            return COMPLETED;
+        });
+        server.start();
+        try (Socket socket = new Socket("localhost", 8742)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000000\r\n"
+                    + "Expect: 100-continue\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 413"));
+            assertTrue(!response.contains("100 Continue"));
+            assertTrue(response.contains("Connection: close"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test getQueryParameter method with escapes and a name without a value.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetQueryParameterDecoding() throws Exception {
+        HttpServer server = createServer(8741, (request, response) -> {
+            try {
+                byte[] body = (request.getQueryParameter("a b") + "|" + request.getQueryParameter("flag")
+                        + "|" + request.getQueryParameter("c") + "|" + request.getQueryParameter("missing"))
+                        .getBytes(StandardCharsets.UTF_8);
+                response.setStatus(200);
+                response.setHeader("Content-Length", Integer.toString(body.length));
+                response.writeStatusLine();
+                response.writeHeaders();
+                response.getOutputStream().write(body);
+            } catch (IOException ioe) {
+            }
+            return COMPLETED;
+        });
+        server.start();
+        try (Socket socket = new Socket("localhost", 8741)) {
+            socket.getOutputStream().write(("GET /?flag&a+b=x%3Dy%E2%82%AC&c=1&c=2&bad=%zz HTTP/1.1\r\n"
+                    + "Host: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.endsWith("\r\n\r\nx=y\u20ac||1|null"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * {@return true if the server closed the connection}
+     *
+     * @param socket the socket.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static boolean isClosed(Socket socket) throws IOException {
+        socket.setSoTimeout(1000);
+        try {
+            return socket.getInputStream().read() == -1;
+        } catch (SocketTimeoutException ste) {
+            return false;
+        }
+    }
+
+    /**
+     * Send a request on a persistent connection and read the response.
+     *
+     * @param socket the socket.
+     * @param target the request target.
+     * @return the response.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static String request(Socket socket, String target) throws IOException {
+        socket.getOutputStream().write(("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        StringBuilder response = new StringBuilder();
+        while (!response.toString().endsWith(target + ":")) {
+            int c = socket.getInputStream().read();
+            if (c == -1) {
+                break;
+            }
+            response.append((char) c);
+        }
+        return response.toString();
+    }
+
+    /**
+     * Echo the request target and body with a Content-Length.
+     *
+     * @param request the request.
+     * @param response the response.
+     * @return state.
+     */
+    private static HttpServerProcessorEndState echo(HttpServerRequest request, HttpServerResponse response) {
+        try {
+            byte[] body = (request.getRequestTarget() + ":"
+                    + new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                    .getBytes(StandardCharsets.UTF_8);
+            response.setStatus(200);
+            response.setHeader("Content-Length", Integer.toString(body.length));
+            response.writeStatusLine();
+            response.writeHeaders();
+            response.getOutputStream().write(body);
+        } catch (IOException ioe) {
+        }
+        return COMPLETED;
+    }
+
+    /**
+     * The HTTP server that can close its idle persistent connections.
+     */
+    static class TestHttpServer extends DefaultHttpServer {
+
+        /**
+         * Constructor.
+         *
+         * @param port the port.
+         */
+        TestHttpServer(int port) {
+            super(port, DefaultHttpServerTest::echo, false);
+        }
+
+        /**
+         * {@return the number of idle persistent connections closed}
+         */
+        int closeIdleConnections() {
+            return closeKeepAliveConnections(Integer.MAX_VALUE);
+        }
+    }
 }
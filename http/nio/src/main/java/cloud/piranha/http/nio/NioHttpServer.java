@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cloud.piranha.http.api.HttpServer;
+import cloud.piranha.http.api.HttpServerProcessor;
+
+/**
+ * The NIO implementation of HTTP Server.
+ *
+ * <p>
+ * An acceptor thread accepts the connections and hands them round-robin to a
+ * fixed number of selector threads. A selector thread reads and parses the
+ * requests of all its connections without blocking and hands complete requests
+ * to a bounded pool of worker threads. When the worker pool is saturated the
+ * request is answered with '503 Service Unavailable' by the selector thread.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class NioHttpServer implements HttpServer {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(NioHttpServer.class.getPackageName());
+
+    /**
+     * Stores the acceptor thread.
+     */
+    private Thread acceptorThread;
+
+    /**
+     * Stores the keep alive timeout (in milliseconds).
+     */
+    private int keepAliveTimeout;
+
+    /**
+     * Stores the maximum header size (in bytes).
+     */
+    private int maxHeaderSize;
+
+    /**
+     * Stores the maximum number of requests per connection.
+     */
+    private int maxKeepAliveRequests;
+
+    /**
+     * Stores the maximum request body size (in bytes).
+     */
+    private int maxRequestSize;
+
+    /**
+     * Stores the HTTP server processor.
+     */
+    private HttpServerProcessor processor;
+
+    /**
+     * Stores the selector count.
+     */
+    private int selectorCount;
+
+    /**
+     * Stores the selector threads.
+     */
+    private NioHttpServerSelectorThread[] selectorThreads;
+
+    /**
+     * Stores the server socket channel.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Stores the server port.
+     */
+    private int serverPort;
+
+    /**
+     * Stores the server stop request.
+     */
+    private volatile boolean serverStopRequest;
+
+    /**
+     * Stores the SSL flag.
+     */
+    private boolean ssl;
+
+    /**
+     * Stores the worker pool.
+     */
+    private ThreadPoolExecutor workerPool;
+
+    /**
+     * Stores the worker queue size.
+     */
+    private int workerQueueSize;
+
+    /**
+     * Stores the number of worker threads.
+     */
+    private int workerThreads;
+
+    /**
+     * Constructor.
+     */
+    public NioHttpServer() {
+        this(8765, null, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param serverPort the server port.
+     * @param processor the HTTP server processor.
+     * @param ssl the SSL flag.
+     */
+    public NioHttpServer(int serverPort, HttpServerProcessor processor, boolean ssl) {
+        this.serverPort = serverPort;
+        this.processor = processor;
+        this.ssl = ssl;
+        this.keepAliveTimeout = 20000;
+        this.maxHeaderSize = 16384;
+        this.maxKeepAliveRequests = 100;
+        this.maxRequestSize = 10 * 1024 * 1024;
+        this.selectorCount = Runtime.getRuntime().availableProcessors();
+        this.workerQueueSize = 1024;
+        this.workerThreads = 200;
+    }
+
+    /**
+     * {@return the keep alive timeout (in milliseconds)}
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * {@return the maximum header size (in bytes)}
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * {@return the maximum number of requests per connection}
+     */
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * {@return the maximum request body size (in bytes)}
+     */
+    public int getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /**
+     * {@return the selector count}
+     */
+    public int getSelectorCount() {
+        return selectorCount;
+    }
+
+    /**
+     * {@return the worker queue size}
+     */
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    /**
+     * {@return the number of worker threads}
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    @Override
+    public HttpServerProcessor getHttpServerProcessor() {
+        return processor;
+    }
+
+    @Override
+    public boolean getSSL() {
+        return ssl;
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * {@return the worker pool}
+     */
+    ThreadPoolExecutor getWorkerPool() {
+        return workerPool;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return workerPool != null && !workerPool.isShutdown();
+    }
+
+    /**
+     * Set the keep alive timeout.
+     *
+     * @param keepAliveTimeout the keep alive timeout (in milliseconds).
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Set the maximum header size.
+     *
+     * @param maxHeaderSize the maximum header size (in bytes).
+     */
+    public void setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Set the maximum number of requests per connection.
+     *
+     * @param maxKeepAliveRequests the maximum number of requests.
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    /**
+     * Set the maximum request body size.
+     *
+     * <p>
+     * The request body is read by the selector thread before the request is
+     * handed to a worker thread, so this bounds the memory used per request.
+     * </p>
+     *
+     * @param maxRequestSize the maximum request body size (in bytes).
+     */
+    public void setMaxRequestSize(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * Set the selector count.
+     *
+     * @param selectorCount the selector count.
+     */
+    public void setSelectorCount(int selectorCount) {
+        this.selectorCount = selectorCount;
+    }
+
+    /**
+     * Set the worker queue size.
+     *
+     * @param workerQueueSize the worker queue size.
+     */
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    /**
+     * Set the number of worker threads.
+     *
+     * @param workerThreads the number of worker threads.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    @Override
+    public void setHttpServerProcessor(HttpServerProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void setSSL(boolean ssl) {
+        this.ssl = ssl;
+    }
+
+    @Override
+    public void setServerPort(int serverPort) {
+        this.serverPort = serverPort;
+    }
+
+    /**
+     * Start the server.
+     *
+     * @throws IllegalStateException when SSL is requested, as it is not
+     * supported.
+     */
+    @Override
+    public void start() {
+        LOGGER.log(DEBUG, () -> "Starting NIO HTTP server on port " + serverPort);
+        if (ssl) {
+            throw new IllegalStateException("SSL is not supported by the NIO HTTP server");
+        }
+        try {
+            serverStopRequest = false;
+            AtomicInteger workerId = new AtomicInteger();
+            workerPool = new ThreadPoolExecutor(workerThreads, workerThreads,
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(workerQueueSize),
+                    runnable -> new Thread(runnable, "NioHttpServer-WorkerThread-" + workerId.getAndIncrement()));
+            workerPool.allowCoreThreadTimeOut(true);
+            selectorThreads = new NioHttpServerSelectorThread[Math.max(1, selectorCount)];
+            for (int i = 0; i < selectorThreads.length; i++) {
+                selectorThreads[i] = new NioHttpServerSelectorThread(this);
+                Thread thread = new Thread(selectorThreads[i], "NioHttpServer-SelectorThread-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(serverPort), 1024);
+            acceptorThread = new Thread(this::accept, "NioHttpServer-AcceptorThread");
+            acceptorThread.start();
+            LOGGER.log(DEBUG, () -> "Started NIO HTTP server on port " + serverPort);
+        } catch (IOException exception) {
+            LOGGER.log(WARNING, "An I/O error occurred while starting the NIO HTTP server", exception);
+        }
+    }
+
+    @Override
+    public void stop() {
+        LOGGER.log(DEBUG, () -> "Stopping NIO HTTP server on port " + serverPort);
+        serverStopRequest = true;
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException exception) {
+                LOGGER.log(WARNING, "An I/O error occurred while stopping the NIO HTTP server", exception);
+            }
+        }
+        if (acceptorThread != null) {
+            try {
+                acceptorThread.join(10000);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(120, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                LOGGER.log(WARNING, "Termination of the worker pool was interrupted", exception);
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (selectorThreads != null) {
+            for (NioHttpServerSelectorThread selectorThread : selectorThreads) {
+                selectorThread.stop();
+            }
+        }
+        LOGGER.log(DEBUG, () -> "Stopped NIO HTTP server on port " + serverPort);
+    }
+
+    /**
+     * Accept connections and hand them to the selector threads.
+     */
+    private void accept() {
+        int next = 0;
+        while (!serverStopRequest) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                selectorThreads[next].register(channel);
+                next = (next + 1) % selectorThreads.length;
+            } catch (IOException exception) {
+                if (!serverStopRequest) {
+                    LOGGER.log(WARNING, "An I/O error occurred while accepting a connection", exception);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio;
+
+import static cloud.piranha.http.api.HttpServerProcessorEndState.COMPLETED;
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import cloud.piranha.http.api.HttpServerProcessorEndState;
+
+/**
+ * A connection of the NIO implementation of HTTP server.
+ *
+ * <p>
+ * Reading, parsing and writing happen on the selector thread that owns the
+ * connection. Only one request per connection is processed at a time, while it
+ * is being processed the connection is not read from, so pipelined requests
+ * wait in the socket until the response of the current request is written.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class NioHttpServerConnection {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(NioHttpServerConnection.class.getPackageName());
+
+    /**
+     * Stores the number of pending response bytes after which a worker thread
+     * has to wait for the selector thread to catch up.
+     */
+    private static final long HIGH_WATER_MARK = 256 * 1024L;
+
+    /**
+     * Stores the initial read buffer size.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * Stores the request body.
+     */
+    private byte[] body;
+
+    /**
+     * Stores the length of the request body.
+     */
+    private int bodyLength;
+
+    /**
+     * Stores the number of body bytes read so far.
+     */
+    private int bodyPosition;
+
+    /**
+     * Stores the socket channel.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Stores the closed flag.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Stores the completion pending flag.
+     */
+    private boolean completionPending;
+
+    /**
+     * Stores the input shutdown flag.
+     */
+    private boolean inputShutdown;
+
+    /**
+     * Stores the selection key.
+     */
+    private final SelectionKey key;
+
+    /**
+     * Stores the keep alive flag for the current response.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Stores the last time there was activity on the connection.
+     */
+    private long lastActive;
+
+    /**
+     * Stores the local address.
+     */
+    private final InetSocketAddress localAddress;
+
+    /**
+     * Stores the number of pending response bytes.
+     */
+    private long pendingBytes;
+
+    /**
+     * Stores the processing flag.
+     */
+    private boolean processing;
+
+    /**
+     * Stores the read buffer.
+     */
+    private ByteBuffer readBuffer;
+
+    /**
+     * Stores the remote address.
+     */
+    private final InetSocketAddress remoteAddress;
+
+    /**
+     * Stores the request being read.
+     */
+    private NioHttpServerRequest request;
+
+    /**
+     * Stores the number of requests on this connection.
+     */
+    private int requestCount;
+
+    /**
+     * Stores the selector thread.
+     */
+    private final NioHttpServerSelectorThread selectorThread;
+
+    /**
+     * Stores the server.
+     */
+    private final NioHttpServer server;
+
+    /**
+     * Stores the write queue.
+     */
+    private final Queue<ByteBuffer> writeQueue;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server.
+     * @param selectorThread the selector thread.
+     * @param channel the socket channel.
+     * @param key the selection key.
+     * @throws IOException when an I/O error occurs.
+     */
+    NioHttpServerConnection(NioHttpServer server, NioHttpServerSelectorThread selectorThread,
+            SocketChannel channel, SelectionKey key) throws IOException {
+        this.server = server;
+        this.selectorThread = selectorThread;
+        this.channel = channel;
+        this.key = key;
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.writeQueue = new ArrayDeque<>();
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * Close the channel without reporting errors.
+     *
+     * @param channel the channel.
+     */
+    static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "An I/O error occurred while closing a connection", exception);
+        }
+    }
+
+    /**
+     * Close the connection.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        closeQuietly(channel);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Complete the current response.
+     *
+     * <p>
+     * Called from the worker thread, or from whatever thread completes an
+     * asynchronous request, once the response has been fully handed over.
+     * </p>
+     *
+     * @param keepAlive true if the connection should be kept alive.
+     */
+    void complete(boolean keepAlive) {
+        selectorThread.execute(() -> {
+            this.keepAlive = keepAlive;
+            completionPending = true;
+            writeSafely();
+        });
+    }
+
+    /**
+     * Find the end of the request head.
+     *
+     * @param buffer the buffer (in read mode).
+     * @return the position just after the empty line, or -1 if not found.
+     */
+    private static int findHeadEnd(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit; i++) {
+            if (bytes[i] == '\n') {
+                if (i + 1 < limit && bytes[i + 1] == '\n') {
+                    return i + 2;
+                }
+                if (i + 2 < limit && bytes[i + 1] == '\r' && bytes[i + 2] == '\n') {
+                    return i + 3;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finish the current response once it has been fully written.
+     */
+    private void finish() {
+        processing = false;
+        lastActive = System.currentTimeMillis();
+        if (!keepAlive || inputShutdown) {
+            close();
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+            parse();
+        }
+    }
+
+    /**
+     * {@return the local address}
+     */
+    InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    /**
+     * {@return the remote address}
+     */
+    InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Is the connection idle for longer than the given timeout.
+     *
+     * @param now the current time.
+     * @param timeout the timeout.
+     * @return true if it is, false otherwise.
+     */
+    boolean isIdle(long now, int timeout) {
+        return !processing && now - lastActive > timeout;
+    }
+
+    /**
+     * Parse as much of the buffered input as possible.
+     */
+    private void parse() {
+        if (processing || closed) {
+            return;
+        }
+        readBuffer.flip();
+        try {
+            if (request == null) {
+                while (readBuffer.hasRemaining()
+                        && (readBuffer.get(readBuffer.position()) == '\r'
+                        || readBuffer.get(readBuffer.position()) == '\n')) {
+                    readBuffer.get();
+                }
+                int headEnd = findHeadEnd(readBuffer);
+                if (headEnd == -1) {
+                    if (readBuffer.remaining() >= server.getMaxHeaderSize()) {
+                        reject(431, "Request Header Fields Too Large");
+                    }
+                    return;
+                }
+                byte[] head = new byte[headEnd - readBuffer.position()];
+                readBuffer.get(head);
+                try {
+                    request = new NioHttpServerRequest(this, head);
+                } catch (IllegalArgumentException iae) {
+                    reject(400, "Bad Request");
+                    return;
+                }
+                if (request.getHeader("Transfer-Encoding") != null) {
+                    reject(501, "Not Implemented");
+                    return;
+                }
+                long contentLength = request.getContentLength();
+                if (contentLength < 0) {
+                    reject(400, "Bad Request");
+                    return;
+                }
+                if (contentLength > server.getMaxRequestSize()) {
+                    reject(413, "Payload Too Large");
+                    return;
+                }
+                bodyLength = (int) contentLength;
+                body = new byte[Math.min(bodyLength, INITIAL_BUFFER_SIZE)];
+                bodyPosition = 0;
+            }
+            int length = Math.min(readBuffer.remaining(), bodyLength - bodyPosition);
+            if (bodyPosition + length > body.length) {
+                // Grow the body as it arrives so a stalled client only holds
+                // the bytes it actually sent.
+                body = Arrays.copyOf(body, Math.min(bodyLength,
+                        Math.max(body.length * 2, bodyPosition + length)));
+            }
+            readBuffer.get(body, bodyPosition, length);
+            bodyPosition += length;
+            if (bodyPosition == bodyLength) {
+                request.setBody(body);
+                dispatch(request);
+                request = null;
+                body = null;
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Hand the request to a worker thread.
+     *
+     * @param request the request.
+     */
+    private void dispatch(NioHttpServerRequest request) {
+        processing = true;
+        requestCount++;
+        key.interestOps(0);
+        NioHttpServerResponse response = new NioHttpServerResponse(this,
+                request.isKeepAlive() && requestCount < server.getMaxKeepAliveRequests());
+        try {
+            server.getWorkerPool().execute(() -> process(request, response));
+        } catch (RejectedExecutionException ree) {
+            LOGGER.log(DEBUG, "Worker pool saturated, rejecting request");
+            processing = false;
+            reject(503, "Service Unavailable");
+        }
+    }
+
+    /**
+     * Process the request (on a worker thread).
+     *
+     * @param request the request.
+     * @param response the response.
+     */
+    private void process(NioHttpServerRequest request, NioHttpServerResponse response) {
+        HttpServerProcessorEndState state = COMPLETED;
+        try {
+            state = server.getHttpServerProcessor().process(request, response);
+        } catch (Throwable throwable) {
+            LOGGER.log(WARNING, "An error occurred while processing the request", throwable);
+        } finally {
+            if (state == COMPLETED) {
+                try {
+                    response.closeResponse();
+                } catch (IOException exception) {
+                    LOGGER.log(DEBUG, "An I/O error occurred while closing the response", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read from the channel (on the selector thread).
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void read() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            int capacity = readBuffer.capacity();
+            if (request == null && capacity >= server.getMaxHeaderSize()) {
+                reject(431, "Request Header Fields Too Large");
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(capacity * 2);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            inputShutdown = true;
+            if (!processing) {
+                close();
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            return;
+        }
+        lastActive = System.currentTimeMillis();
+        parse();
+    }
+
+    /**
+     * Answer with an error status and close the connection.
+     *
+     * @param status the status.
+     * @param reason the reason phrase.
+     */
+    private void reject(int status, String reason) {
+        processing = true;
+        request = null;
+        body = null;
+        byte[] bytes = ("HTTP/1.1 " + status + " " + reason
+                + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(ISO_8859_1);
+        synchronized (this) {
+            pendingBytes += bytes.length;
+            writeQueue.add(ByteBuffer.wrap(bytes));
+        }
+        keepAlive = false;
+        completionPending = true;
+        writeSafely();
+    }
+
+    /**
+     * Queue response bytes for writing.
+     *
+     * <p>
+     * Called from the worker thread. If too many bytes are already pending the
+     * caller waits until the selector thread has written them out.
+     * </p>
+     *
+     * @param buffer the buffer.
+     * @throws IOException when the connection was closed.
+     */
+    void send(ByteBuffer buffer) throws IOException {
+        synchronized (this) {
+            while (pendingBytes > HIGH_WATER_MARK && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting to write", ie);
+                }
+            }
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            pendingBytes += buffer.remaining();
+            writeQueue.add(buffer);
+        }
+        selectorThread.execute(this::writeSafely);
+    }
+
+    /**
+     * Write the pending response bytes (on the selector thread).
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void write() throws IOException {
+        if (closed) {
+            return;
+        }
+        while (true) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                buffer = writeQueue.peek();
+            }
+            if (buffer == null) {
+                break;
+            }
+            int written = channel.write(buffer);
+            synchronized (this) {
+                pendingBytes -= written;
+                if (!buffer.hasRemaining()) {
+                    writeQueue.poll();
+                }
+                notifyAll();
+            }
+            if (buffer.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (completionPending) {
+            completionPending = false;
+            finish();
+        }
+    }
+
+    /**
+     * Write the pending response bytes, closing the connection on error.
+     */
+    private void writeSafely() {
+        try {
+            write();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "Closing connection after an I/O error", exception);
+            close();
+        }
+    }
+}
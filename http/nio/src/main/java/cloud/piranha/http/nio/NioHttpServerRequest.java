@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import cloud.piranha.http.api.HttpServerRequest;
+
+/**
+ * The NIO implementation of HTTP Server Request.
+ *
+ * <p>
+ * The request head and body have been read completely by the selector thread
+ * before the request is handed to the HTTP Server Processor.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class NioHttpServerRequest implements HttpServerRequest {
+
+    /**
+     * Stores the body.
+     */
+    private byte[] body;
+
+    /**
+     * Stores the connection.
+     */
+    private final NioHttpServerConnection connection;
+
+    /**
+     * Stores the headers.
+     */
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Stores the input stream.
+     */
+    private InputStream inputStream;
+
+    /**
+     * Stores the method.
+     */
+    private String method;
+
+    /**
+     * Stores the protocol.
+     */
+    private String protocol;
+
+    /**
+     * Stores the query parameters.
+     */
+    private Map<String, List<String>> queryParameters;
+
+    /**
+     * Stores the query string.
+     */
+    private String queryString;
+
+    /**
+     * Stores the request target.
+     */
+    private String requestTarget;
+
+    /**
+     * Constructor.
+     *
+     * @param connection the connection.
+     * @param head the request line and headers.
+     * @throws IllegalArgumentException when the request head is malformed.
+     */
+    NioHttpServerRequest(NioHttpServerConnection connection, byte[] head) {
+        this.connection = connection;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.body = new byte[0];
+        parse(new String(head, ISO_8859_1));
+    }
+
+    /**
+     * {@return the content length, 0 if not set or -1 if invalid}
+     */
+    long getContentLength() {
+        String contentLength = getHeader("Content-Length");
+        if (contentLength == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public Iterator<String> getHeaderNames() {
+        return headers.keySet().iterator();
+    }
+
+    @Override
+    public Iterator<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? Collections.emptyIterator() : values.iterator();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (inputStream == null) {
+            inputStream = new ByteArrayInputStream(body);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public String getLocalAddress() {
+        return connection.getLocalAddress().getAddress().getHostAddress();
+    }
+
+    @Override
+    public String getLocalHostname() {
+        return connection.getLocalAddress().getAddress().getHostName();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return connection.getLocalAddress().getPort();
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public String getQueryParameter(String name) {
+        if (queryString == null) {
+            return null;
+        }
+        if (queryParameters == null) {
+            Map<String, List<String>> parameters = new TreeMap<>();
+            for (String parameter : queryString.split("&")) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                int index = parameter.indexOf('=');
+                String parameterName = index == -1 ? parameter : parameter.substring(0, index);
+                String parameterValue = index == -1 ? "" : parameter.substring(index + 1);
+                try {
+                    String decodedValue = URLDecoder.decode(parameterValue, UTF_8);
+                    parameters.computeIfAbsent(URLDecoder.decode(parameterName, UTF_8), key -> new ArrayList<>())
+                            .add(decodedValue);
+                } catch (IllegalArgumentException iae) {
+                    // a malformed escape, the parameter is skipped
+                }
+            }
+            queryParameters = parameters;
+        }
+        List<String> values = queryParameters.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return connection.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    @Override
+    public String getRemoteHostname() {
+        return connection.getRemoteAddress().getAddress().getHostName();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return connection.getRemoteAddress().getPort();
+    }
+
+    @Override
+    public String getRequestTarget() {
+        return requestTarget;
+    }
+
+    /**
+     * Does the client want to keep the connection open after this request.
+     *
+     * @return true if it does, false otherwise.
+     */
+    boolean isKeepAlive() {
+        boolean keepAlive = "HTTP/1.1".equals(protocol);
+        String connectionHeader = getHeader("Connection");
+        if (connectionHeader != null) {
+            for (String token : connectionHeader.split(",")) {
+                token = token.trim();
+                if ("close".equalsIgnoreCase(token)) {
+                    return false;
+                }
+                if ("keep-alive".equalsIgnoreCase(token)) {
+                    keepAlive = true;
+                }
+            }
+        }
+        return keepAlive;
+    }
+
+    /**
+     * Parse the request line and headers.
+     *
+     * @param head the request head.
+     */
+    private void parse(String head) {
+        int lineStart = 0;
+        int lineEnd = head.indexOf('\n');
+        if (lineEnd == -1) {
+            throw new IllegalArgumentException("Missing request line");
+        }
+        parseRequestLine(stripCarriageReturn(head, lineStart, lineEnd));
+        lineStart = lineEnd + 1;
+        while ((lineEnd = head.indexOf('\n', lineStart)) != -1) {
+            String line = stripCarriageReturn(head, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+            if (line.isEmpty()) {
+                break;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Malformed header line");
+            }
+            headers.computeIfAbsent(line.substring(0, colon).trim(), key -> new ArrayList<>(1))
+                    .add(line.substring(colon + 1).trim());
+        }
+    }
+
+    /**
+     * Parse the request line.
+     *
+     * @param line the request line.
+     */
+    private void parseRequestLine(String line) {
+        int first = line.indexOf(' ');
+        int second = line.indexOf(' ', first + 1);
+        if (first <= 0 || second == -1) {
+            throw new IllegalArgumentException("Malformed request line");
+        }
+        method = line.substring(0, first);
+        requestTarget = line.substring(first + 1, second);
+        protocol = line.substring(second + 1);
+        int question = requestTarget.indexOf('?');
+        if (question != -1) {
+            queryString = requestTarget.substring(question + 1);
+            requestTarget = requestTarget.substring(0, question);
+        }
+    }
+
+    /**
+     * Set the body.
+     *
+     * @param body the body.
+     */
+    void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    /**
+     * Get a line without its trailing carriage return.
+     *
+     * @param head the request head.
+     * @param start the start of the line.
+     * @param end the index of the line feed.
+     * @return the line.
+     */
+    private static String stripCarriageReturn(String head, int start, int end) {
+        if (end > start && head.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return head.substring(start, end);
+    }
+}
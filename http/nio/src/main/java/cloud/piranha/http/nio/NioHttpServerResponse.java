@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cloud.piranha.http.api.HttpServerResponse;
+
+/**
+ * The NIO implementation of HTTP Server Response.
+ *
+ * <p>
+ * The status line, headers and body are buffered and handed to the selector
+ * thread of the connection in chunks, the selector thread writes them out
+ * without blocking.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class NioHttpServerResponse implements HttpServerResponse {
+
+    /**
+     * Stores the output buffer size.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Stores the closed flag.
+     */
+    private boolean closed;
+
+    /**
+     * Stores the connection.
+     */
+    private final NioHttpServerConnection connection;
+
+    /**
+     * Stores the headers.
+     */
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Stores the headers written flag.
+     */
+    private boolean headersWritten;
+
+    /**
+     * Stores the keep alive flag.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Stores the output stream.
+     */
+    private final OutputStream outputStream;
+
+    /**
+     * Stores the status.
+     */
+    private int status;
+
+    /**
+     * Constructor.
+     *
+     * @param connection the connection.
+     * @param keepAlive true if the client allows the connection to be kept
+     * alive.
+     */
+    NioHttpServerResponse(NioHttpServerConnection connection, boolean keepAlive) {
+        this.connection = connection;
+        this.keepAlive = keepAlive;
+        this.headers = new LinkedHashMap<>();
+        this.status = 200;
+        this.outputStream = new NioHttpServerOutputStream();
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+    }
+
+    /**
+     * Close the response.
+     *
+     * <p>
+     * This flushes what is still buffered and hands the connection back to
+     * its selector thread, which either closes it or waits for the next
+     * request.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    @Override
+    public synchronized void closeResponse() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            outputStream.flush();
+        } finally {
+            connection.complete(keepAlive && headersWritten);
+        }
+    }
+
+    @Override
+    public synchronized boolean commitHead(boolean bodyDelimited) {
+        if (!bodyDelimited) {
+            keepAlive = false;
+        }
+        headersWritten = true;
+        return keepAlive;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = getHeaderValues(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Get the header values, matching the name case-insensitively.
+     *
+     * @param name the header name.
+     * @return the values, or null if not found.
+     */
+    private List<String> getHeaderValues(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Is the response body delimited by its headers.
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isSelfDelimited() {
+        if (status / 100 == 1 || status == 204 || status == 304) {
+            return true;
+        }
+        String transferEncoding = getHeader("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).endsWith("chunked")) {
+            return true;
+        }
+        return getHeader("Content-Length") != null;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        headers.keySet().removeIf(name::equalsIgnoreCase);
+        addHeader(name, value);
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    @Override
+    public void writeHeaders() throws IOException {
+        String connectionHeader = getHeader("Connection");
+        if ("close".equalsIgnoreCase(connectionHeader) || !isSelfDelimited()) {
+            keepAlive = false;
+        }
+        if (!keepAlive && !"close".equalsIgnoreCase(connectionHeader)) {
+            setHeader("Connection", "close");
+        }
+        StringBuilder builder = new StringBuilder(256);
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            for (String value : entry.getValue()) {
+                builder.append(entry.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        builder.append("\r\n");
+        outputStream.write(builder.toString().getBytes(ISO_8859_1));
+        headersWritten = true;
+    }
+
+    @Override
+    public void writeStatusLine() throws IOException {
+        outputStream.write(("HTTP/1.1 " + status + " " + getReasonPhrase(status) + "\r\n").getBytes(ISO_8859_1));
+    }
+
+    /**
+     * {@return the reason phrase, or an empty string for an unknown status}
+     *
+     * @param status the status code.
+     */
+    private static String getReasonPhrase(int status) {
+        return switch (status) {
+            case 100 -> "Continue";
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 303 -> "See Other";
+            case 304 -> "Not Modified";
+            case 307 -> "Temporary Redirect";
+            case 308 -> "Permanent Redirect";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 408 -> "Request Timeout";
+            case 409 -> "Conflict";
+            case 410 -> "Gone";
+            case 411 -> "Length Required";
+            case 412 -> "Precondition Failed";
+            case 413 -> "Payload Too Large";
+            case 415 -> "Unsupported Media Type";
+            case 416 -> "Range Not Satisfiable";
+            case 417 -> "Expectation Failed";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "";
+        };
+    }
+
+    /**
+     * The output stream that hands buffered chunks to the connection.
+     */
+    private class NioHttpServerOutputStream extends OutputStream {
+
+        /**
+         * Stores the buffer.
+         */
+        private byte[] buffer = new byte[BUFFER_SIZE];
+
+        /**
+         * Stores the number of buffered bytes.
+         */
+        private int count;
+
+        /**
+         * The connection is owned by the server, so closing the output stream
+         * only flushes it.
+         *
+         * @throws IOException when an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                connection.send(ByteBuffer.wrap(buffer, 0, count));
+                buffer = new byte[BUFFER_SIZE];
+                count = 0;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - count) {
+                flush();
+                if (length >= buffer.length) {
+                    byte[] copy = new byte[length];
+                    System.arraycopy(bytes, offset, copy, 0, length);
+                    connection.send(ByteBuffer.wrap(copy));
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The selector thread used by the NIO implementation of HTTP server.
+ *
+ * <p>
+ * A selector thread owns a set of connections. All reads, writes and state
+ * changes of those connections happen on this thread, other threads hand it
+ * work through {@link #execute(Runnable)}.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class NioHttpServerSelectorThread implements Runnable {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(NioHttpServerSelectorThread.class.getPackageName());
+
+    /**
+     * Stores the selector.
+     */
+    private final Selector selector;
+
+    /**
+     * Stores the server.
+     */
+    private final NioHttpServer server;
+
+    /**
+     * Stores the stop request.
+     */
+    private volatile boolean stopRequest;
+
+    /**
+     * Stores the pending tasks.
+     */
+    private final Queue<Runnable> tasks;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server we are working for.
+     * @throws IOException when an I/O error occurs.
+     */
+    NioHttpServerSelectorThread(NioHttpServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Run a task on the selector thread.
+     *
+     * @param task the task.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Register a new connection.
+     *
+     * @param channel the socket channel.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioHttpServerConnection(server, this, channel, key));
+            } catch (IOException exception) {
+                LOGGER.log(WARNING, "An I/O error occurred while registering a connection", exception);
+                NioHttpServerConnection.closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * @see Runnable#run()
+     */
+    @Override
+    public void run() {
+        long lastIdleCheck = System.currentTimeMillis();
+        while (!stopRequest) {
+            try {
+                selector.select(1000);
+                Runnable task = tasks.poll();
+                while (task != null) {
+                    task.run();
+                    task = tasks.poll();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioHttpServerConnection connection = (NioHttpServerConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (IOException | CancelledKeyException exception) {
+                        LOGGER.log(DEBUG, "Closing connection after an I/O error", exception);
+                        connection.close();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    closeIdleConnections(now);
+                    lastIdleCheck = now;
+                }
+            } catch (IOException exception) {
+                LOGGER.log(WARNING, "An I/O error occurred while selecting", exception);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioHttpServerConnection connection) {
+                connection.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            LOGGER.log(DEBUG, "An I/O error occurred while closing the selector", exception);
+        }
+    }
+
+    /**
+     * Stop the selector thread.
+     */
+    void stop() {
+        stopRequest = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Close the connections that have been idle for too long.
+     *
+     * @param now the current time.
+     */
+    private void closeIdleConnections(long now) {
+        int timeout = server.getKeepAliveTimeout();
+        if (timeout <= 0) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioHttpServerConnection connection
+                    && connection.isIdle(now, timeout)) {
+                connection.close();
+            }
+        }
+    }
+}
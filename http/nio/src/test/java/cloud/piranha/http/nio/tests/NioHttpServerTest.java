@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.nio.tests;
+
+import cloud.piranha.http.api.HttpServer;
+import cloud.piranha.http.api.HttpServerProcessor;
+import cloud.piranha.http.api.HttpServerProcessorEndState;
+import static cloud.piranha.http.api.HttpServerProcessorEndState.COMPLETED;
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.api.HttpServerResponse;
+import cloud.piranha.http.nio.NioHttpServer;
+import cloud.piranha.http.tests.HttpServerTest;
+import cloud.piranha.http.tests.TestHttpServerProcessor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the NioHttpServer class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class NioHttpServerTest extends HttpServerTest {
+
+    /**
+     * Create the server.
+     *
+     * @param portNumber the port number.
+     * @return the HTTP server.
+     */
+    @Override
+    protected HttpServer createServer(int portNumber) {
+        return new NioHttpServer(portNumber, new TestHttpServerProcessor(), false);
+    }
+
+    /**
+     * Create the server.
+     *
+     * @param portNumber the port number.
+     * @param processor the HTTP server processor.
+     * @return the HTTP server.
+     */
+    @Override
+    protected HttpServer createServer(int portNumber, HttpServerProcessor processor) {
+        return new NioHttpServer(portNumber, processor, false);
+    }
+
+    /**
+     * Test pipelined requests on a persistent connection.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAlivePipelining() throws Exception {
+        HttpServer server = createServer(8751, NioHttpServerTest::echo);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8751)) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "POST /second HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n\r\nbody"
+                    + "GET /third HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.indexOf("/first:") < response.indexOf("/second:body"));
+            assertTrue(response.indexOf("/second:body") < response.indexOf("/third:"));
+            assertTrue(response.contains("Connection: close"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a query parameter with a malformed escape is skipped.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMalformedQueryParameter() throws Exception {
+        NioHttpServer server = new NioHttpServer(8767, (request, response) -> {
+            try {
+                response.setStatus(200);
+                response.setHeader("Content-Length", "0");
+                response.setHeader("X-Malformed", String.valueOf(request.getQueryParameter("a")));
+                response.setHeader("X-Name", request.getQueryParameter("name"));
+                response.writeStatusLine();
+                response.writeHeaders();
+            } catch (IOException ioe) {
+            }
+            return COMPLETED;
+        }, false);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8767)) {
+            socket.getOutputStream().write("GET /?a=%zz&name=value HTTP/1.1\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"));
+            assertTrue(response.contains("X-Malformed: null\r\n"));
+            assertTrue(response.contains("X-Name: value\r\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a header with several values is written as one line per value.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMultipleHeaderValues() throws Exception {
+        NioHttpServer server = new NioHttpServer(8766, (request, response) -> {
+            try {
+                response.setStatus(200);
+                response.setHeader("Content-Length", "0");
+                response.addHeader("Set-Cookie", "a=1; Expires=Thu, 01 Jan 1970 00:00:00 GMT");
+                response.addHeader("Set-Cookie", "b=2");
+                response.writeStatusLine();
+                response.writeHeaders();
+            } catch (IOException ioe) {
+            }
+            return COMPLETED;
+        }, false);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8766)) {
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.contains("\r\nSet-Cookie: a=1; Expires=Thu, 01 Jan 1970 00:00:00 GMT\r\n"
+                    + "Set-Cookie: b=2\r\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test a request is answered with 503 when the worker pool is saturated.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testServiceUnavailable() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        NioHttpServer server = new NioHttpServer(8750, (request, response) -> {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return echo(request, response);
+        }, false);
+        server.setWorkerThreads(1);
+        server.setWorkerQueueSize(1);
+        server.start();
+        try (Socket first = new Socket("localhost", 8750);
+                Socket second = new Socket("localhost", 8750);
+                Socket third = new Socket("localhost", 8750)) {
+            first.getOutputStream().write("GET /1 HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(200);
+            second.getOutputStream().write("GET /2 HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(200);
+            third.getOutputStream().write("GET /3 HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            String response = new String(third.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 503"));
+        } finally {
+            latch.countDown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test starting with SSL fails as it is not supported.
+     */
+    @Test
+    void testStartWithSSL() {
+        NioHttpServer server = new NioHttpServer(8747, new TestHttpServerProcessor(), true);
+        assertThrows(IllegalStateException.class, server::start);
+        assertFalse(server.isRunning());
+    }
+
+    /**
+     * Test the status line has a reason phrase, or at least the space before
+     * it.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testStatusLine() throws Exception {
+        NioHttpServer server = new NioHttpServer(8748, (request, response) -> {
+            try {
+                response.setStatus("/known".equals(request.getRequestTarget()) ? 404 : 299);
+                response.setHeader("Content-Length", "0");
+                response.writeStatusLine();
+                response.writeHeaders();
+            } catch (IOException ioe) {
+            }
+            return COMPLETED;
+        }, false);
+        server.start();
+        try (Socket socket = new Socket("localhost", 8748)) {
+            socket.getOutputStream().write(("GET /known HTTP/1.1\r\n\r\n"
+                    + "GET /unknown HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 404 Not Found\r\n"));
+            assertTrue(response.contains("HTTP/1.1 299 \r\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Test many connections that announce a large body and stall do not each
+     * hold a buffer of that size.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testStalledRequestBodies() throws Exception {
+        NioHttpServer server = new NioHttpServer(8749, NioHttpServerTest::echo, false);
+        server.setMaxRequestSize(10 * 1024 * 1024);
+        server.start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            for (int i = 0; i < 200; i++) {
+                Socket socket = new Socket("localhost", 8749);
+                sockets.add(socket);
+                socket.getOutputStream().write(("POST /stalled HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Content-Length: 10485760\r\n\r\nsome").getBytes(StandardCharsets.UTF_8));
+            }
+            try (Socket socket = new Socket("localhost", 8749)) {
+                socket.getOutputStream().write("GET /next HTTP/1.1\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(response.endsWith("/next:"));
+            }
+            System.gc();
+            long after = runtime.totalMemory() - runtime.freeMemory();
+            assertTrue(after - before < 200 * 1024 * 1024L);
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+
+    /**
+     * Echo the request target and body with a Content-Length.
+     *
+     * @param request the request.
+     * @param response the response.
+     * @return state.
+     */
+    private static HttpServerProcessorEndState echo(HttpServerRequest request, HttpServerResponse response) {
+        try {
+            byte[] body = (request.getRequestTarget() + ":"
+                    + new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                    .getBytes(StandardCharsets.UTF_8);
+            response.setStatus(200);
+            response.setHeader("Content-Length", Integer.toString(body.length));
+            response.writeStatusLine();
+            response.writeHeaders();
+            response.getOutputStream().write(body);
+        } catch (IOException ioe) {
+        }
+        return COMPLETED;
+    }
+}
@@ -52,6 +52,7 @@ public class HttpWebApplicationRequest extends DefaultWebApplicationRequest {
      */
     public HttpWebApplicationRequest(HttpServerRequest wrapped) {
         this.wrapped = wrapped;
+        this.trailerFields = () -> wrapped.isTrailerFieldsReady() ? wrapped.getTrailerFields() : null;
     }
 
     @Override
@@ -42,7 +42,6 @@ import cloud.piranha.webapp.impl.CookieParser;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 import java.io.IOException;
 import java.lang.System.Logger;
 import static java.lang.System.Logger.Level.ERROR;
@@ -51,7 +50,6 @@ import static java.lang.System.Logger.Level.WARNING;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
 
 /**
  * The default WebApplicationServer.
@@ -65,6 +63,16 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
      */
     private static final Logger LOGGER = System.getLogger(HttpWebApplicationServer.class.getPackageName());
 
+    /**
+     * Stores the recycled request/response pair of the current worker thread.
+     */
+    private final ThreadLocal<RecycledExchange> recycledExchange = ThreadLocal.withInitial(RecycledExchange::new);
+
+    /**
+     * Stores the recycling flag.
+     */
+    protected boolean recycling;
+
     /**
      * Stores the request mapper.
      */
@@ -81,6 +89,7 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
     public HttpWebApplicationServer() {
         this.requestMapper = new HttpWebApplicationServerRequestMapper();
         this.webApplications = new ConcurrentHashMap<>();
+        this.recycling = Boolean.getBoolean("piranha.recycle");
     }
 
     /**
@@ -112,7 +121,18 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
      * @return the web application server request.
      */
     private WebApplicationRequest createRequest(HttpServerRequest request) {
-        DefaultWebApplicationRequest applicationServerRequest = new DefaultWebApplicationRequest();
+        return createRequest(request, new DefaultWebApplicationRequest());
+    }
+
+    /**
+     * Populate the given web application server request.
+     *
+     * @param request the HTTP server request.
+     * @param applicationServerRequest the (new or recycled) web application
+     * server request.
+     * @return the web application server request.
+     */
+    private WebApplicationRequest createRequest(HttpServerRequest request, DefaultWebApplicationRequest applicationServerRequest) {
         copyHttpRequestToApplicationRequest(request, applicationServerRequest);
         applicationServerRequest.setServletPath("");
 
@@ -128,7 +148,7 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
                 applicationServerRequest.setContentLength(Integer.parseInt(value));
             }
             if (name.equalsIgnoreCase("COOKIE")) {
-                applicationServerRequest.setCookies(processCookies(applicationServerRequest, value));
+                processCookies(applicationServerRequest, value);
             }
         }
 
@@ -148,18 +168,13 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         return applicationServerRequest;
     }
 
-    private Cookie[] processCookies(DefaultWebApplicationRequest result, String cookiesValue) {
-        Cookie[] cookies = CookieParser.parse(cookiesValue);
-
-        Stream.of(cookies)
-                .filter(x -> "JSESSIONID".equals(x.getName()))
-                .findAny()
-                .ifPresent(cookie -> {
-                    result.setRequestedSessionIdFromCookie(true);
-                    result.setRequestedSessionId(cookie.getValue());
-                });
-
-        return cookies;
+    private void processCookies(DefaultWebApplicationRequest result, String cookiesValue) {
+        result.setCookieHeader(cookiesValue);
+        String sessionId = CookieParser.findValue(cookiesValue, "JSESSIONID");
+        if (sessionId != null) {
+            result.setRequestedSessionIdFromCookie(true);
+            result.setRequestedSessionId(sessionId);
+        }
     }
 
     private void copyHttpRequestToApplicationRequest(HttpServerRequest httpRequest, DefaultWebApplicationRequest applicationRequest) {
@@ -176,6 +191,7 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         applicationRequest.setQueryString(httpRequest.getQueryString());
         applicationRequest.setInputStream(httpRequest.getInputStream());
         applicationRequest.setProtocol(httpRequest.getProtocol());
+        applicationRequest.setTrailerFields(() -> httpRequest.isTrailerFieldsReady() ? httpRequest.getTrailerFields() : null);
     }
 
     /**
@@ -185,8 +201,20 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
      * @return the web application server response.
      */
     public DefaultWebApplicationResponse createResponse(HttpServerResponse httpResponse) {
-        DefaultWebApplicationResponse applicationResponse = new DefaultWebApplicationResponse();
+        return createResponse(httpResponse, new DefaultWebApplicationResponse());
+    }
+
+    /**
+     * Populate the given web application server response.
+     *
+     * @param httpResponse the HTTP server response.
+     * @param applicationResponse the (new or recycled) web application server
+     * response.
+     * @return the web application server response.
+     */
+    private DefaultWebApplicationResponse createResponse(HttpServerResponse httpResponse, DefaultWebApplicationResponse applicationResponse) {
         applicationResponse.setUnderlyingOutputStream(httpResponse.getOutputStream());
+        applicationResponse.setHeadCommitter(httpResponse::commitHead);
 
         applicationResponse.setResponseCloser(() -> {
             try {
@@ -199,6 +227,35 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         return applicationResponse;
     }
 
+    /**
+     * Is the request/response pair safe to recycle.
+     *
+     * <p>
+     * A pair is not recycled when async processing was started or the
+     * connection was upgraded, as the container keeps using the pair after
+     * the request returns, when the response was not committed or when the
+     * web application still has the response linked to the request.
+     * </p>
+     *
+     * @param request the request.
+     * @param response the response.
+     * @return true if it is, false otherwise.
+     */
+    private boolean isRecyclable(DefaultWebApplicationRequest request, DefaultWebApplicationResponse response) {
+        if (request.isAsyncStarted() || request.isUpgraded() || !response.isCommitted()) {
+            return false;
+        }
+        WebApplication webApplication = response.getWebApplication();
+        return webApplication == null || webApplication.getRequest(response) == null;
+    }
+
+    /**
+     * {@return the recycling flag}
+     */
+    public boolean isRecycling() {
+        return recycling;
+    }
+
     /**
      * {@return the request mapper}
      */
@@ -226,11 +283,30 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
     public HttpServerProcessorEndState process(HttpServerRequest request, HttpServerResponse response) {
         HttpServerProcessorEndState state = COMPLETED;
         try {
-            DefaultWebApplicationRequest serverRequest = (DefaultWebApplicationRequest) createRequest(request);
-            DefaultWebApplicationResponse serverResponse = (DefaultWebApplicationResponse) createResponse(response);
+            DefaultWebApplicationRequest serverRequest;
+            DefaultWebApplicationResponse serverResponse;
+            RecycledExchange exchange = recycling ? recycledExchange.get() : null;
+            if (exchange != null && exchange.request != null) {
+                serverRequest = exchange.request;
+                serverResponse = exchange.response;
+                exchange.request = null;
+                exchange.response = null;
+                serverRequest.reuse();
+                serverResponse.reuse();
+                createRequest(request, serverRequest);
+                createResponse(response, serverResponse);
+            } else {
+                serverRequest = (DefaultWebApplicationRequest) createRequest(request);
+                serverResponse = createResponse(response);
+            }
             service(serverRequest, serverResponse);
             if (serverRequest.isAsyncStarted()) {
                 state = ASYNCED;
+            } else if (exchange != null && isRecyclable(serverRequest, serverResponse)) {
+                serverRequest.recycle();
+                serverResponse.recycle();
+                exchange.request = serverRequest;
+                exchange.response = serverResponse;
             }
         } catch (Throwable t) {
             LOGGER.log(ERROR, "An error occurred while processing the request", t);
@@ -278,6 +354,24 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         }
     }
 
+    /**
+     * Set the recycling flag.
+     *
+     * <p>
+     * When set each worker thread keeps the request/response pair of its last
+     * request and resets it for the next request instead of allocating a new
+     * pair. Requests that start async processing or upgrade the connection are
+     * never recycled. As the pair is kept per thread this has no effect when
+     * each connection runs on its own virtual thread. It defaults to the
+     * 'piranha.recycle' system property.
+     * </p>
+     *
+     * @param recycling the recycling flag.
+     */
+    public void setRecycling(boolean recycling) {
+        this.recycling = recycling;
+    }
+
     /**
      * Set the request mapper.
      *
@@ -323,4 +417,20 @@ public class HttpWebApplicationServer implements HttpServerProcessor, WebApplica
         });
         LOGGER.log(INFO, "Stopped HTTP web application server");
     }
+
+    /**
+     * The recycled request/response pair of a worker thread.
+     */
+    private static final class RecycledExchange {
+
+        /**
+         * Stores the request.
+         */
+        DefaultWebApplicationRequest request;
+
+        /**
+         * Stores the response.
+         */
+        DefaultWebApplicationResponse response;
+    }
 }
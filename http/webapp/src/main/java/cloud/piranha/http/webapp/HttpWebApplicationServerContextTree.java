@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.webapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cloud.piranha.webapp.api.WebApplication;
+import cloud.piranha.webapp.impl.RegionTable;
+
+/**
+ * The immutable tree of context paths used by the
+ * HttpWebApplicationServerRequestMapper.
+ *
+ * <p>
+ * Every node stands for one segment of a context path, so routing a request
+ * URI is a single walk over its segments that remembers the deepest context
+ * path seen, and <code>/app</code> never matches <code>/application</code>.
+ * The segments are looked up as regions of the request URI, so routing does
+ * not allocate.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class HttpWebApplicationServerContextTree {
+
+    /**
+     * Stores the root node.
+     */
+    private final Node root;
+
+    /**
+     * Constructor.
+     *
+     * @param mappings the web applications by context path.
+     */
+    HttpWebApplicationServerContextTree(Map<String, WebApplication> mappings) {
+        NodeBuilder rootBuilder = new NodeBuilder();
+        mappings.forEach((contextPath, webApplication) -> {
+            NodeBuilder node = rootBuilder;
+            for (String segment : segments(contextPath)) {
+                node = node.children.computeIfAbsent(segment, key -> new NodeBuilder());
+            }
+            if (node.contextPath == null || node.contextPath.length() > contextPath.length()) {
+                node.contextPath = contextPath;
+                node.webApplication = webApplication;
+            }
+        });
+        root = rootBuilder.build();
+    }
+
+    /**
+     * Find the node with the longest context path matching the path.
+     *
+     * @param path the path.
+     * @return the node, or null if not found.
+     */
+    Node find(String path) {
+        Node node = root;
+        Node result = node.webApplication != null ? node : null;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end > start) {
+                node = node.children.get(path, start, end);
+                if (node == null) {
+                    break;
+                }
+                if (node.webApplication != null) {
+                    result = node;
+                }
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Split a context path into its non empty segments.
+     *
+     * @param contextPath the context path.
+     * @return the segments.
+     */
+    static String[] segments(String contextPath) {
+        return contextPath.chars().allMatch(c -> c == '/')
+                ? new String[0]
+                : contextPath.replaceAll("^/+|/+$", "").split("/+");
+    }
+
+    /**
+     * A node of the tree.
+     */
+    static final class Node {
+
+        /**
+         * Stores the context path mapped at this node, or null.
+         */
+        final String contextPath;
+
+        /**
+         * Stores the web application mapped at this node, or null.
+         */
+        final WebApplication webApplication;
+
+        /**
+         * Stores the children by segment.
+         */
+        private final RegionTable<Node> children;
+
+        /**
+         * Constructor.
+         *
+         * @param contextPath the context path.
+         * @param webApplication the web application.
+         * @param children the children.
+         */
+        private Node(String contextPath, WebApplication webApplication, RegionTable<Node> children) {
+            this.contextPath = contextPath;
+            this.webApplication = webApplication;
+            this.children = children;
+        }
+    }
+
+    /**
+     * The builder of a node.
+     */
+    private static final class NodeBuilder {
+
+        /**
+         * Stores the child builders by segment.
+         */
+        final HashMap<String, NodeBuilder> children = new HashMap<>();
+
+        /**
+         * Stores the context path.
+         */
+        String contextPath;
+
+        /**
+         * Stores the web application.
+         */
+        WebApplication webApplication;
+
+        /**
+         * Build the node.
+         *
+         * @return the node.
+         */
+        Node build() {
+            RegionTable.Builder<Node> builder = new RegionTable.Builder<>();
+            children.forEach((segment, child) -> builder.put(segment, child.build()));
+            return new Node(contextPath, webApplication, builder.build());
+        }
+    }
+}
@@ -27,7 +27,6 @@
  */
 package cloud.piranha.http.webapp;
 
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,6 +37,12 @@ import cloud.piranha.webapp.api.WebApplication;
 /**
  * The default WebApplicationServerRequestMapper.
  *
+ * <p>
+ * The context paths are routed with a tree of their segments that is copied
+ * and published again on every change, so routing a request does not lock
+ * while web applications are added or removed.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class HttpWebApplicationServerRequestMapper implements WebApplicationServerRequestMapper {
@@ -47,6 +52,11 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
      */
     private final ConcurrentHashMap<String, WebApplication> mappings = new ConcurrentHashMap<>();
 
+    /**
+     * Stores the context path tree.
+     */
+    private volatile HttpWebApplicationServerContextTree tree = new HttpWebApplicationServerContextTree(mappings);
+
     /**
      * Add a mapping.
      *
@@ -59,52 +69,44 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
         Set<String> result = new HashSet<>();
 
         for (String urlPattern : urlPatterns) {
-            if (this.mappings.containsKey(urlPattern)) {
+            if (this.mappings.putIfAbsent(urlPattern, webApplication) != null) {
                 result.add(urlPattern);
-            } else {
-                this.mappings.put(urlPattern, webApplication);
             }
         }
 
+        rebuildTree();
         return result;
     }
 
     /**
-     * Find a mapping for the given path.
+     * Remove a mapping.
      *
-     * @param path the path.
-     * @return the mapping, or null if not found.
+     * @param urlPatterns the url patterns to remove.
+     * @return the url patterns that were not mapped.
      */
-    @Override
-    public WebApplication findMapping(String path) {
-        WebApplication result = null;
-        String mapping = findPrefixMatch(path);
-        if (mapping != null) {
-            result = this.mappings.get(mapping);
+    public Set<String> removeMapping(String... urlPatterns) {
+        Set<String> result = new HashSet<>();
+
+        for (String urlPattern : urlPatterns) {
+            if (this.mappings.remove(urlPattern) == null) {
+                result.add(urlPattern);
+            }
         }
+
+        rebuildTree();
         return result;
     }
 
     /**
-     * Find a mapping with the longest prefix mapping.
+     * Find a mapping for the given path.
      *
      * @param path the path.
      * @return the mapping, or null if not found.
      */
-    private String findPrefixMatch(String path) {
-        String result = null;
-        String found;
-
-        for (;;) {
-            found = findPrefixMatch(path, result);
-            if (found != null) {
-                result = found;
-            } else {
-                break;
-            }
-        }
-
-        return result;
+    @Override
+    public WebApplication findMapping(String path) {
+        HttpWebApplicationServerContextTree.Node node = tree.find(path);
+        return node != null ? node.webApplication : null;
     }
 
     /**
@@ -116,23 +118,25 @@ public class HttpWebApplicationServerRequestMapper implements WebApplicationServ
      * @return the mapping, or null if not found.
      */
     public String findPrefixMatch(String path, String currentPrefix) {
-        String result = null;
-        Enumeration<String> prefixes = mappings.keys();
-
-        while (prefixes.hasMoreElements()) {
-            String prefix = prefixes.nextElement();
-            if (path.startsWith(prefix)) {
-                if (result == null) {
-                    result = prefix;
-                }
-                break;
-            }
-        }
-
+        HttpWebApplicationServerContextTree.Node node = tree.find(path);
+        String result = node != null ? node.contextPath : null;
         if (result != null && currentPrefix != null
                 && result.length() <= currentPrefix.length()) {
             result = null;
         }
         return result;
     }
+
+    /**
+     * Rebuild the context path tree.
+     *
+     * <p>
+     * Web applications are added and removed while the server keeps routing
+     * requests with the previous tree. When a deployment and an undeployment
+     * race, the lock makes the tree published last reflect both of them.
+     * </p>
+     */
+    private synchronized void rebuildTree() {
+        tree = new HttpWebApplicationServerContextTree(mappings);
+    }
 }
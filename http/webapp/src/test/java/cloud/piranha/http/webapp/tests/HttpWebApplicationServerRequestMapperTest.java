@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.http.webapp.tests;
+
+import cloud.piranha.http.webapp.HttpWebApplicationServerRequestMapper;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HttpWebApplicationServerRequestMapper class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HttpWebApplicationServerRequestMapperTest {
+
+    /**
+     * Test findMapping method picks the longest context path.
+     */
+    @Test
+    void testFindMapping() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        DefaultWebApplication root = new DefaultWebApplication();
+        DefaultWebApplication app = new DefaultWebApplication();
+        DefaultWebApplication nested = new DefaultWebApplication();
+        mapper.addMapping(root, "");
+        mapper.addMapping(app, "/app");
+        mapper.addMapping(nested, "/app/nested");
+        assertEquals(root, mapper.findMapping("/"));
+        assertEquals(root, mapper.findMapping("/other/index.html"));
+        assertEquals(app, mapper.findMapping("/app"));
+        assertEquals(app, mapper.findMapping("/app/"));
+        assertEquals(app, mapper.findMapping("/app/index.html"));
+        assertEquals(nested, mapper.findMapping("/app/nested/index.html"));
+        assertEquals(app, mapper.findMapping("/app/nestedx"));
+    }
+
+    /**
+     * Test findMapping method only matches whole segments.
+     */
+    @Test
+    void testFindMapping2() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        mapper.addMapping(new DefaultWebApplication(), "/app");
+        assertNull(mapper.findMapping("/application"));
+        assertNull(mapper.findMapping("/"));
+    }
+
+    /**
+     * Test removeMapping method.
+     */
+    @Test
+    void testRemoveMapping() {
+        HttpWebApplicationServerRequestMapper mapper = new HttpWebApplicationServerRequestMapper();
+        DefaultWebApplication root = new DefaultWebApplication();
+        DefaultWebApplication app = new DefaultWebApplication();
+        mapper.addMapping(root, "");
+        assertTrue(mapper.addMapping(app, "/app").isEmpty());
+        assertEquals(Set.of("/app"), mapper.addMapping(root, "/app"));
+        assertEquals(app, mapper.findMapping("/app/index.html"));
+        assertTrue(mapper.removeMapping("/app").isEmpty());
+        assertEquals(root, mapper.findMapping("/app/index.html"));
+        assertEquals(Set.of("/app"), mapper.removeMapping("/app"));
+    }
+}
@@ -30,16 +30,34 @@ package cloud.piranha.http.webapp.tests;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.http.impl.DefaultHttpServer;
 import cloud.piranha.http.api.HttpServer;
+import cloud.piranha.http.api.HttpServerRequest;
+import cloud.piranha.http.api.HttpServerResponse;
 import cloud.piranha.http.webapp.HttpWebApplicationServer;
 import cloud.piranha.http.webapp.HttpWebApplicationServerRequestMapper;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -180,4 +198,399 @@ class HttpWebApplicationServerTest {
         httpServer.stop();
         server.stop();
     }
+
+    /**
+     * Test a response that does not fit in the buffer is sent chunked.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChunkedResponse() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8183, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("large", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().print("x".repeat(20000));
+            }
+        });
+        application.addServletMapping("large", "/large");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8183/context/large")).build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals("chunked", response.headers().firstValue("Transfer-Encoding").orElse(null));
+            assertEquals(20000, response.body().length());
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        httpServer.stop();
+        server.stop();
+    }
+
+    /**
+     * Test a chunked request body is decoded for the servlet.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChunkedRequest() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8184, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("upload", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().print(request.getInputStream().readAllBytes().length);
+            }
+        });
+        application.addServletMapping("upload", "/upload");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:8184/context/upload"))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[100000])))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals("100000", response.body());
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        httpServer.stop();
+        server.stop();
+    }
+
+    /**
+     * Test the trailer fields of a chunked request body are available to the
+     * servlet once it read the body.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChunkedRequestTrailerFields() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8185, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("upload", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                boolean readyBefore = request.isTrailerFieldsReady();
+                request.getInputStream().readAllBytes();
+                response.getWriter().print(readyBefore + ":" + request.isTrailerFieldsReady()
+                        + ":" + request.getTrailerFields());
+            }
+        });
+        application.addServletMapping("upload", "/upload");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try (Socket socket = new Socket("localhost", 8185)) {
+            socket.getOutputStream().write(("POST /context/upload HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Transfer-Encoding: chunked\r\nConnection: close\r\n\r\n"
+                    + "5\r\nHello\r\n0\r\nChecksum: 1234\r\nX-Tag: a\r\nx-tag: b\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"));
+            assertTrue(response.contains("false:true:{checksum=1234, x-tag=a,b}"));
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test servlet responses keep the connection alive for the next request.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAlive() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8185, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("snoop", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().print("x".repeat(Integer.parseInt(request.getParameter("size"))));
+            }
+        });
+        application.addServletMapping("snoop", "/snoop");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try (Socket socket = new Socket("localhost", 8185)) {
+            socket.setSoTimeout(10000);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+            output.write("GET /context/snoop?size=5 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                int c = input.read();
+                assertTrue(c != -1);
+                head.append((char) c);
+            }
+            assertTrue(head.toString().startsWith("HTTP/1.1 200"));
+            assertTrue(head.toString().contains("Content-Length: 5\r\n"));
+            assertTrue(!head.toString().contains("Connection: close"));
+            assertEquals("xxxxx", new String(input.readNBytes(5), StandardCharsets.US_ASCII));
+            output.write(("GET /context/snoop?size=20000 HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            String second = new String(input.readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(second.startsWith("HTTP/1.1 200"));
+            assertTrue(second.contains("Transfer-Encoding: chunked\r\n"));
+            assertTrue(second.endsWith("\r\n0\r\n\r\n"));
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test an HTTP/1.0 connection is kept alive with a keep-alive header.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testKeepAliveHttp10() throws Exception {
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        HttpServer httpServer = new DefaultHttpServer(8186, server, false);
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("snoop", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setContentLength(5);
+                response.getWriter().print("xxxxx");
+            }
+        });
+        application.addServletMapping("snoop", "/snoop");
+        server.addWebApplication(application);
+        server.initialize();
+        server.start();
+        httpServer.start();
+        try (Socket socket = new Socket("localhost", 8186)) {
+            socket.setSoTimeout(10000);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+            output.write("GET /context/snoop HTTP/1.0\r\nConnection: keep-alive\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                int c = input.read();
+                assertTrue(c != -1);
+                head.append((char) c);
+            }
+            assertTrue(head.toString().contains("Connection: keep-alive\r\n"));
+            assertEquals("xxxxx", new String(input.readNBytes(5), StandardCharsets.US_ASCII));
+            output.write("GET /context/snoop HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            String second = new String(input.readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(second.contains("Connection: close\r\n"));
+            assertTrue(second.endsWith("xxxxx"));
+        } finally {
+            httpServer.stop();
+            server.stop();
+        }
+    }
+
+    /**
+     * Test process method with recycling.
+     */
+    @Test
+    void testProcessRecycling() {
+        List<HttpServletRequest> requests = new ArrayList<>();
+        HttpWebApplicationServer server = new HttpWebApplicationServer();
+        DefaultWebApplication application = new DefaultWebApplication();
+        application.setContextPath("/context");
+        application.addServlet("hello", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                requests.add(request);
+                response.getWriter().print("Hello " + request.getQueryString());
+            }
+        });
+        application.addServletMapping("hello", "/hello");
+        server.addWebApplication(application);
+        server.setRecycling(true);
+        assertTrue(server.isRecycling());
+        server.initialize();
+        server.start();
+        TestHttpServerResponse response1 = new TestHttpServerResponse();
+        server.process(new TestHttpServerRequest("/context/hello", "1"), response1);
+        TestHttpServerResponse response2 = new TestHttpServerResponse();
+        server.process(new TestHttpServerRequest("/context/hello", "2"), response2);
+        assertTrue(response1.getBody().endsWith("Hello 1"));
+        assertTrue(response2.getBody().endsWith("Hello 2"));
+        assertSame(requests.get(0), requests.get(1));
+        assertThrows(IllegalStateException.class, () -> requests.get(1).getInputStream());
+        server.setRecycling(false);
+        server.process(new TestHttpServerRequest("/context/hello", "3"), new TestHttpServerResponse());
+        assertNotSame(requests.get(1), requests.get(2));
+        server.stop();
+    }
+
+    /**
+     * A minimal HttpServerRequest for calling the process method directly.
+     */
+    static class TestHttpServerRequest implements HttpServerRequest {
+
+        /**
+         * Stores the request target.
+         */
+        private final String requestTarget;
+
+        /**
+         * Stores the query string.
+         */
+        private final String queryString;
+
+        /**
+         * Constructor.
+         *
+         * @param requestTarget the request target.
+         * @param queryString the query string.
+         */
+        TestHttpServerRequest(String requestTarget, String queryString) {
+            this.requestTarget = requestTarget;
+            this.queryString = queryString;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getHeaders(String name) {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public Iterator<String> getHeaderNames() {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public String getLocalAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getLocalHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 8080;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getQueryParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public String getQueryString() {
+            return queryString;
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHostname() {
+            return "localhost";
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 50000;
+        }
+
+        @Override
+        public String getRequestTarget() {
+            return requestTarget;
+        }
+    }
+
+    /**
+     * A minimal HttpServerResponse collecting the bytes written.
+     */
+    static class TestHttpServerResponse implements HttpServerResponse {
+
+        /**
+         * Stores the output stream.
+         */
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        @Override
+        public void addHeader(String name, String value) {
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+        }
+
+        @Override
+        public void setStatus(int status) {
+        }
+
+        @Override
+        public void writeHeaders() throws IOException {
+        }
+
+        @Override
+        public void writeStatusLine() throws IOException {
+        }
+
+        /**
+         * {@return the bytes written as a string}
+         */
+        String getBody() {
+            return outputStream.toString();
+        }
+    }
 }
@@ -32,7 +32,6 @@ import cloud.piranha.webapp.impl.CookieParser;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,7 +41,6 @@ import java.util.Map;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 /**
  * The inner Piranha Micro application.
@@ -115,7 +113,7 @@ public class MicroInnerApplication implements Consumer<Map<String, Object>> {
                     applicationRequest.setContentLength(Integer.parseInt(value));
                 }
                 if (name.equalsIgnoreCase("COOKIE")) {
-                    applicationRequest.setCookies(processCookies(applicationRequest, value));
+                    processCookies(applicationRequest, value);
                 }
             }
         }
@@ -124,18 +122,13 @@ public class MicroInnerApplication implements Consumer<Map<String, Object>> {
         return applicationRequest;
     }
 
-    private static Cookie[] processCookies(DefaultWebApplicationRequest result, String cookiesValue) {
-        Cookie[] cookies = CookieParser.parse(cookiesValue);
-
-        Stream.of(cookies)
-            .filter(x -> "JSESSIONID".equals(x.getName()))
-            .findAny()
-            .ifPresent(cookie -> {
-                result.setRequestedSessionIdFromCookie(true);
-                result.setRequestedSessionId(cookie.getValue());
-            });
-
-        return cookies;
+    private static void processCookies(DefaultWebApplicationRequest result, String cookiesValue) {
+        result.setCookieHeader(cookiesValue);
+        String sessionId = CookieParser.findValue(cookiesValue, "JSESSIONID");
+        if (sessionId != null) {
+            result.setRequestedSessionIdFromCookie(true);
+            result.setRequestedSessionId(sessionId);
+        }
     }
 
     private DefaultWebApplicationResponse copyMapToApplicationResponse(Map<String, Object> requestMap) {
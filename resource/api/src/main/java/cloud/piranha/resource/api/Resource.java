@@ -66,4 +66,21 @@ public interface Resource {
     default String getName() {
         return "";
     }
+
+    /**
+     * Get the modification time of a location.
+     *
+     * <p>
+     * The modification time of a directory changes when an entry is added
+     * to or removed from it, which lets callers notice such changes without
+     * looking up every entry again.
+     * </p>
+     *
+     * @param location the location.
+     * @return the modification time, or 0 if it is not known or the resource
+     * does not change.
+     */
+    default long getLastModified(String location) {
+        return 0;
+    }
 }
@@ -84,4 +84,21 @@ public interface ResourceManager {
      */
     List<Resource> getResourceList();
 
+    /**
+     * Get the modification times of a location.
+     *
+     * @param location the location.
+     * @return the modification times, one for each resource in the order of
+     * the resource list.
+     * @see Resource#getLastModified(String)
+     */
+    default long[] getLastModified(String location) {
+        List<Resource> resources = getResourceList();
+        long[] result = new long[resources.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = resources.get(i).getLastModified(location);
+        }
+        return result;
+    }
+
 }
@@ -116,6 +116,15 @@ public class AliasedDirectoryResource implements Resource {
         return Stream.empty();
     }
 
+    @Override
+    public long getLastModified(String location) {
+        long result = 0;
+        if (location.startsWith(alias)) {
+            result = new File(rootDirectory, location.substring(alias.length())).lastModified();
+        }
+        return result;
+    }
+
     /**
      * {@return the alias}
      */
@@ -131,6 +131,11 @@ public class DirectoryResource implements Resource {
         }
     }
 
+    @Override
+    public long getLastModified(String location) {
+        return new File(rootDirectory, location).lastModified();
+    }
+
     /**
      * {@return the root directory}
      */
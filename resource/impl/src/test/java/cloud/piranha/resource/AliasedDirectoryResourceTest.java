@@ -94,6 +94,17 @@ class AliasedDirectoryResourceTest {
         assertNull(resource.getResourceAsStream("/alias/cloud/piranha/DirectoryResource.class"));
     }
 
+    /**
+     * Test getLastModified method.
+     */
+    @Test
+    void testGetLastModified() {
+        File directory = new File("src/main/java/cloud/piranha/resource");
+        AliasedDirectoryResource resource = new AliasedDirectoryResource(new File("src/main/java"), "/alias");
+        assertEquals(directory.lastModified(), resource.getLastModified("/alias/cloud/piranha/resource"));
+        assertEquals(0, resource.getLastModified("/cloud/piranha/resource"));
+    }
+
     /**
      * Test getAlias method.
      */
@@ -54,6 +54,7 @@ import cloud.piranha.webapp.api.WebApplicationServerRequestMapper;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationClassLoader;
 import cloud.piranha.webapp.impl.DefaultWebApplicationExtensionContext;
+import cloud.piranha.webapp.impl.PassivatingHttpSessionManager;
 
 import static java.lang.System.Logger.Level.INFO;
 
@@ -70,6 +71,15 @@ import static java.lang.System.Logger.Level.INFO;
  * removing the piranha.pid file that should be created by the startup script.
  * </p>
  *
+ * <p>
+ * When the cloud.piranha.session.passivation.enable system property is true
+ * the sessions of every web application are passivated to the sessions
+ * directory. The cloud.piranha.session.passivation.maxActiveSessions,
+ * maxActiveBytes and maxIdleTime (in seconds) system properties set the budget
+ * for the sessions kept in memory, which defaults to 10000 sessions, 64 MB and
+ * 300 seconds. A value of -1 removes that limit.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class ServerPiranha implements Runnable {
@@ -211,6 +221,19 @@ public class ServerPiranha implements Runnable {
                         setupLayers(classLoader);
                     }
 
+                    if (Boolean.getBoolean("cloud.piranha.session.passivation.enable")) {
+                        PassivatingHttpSessionManager sessionManager = new PassivatingHttpSessionManager(
+                                new File("sessions", contextPath + ".dat").toPath());
+                        sessionManager.setMaxActiveSessions(Integer.getInteger(
+                                "cloud.piranha.session.passivation.maxActiveSessions", 10000));
+                        sessionManager.setMaxActiveBytes(Long.getLong(
+                                "cloud.piranha.session.passivation.maxActiveBytes", 64 * 1024 * 1024L));
+                        sessionManager.setMaxIdleTime(Integer.getInteger(
+                                "cloud.piranha.session.passivation.maxIdleTime", 300));
+                        sessionManager.setWebApplication(webApplication);
+                        webApplication.setHttpSessionManager(sessionManager);
+                    }
+
                     if (classLoader.getResource("/META-INF/services/" + WebApplicationExtension.class.getName()) == null) {
                         DefaultWebApplicationExtensionContext extensionContext = new DefaultWebApplicationExtensionContext();
                         extensionContext.add(ServerExtension.class);
@@ -130,7 +130,7 @@ public interface HttpSessionManager {
     Set<SessionTrackingMode> getEffectiveSessionTrackingModes();
 
     /**
-     * {@return the session}
+     * {@return the session, or null if there is no such session}
      * @param request the request.
      * @param currentSessionId the current session id.
      */
@@ -156,6 +156,20 @@ public interface HttpSessionManager {
      */
     boolean hasSession(String sessionId);
 
+    /**
+     * Release the session of a request that is done.
+     *
+     * <p>
+     * This is called after the request destroyed listeners have been invoked
+     * so a session manager that keeps its sessions outside of the web
+     * application can write back what the request changed.
+     * </p>
+     *
+     * @param request the request.
+     */
+    default void releaseSession(HttpServletRequest request) {
+    }
+
     /**
      * Set the session timeout (in minutes).
      *
@@ -62,6 +62,71 @@ public class CookieParser {
         return parseNetscape(cookieValues);
     }
 
+    /**
+     * Find the value of a cookie in the Cookie header.
+     *
+     * <p>
+     * The header is scanned in a single pass without creating any Cookie, so
+     * looking up the session cookie only allocates its value.
+     * </p>
+     *
+     * @param cookieValues the Cookie header, without "Cookie:"
+     * @param name the name of the cookie.
+     * @return the value of the first cookie with the given name (without
+     * quotes), or null if not there
+     * @throws NullPointerException if cookieValues is null
+     */
+    public static String findValue(String cookieValues, String name) {
+        Objects.requireNonNull(cookieValues);
+        boolean rfc2109 = cookieValues.startsWith(VERSION);
+        int length = cookieValues.length();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            int equals = -1;
+            while (end < length) {
+                char c = cookieValues.charAt(end);
+                if (c == ';' || c == ',' && rfc2109) {
+                    break;
+                }
+                if (c == '=' && equals == -1) {
+                    equals = end;
+                }
+                end++;
+            }
+            if (equals != -1) {
+                int nameStart = skipWhitespace(cookieValues, start, equals);
+                int nameEnd = trimWhitespace(cookieValues, nameStart, equals);
+                if (nameEnd - nameStart == name.length() && cookieValues.regionMatches(nameStart, name, 0, name.length())) {
+                    int valueStart = skipWhitespace(cookieValues, equals + 1, end);
+                    int valueEnd = trimWhitespace(cookieValues, valueStart, end);
+                    if (valueEnd - valueStart >= 2 && cookieValues.charAt(valueStart) == '"'
+                            && cookieValues.charAt(valueEnd - 1) == '"') {
+                        valueStart++;
+                        valueEnd--;
+                    }
+                    return cookieValues.substring(valueStart, valueEnd);
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(String string, int start, int end) {
+        while (start < end && string.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(String string, int start, int end) {
+        while (end > start && string.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
     private static Cookie[] parseNetscape(String cookiesValue) {
         ArrayList<Cookie> cookieList = new ArrayList<>();
         String[] cookieCandidates = cookiesValue.split(";");
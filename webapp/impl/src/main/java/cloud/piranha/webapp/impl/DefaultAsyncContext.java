@@ -251,12 +251,14 @@ public class DefaultAsyncContext implements AsyncContext {
             });
         }
 
-        LOGGER.log(DEBUG, () -> "Flushing async asyncStartResponse buffer");
+        if (asyncStartResponse != originalResponse) {
+            LOGGER.log(DEBUG, () -> "Flushing async asyncStartResponse buffer");
 
-        try {
-            asyncStartResponse.flushBuffer();
-        } catch (IOException ioe) {
-            LOGGER.log(WARNING, () -> "IOException when flushing async asyncStartResponse buffer", ioe);
+            try {
+                asyncStartResponse.flushBuffer();
+            } catch (IOException ioe) {
+                LOGGER.log(WARNING, () -> "IOException when flushing async asyncStartResponse buffer", ioe);
+            }
         }
 
         originalResponse.closeAsyncResponse();
@@ -280,7 +282,7 @@ public class DefaultAsyncContext implements AsyncContext {
 
         LOGGER.log(DEBUG, () -> "Flushing async asyncStartResponse buffer");
 
-        if (!asyncStartResponse.isCommitted()) {
+        if (asyncStartResponse != originalResponse && !asyncStartResponse.isCommitted()) {
             try {
                 asyncStartResponse.flushBuffer();
             } catch (IOException ioe) {
@@ -346,7 +348,7 @@ public class DefaultAsyncContext implements AsyncContext {
     @Override
     public void start(Runnable runnable) {
         LOGGER.log(DEBUG, "Starting async context with: {0}", runnable);
-        Thread thread = new Thread(runnable);
+        Thread thread = DefaultAsyncThreads.newThread(runnable);
         thread.start();
     }
 
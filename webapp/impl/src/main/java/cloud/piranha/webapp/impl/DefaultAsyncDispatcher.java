@@ -91,7 +91,7 @@ public class DefaultAsyncDispatcher implements AsyncDispatcher {
         AsyncContext asyncContext = asyncStartRequest.getAsyncContext();
         RequestDispatcher requestDispatcher = webApplication.getRequestDispatcher(path);
 
-        new Thread(() -> {
+        DefaultAsyncThreads.newThread(() -> {
             Thread.currentThread().setContextClassLoader(webApplication.getClassLoader());
 
             ServletRequest dispatchedRequest = addAsyncWrapper(asyncStartRequest);
@@ -53,6 +53,13 @@ public class DefaultAttributeManager implements AttributeManager {
         attributes = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Remove all the attributes.
+     */
+    public void clear() {
+        attributes.clear();
+    }
+
     @Override
     public Object getAttribute(String name) {
         return attributes.get(name);
@@ -30,6 +30,7 @@ package cloud.piranha.webapp.impl;
 import static jakarta.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
@@ -115,8 +116,21 @@ public class DefaultFilterChain implements FilterChain {
             request.setAttribute(DefaultServletEnvironment.class.getName(), servlet.getServletConfig());
             try {
                 if (servlet instanceof SingleThreadModel) {
-                    synchronized (servlet) {
-                        servlet.service(request, response);
+                    if (servletInvocation != null
+                            && servletInvocation.getServletEnvironment() instanceof DefaultServletEnvironment environment) {
+                        // A lock instead of synchronized, so a virtual thread
+                        // waiting for the servlet does not pin its carrier.
+                        Lock lock = environment.getSingleThreadModelLock();
+                        lock.lock();
+                        try {
+                            servlet.service(request, response);
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else {
+                        synchronized (servlet) {
+                            servlet.service(request, response);
+                        }
                     }
                 } else {
                     servlet.service(request, response);
@@ -27,40 +27,81 @@
  */
 package cloud.piranha.webapp.impl;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 
 import cloud.piranha.webapp.api.HttpHeaderManager;
 
 /**
  * The default HttpHeaderManager.
  *
+ * <p>
+ * The headers are kept in insertion order and found through a small open
+ * addressing table keyed by an ASCII case-insensitive hash of the name, so
+ * looking up a header does not allocate.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultHttpHeaderManager implements HttpHeaderManager {
 
     /**
-     * Stores the headers.
+     * Defines the formatter for parsing date headers.
+     */
+    private static final DateTimeFormatter DATE_FORMAT = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern("EEE, d MMM yyyy HH:mm:ss zzz")
+            .toFormatter(Locale.US);
+
+    /**
+     * Defines the initial number of slots, enough for 16 headers.
+     */
+    private static final int INITIAL_SLOTS = 32;
+
+    /**
+     * Stores the headers in insertion order.
+     */
+    private DefaultHttpHeader[] headers;
+
+    /**
+     * Stores the hashes of the header names in insertion order.
+     */
+    private int[] hashes;
+
+    /**
+     * Stores the number of headers.
      */
-    protected final HashMap<String, DefaultHttpHeader> headers;
+    private int size;
 
     /**
-     * Stores the Locale.
+     * Stores the slots, each holding the index of a header plus one or 0 when
+     * empty.
      */
-    private Locale locale;
+    private int[] slots;
 
     /**
      * Constructor.
      */
     public DefaultHttpHeaderManager() {
-        headers = new HashMap<>();
-        locale = new Locale("en", "US", "ISO-8859-1");
+        headers = new DefaultHttpHeader[INITIAL_SLOTS / 2];
+        hashes = new int[INITIAL_SLOTS / 2];
+        slots = new int[INITIAL_SLOTS];
+    }
+
+    /**
+     * Remove all the headers.
+     */
+    public void clear() {
+        Arrays.fill(headers, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
     }
 
     /**
@@ -71,11 +112,12 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public void addHeader(String name, String value) {
-        if (headers.containsKey(name.toUpperCase(locale))) {
-            headers.get(name.toUpperCase(locale)).addValue(value);
+        int hash = hash(name);
+        int index = indexOf(name, hash);
+        if (index != -1) {
+            headers[index].addValue(value);
         } else {
-            DefaultHttpHeader header = new DefaultHttpHeader(name, value);
-            headers.put(name.toUpperCase(locale), header);
+            insert(new DefaultHttpHeader(name, value), hash);
         }
     }
 
@@ -87,7 +129,7 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public boolean containsHeader(String name) {
-        return headers.containsKey(name.toUpperCase(locale));
+        return indexOf(name, hash(name)) != -1;
     }
 
     /**
@@ -97,13 +139,11 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
     @Override
     public long getDateHeader(String name) throws IllegalArgumentException {
         long result = -1;
-        if (headers.containsKey(name.toUpperCase(locale))) {
-            DefaultHttpHeader header = headers.get(name.toUpperCase(locale));
+        DefaultHttpHeader header = find(name);
+        if (header != null) {
             try {
-                String value = header.getValue();
-                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
-                result = format.parse(value).getTime();
-            } catch (ParseException exception) {
+                result = ZonedDateTime.parse(header.getValue(), DATE_FORMAT).toInstant().toEpochMilli();
+            } catch (DateTimeParseException exception) {
                 throw new IllegalArgumentException(
                         "Cannot convert header to a date", exception);
             }
@@ -119,11 +159,8 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public String getHeader(String name) {
-        String result = null;
-        if (headers.containsKey(name.toUpperCase(locale))) {
-            result = headers.get(name.toUpperCase(locale)).getValue();
-        }
-        return result;
+        DefaultHttpHeader header = find(name);
+        return header != null ? header.getValue() : null;
     }
 
     /**
@@ -131,11 +168,28 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public Enumeration<String> getHeaderNames() {
-        List<String> names = new ArrayList<>();
-        for (DefaultHttpHeader header : headers.values()) {
-            names.add(header.getName());
-        }
-        return Collections.enumeration(names);
+        DefaultHttpHeader[] current = headers;
+        int count = size;
+        return new Enumeration<>() {
+
+            /**
+             * Stores the position.
+             */
+            private int position;
+
+            @Override
+            public boolean hasMoreElements() {
+                return position < count;
+            }
+
+            @Override
+            public String nextElement() {
+                if (position >= count) {
+                    throw new NoSuchElementException();
+                }
+                return current[position++].getName();
+            }
+        };
     }
 
     /**
@@ -146,11 +200,8 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public Enumeration<String> getHeaders(String name) {
-        Enumeration<String> result = Collections.enumeration(Collections.emptyList());
-        if (headers.containsKey(name.toUpperCase(locale))) {
-            result = headers.get(name.toUpperCase(locale)).getValues();
-        }
-        return result;
+        DefaultHttpHeader header = find(name);
+        return header != null ? header.getValues() : Collections.emptyEnumeration();
     }
 
     /**
@@ -160,8 +211,8 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
     @Override
     public int getIntHeader(String name) throws NumberFormatException {
         int result = -1;
-        if (headers.containsKey(name.toUpperCase(locale))) {
-            DefaultHttpHeader header = headers.get(name.toUpperCase(locale));
+        DefaultHttpHeader header = find(name);
+        if (header != null) {
             try {
                 result = Integer.parseInt(header.getValue());
             } catch (NumberFormatException exception) {
@@ -180,7 +231,98 @@ public class DefaultHttpHeaderManager implements HttpHeaderManager {
      */
     @Override
     public void setHeader(String name, String value) {
-        DefaultHttpHeader header = new DefaultHttpHeader(name, value);
-        headers.put(name.toUpperCase(locale), header);
+        int hash = hash(name);
+        int index = indexOf(name, hash);
+        if (index != -1) {
+            headers[index] = new DefaultHttpHeader(name, value);
+        } else {
+            insert(new DefaultHttpHeader(name, value), hash);
+        }
+    }
+
+    /**
+     * Find the header.
+     *
+     * @param name the header name.
+     * @return the header, or null if not found.
+     */
+    private DefaultHttpHeader find(String name) {
+        int index = indexOf(name, hash(name));
+        return index != -1 ? headers[index] : null;
+    }
+
+    /**
+     * Get the index of the header.
+     *
+     * @param name the header name.
+     * @param hash the hash of the header name.
+     * @return the index, or -1 if not found.
+     */
+    private int indexOf(String name, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            int index = entry - 1;
+            if (hashes[index] == hash && headers[index].getName().equalsIgnoreCase(name)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Insert a header that is not there yet.
+     *
+     * @param header the header.
+     * @param hash the hash of the header name.
+     */
+    private void insert(DefaultHttpHeader header, int hash) {
+        if (size == headers.length) {
+            headers = Arrays.copyOf(headers, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < size; i++) {
+                place(hashes[i], i);
+            }
+        }
+        headers[size] = header;
+        hashes[size] = hash;
+        place(hash, size);
+        size++;
+    }
+
+    /**
+     * Place the index of a header in the first free slot for its hash.
+     *
+     * @param hash the hash of the header name.
+     * @param index the index of the header.
+     */
+    private void place(int hash, int index) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    /**
+     * Compute the ASCII case-insensitive hash of a header name.
+     *
+     * @param name the header name.
+     * @return the hash.
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
     }
 }
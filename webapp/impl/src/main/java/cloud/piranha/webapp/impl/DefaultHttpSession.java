@@ -27,9 +27,8 @@
  */
 package cloud.piranha.webapp.impl;
 
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import jakarta.servlet.ServletContext;
@@ -49,13 +48,19 @@ public class DefaultHttpSession implements HttpSession {
     /**
      * Stores the attributes.
      */
-    private HashMap<String, Object> attributes = new HashMap<>();
+    private final HttpSessionAttributeStore attributes;
 
     /**
      * Stores the creation time.
      */
     private long creationTime;
 
+    /**
+     * Stores the tick the session is scheduled to expire at by the reaper, or
+     * -1 when it is not scheduled.
+     */
+    volatile long expiryTick = -1;
+
     /**
      * Stores the session id.
      */
@@ -64,12 +69,12 @@ public class DefaultHttpSession implements HttpSession {
     /**
      * Stores the last accessed time.
      */
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime;
 
     /**
      * Stores the max inactive interval.
      */
-    private int maxInactiveInterval;
+    private volatile int maxInactiveInterval;
 
     /**
      * Stores if the session is new.
@@ -89,7 +94,7 @@ public class DefaultHttpSession implements HttpSession {
     /**
      * Stores the valid flag.
      */
-    private boolean valid;
+    private volatile boolean valid;
 
     /**
      * Constructor.
@@ -97,6 +102,7 @@ public class DefaultHttpSession implements HttpSession {
      * @param servletContext the servlet context.
      */
     public DefaultHttpSession(ServletContext servletContext) {
+        this.attributes = new HttpSessionAttributeStore();
         this.id = UUID.randomUUID().toString();
         this.servletContext = servletContext;
         this.creationTime = System.currentTimeMillis();
@@ -112,6 +118,7 @@ public class DefaultHttpSession implements HttpSession {
      * @param newFlag the new flag.
      */
     public DefaultHttpSession(ServletContext servletContext, String id, boolean newFlag) {
+        this.attributes = new HttpSessionAttributeStore();
         this.id = id;
         this.servletContext = servletContext;
         this.newFlag = newFlag;
@@ -120,6 +127,27 @@ public class DefaultHttpSession implements HttpSession {
         this.valid = true;
     }
 
+    /**
+     * Constructor for a session that is activated.
+     *
+     * @param servletContext the servlet context.
+     * @param id the id.
+     * @param creationTime the creation time.
+     * @param lastAccessedTime the last accessed time.
+     * @param maxInactiveInterval the max inactive interval.
+     * @param attributes the attributes.
+     */
+    DefaultHttpSession(ServletContext servletContext, String id, long creationTime,
+            long lastAccessedTime, int maxInactiveInterval, Map<String, Object> attributes) {
+        this.attributes = new HttpSessionAttributeStore(attributes);
+        this.id = id;
+        this.servletContext = servletContext;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = lastAccessedTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.valid = true;
+    }
+
     @Override
     public Object getAttribute(String name) {
         verifyValid("getAttribute");
@@ -129,7 +157,14 @@ public class DefaultHttpSession implements HttpSession {
     @Override
     public Enumeration<String> getAttributeNames() {
         verifyValid("getAttributeNames");
-        return Collections.enumeration(attributes.keySet());
+        return attributes.getNames();
+    }
+
+    /**
+     * {@return the attribute store}
+     */
+    public HttpSessionAttributeStore getAttributeStore() {
+        return attributes;
     }
 
     @Override
@@ -172,7 +207,7 @@ public class DefaultHttpSession implements HttpSession {
     @Override
     public String[] getValueNames() {
         verifyValid("getValueNames");
-        return this.attributes.keySet().toArray(new String[0]);
+        return attributes.getNamesArray();
     }
 
     @Override
@@ -208,12 +243,8 @@ public class DefaultHttpSession implements HttpSession {
     public void setAttribute(String name, Object value) {
         verifyValid("setAttribute");
         if (value != null) {
-            boolean added = true;
-            if (attributes.containsKey(name)) {
-                added = false;
-            }
             Object oldValue = attributes.put(name, value);
-            if (added) {
+            if (oldValue == null) {
                 sessionManager.attributeAdded(this, name, value);
             } else {
                 sessionManager.attributeReplaced(this, name, oldValue, value);
@@ -235,6 +266,9 @@ public class DefaultHttpSession implements HttpSession {
     @Override
     public void setMaxInactiveInterval(int maxInactiveInterval) {
         this.maxInactiveInterval = maxInactiveInterval;
+        if (sessionManager instanceof DefaultHttpSessionManager defaultSessionManager) {
+            defaultSessionManager.scheduleExpiry(this);
+        }
     }
 
     /**
@@ -267,6 +301,24 @@ public class DefaultHttpSession implements HttpSession {
         }
     }
 
+    /**
+     * {@return the last accessed time, without verifying the session is valid}
+     */
+    long getAccessedTime() {
+        return lastAccessedTime;
+    }
+
+    /**
+     * {@return the time the session expires at, or -1 if it is invalid or
+     * never expires}
+     */
+    long getExpiryTime() {
+        if (!valid || maxInactiveInterval <= 0) {
+            return -1;
+        }
+        return lastAccessedTime + maxInactiveInterval * 1000L;
+    }
+
     /**
      * Set the last accessed time.
      *
@@ -28,14 +28,15 @@
 package cloud.piranha.webapp.impl;
 
 import cloud.piranha.webapp.api.HttpSessionManager;
+import cloud.piranha.webapp.api.SessionIdGenerator;
 import cloud.piranha.webapp.api.WebApplication;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.EventListener;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import jakarta.servlet.SessionCookieConfig;
 import jakarta.servlet.SessionTrackingMode;
@@ -50,9 +51,6 @@ import jakarta.servlet.http.HttpSessionBindingListener;
 import jakarta.servlet.http.HttpSessionEvent;
 import jakarta.servlet.http.HttpSessionIdListener;
 import jakarta.servlet.http.HttpSessionListener;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * The default HttpSessionManager.
@@ -106,11 +104,26 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
      */
     protected String path;
 
+    /**
+     * Stores the session reaper.
+     */
+    protected HttpSessionReaper reaper;
+
+    /**
+     * Stores whether the sessions are scheduled with the reaper.
+     */
+    private volatile boolean reaping;
+
     /**
      * Stores the secure flag.
      */
     protected boolean secure;
 
+    /**
+     * Stores the session id generator.
+     */
+    protected SessionIdGenerator sessionIdGenerator;
+
     /**
      * Stores the session listeners.
      */
@@ -149,8 +162,8 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
         sessionTimeout = 10;
         maxAge = -1;
         sessions = new ConcurrentHashMap<>();
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleWithFixedDelay(this::reapSessions, 5, 5, SECONDS);
+        reaper = HttpSessionReaper.getInstance();
+        sessionIdGenerator = new DefaultSessionIdGenerator();
     }
 
     @Override
@@ -168,7 +181,12 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
 
     @Override
     public void attributeAdded(HttpSession session, String name, Object value) {
-        attributeListeners.stream().forEach(listener -> listener.attributeAdded(new HttpSessionBindingEvent(session, name, value)));
+        if (!attributeListeners.isEmpty()) {
+            HttpSessionBindingEvent event = new HttpSessionBindingEvent(session, name, value);
+            for (HttpSessionAttributeListener listener : attributeListeners) {
+                listener.attributeAdded(event);
+            }
+        }
         if (value instanceof HttpSessionBindingListener httpSessionBindingListener) {
             httpSessionBindingListener.valueBound(new HttpSessionBindingEvent(session, name));
         }
@@ -176,7 +194,12 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
 
     @Override
     public void attributeRemoved(HttpSession session, String name, Object value) {
-        attributeListeners.stream().forEach(listener -> listener.attributeRemoved(new HttpSessionBindingEvent(session, name, value)));
+        if (!attributeListeners.isEmpty()) {
+            HttpSessionBindingEvent event = new HttpSessionBindingEvent(session, name, value);
+            for (HttpSessionAttributeListener listener : attributeListeners) {
+                listener.attributeRemoved(event);
+            }
+        }
         if (value instanceof HttpSessionBindingListener httpSessionBindingListener) {
             httpSessionBindingListener.valueUnbound(new HttpSessionBindingEvent(session, name));
         }
@@ -184,7 +207,12 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
 
     @Override
     public void attributeReplaced(HttpSession session, String name, Object oldValue, Object newValue) {
-        attributeListeners.stream().forEach(listener -> listener.attributeReplaced(new HttpSessionBindingEvent(session, name, oldValue)));
+        if (!attributeListeners.isEmpty()) {
+            HttpSessionBindingEvent event = new HttpSessionBindingEvent(session, name, oldValue);
+            for (HttpSessionAttributeListener listener : attributeListeners) {
+                listener.attributeReplaced(event);
+            }
+        }
         if (oldValue instanceof HttpSessionBindingListener httpSessionBindingListener) {
             httpSessionBindingListener.valueUnbound(new HttpSessionBindingEvent(session, name));
         }
@@ -201,25 +229,57 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
         }
 
         String oldSessionId = session.getId();
-        sessions.remove(oldSessionId);
-        String sessionId = UUID.randomUUID().toString();
+        String sessionId = sessionIdGenerator.generateId();
+        while (sessions.putIfAbsent(sessionId, session) != null) {
+            sessionId = sessionIdGenerator.generateId();
+        }
         DefaultHttpSession newSession = (DefaultHttpSession) session;
         newSession.setId(sessionId);
-        sessions.put(sessionId, session);
+        sessions.remove(oldSessionId, session);
 
-        idListeners.stream().forEach(idListener -> idListener.sessionIdChanged(new HttpSessionEvent(session), oldSessionId));
+        if (!idListeners.isEmpty()) {
+            HttpSessionEvent event = new HttpSessionEvent(session);
+            for (HttpSessionIdListener idListener : idListeners) {
+                idListener.sessionIdChanged(event, oldSessionId);
+            }
+        }
 
         return sessionId;
     }
 
     @Override
-    public synchronized HttpSession createSession(HttpServletRequest request) {
-        String sessionId = UUID.randomUUID().toString();
+    public HttpSession createSession(HttpServletRequest request) {
+        String sessionId = sessionIdGenerator.generateId();
         DefaultHttpSession session = new DefaultHttpSession(webApplication, sessionId, true);
+        session.setMaxInactiveInterval(sessionTimeout * 60);
         session.setSessionManager(this);
-        sessions.put(sessionId, session);
+        while (sessions.putIfAbsent(sessionId, session) != null) {
+            sessionId = sessionIdGenerator.generateId();
+            session.setId(sessionId);
+        }
+        scheduleSession(session);
 
         HttpServletResponse response = (HttpServletResponse) webApplication.getResponse(request);
+        response.addCookie(createSessionCookie(request, sessionId));
+
+        if (!sessionListeners.isEmpty()) {
+            HttpSessionEvent event = new HttpSessionEvent(session);
+            for (HttpSessionListener sessionListener : sessionListeners) {
+                sessionListener.sessionCreated(event);
+            }
+        }
+
+        return session;
+    }
+
+    /**
+     * Create the session cookie.
+     *
+     * @param request the request.
+     * @param sessionId the session id.
+     * @return the session cookie.
+     */
+    protected Cookie createSessionCookie(HttpServletRequest request, String sessionId) {
         Cookie cookie = new Cookie(name, sessionId);
 
         if (path != null) {
@@ -235,20 +295,23 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
         cookie.setHttpOnly(httpOnly);
         cookie.setMaxAge(maxAge);
         cookie.setSecure(secure);
-
-        response.addCookie(cookie);
-
-        sessionListeners.stream().forEach(sessionListener -> sessionListener.sessionCreated(new HttpSessionEvent(session)));
-
-        return session;
+        return cookie;
     }
 
     @Override
-    public synchronized void destroySession(HttpSession session) {
-        for (HttpSessionListener sessionListener : sessionListeners) {
-            sessionListener.sessionDestroyed(new HttpSessionEvent(session));
+    public void destroySession(HttpSession session) {
+        if (!sessions.remove(session.getId(), session)) {
+            return;
+        }
+        if (session instanceof DefaultHttpSession defaultSession) {
+            reaper.cancel(defaultSession);
+        }
+        if (!sessionListeners.isEmpty()) {
+            HttpSessionEvent event = new HttpSessionEvent(session);
+            for (HttpSessionListener sessionListener : sessionListeners) {
+                sessionListener.sessionDestroyed(event);
+            }
         }
-        sessions.remove(session.getId());
     }
 
     @Override
@@ -326,23 +389,99 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
         return secure;
     }
 
+    /**
+     * {@return the session id generator}
+     */
+    public SessionIdGenerator getSessionIdGenerator() {
+        return sessionIdGenerator;
+    }
+
+    /**
+     * {@return the session reaper}
+     */
+    public HttpSessionReaper getReaper() {
+        return reaper;
+    }
+
     /**
      * Reap any inactive session.
+     *
+     * <p>
+     * The sessions that are a DefaultHttpSession are reaped by the reaper, so
+     * this is only needed by a subclass that keeps sessions of another type
+     * and has no other way to expire them. Note it looks at every session.
+     * </p>
      */
     protected void reapSessions() {
-        ArrayList<String> keys = new ArrayList<>();
-        keys.addAll(sessions.keySet());
-        keys.forEach(sessionId -> {
-            HttpSession session = sessions.get(sessionId);
-            if (session != null) {
-                try {
-                    if (session.getLastAccessedTime() + (session.getMaxInactiveInterval() * 1000) < System.currentTimeMillis()) {
-                        session.invalidate();
-                    }
-                } catch (IllegalStateException ise) {
+        long now = System.currentTimeMillis();
+        for (HttpSession session : List.copyOf(sessions.values())) {
+            try {
+                if (session.getMaxInactiveInterval() > 0
+                        && session.getLastAccessedTime() + session.getMaxInactiveInterval() * 1000L < now) {
+                    session.invalidate();
                 }
+            } catch (IllegalStateException ise) {
+                // already invalidated
             }
-        });
+        }
+    }
+
+    /**
+     * Schedule a session that was added with the reaper.
+     *
+     * @param session the session.
+     */
+    void scheduleSession(DefaultHttpSession session) {
+        if (!reaping) {
+            startReaping();
+        }
+        reaper.schedule(session);
+    }
+
+    /**
+     * Schedule the expiry of a session with the reaper.
+     *
+     * @param session the session.
+     */
+    void scheduleExpiry(DefaultHttpSession session) {
+        if (reaping) {
+            reaper.schedule(session);
+        }
+    }
+
+    /**
+     * Start scheduling the sessions with the reaper.
+     */
+    synchronized void startReaping() {
+        if (!reaping) {
+            reaper.acquire();
+            reaping = true;
+            sessions.values().forEach(session -> {
+                if (session instanceof DefaultHttpSession defaultSession) {
+                    reaper.schedule(defaultSession);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop scheduling the sessions with the reaper.
+     *
+     * <p>
+     * The sessions are kept and scheduled again when the next session is
+     * created.
+     * </p>
+     */
+    public synchronized void stop() {
+        if (reaping) {
+            reaping = false;
+            sessions.values().forEach(session -> {
+                if (session instanceof DefaultHttpSession defaultSession) {
+                    reaper.cancel(defaultSession);
+                }
+            });
+            reaper.release();
+        }
     }
 
     @Override
@@ -401,6 +540,25 @@ public class DefaultHttpSessionManager implements HttpSessionManager, SessionCoo
         this.secure = secure;
     }
 
+    /**
+     * Set the session reaper.
+     *
+     * @param reaper the session reaper.
+     */
+    public synchronized void setReaper(HttpSessionReaper reaper) {
+        stop();
+        this.reaper = reaper;
+    }
+
+    /**
+     * Set the session id generator.
+     *
+     * @param sessionIdGenerator the session id generator.
+     */
+    public void setSessionIdGenerator(SessionIdGenerator sessionIdGenerator) {
+        this.sessionIdGenerator = sessionIdGenerator;
+    }
+
     @Override
     public void setSessionTimeout(int sessionTimeout) {
         this.sessionTimeout = sessionTimeout;
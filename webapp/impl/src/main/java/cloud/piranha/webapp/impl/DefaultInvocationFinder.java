@@ -32,13 +32,17 @@ import static jakarta.servlet.http.MappingMatch.DEFAULT;
 import static jakarta.servlet.http.MappingMatch.EXACT;
 import static jakarta.servlet.http.MappingMatch.EXTENSION;
 import static jakarta.servlet.http.MappingMatch.PATH;
+import static cloud.piranha.webapp.impl.DefaultWebApplication.SERVICING;
 import static java.util.Collections.reverse;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import cloud.piranha.webapp.api.FilterEnvironment;
 import cloud.piranha.webapp.api.FilterPriority;
@@ -64,11 +68,38 @@ import jakarta.servlet.ServletException;
  */
 public class DefaultInvocationFinder {
 
+    /**
+     * Stores the maximum number of cached invocations.
+     */
+    private static final int CACHE_SIZE = Integer.getInteger("piranha.invocation.cacheSize", 1024);
+
     /**
      * Stores the web application.
      */
     private final DefaultWebApplication webApplication;
 
+    /**
+     * Stores the cached invocations, which are copied before they are
+     * returned.
+     */
+    private volatile ConcurrentHashMap<InvocationKey, DefaultServletInvocation> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the welcome file resolutions by directory, including the
+     * directories without a welcome file.
+     */
+    private volatile ConcurrentHashMap<String, WelcomeFile> welcomeFileCache = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the number of cache hits.
+     */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * Stores the number of cache misses.
+     */
+    private final LongAdder cacheMisses = new LongAdder();
+
     /**
      * Constructor.
      * 
@@ -102,9 +133,25 @@ public class DefaultInvocationFinder {
      * @throws ServletException when a Servlet error occurs.
      */
     public DefaultServletInvocation findServletInvocationByPath(DispatcherType dispatcherType, String servletPath, String pathInfo) throws IOException, ServletException {
+        ConcurrentHashMap<InvocationKey, DefaultServletInvocation> currentCache = null;
+        InvocationKey key = null;
+        if (webApplication.status == SERVICING && CACHE_SIZE > 0) {
+            currentCache = cache;
+            key = new InvocationKey(dispatcherType, servletPath, pathInfo);
+            DefaultServletInvocation cached = currentCache.get(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached.copy();
+            }
+            cacheMisses.increment();
+        }
+
         DefaultServletInvocation servletInvocation = getDirectServletInvocationByPath(servletPath, pathInfo);
 
         if (servletInvocation == null) {
+            // Welcome files and the default servlet depend on the resources, so they are not cached.
+            currentCache = null;
+
             if (dispatcherType == REQUEST) {
                 servletInvocation = getWelcomeFileServletInvocation(servletPath, pathInfo != null ? pathInfo : "/");
 
@@ -120,7 +167,44 @@ public class DefaultInvocationFinder {
         // Seed the chain with the servlet, if any. REQUEST dispatches can be done to only a filter so a servlet is not hard requirement
         servletInvocation.seedFilterChain();
 
-        return addFilters(dispatcherType, servletInvocation, servletPath, pathInfo);
+        servletInvocation = addFilters(dispatcherType, servletInvocation, servletPath, pathInfo);
+
+        if (currentCache != null) {
+            if (currentCache.size() >= CACHE_SIZE) {
+                currentCache.clear();
+            }
+            currentCache.put(key, servletInvocation.copy());
+        }
+
+        return servletInvocation;
+    }
+
+    /**
+     * Clear the cached invocations and welcome files.
+     *
+     * <p>
+     * This is called whenever the servlets, filters, their mappings or the
+     * resources change. An invocation being resolved while the cache is
+     * cleared goes into the replaced cache, so it is never served.
+     * </p>
+     */
+    public void clearCache() {
+        cache = new ConcurrentHashMap<>();
+        welcomeFileCache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * {@return the number of invocations served from the cache}
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * {@return the number of invocations not served from the cache}
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
     }
 
     /**
@@ -226,6 +310,70 @@ public class DefaultInvocationFinder {
     }
 
     private DefaultServletInvocation getWelcomeFileServletInvocation(String servletPath, String pathInfo) throws IOException {
+        WelcomeFile welcomeFile = findWelcomeFile(servletPath, pathInfo);
+        if (welcomeFile.name() == null) {
+            // No welcome file or servlet
+            return null;
+        }
+
+        if (welcomeFile.staticResource()) {
+            return getDefaultServletInvocation(servletPath, pathInfo + welcomeFile.name());
+        }
+
+        DefaultServletInvocation servletInvocation = getDirectServletInvocationByPath(servletPath, pathInfo + welcomeFile.name());
+        if (servletInvocation != null) {
+            servletInvocation.setOriginalServletPath(servletPath);
+        }
+
+        return servletInvocation;
+    }
+
+    /**
+     * Find the welcome file for a directory.
+     *
+     * <p>
+     * While the web application is servicing the resolution is cached per
+     * directory. The cached resolution is used only as long as the modification
+     * times the resource manager reports for the directory are unchanged, so
+     * adding or removing a welcome file in a directory resource is noticed.
+     * </p>
+     *
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     * @return the welcome file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private WelcomeFile findWelcomeFile(String servletPath, String pathInfo) throws IOException {
+        if (webApplication.status != SERVICING || CACHE_SIZE <= 0) {
+            return resolveWelcomeFile(servletPath, pathInfo, null);
+        }
+
+        String directory = addOrRemoveSlashIfNeeded(servletPath + pathInfo);
+        ConcurrentHashMap<String, WelcomeFile> currentCache = welcomeFileCache;
+        long[] lastModified = webApplication.resourceManager.getLastModified(directory);
+        WelcomeFile welcomeFile = currentCache.get(directory);
+        if (welcomeFile != null && Arrays.equals(welcomeFile.lastModified(), lastModified)) {
+            return welcomeFile;
+        }
+
+        welcomeFile = resolveWelcomeFile(servletPath, pathInfo, lastModified);
+        if (currentCache.size() >= CACHE_SIZE) {
+            currentCache.clear();
+        }
+        currentCache.put(directory, welcomeFile);
+        return welcomeFile;
+    }
+
+    /**
+     * Resolve the welcome file for a directory.
+     *
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     * @param lastModified the modification times of the directory.
+     * @return the welcome file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private WelcomeFile resolveWelcomeFile(String servletPath, String pathInfo, long[] lastModified) throws IOException {
 
         // Try if we have a welcome file that we can load via the default servlet
 
@@ -233,7 +381,7 @@ public class DefaultInvocationFinder {
             if (!isStaticResource(servletPath, pathInfo + welcomeFile))
                 continue;
             
-            return getDefaultServletInvocation(servletPath, pathInfo + welcomeFile);
+            return new WelcomeFile(welcomeFile, true, lastModified);
         }
 
         // Next try if we have a welcome servlet
@@ -250,16 +398,11 @@ public class DefaultInvocationFinder {
                 continue;
             }
             
-            DefaultServletInvocation servletInvocation = getDirectServletInvocationByPath(servletPath, pathInfo + welcomeFile);
-            if (servletInvocation != null) {
-                servletInvocation.setOriginalServletPath(servletPath);
-            }
-            
-            return servletInvocation;
+            return new WelcomeFile(welcomeFile, false, lastModified);
         }
 
         // No welcome file or servlet
-        return null;
+        return new WelcomeFile(null, false, lastModified);
     }
 
     private boolean isStaticResource(String servletPath, String pathInfo) throws MalformedURLException {
@@ -381,6 +524,26 @@ public class DefaultInvocationFinder {
         return Integer.compare(filterX.getPriority(), filterY.getPriority());
     }
     
+    /**
+     * The key of a cached invocation.
+     *
+     * @param dispatcherType the dispatcher type.
+     * @param servletPath the servlet path.
+     * @param pathInfo the path info.
+     */
+    private record InvocationKey(DispatcherType dispatcherType, String servletPath, String pathInfo) {
+    }
+
+    /**
+     * The welcome file resolved for a directory.
+     *
+     * @param name the welcome file, or null if there is none.
+     * @param staticResource true if it is served by the default servlet.
+     * @param lastModified the modification times of the directory.
+     */
+    private record WelcomeFile(String name, boolean staticResource, long[] lastModified) {
+    }
+
     private boolean hasDefaultServlet() {
         return 
             webApplication.defaultServlet != null || 
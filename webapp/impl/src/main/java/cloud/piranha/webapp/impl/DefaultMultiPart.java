@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * The Part for the DefaultMultiPartManager.
+ *
+ * <p>
+ * The content of a part is kept in memory until it grows beyond the file size
+ * threshold, after which it is written to a temporary file in the location.
+ * Writing a part that is stored in a temporary file moves the file, which is
+ * a rename when both are on the same file system.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class DefaultMultiPart implements Part {
+
+    /**
+     * Stores the channel of the temporary file while it is being written.
+     */
+    private FileChannel channel;
+
+    /**
+     * Stores the content while it is kept in memory.
+     */
+    private byte[] content;
+
+    /**
+     * Stores the file the content is stored in, or null when it is kept in
+     * memory.
+     */
+    private Path file;
+
+    /**
+     * Stores the header names.
+     */
+    private final List<String> headerNames;
+
+    /**
+     * Stores the header values.
+     */
+    private final List<String> headerValues;
+
+    /**
+     * Stores the location.
+     */
+    private final Path location;
+
+    /**
+     * Stores the name.
+     */
+    private final String name;
+
+    /**
+     * Stores the size.
+     */
+    private long size;
+
+    /**
+     * Stores the submitted file name.
+     */
+    private final String submittedFileName;
+
+    /**
+     * Stores whether the file was written to its final destination.
+     */
+    private boolean written;
+
+    /**
+     * Constructor.
+     *
+     * @param headerNames the header names.
+     * @param headerValues the header values.
+     * @param location the location.
+     */
+    DefaultMultiPart(List<String> headerNames, List<String> headerValues, Path location) {
+        this.headerNames = headerNames;
+        this.headerValues = headerValues;
+        this.location = location;
+        this.content = new byte[0];
+        String disposition = getHeader("Content-Disposition");
+        this.name = MultiPartParser.getParameter(disposition, "name");
+        this.submittedFileName = MultiPartParser.getParameter(disposition, "filename");
+    }
+
+    /**
+     * Append to the content.
+     *
+     * @param bytes the bytes.
+     * @param offset the offset.
+     * @param length the length.
+     * @param fileSizeThreshold the size after which the content is written
+     * to a temporary file.
+     * @throws IOException when an I/O error occurs.
+     */
+    void append(byte[] bytes, int offset, int length, int fileSizeThreshold) throws IOException {
+        if (channel == null && size + length > fileSizeThreshold) {
+            Files.createDirectories(location);
+            file = Files.createTempFile(location, "upload_", ".tmp");
+            channel = FileChannel.open(file, WRITE);
+            writeFully(content, 0, (int) size);
+            content = null;
+        }
+        if (channel != null) {
+            writeFully(bytes, offset, length);
+        } else {
+            if (size + length > content.length) {
+                int capacity = (int) Math.min(Math.max(size + length, content.length * 2L), fileSizeThreshold);
+                content = Arrays.copyOf(content, capacity);
+            }
+            System.arraycopy(bytes, offset, content, (int) size, length);
+        }
+        size += length;
+    }
+
+    /**
+     * Complete the content.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void complete() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Delete the temporary file, unless it was written to its final
+     * destination.
+     */
+    void deleteTemporaryFile() {
+        try {
+            complete();
+            if (file != null && !written) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ioe) {
+            // nothing left to clean up
+        }
+    }
+
+    /**
+     * Write the bytes to the temporary file.
+     *
+     * @param bytes the bytes.
+     * @param offset the offset.
+     * @param length the length.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeFully(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void delete() throws IOException {
+        content = new byte[0];
+        if (file != null && !written) {
+            Files.deleteIfExists(file);
+            file = null;
+        }
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    @Override
+    public String getHeader(String name) {
+        for (int i = 0; i < headerNames.size(); i++) {
+            if (headerNames.get(i).equalsIgnoreCase(name)) {
+                return headerValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        Collection<String> result = new ArrayList<>();
+        for (String headerName : headerNames) {
+            if (result.stream().noneMatch(headerName::equalsIgnoreCase)) {
+                result.add(headerName);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        Collection<String> result = new ArrayList<>();
+        for (int i = 0; i < headerNames.size(); i++) {
+            if (headerNames.get(i).equalsIgnoreCase(name)) {
+                result.add(headerValues.get(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(content, 0, (int) size);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return submittedFileName;
+    }
+
+    /**
+     * Write the part.
+     *
+     * <p>
+     * A relative file name is resolved against the location.
+     * </p>
+     *
+     * @param fileName the file name.
+     * @throws IOException when an I/O error occurs.
+     */
+    @Override
+    public void write(String fileName) throws IOException {
+        Path target = location.resolve(fileName);
+        if (file == null) {
+            try (OutputStream output = Files.newOutputStream(target)) {
+                output.write(content, 0, (int) size);
+            }
+        } else if (written) {
+            Files.copy(file, target, REPLACE_EXISTING);
+        } else {
+            complete();
+            Files.move(file, target, REPLACE_EXISTING);
+            file = target;
+            written = true;
+        }
+    }
+}
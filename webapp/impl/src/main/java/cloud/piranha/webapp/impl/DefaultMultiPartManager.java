@@ -27,11 +27,19 @@
  */
 package cloud.piranha.webapp.impl;
 
+import static jakarta.servlet.ServletContext.TEMPDIR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
 import java.lang.System.Logger.Level;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.lang.System.Logger;
 
+import jakarta.servlet.MultipartConfigElement;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Part;
 
@@ -42,6 +50,14 @@ import cloud.piranha.webapp.api.WebApplicationRequest;
 /**
  * The default MultiPartManager.
  *
+ * <p>
+ * The parts are parsed from the request body as it is read, driven by the
+ * multipart config of the servlet. A part is kept in memory up to the file
+ * size threshold and otherwise written to a temporary file in the location,
+ * which is removed again when the request is done. A request without a
+ * multipart config has no parts.
+ * </p>
+ *
  * @author Manfred Riem (mriem@manorrock.com)
  */
 public class DefaultMultiPartManager implements MultiPartManager {
@@ -51,6 +67,31 @@ public class DefaultMultiPartManager implements MultiPartManager {
      */
     private static final Logger LOGGER = System.getLogger(DefaultMultiPartManager.class.getName());
 
+    /**
+     * Stores the maximum number of parts of a request.
+     */
+    private int maxPartCount = 1000;
+
+    /**
+     * Stores the maximum number of header lines of a part.
+     */
+    private int maxPartHeaderCount = 100;
+
+    /**
+     * {@return the maximum number of parts of a request, or -1 for unlimited}
+     */
+    public int getMaxPartCount() {
+        return maxPartCount;
+    }
+
+    /**
+     * {@return the maximum number of header lines of a part, or -1 for
+     * unlimited}
+     */
+    public int getMaxPartHeaderCount() {
+        return maxPartHeaderCount;
+    }
+
     /**
      * Get the parts.
      *
@@ -58,13 +99,50 @@ public class DefaultMultiPartManager implements MultiPartManager {
      * @param request the request.
      * @return the parts.
      * @throws ServletException when the request is not a multipart/form-data
-     * request.
+     * request, has an unsupported character encoding, or its body cannot be
+     * parsed.
+     * @throws IllegalStateException when a part is larger than the maximum
+     * file size, the request is larger than the maximum request size, or has
+     * more parts or part header lines than allowed.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public Collection<Part> getParts(WebApplication webApplication,
             WebApplicationRequest request) throws ServletException {
         LOGGER.log(Level.DEBUG, "Getting parts for request: {0}", request);
-        return Collections.emptyList();
+        Collection<Part> parts = (Collection<Part>) request.getAttribute(Part.class.getName());
+        if (parts == null) {
+            MultipartConfigElement multipartConfig = request.getMultipartConfig();
+            if (multipartConfig == null) {
+                return Collections.emptyList();
+            }
+            String boundary = MultiPartParser.getBoundary(request.getContentType());
+            if (boundary == null) {
+                throw new ServletException("Not a multipart/form-data request");
+            }
+            if (multipartConfig.getMaxRequestSize() != -1
+                    && request.getContentLengthLong() > multipartConfig.getMaxRequestSize()) {
+                throw new IllegalStateException("Request is larger than the maximum request size");
+            }
+            Charset charset = UTF_8;
+            if (request.getCharacterEncoding() != null) {
+                try {
+                    charset = Charset.forName(request.getCharacterEncoding());
+                } catch (IllegalArgumentException iae) {
+                    throw new ServletException("Unsupported character encoding: "
+                            + request.getCharacterEncoding(), iae);
+                }
+            }
+            try {
+                parts = Collections.unmodifiableList(new MultiPartParser(request.getInputStream(),
+                        boundary, charset, multipartConfig, getLocation(webApplication, multipartConfig),
+                        maxPartCount, maxPartHeaderCount).parse());
+            } catch (IOException ioe) {
+                throw new ServletException("Unable to parse multipart/form-data request", ioe);
+            }
+            request.setAttribute(Part.class.getName(), parts);
+        }
+        return parts;
     }
 
     /**
@@ -75,12 +153,84 @@ public class DefaultMultiPartManager implements MultiPartManager {
      * @param name the name of the part.
      * @return the part, or null if not found.
      * @throws ServletException when the request is not a multipart/form-data
-     * request.
+     * request, or its body cannot be parsed.
      */
     @Override
     public Part getPart(WebApplication webApplication,
             WebApplicationRequest request, String name) throws ServletException {
         LOGGER.log(Level.DEBUG, "Getting part: {0} for request: {1}", new Object[]{name, request});
+        for (Part part : getParts(webApplication, request)) {
+            if (name.equals(part.getName())) {
+                return part;
+            }
+        }
         return null;
     }
+
+    /**
+     * Delete the temporary files of the parts of the request.
+     *
+     * @param request the request.
+     */
+    static void deleteTemporaryFiles(WebApplicationRequest request) {
+        if (request.getAttribute(Part.class.getName()) instanceof Collection<?> parts) {
+            for (Object part : parts) {
+                if (part instanceof DefaultMultiPart multiPart) {
+                    multiPart.deleteTemporaryFile();
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of parts of a request.
+     *
+     * <p>
+     * A request with more parts is refused with an IllegalStateException, as
+     * each part may create a temporary file. It defaults to 1000.
+     * </p>
+     *
+     * @param maxPartCount the maximum number of parts, or -1 for unlimited.
+     */
+    public void setMaxPartCount(int maxPartCount) {
+        this.maxPartCount = maxPartCount;
+    }
+
+    /**
+     * Set the maximum number of header lines of a part.
+     *
+     * <p>
+     * A part with more header lines is refused with an IllegalStateException.
+     * It defaults to 100.
+     * </p>
+     *
+     * @param maxPartHeaderCount the maximum number of header lines, or -1 for
+     * unlimited.
+     */
+    public void setMaxPartHeaderCount(int maxPartHeaderCount) {
+        this.maxPartHeaderCount = maxPartHeaderCount;
+    }
+
+    /**
+     * Get the location to store the parts in.
+     *
+     * <p>
+     * A relative location is resolved against the temporary directory of
+     * the web application, or the system temporary directory when it has
+     * none.
+     * </p>
+     *
+     * @param webApplication the web application.
+     * @param multipartConfig the multipart config.
+     * @return the location.
+     */
+    private Path getLocation(WebApplication webApplication, MultipartConfigElement multipartConfig) {
+        Path tempDirectory = webApplication.getAttribute(TEMPDIR) instanceof File file
+                ? file.toPath() : Path.of(System.getProperty("java.io.tmpdir"));
+        String location = multipartConfig.getLocation();
+        if (location == null || location.isEmpty()) {
+            return tempDirectory;
+        }
+        return tempDirectory.resolve(location);
+    }
 }
@@ -35,6 +35,8 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import jakarta.servlet.MultipartConfigElement;
 import jakarta.servlet.Servlet;
@@ -96,6 +98,11 @@ public class DefaultServletEnvironment implements ServletEnvironment {
      */
     protected final String servletName;
 
+    /**
+     * Stores the lock serializing requests to a SingleThreadModel servlet.
+     */
+    protected final Lock singleThreadModelLock = new ReentrantLock();
+
     /**
      * Stores the status.
      */
@@ -213,6 +220,13 @@ public class DefaultServletEnvironment implements ServletEnvironment {
         return servletName;
     }
 
+    /**
+     * {@return the lock serializing requests to a SingleThreadModel servlet}
+     */
+    public Lock getSingleThreadModelLock() {
+        return singleThreadModelLock;
+    }
+
     @Override
     public int getStatus() {
         return status;
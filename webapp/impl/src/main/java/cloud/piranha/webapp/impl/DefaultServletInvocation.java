@@ -255,4 +255,33 @@ public class DefaultServletInvocation implements ServletInvocation {
                 getServletEnvironment() == null ? null : getServletEnvironment().getServlet()));
     }
 
+    /**
+     * Copy the servlet invocation.
+     *
+     * <p>
+     * The copy shares the filter environments and the filter chain, which are
+     * not changed after they are set, and gets its own HTTP servlet mapping.
+     * </p>
+     *
+     * @return the copy.
+     */
+    public DefaultServletInvocation copy() {
+        DefaultServletInvocation copy = new DefaultServletInvocation();
+        copy.invocationPath = invocationPath;
+        copy.servletName = servletName;
+        copy.servletPath = servletPath;
+        copy.originalServletPath = originalServletPath;
+        copy.pathInfo = pathInfo;
+        copy.applicationRequestMapping = applicationRequestMapping;
+        copy.httpServletMapping.setMappingMatch(httpServletMapping.getMappingMatch());
+        copy.httpServletMapping.setMatchValue(httpServletMapping.getMatchValue());
+        copy.httpServletMapping.setPattern(httpServletMapping.getPattern());
+        copy.httpServletMapping.setServletName(httpServletMapping.getServletName());
+        copy.servletEnvironment = servletEnvironment;
+        copy.filterEnvironments = filterEnvironments;
+        copy.filterChain = filterChain;
+        copy.fromNamed = fromNamed;
+        return copy;
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The compiled index of the servlet mappings of a
+ * DefaultWebApplicationRequestMapper.
+ *
+ * <p>
+ * The index is immutable and is rebuilt whenever a servlet mapping is added,
+ * so lookups do not lock. Exact mappings are kept in a hash set, prefix
+ * mappings in a trie of path segments that yields the longest match in one
+ * walk over the path, and extension mappings in a hash table keyed by the
+ * extension. The path segments and extensions are looked up as regions of the
+ * path, so a lookup does not allocate.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class DefaultServletMappingIndex {
+
+    /**
+     * Stores the exact patterns.
+     */
+    private final Set<String> exacts;
+
+    /**
+     * Stores the extension patterns by extension.
+     */
+    private final RegionTable<String> extensions;
+
+    /**
+     * Stores the root of the prefix trie.
+     */
+    private final Node prefixes;
+
+    /**
+     * Constructor.
+     *
+     * @param patterns the URL patterns.
+     */
+    DefaultServletMappingIndex(Set<String> patterns) {
+        exacts = new HashSet<>(patterns);
+        RegionTable.Builder<String> extensionsBuilder = new RegionTable.Builder<>();
+        NodeBuilder prefixesBuilder = new NodeBuilder();
+        for (String pattern : patterns) {
+            if (pattern.startsWith("*.")) {
+                extensionsBuilder.put(pattern.substring(2), pattern);
+            } else if (pattern.endsWith("/*")) {
+                NodeBuilder node = prefixesBuilder;
+                String path = pattern.substring(0, pattern.length() - 2);
+                if (!path.isEmpty()) {
+                    for (String segment : path.substring(1).split("/", -1)) {
+                        node = node.children.computeIfAbsent(segment, key -> new NodeBuilder());
+                    }
+                }
+                node.pattern = pattern;
+            }
+        }
+        extensions = extensionsBuilder.build();
+        prefixes = prefixesBuilder.build();
+    }
+
+    /**
+     * Find the exact pattern matching the path.
+     *
+     * @param path the path.
+     * @return the pattern, or null if not found.
+     */
+    String findExact(String path) {
+        return exacts.contains(path) ? path : null;
+    }
+
+    /**
+     * Find the extension pattern matching the path.
+     *
+     * <p>
+     * The extensions are tried from the first dot in the last segment of the
+     * path onwards, so <code>*.tar.gz</code> wins over <code>*.gz</code>.
+     * </p>
+     *
+     * @param path the path.
+     * @return the pattern, or null if not found.
+     */
+    String findExtension(String path) {
+        int dot = path.indexOf('.', path.lastIndexOf('/') + 1);
+        while (dot != -1) {
+            String pattern = extensions.get(path, dot + 1, path.length());
+            if (pattern != null) {
+                return pattern;
+            }
+            dot = path.indexOf('.', dot + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Find the longest prefix pattern matching the path.
+     *
+     * @param path the path.
+     * @return the pattern, or null if not found.
+     */
+    String findPrefix(String path) {
+        Node node = prefixes;
+        String result = node.pattern;
+        if (!path.startsWith("/")) {
+            return path.isEmpty() ? result : null;
+        }
+        int start = 1;
+        while (true) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            node = node.children.get(path, start, end);
+            if (node == null) {
+                break;
+            }
+            if (node.pattern != null) {
+                result = node.pattern;
+            }
+            if (end == path.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * A node of the prefix trie.
+     */
+    private static final class Node {
+
+        /**
+         * Stores the children by path segment.
+         */
+        final RegionTable<Node> children;
+
+        /**
+         * Stores the pattern ending at this node, or null.
+         */
+        final String pattern;
+
+        /**
+         * Constructor.
+         *
+         * @param pattern the pattern.
+         * @param children the children.
+         */
+        Node(String pattern, RegionTable<Node> children) {
+            this.pattern = pattern;
+            this.children = children;
+        }
+    }
+
+    /**
+     * The builder of a node of the prefix trie.
+     */
+    private static final class NodeBuilder {
+
+        /**
+         * Stores the children by path segment.
+         */
+        final HashMap<String, NodeBuilder> children = new HashMap<>();
+
+        /**
+         * Stores the pattern ending at this node, or null.
+         */
+        String pattern;
+
+        /**
+         * Build the node.
+         *
+         * @return the node.
+         */
+        Node build() {
+            RegionTable.Builder<Node> builder = new RegionTable.Builder<>();
+            children.forEach((segment, child) -> builder.put(segment, child.build()));
+            return new Node(pattern, builder.build());
+        }
+    }
+}
@@ -43,8 +43,6 @@ import static jakarta.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static java.util.Arrays.asList;
 
 import java.io.IOException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -186,7 +184,7 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
             }
         } else if (exception != null) {
             exception.printStackTrace(httpResponse.getWriter());
-            httpResponse.flushBuffer();
+            httpResponse.closeResponse();
             rethrow(exception);
         } else if (webappRequest.getAttribute(ERROR_MESSAGE) != null) {
             // Specified by spec/javadoc: "The server defaults to creating the response to look like an HTML-formatted server error page containing the specified message, 
@@ -198,7 +196,7 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
         }
 
         if (!webappRequest.isAsyncStarted()) {
-            httpResponse.flushBuffer();
+            httpResponse.closeResponse();
         }
     }
 
@@ -683,26 +681,8 @@ public class DefaultServletRequestDispatcher implements RequestDispatcher {
         Map<String, String[]> parameters = asyncHttpDispatchWrapper.getWrapperParameters();
 
         if (queryString != null) {
-            for (String param : queryString.split("&")) {
-                String[] pair = param.split("=");
-                String key = URLDecoder.decode(pair[0], StandardCharsets.UTF_8);
-                String value = "";
-                if (pair.length > 1) {
-                    value = URLDecoder.decode(pair[1], StandardCharsets.UTF_8);
-                }
-                String[] values = parameters.get(key);
-                if (values == null) {
-                    values = new String[]{value};
-                    parameters.put(key, values);
-                } else {
-                    String[] newValues = new String[values.length + 1];
-                    System.arraycopy(values, 0, newValues, 0, values.length);
-                    newValues[values.length] = value;
-                    parameters.put(key, newValues);
-                }
-            }
+            UrlEncodedParameters.parse(queryString, Integer.MAX_VALUE).addTo(parameters);
         }
-
     }
 
     private String getServletPath(String path) {
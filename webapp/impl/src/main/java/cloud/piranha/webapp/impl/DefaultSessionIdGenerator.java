@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import cloud.piranha.webapp.api.SessionIdGenerator;
+
+/**
+ * The default SessionIdGenerator.
+ *
+ * <p>
+ * A session id is a number of random bytes encoded as URL-safe base64 without
+ * padding, so the default 16 bytes give a 22 character id with 128 bits of
+ * entropy. The bytes come from a set of independent DRBG instances that is
+ * striped by thread, so threads creating sessions at the same time do not
+ * all wait on the one SecureRandom behind UUID.randomUUID. The bytes of an
+ * id are generated when the id is, so no future session id is kept in
+ * memory before it is handed out.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class DefaultSessionIdGenerator implements SessionIdGenerator {
+
+    /**
+     * Stores the default number of random bytes.
+     */
+    public static final int DEFAULT_LENGTH = 16;
+
+    /**
+     * Stores the minimum number of random bytes.
+     */
+    private static final int MINIMUM_LENGTH = 8;
+
+    /**
+     * Stores the encoder.
+     */
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * Stores the number of random bytes.
+     */
+    private final int length;
+
+    /**
+     * Stores the stripes.
+     */
+    private final SecureRandom[] stripes;
+
+    /**
+     * Constructor.
+     */
+    public DefaultSessionIdGenerator() {
+        this(DEFAULT_LENGTH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param length the number of random bytes.
+     * @throws IllegalArgumentException when the length is less than 8.
+     */
+    public DefaultSessionIdGenerator(int length) {
+        if (length < MINIMUM_LENGTH) {
+            throw new IllegalArgumentException("A session id needs at least " + MINIMUM_LENGTH + " random bytes");
+        }
+        this.length = length;
+        this.stripes = new SecureRandom[Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            try {
+                stripes[i] = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException nsae) {
+                stripes[i] = new SecureRandom();
+            }
+        }
+    }
+
+    @Override
+    public String generateId() {
+        byte[] bytes = new byte[length];
+        stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)].nextBytes(bytes);
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * {@return the number of random bytes}
+     */
+    public int getLength() {
+        return length;
+    }
+}
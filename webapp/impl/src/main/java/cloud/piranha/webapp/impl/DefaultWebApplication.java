@@ -50,6 +50,8 @@ import static cloud.piranha.webapp.api.ServletEnvironment.UNAVAILABLE;
 import cloud.piranha.webapp.api.WebApplication;
 import cloud.piranha.webapp.api.WebApplicationRequestMapper;
 import cloud.piranha.webapp.api.WelcomeFileManager;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterRegistration;
@@ -409,11 +411,14 @@ public class DefaultWebApplication implements WebApplication {
 
     @Override
     public Set<String> addFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, boolean isMatchAfter, String... urlPatterns) {
+        Set<String> result;
         if (isMatchAfter) {
-            return webApplicationRequestMapper.addFilterMapping(dispatcherTypes, filterName, urlPatterns);
+            result = webApplicationRequestMapper.addFilterMapping(dispatcherTypes, filterName, urlPatterns);
+        } else {
+            result = webApplicationRequestMapper.addFilterMappingBeforeExisting(dispatcherTypes, filterName, urlPatterns);
         }
-
-        return webApplicationRequestMapper.addFilterMappingBeforeExisting(dispatcherTypes, filterName, urlPatterns);
+        invocationFinder.clearCache();
+        return result;
     }
 
     @Override
@@ -518,6 +523,7 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void addResource(Resource resource) {
         resourceManager.addResource(resource);
+        invocationFinder.clearCache();
     }
 
     @Override
@@ -567,7 +573,9 @@ public class DefaultWebApplication implements WebApplication {
 
     @Override
     public Set<String> addServletMapping(String servletName, String... urlPatterns) {
-        return webApplicationRequestMapper.addServletMapping(servletName, urlPatterns);
+        Set<String> result = webApplicationRequestMapper.addServletMapping(servletName, urlPatterns);
+        invocationFinder.clearCache();
+        return result;
     }
 
     @Override
@@ -826,6 +834,22 @@ public class DefaultWebApplication implements WebApplication {
         return initializers;
     }
 
+    /**
+     * {@return the number of servlet invocations served from the invocation
+     * cache}
+     */
+    public long getInvocationCacheHits() {
+        return invocationFinder.getCacheHits();
+    }
+
+    /**
+     * {@return the number of servlet invocations not served from the
+     * invocation cache}
+     */
+    public long getInvocationCacheMisses() {
+        return invocationFinder.getCacheMisses();
+    }
+
     @Override
     public JspConfigDescriptor getJspConfigDescriptor() {
         checkTainted();
@@ -1436,7 +1460,13 @@ public class DefaultWebApplication implements WebApplication {
 
         requestDestroyed(request);
         unlinkRequestAndResponse(request, response);
-        
+
+        if (webAppRequest.isAsyncStarted()) {
+            webAppRequest.getAsyncContext().addListener(new ReleaseRequestListener(webAppRequest));
+        } else {
+            releaseRequest(webAppRequest);
+        }
+
         if (webAppRequest.isUpgraded()) {
             WebConnection connection = new DefaultWebConnection(webAppRequest, webAppResponse);
             webAppRequest.getUpgradeHandler().init(connection);
@@ -1581,6 +1611,7 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void setResourceManager(ResourceManager resourceManager) {
         this.resourceManager = resourceManager;
+        invocationFinder.clearCache();
     }
 
     /**
@@ -1647,6 +1678,7 @@ public class DefaultWebApplication implements WebApplication {
     @Override
     public void setWebApplicationRequestMapper(WebApplicationRequestMapper webApplicationRequestMapper) {
         this.webApplicationRequestMapper = webApplicationRequestMapper;
+        invocationFinder.clearCache();
     }
 
     /**
@@ -1656,6 +1688,7 @@ public class DefaultWebApplication implements WebApplication {
     public void start() {
         LOGGER.log(DEBUG, "Starting web application at {0}", contextPath);
         verifyState(INITIALIZED, "Unable to start servicing");
+        invocationFinder.clearCache();
         status = SERVICING;
         LOGGER.log(DEBUG, "Started web application at {0}", contextPath);
     }
@@ -1667,6 +1700,9 @@ public class DefaultWebApplication implements WebApplication {
     public void stop() {
         LOGGER.log(DEBUG, "Stopping web application at {0}", contextPath);
         verifyState(SERVICING, "Unable to stop servicing");
+        if (httpSessionManager instanceof DefaultHttpSessionManager defaultHttpSessionManager) {
+            defaultHttpSessionManager.stop();
+        }
         status = INITIALIZED;
         LOGGER.log(DEBUG, "Stopped web application at {0}", contextPath);
     }
@@ -1821,6 +1857,16 @@ public class DefaultWebApplication implements WebApplication {
         }
     }
 
+    /**
+     * Release what is held on behalf of a request that is done.
+     *
+     * @param request the request.
+     */
+    private void releaseRequest(DefaultWebApplicationRequest request) {
+        DefaultMultiPartManager.deleteTemporaryFiles(request);
+        httpSessionManager.releaseSession(request);
+    }
+
     /**
      * Fire the request initialized event.
      *
@@ -1848,4 +1894,42 @@ public class DefaultWebApplication implements WebApplication {
             throw new RuntimeException(message);
         }
     }
+
+    /**
+     * The AsyncListener that releases an async request once it completes.
+     */
+    private class ReleaseRequestListener implements AsyncListener {
+
+        /**
+         * Stores the request.
+         */
+        private final DefaultWebApplicationRequest request;
+
+        /**
+         * Constructor.
+         *
+         * @param request the request.
+         */
+        ReleaseRequestListener(DefaultWebApplicationRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            releaseRequest(request);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            event.getAsyncContext().addListener(this);
+        }
+    }
 }
@@ -30,18 +30,18 @@ package cloud.piranha.webapp.impl;
 import static cloud.piranha.webapp.impl.DefaultServletRequestDispatcher.PREVIOUS_REQUEST;
 import static jakarta.servlet.DispatcherType.INCLUDE;
 import static jakarta.servlet.RequestDispatcher.INCLUDE_QUERY_STRING;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.lang.System.Logger.Level.INFO;
 import static java.util.Objects.requireNonNull;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.System.Logger;
 import java.lang.reflect.InvocationTargetException;
-import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
@@ -49,12 +49,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 import cloud.piranha.webapp.api.AttributeManager;
 import cloud.piranha.webapp.api.HttpHeaderManager;
@@ -88,11 +91,31 @@ import jakarta.servlet.http.Part;
  */
 public class DefaultWebApplicationRequest extends ServletInputStream implements WebApplicationRequest {
 
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(DefaultWebApplicationRequest.class.getName());
+
     /**
      * Defines the 'multipart/form-data' constant.
      */
     private static final String MULTIPART_FORM_DATA = "multipart/form-data";
 
+    /**
+     * Stores the default maximum size of a form body, -1 for no maximum.
+     */
+    private static final int MAX_FORM_CONTENT_SIZE = Integer.getInteger("piranha.request.maxFormContentSize", 2097152);
+
+    /**
+     * Stores the default maximum number of parameters.
+     */
+    private static final int MAX_PARAMETER_COUNT = Integer.getInteger("piranha.request.maxParameterCount", 10000);
+
+    /**
+     * Defines the size of the buffer used by transferTo.
+     */
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+
     /**
      * Stores the auth type.
      */
@@ -143,6 +166,11 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
      */
     protected Cookie[] cookies;
 
+    /**
+     * Stores the Cookie header that is not parsed into cookies yet.
+     */
+    protected String cookieHeader;
+
     /**
      * Stores the current session id.
      */
@@ -203,8 +231,24 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
      */
     protected MultipartConfigElement multipartConfig;
 
+    /**
+     * Stores the maximum size of a form body, -1 for no maximum.
+     */
+    protected int maxFormContentSize;
+
+    /**
+     * Stores the maximum number of parameters.
+     */
+    protected int maxParameterCount;
+
     /**
      * Stores the parameters.
+     *
+     * <p>
+     * Until the parameter map or names are asked for these are only the
+     * parameters set explicitly, the query string and form body parameters
+     * are then kept (undecoded) in queryParameters and formParameters.
+     * </p>
      */
     protected HashMap<String, String[]> parameters;
 
@@ -288,6 +332,12 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
      */
     protected String originalServletPath;
 
+    /**
+     * Stores the supplier of the trailer fields, which supplies null while
+     * they are not ready.
+     */
+    protected Supplier<Map<String, String>> trailerFields;
+
     /**
      * Stores the upgraded flag.
      */
@@ -316,13 +366,28 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     /**
      * The number of items read from the input stream
      */
-    private int index;
+    private long index;
 
     /**
      * Stores the read listener.
      */
     private ReadListener readListener;
 
+    /**
+     * Stores the form body parameters not merged into the parameters yet.
+     */
+    private UrlEncodedParameters formParameters;
+
+    /**
+     * Stores the query string parameters not merged into the parameters yet.
+     */
+    private UrlEncodedParameters queryParameters;
+
+    /**
+     * Stores the recycled flag.
+     */
+    private boolean recycled;
+
     /**
      * Constructor.
      */
@@ -346,6 +411,8 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         this.serverName = "localhost";
         this.serverPort = 80;
         this.servletPath = "";
+        this.maxFormContentSize = MAX_FORM_CONTENT_SIZE;
+        this.maxParameterCount = MAX_PARAMETER_COUNT;
         this.parameters = new HashMap<>();
         this.upgraded = false;
     }
@@ -440,6 +507,11 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     @Override
     public Cookie[] getCookies() {
+        if (cookieHeader != null) {
+            Cookie[] parsed = CookieParser.parse(cookieHeader);
+            cookieHeader = null;
+            cookies = parsed.length > 0 ? parsed : null;
+        }
         Cookie[] result = null;
         if (cookies != null) {
             result = new Cookie[cookies.length];
@@ -489,6 +561,7 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
+        checkNotRecycled();
         ServletInputStream result;
         if (!gotReader) {
             gotInputStream = true;
@@ -569,6 +642,48 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         return multipartConfig;
     }
 
+    /**
+     * {@return the maximum size of a form body, -1 for no maximum}
+     */
+    public int getMaxFormContentSize() {
+        return maxFormContentSize;
+    }
+
+    /**
+     * Set the maximum size of a form body.
+     *
+     * <p>
+     * It defaults to the 'piranha.request.maxFormContentSize' system property
+     * or 2 MB.
+     * </p>
+     *
+     * @param maxFormContentSize the maximum size, -1 for no maximum.
+     */
+    public void setMaxFormContentSize(int maxFormContentSize) {
+        this.maxFormContentSize = maxFormContentSize;
+    }
+
+    /**
+     * {@return the maximum number of parameters}
+     */
+    public int getMaxParameterCount() {
+        return maxParameterCount;
+    }
+
+    /**
+     * Set the maximum number of parameters.
+     *
+     * <p>
+     * It defaults to the 'piranha.request.maxParameterCount' system property
+     * or 10000.
+     * </p>
+     *
+     * @param maxParameterCount the maximum number of parameters.
+     */
+    public void setMaxParameterCount(int maxParameterCount) {
+        this.maxParameterCount = maxParameterCount;
+    }
+
     /**
      * @param multipartConfig the multipartConfig to set
      */
@@ -578,10 +693,14 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
    
     @Override
     public String getParameter(String name) {
-        String result = null;
         getParametersFromRequest();
-        if (getParameterValues(name) != null) {
-            result = getParameterValues(name)[0];
+        String[] values = parameters.get(name);
+        if (values != null) {
+            return values[0];
+        }
+        String result = queryParameters != null ? queryParameters.getValue(name) : null;
+        if (result == null && formParameters != null) {
+            result = formParameters.getValue(name);
         }
         return result;
     }
@@ -589,23 +708,59 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     @Override
     public Map<String, String[]> getParameterMap() {
         getParametersFromRequest();
+        mergeParameters();
         return Collections.unmodifiableMap(parameters);
     }
 
     @Override
     public Enumeration<String> getParameterNames() {
         getParametersFromRequest();
+        mergeParameters();
         return Collections.enumeration(parameters.keySet());
     }
 
     @Override
     public String[] getParameterValues(String name) {
         getParametersFromRequest();
-        return parameters.get(name);
+        String[] result = parameters.get(name);
+        if (queryParameters != null) {
+            result = concat(result, queryParameters.getValues(name));
+        }
+        if (formParameters != null) {
+            result = concat(result, formParameters.getValues(name));
+        }
+        return result;
+    }
+
+    /**
+     * Concatenate two arrays of values.
+     *
+     * @param values the values (may be null).
+     * @param moreValues the values to add (may be null).
+     * @return the concatenated values.
+     */
+    private static String[] concat(String[] values, String[] moreValues) {
+        if (values == null) {
+            return moreValues;
+        }
+        if (moreValues == null) {
+            return values;
+        }
+        String[] result = Arrays.copyOf(values, values.length + moreValues.length);
+        System.arraycopy(moreValues, 0, result, values.length, moreValues.length);
+        return result;
     }
 
     /**
      * Get the parameters from the request.
+     *
+     * <p>
+     * The query string and form body are parsed, but their values are only
+     * decoded when read. As other servlet containers do, the parameters
+     * beyond the maximum parameter count, and a form body larger than the
+     * maximum form content size, are logged and ignored, and the parameters
+     * parsed so far are kept.
+     * </p>
      */
     protected void getParametersFromRequest() {
         if (!parametersParsed) {
@@ -613,23 +768,9 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
             try {
                 String mergedQueryString = mergeQueryFromAttributes();
                 if (mergedQueryString != null) {
-                    for (String param : mergedQueryString.split("&")) {
-                        String pair[] = param.split("=");
-                        String key = URLDecoder.decode(pair[0], UTF_8);
-                        String value = "";
-                        if (pair.length > 1) {
-                            value = URLDecoder.decode(pair[1], UTF_8);
-                        }
-                        String[] values = parameters.get(key);
-                        if (values == null) {
-                            values = new String[]{value};
-                            parameters.put(key, values);
-                        } else {
-                            String[] newValues = new String[values.length + 1];
-                            System.arraycopy(values, 0, newValues, 0, values.length);
-                            newValues[values.length] = value;
-                            parameters.put(key, newValues);
-                        }
+                    queryParameters = UrlEncodedParameters.parse(mergedQueryString, maxParameterCount);
+                    if (queryParameters.isTruncated()) {
+                        LOGGER.log(INFO, "Ignoring the parameters beyond the maximum of {0}", maxParameterCount);
                     }
                 }
                 
@@ -652,32 +793,12 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
                         "put".equalsIgnoreCase(getMethod()) && getContentLength() > 0;
 
                     if (hasBody) {
-                        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-                        int read = read();
-                        while (read != -1) {
-                            byteOutput.write(read);
-                            read = read();
-                        }
-    
-                        if (read != -1) {
-                            byteOutput.write(read);
-                        }
-    
-                        String parameterString = new String(byteOutput.toByteArray());
-                        String[] pairs = parameterString.trim().split("&");
-                        if (pairs != null) {
-                            for (int i = 0; i < pairs.length; i++) {
-                                String[] pair = pairs[i].trim().split("=");
-                                if (pair.length == 2) {
-                                    pair[0] = URLDecoder.decode(pair[0], UTF_8);
-                                    pair[1] = URLDecoder.decode(pair[1], UTF_8);
-                                    setParameter(pair[0], new String[]{pair[1]});
-                                } else {
-                                    pair[0] = URLDecoder.decode(pair[0], UTF_8);
-                                    if (!"".equals(pair[0])) {
-                                        setParameter(pair[0], new String[]{""});
-                                    }
-                                }
+                        byte[] body = readFormBody();
+                        if (body != null) {
+                            int remainingCount = maxParameterCount - (queryParameters != null ? queryParameters.size() : 0);
+                            formParameters = UrlEncodedParameters.parse(body, 0, body.length, remainingCount);
+                            if (formParameters.isTruncated()) {
+                                LOGGER.log(INFO, "Ignoring the parameters beyond the maximum of {0}", maxParameterCount);
                             }
                         }
                     }
@@ -688,6 +809,43 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         }
     }
 
+    /**
+     * Merge the query string and form body parameters into the parameters.
+     */
+    private void mergeParameters() {
+        if (queryParameters != null) {
+            queryParameters.addTo(parameters);
+            queryParameters = null;
+        }
+        if (formParameters != null) {
+            formParameters.addTo(parameters);
+            formParameters = null;
+        }
+    }
+
+    /**
+     * Read the remainder of the body as a form body.
+     *
+     * @return the body, or null if it is larger than the maximum form content
+     * size.
+     * @throws IOException when an I/O error occurs.
+     */
+    private byte[] readFormBody() throws IOException {
+        if (maxFormContentSize < 0) {
+            return readAllBytes();
+        }
+        if (getContentLengthLong() - index > maxFormContentSize) {
+            LOGGER.log(INFO, "Ignoring a form body larger than the maximum of {0} bytes", maxFormContentSize);
+            return null;
+        }
+        byte[] body = readNBytes(maxFormContentSize == Integer.MAX_VALUE ? maxFormContentSize : maxFormContentSize + 1);
+        if (body.length > maxFormContentSize) {
+            LOGGER.log(INFO, "Ignoring a form body larger than the maximum of {0} bytes", maxFormContentSize);
+            return null;
+        }
+        return body;
+    }
+
     /**
      * Merge query string from this request and from the attribute
      * {@link RequestDispatcher#INCLUDE_QUERY_STRING} if the dispatcher type is {@link DispatcherType#INCLUDE}
@@ -740,6 +898,7 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     @Override
     public BufferedReader getReader() throws IOException {
+        checkNotRecycled();
         if (!gotInputStream) {
             if (reader == null) {
 
@@ -870,9 +1029,10 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
             currentSessionId = requestedSessionId;
         }
 
-        if (manager.hasSession(currentSessionId)) {
+        if (currentSessionId != null) {
             session = manager.getSession(this, currentSessionId);
-        } else if (create) {
+        }
+        if (session == null && create) {
             session = manager.createSession(this);
             currentSessionId = session.getId();
         }
@@ -880,6 +1040,15 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         return session;
     }
 
+    @Override
+    public Map<String, String> getTrailerFields() {
+        Map<String, String> fields = trailerFields != null ? trailerFields.get() : Collections.emptyMap();
+        if (fields == null) {
+            throw new IllegalStateException("Trailer fields are not ready");
+        }
+        return fields;
+    }
+
     @Override
     public HttpUpgradeHandler getUpgradeHandler() {
         return upgradeHandler;
@@ -931,6 +1100,11 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         return "https".equals(scheme);
     }
 
+    @Override
+    public boolean isTrailerFieldsReady() {
+        return trailerFields == null || trailerFields.get() != null;
+    }
+
     @Override
     public boolean isUpgraded() {
         return upgraded;
@@ -1065,6 +1239,7 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
      * @param cookies the cookies.
      */
     public void setCookies(Cookie[] cookies) {
+        this.cookieHeader = null;
         if (cookies == null || cookies.length == 0) {
             this.cookies = null;
         } else {
@@ -1075,6 +1250,22 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         }
     }
 
+    /**
+     * Set the Cookie header.
+     *
+     * <p>
+     * The header is only parsed into cookies when they are asked for, see
+     * {@link CookieParser#findValue(String, String)} to look up a single
+     * cookie without parsing.
+     * </p>
+     *
+     * @param cookieHeader the Cookie header, without "Cookie:".
+     */
+    public void setCookieHeader(String cookieHeader) {
+        this.cookies = null;
+        this.cookieHeader = cookieHeader;
+    }
+
     @Override
     public void setDispatcherType(DispatcherType dispatcherType) {
         this.dispatcherType = dispatcherType;
@@ -1287,6 +1478,21 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
         this.originalServletPath = originalServletPath;
     }
 
+    /**
+     * Set the supplier of the trailer fields.
+     *
+     * <p>
+     * The trailer fields of a chunked request body are only known once the
+     * body has been read, so the supplier supplies null until then.
+     * </p>
+     *
+     * @param trailerFields the supplier of the trailer fields, or null if the
+     * request has no trailer fields.
+     */
+    public void setTrailerFields(Supplier<Map<String, String>> trailerFields) {
+        this.trailerFields = trailerFields;
+    }
+
     /**
      * Set the upgraded flag.
      *
@@ -1343,6 +1549,7 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
     @Override
     public AsyncContext startAsync(ServletRequest request, ServletResponse response) throws IllegalStateException {
         requireNonNull(request); requireNonNull(response);
+        checkNotRecycled();
 
         if (!isAsyncSupported()) {
             throw new IllegalStateException("Async is not supported");
@@ -1426,19 +1633,175 @@ public class DefaultWebApplicationRequest extends ServletInputStream implements
 
     @Override
     public int read() throws IOException {
-        if (finished || getContentLength() == 0) {
+        checkNotRecycled();
+        if (finished || getContentLengthLong() == 0) {
             return -1;
         }
 
         int read = inputStream.read();
         index++;
-        if (index == getContentLength() || read == -1) {
+        if (index == getContentLengthLong() || read == -1) {
+            finished = true;
+        }
+
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        checkNotRecycled();
+        if (finished || getContentLengthLong() == 0) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        if (getContentLengthLong() > 0) {
+            length = (int) Math.min(length, getContentLengthLong() - index);
+        }
+        int read = inputStream.read(bytes, offset, length);
+        if (read == -1) {
+            finished = true;
+            return -1;
+        }
+        index += read;
+        if (index == getContentLengthLong()) {
             finished = true;
         }
 
         return read;
     }
 
+    @Override
+    public byte[] readNBytes(int length) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+        if (getContentLengthLong() < 0) {
+            return super.readNBytes(length);
+        }
+
+        byte[] bytes = new byte[(int) Math.min(length, getContentLengthLong() - index)];
+        int read = readNBytes(bytes, 0, bytes.length);
+        return read == bytes.length ? bytes : Arrays.copyOf(bytes, read);
+    }
+
+    @Override
+    public long transferTo(OutputStream outputStream) throws IOException {
+        Objects.requireNonNull(outputStream, "outputStream");
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        long transferred = 0;
+        int read;
+        while ((read = read(buffer, 0, buffer.length)) != -1) {
+            outputStream.write(buffer, 0, read);
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    /**
+     * {@return the recycled flag}
+     */
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    /**
+     * Recycle the request.
+     *
+     * <p>
+     * This resets the request to the state it had after construction so the
+     * instance can be used for another request. Until {@link #reuse()} is
+     * called any attempt to read from the request or to start async
+     * processing throws an IllegalStateException, which makes a reference
+     * that leaked past the end of the request detectable.
+     * </p>
+     */
+    public void recycle() {
+        authType = null;
+        asyncContext = null;
+        asyncStarted = false;
+        asyncSupported = false;
+        if (attributeManager instanceof DefaultAttributeManager defaultAttributeManager) {
+            defaultAttributeManager.clear();
+        } else {
+            attributeManager = new DefaultAttributeManager();
+        }
+        characterEncoding = null;
+        contentLength = -1;
+        contentType = null;
+        contextPath = "";
+        cookies = null;
+        cookieHeader = null;
+        currentSessionId = null;
+        dispatcherType = DispatcherType.REQUEST;
+        gotInputStream = false;
+        gotReader = false;
+        if (headerManager instanceof DefaultHttpHeaderManager defaultHeaderManager) {
+            defaultHeaderManager.clear();
+        } else {
+            headerManager = new DefaultHttpHeaderManager();
+        }
+        headerManager.setHeader("Accept", "*/*");
+        httpServletMapping = null;
+        inputStream = new ByteArrayInputStream(new byte[0]);
+        localAddress = null;
+        localName = null;
+        localPort = 0;
+        maxFormContentSize = MAX_FORM_CONTENT_SIZE;
+        maxParameterCount = MAX_PARAMETER_COUNT;
+        method = "GET";
+        multipartConfig = null;
+        parameters.clear();
+        parametersParsed = false;
+        pathInfo = null;
+        protocol = "HTTP/1.1";
+        queryString = null;
+        reader = null;
+        remoteAddr = null;
+        remoteHost = null;
+        remotePort = 0;
+        requestedSessionId = null;
+        requestedSessionIdFromCookie = false;
+        requestedSessionIdFromURL = false;
+        scheme = "http";
+        serverName = "localhost";
+        serverPort = 80;
+        servletPath = "";
+        originalServletPath = null;
+        trailerFields = null;
+        upgraded = false;
+        upgradeHandler = null;
+        userPrincipal = null;
+        webApplication = null;
+        finished = false;
+        index = 0;
+        readListener = null;
+        formParameters = null;
+        queryParameters = null;
+        recycled = true;
+    }
+
+    /**
+     * Mark a recycled request as in use again.
+     */
+    public void reuse() {
+        recycled = false;
+    }
+
+    /**
+     * Check the request is not used after it was recycled.
+     *
+     * @throws IllegalStateException when the request was recycled.
+     */
+    private void checkNotRecycled() {
+        if (recycled) {
+            throw new IllegalStateException("Request used after it was recycled");
+        }
+    }
+
     /**
      * {@return the request URI with query string}
      */
@@ -36,7 +36,6 @@ import static java.util.stream.Collectors.toSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -62,6 +61,11 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      * Stores the servlet mappings.
      */
     protected final ConcurrentHashMap<String, String> servletMappings = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the compiled index of the servlet mappings.
+     */
+    private volatile DefaultServletMappingIndex servletMappingIndex = new DefaultServletMappingIndex(emptySet());
     
     /**
      * Stores the default servlet
@@ -125,6 +129,7 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
             }
         }
 
+        rebuildServletMappingIndex();
         return emptySet();
     }
 
@@ -214,16 +219,11 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      */
     private DefaultWebApplicationRequestMapping findServletExactMatch(String path) {
         DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> exacts = servletMappings.keys();
-        while (exacts.hasMoreElements()) {
-            String exact = exacts.nextElement();
-
-            if (path.equals(exact)) {
-                result = new DefaultWebApplicationRequestMapping(exact);
-                result.setExact(true);
-                result.setMatchValue(exact.substring(1));
-                break;
-            }
+        String exact = servletMappingIndex.findExact(path);
+        if (exact != null) {
+            result = new DefaultWebApplicationRequestMapping(exact);
+            result.setExact(true);
+            result.setMatchValue(exact.substring(1));
         }
         return result;
     }
@@ -236,23 +236,13 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      */
     private DefaultWebApplicationRequestMapping findServletExtensionMatch(String path) {
         DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> extensions = servletMappings.keys();
-        while (extensions.hasMoreElements()) {
-            String extension = extensions.nextElement();
-            /*
-             * Make sure it really is an extension first.
-             */
-            if (extension.startsWith("*.")) {
-                extension = extension.substring(1);
-                if (path.endsWith(extension)) {
-                    result = new DefaultWebApplicationRequestMapping("*" + extension);
-                    result.setExtension(true);
-                    // If path is /foo.bar and the initial extension is *.bar, then
-                    // the match value is foo.
-                    result.setMatchValue(path.substring(1, path.lastIndexOf(extension)));
-                    break;
-                }
-            }
+        String extension = servletMappingIndex.findExtension(path);
+        if (extension != null) {
+            result = new DefaultWebApplicationRequestMapping(extension);
+            result.setExtension(true);
+            // If path is /foo.bar and the initial extension is *.bar, then
+            // the match value is foo.
+            result.setMatchValue(path.substring(1, path.length() - extension.length() + 1));
         }
         return result;
     }
@@ -286,50 +276,27 @@ public class DefaultWebApplicationRequestMapper implements WebApplicationRequest
      */
     private DefaultWebApplicationRequestMapping findServletPrefixMatch(String path) {
         DefaultWebApplicationRequestMapping result = null;
-        DefaultWebApplicationRequestMapping found;
-        for (;;) {
-            found = findServletPrefixMatch(path, result);
-            if (found != null) {
-                result = found;
-            } else {
-                break;
-            }
-        }
-        if (result != null) {
-            result.setPattern(result.getPattern() + "*");
+        String prefix = servletMappingIndex.findPrefix(path);
+        if (prefix != null) {
+            result = new DefaultWebApplicationRequestMapping(prefix);
+            // If path is /foo/bar and the initial prefix is /foo/* then the
+            // match value is bar
+            result.setMatchValue(path.isEmpty() ? path : path.substring(1));
         }
         return result;
     }
 
     /**
-     * Find a servlet mapping with a prefix mapping longer than the given
-     * current prefix.
+     * Rebuild the compiled index of the servlet mappings.
      *
-     * @param path the path.
-     * @param currentPrefix the current matched prefix.
-     * @return the mapping, or null if not found.
+     * <p>
+     * Servlets may be mapped from several threads while the web application
+     * initializes. Building under the lock means an index built from an older
+     * view of the servlet mappings never replaces one built from a newer view.
+     * </p>
      */
-    private DefaultWebApplicationRequestMapping findServletPrefixMatch(String path, DefaultWebApplicationRequestMapping currentPrefix) {
-        DefaultWebApplicationRequestMapping result = null;
-        Enumeration<String> prefixes = servletMappings.keys();
-        while (prefixes.hasMoreElements()) {
-            String prefix = prefixes.nextElement();
-            if (!prefix.startsWith("*.") && prefix.endsWith("/*")) {
-                prefix = prefix.substring(0, prefix.length() - 1);
-                if ((path + "/").startsWith(prefix)) {
-                    result = new DefaultWebApplicationRequestMapping(prefix);
-                    // If path is /foo/bar and the initial prefix is /foo/* then the
-                    // match value is bar
-                    result.setMatchValue(path.substring(1));
-                    break;
-                }
-            }
-        }
-        if (result != null && currentPrefix != null
-                && result.getPattern().length() <= currentPrefix.getPattern().length()) {
-            result = null;
-        }
-        return result;
+    private synchronized void rebuildServletMappingIndex() {
+        servletMappingIndex = new DefaultServletMappingIndex(servletMappings.keySet());
     }
 
     /**
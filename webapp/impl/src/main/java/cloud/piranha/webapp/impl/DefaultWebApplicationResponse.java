@@ -27,23 +27,25 @@
  */
 package cloud.piranha.webapp.impl;
 
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.util.Collections.list;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.System.Logger;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
@@ -53,6 +55,7 @@ import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 
+import cloud.piranha.webapp.api.HeadCommitter;
 import cloud.piranha.webapp.api.LocaleEncodingManager;
 import cloud.piranha.webapp.api.WebApplication;
 import cloud.piranha.webapp.api.WebApplicationResponse;
@@ -68,6 +71,48 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      * Defines the 'ISO-8859-1' constant.
      */
     private static final String ISO_8859_1 = "ISO-8859-1";
+
+    /**
+     * Defines the space reserved in front of the buffer for a chunk size line
+     * (up to 8 hex digits and CRLF).
+     */
+    private static final int CHUNK_HEADER_SPACE = 10;
+
+    /**
+     * Defines the space reserved after the buffer for the CRLF ending a chunk.
+     */
+    private static final int CHUNK_TRAILER_SPACE = 2;
+
+    /**
+     * Defines the default buffer size.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Defines the CRLF.
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * Defines the hex digits used for the chunk size.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(US_ASCII);
+
+    /**
+     * Defines the last chunk, which ends a chunked body.
+     */
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(US_ASCII);
+
+    /**
+     * Defines the maximum number of body bytes copied after the response head
+     * to send both in a single write.
+     */
+    private static final int MAX_COALESCE_SIZE = 16384;
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(DefaultWebApplicationResponse.class.getName());
     
     /**
      * Stores the body only flag.
@@ -76,6 +121,11 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     /**
      * Stores the buffer.
+     *
+     * <p>
+     * The body bytes start at an offset so a chunk can be framed in place,
+     * see {@link #getBufferSize()} for the usable size.
+     * </p>
      */
     protected byte[] buffer;
     
@@ -95,6 +145,22 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     protected boolean characterEncodingSet;
 
+    /**
+     * Stores the chunked flag.
+     */
+    protected boolean chunked;
+
+    /**
+     * Stores the closed flag.
+     */
+    protected boolean closed;
+
+    /**
+     * Stores the closing flag. While closing, flushing the writer does not
+     * commit the response.
+     */
+    protected boolean closing;
+
     /**
      * Stores the committed flag.
      */
@@ -130,13 +196,19 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     protected boolean gotWriter;
 
+    /**
+     * Stores the header encoder, which holds the response head until it is
+     * written out together with the first body bytes.
+     */
+    private final DefaultHttpHeaderEncoder headerEncoder = new DefaultHttpHeaderEncoder();
+
     /**
      * Stores the header manager.
      */
     protected DefaultHttpHeaderManager headerManager;
 
     /**
-     * Stores the index.
+     * Stores the index, which is the number of body bytes in the buffer.
      */
     protected int index;
 
@@ -180,11 +252,21 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     protected Runnable responseCloser;
 
+    /**
+     * Stores the head committer.
+     */
+    protected HeadCommitter headCommitter;
+
+    /**
+     * Stores the recycled flag.
+     */
+    private boolean recycled;
+
     /**
      * Constructor.
      */
     public DefaultWebApplicationResponse() {
-        buffer = new byte[8192];
+        buffer = new byte[CHUNK_HEADER_SPACE + DEFAULT_BUFFER_SIZE + CHUNK_TRAILER_SPACE];
         characterEncoding = ISO_8859_1;
         characterEncodingSet = false;
         committed = false;
@@ -210,7 +292,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void addDateHeader(String name, long date) {
-        addHeader(name, formatDateToGMT(date));
+        addHeader(name, HttpDate.format(date));
     }
 
     @Override
@@ -265,12 +347,10 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void flushBuffer() throws IOException {
-        if (!isCommitted()) {
-            writeOut();
-        }
         if (gotWriter) {
             writer.flush();
         }
+        flush();
     }
 
     @Override
@@ -284,7 +364,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public int getBufferSize() {
-        return buffer.length;
+        return buffer.length - CHUNK_HEADER_SPACE - CHUNK_TRAILER_SPACE;
     }
 
     /**
@@ -335,6 +415,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+        checkNotRecycled();
         if (!gotWriter) {
             gotOutput = true;
             return this;
@@ -362,7 +443,8 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
     }
 
     @Override
-    public synchronized PrintWriter getWriter() throws IOException {
+    public PrintWriter getWriter() throws IOException {
+        checkNotRecycled();
         PrintWriter result = null;
         if (!gotOutput) {
             if (gotWriter == false) {
@@ -409,7 +491,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
             if (gotWriter) {
                 writer.flush(); // output will be written and ignored.
             }
-            this.buffer = new byte[buffer.length];
+            index = 0;
         } finally {
             bufferResetting = false;
         }
@@ -468,7 +550,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
     @Override
     public void setBufferSize(int bufferSize) {
         verifyNotCommitted("setBufferSize");
-        this.buffer = new byte[bufferSize];
+        this.buffer = new byte[CHUNK_HEADER_SPACE + bufferSize + CHUNK_TRAILER_SPACE];
     }
 
     @Override
@@ -533,7 +615,7 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void setDateHeader(String name, long date) {
-        setHeader(name, formatDateToGMT(date));
+        setHeader(name, HttpDate.format(date));
     }
 
     @Override
@@ -624,40 +706,76 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void close() throws IOException {
-        if (!isCommitted()) {
-            flush();
+        if (isInclude()) {
+            if (!isCommitted()) {
+                flush();
+            }
+        } else {
+            closeResponse();
         }
     }
 
     @Override
     public void closeAsyncResponse() {
+        try {
+            closeResponse();
+        } catch (IOException ioe) {
+            LOGGER.log(WARNING, () -> "IOException when closing the async response", ioe);
+        }
         responseCloser.run();
     }
 
+    /**
+     * Close the response.
+     *
+     * <p>
+     * If the response is not committed yet the whole body is in the buffer,
+     * so it is sent with a Content-Length. Otherwise the remaining buffer is
+     * written out and, for a chunked response, the last chunk is written.
+     * Calling this more than once has no effect.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    public void closeResponse() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (gotWriter) {
+            closing = true;
+            try {
+                writer.flush();
+            } finally {
+                closing = false;
+            }
+        }
+        closed = true;
+        if (!isCommitted()) {
+            writeOut();
+        } else {
+            writeBuffer();
+        }
+        if (chunked) {
+            outputStream.write(LAST_CHUNK);
+        }
+        outputStream.flush();
+    }
+
     @Override
     public void flush() throws IOException {
-        if (bufferResetting) {
+        if (bufferResetting || closing || closed) {
             return;
         }
         
         if (!isCommitted()) {
             writeOut();
+        } else {
+            writeBuffer();
         }
 
         outputStream.flush();
     }
 
-    /**
-     * Format the timestamp to a GMT string.
-     *
-     * @param timestamp the timestamp.
-     * @return the GMT string.
-     */
-    private String formatDateToGMT(long timestamp) {
-        return Instant.ofEpochMilli(timestamp).atZone(ZoneId.of("GMT"))
-                .format(DateTimeFormatter.RFC_1123_DATE_TIME);
-    }
-
     @Override
     public Collection<Cookie> getCookies() {
         return cookies;
@@ -668,6 +786,34 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
         return outputStream;
     }
 
+    /**
+     * Get the HTTP request this response belongs to.
+     *
+     * @return the HTTP request, or null if not available.
+     */
+    private HttpServletRequest getHttpRequest() {
+        if (webApplication == null) {
+            return null;
+        }
+        ServletRequest request = webApplication.getRequest(this);
+        return request instanceof HttpServletRequest httpRequest ? httpRequest : null;
+    }
+
+    /**
+     * Is this a response to an HTTP/1.0 request.
+     *
+     * <p>
+     * An HTTP/1.0 client closes the connection after the response unless it
+     * has a "Connection: keep-alive" header.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isHttp10() {
+        HttpServletRequest request = getHttpRequest();
+        return request != null && "HTTP/1.0".equals(request.getProtocol());
+    }
+
     /**
      * Is this an include dispatch.
      *
@@ -697,49 +843,243 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
 
     @Override
     public void write(int integer) throws IOException {
+        checkNotRecycled();
         if (bufferResetting) {
             return;
         }
         
-        if (index == buffer.length - 1) {
+        if (closed) {
+            // Only an upgraded connection keeps writing after the response.
+            if (status / 100 == 1) {
+                outputStream.write(integer);
+            }
+            return;
+        }
+
+        if (index == getBufferSize()) {
+            writeFullBuffer();
+        }
+        buffer[CHUNK_HEADER_SPACE + index] = (byte) integer;
+        index++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        checkNotRecycled();
+        if (bufferResetting) {
+            return;
+        }
+
+        if (closed) {
+            // Only an upgraded connection keeps writing after the response.
+            if (status / 100 == 1) {
+                outputStream.write(bytes, offset, length);
+            }
+            return;
+        }
+
+        while (length > 0) {
+            if (index == getBufferSize()) {
+                writeFullBuffer();
+            }
+            if (index == 0 && isCommitted() && length >= getBufferSize()) {
+                writeDirect(bytes, offset, length);
+                return;
+            }
+            int count = Math.min(length, getBufferSize() - index);
+            System.arraycopy(bytes, offset, buffer, CHUNK_HEADER_SPACE + index, count);
+            index += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Write the bytes remaining in the given byte buffer.
+     *
+     * @param byteBuffer the byte buffer.
+     * @throws IOException when an I/O error occurs.
+     */
+    public void write(ByteBuffer byteBuffer) throws IOException {
+        checkNotRecycled();
+        if (byteBuffer.hasArray()) {
+            write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+            byteBuffer.position(byteBuffer.limit());
+            return;
+        }
+        if (bufferResetting || closed) {
+            byte[] bytes = new byte[byteBuffer.remaining()];
+            byteBuffer.get(bytes);
+            write(bytes, 0, bytes.length);
+            return;
+        }
+        while (byteBuffer.hasRemaining()) {
+            if (index == getBufferSize()) {
+                writeFullBuffer();
+            }
+            int count = Math.min(byteBuffer.remaining(), getBufferSize() - index);
+            byteBuffer.get(buffer, CHUNK_HEADER_SPACE + index, count);
+            index += count;
+        }
+    }
+
+    /**
+     * Write out the buffer when it is full, committing the response if needed.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeFullBuffer() throws IOException {
+        if (!isCommitted()) {
             writeOut();
-            outputStream.write(integer);
-        } else if (index == buffer.length) {
-            outputStream.write(integer);
         } else {
-            this.buffer[index] = (byte) integer;
-            this.index++;
+            writeBuffer();
         }
     }
 
     /**
-     * Write the content language.
+     * Write the bytes straight to the underlying output stream, as a chunk if
+     * the response is chunked.
+     *
+     * <p>
+     * This is used for writes at least as large as the buffer once the
+     * response is committed, as copying them into the buffer first would not
+     * save any writes.
+     * </p>
      *
+     * @param bytes the bytes.
+     * @param offset the offset.
+     * @param length the length.
      * @throws IOException when an I/O error occurs.
      */
-    private void writeContentLanguage() throws IOException {
+    private void writeDirect(byte[] bytes, int offset, int length) throws IOException {
+        if (chunked) {
+            outputStream.write((Integer.toHexString(length) + "\r\n").getBytes(US_ASCII));
+            outputStream.write(bytes, offset, length);
+            outputStream.write(CRLF);
+        } else {
+            outputStream.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Write out the buffer, as a chunk if the response is chunked.
+     *
+     * <p>
+     * The chunk size line is put in the space in front of the body bytes and
+     * the CRLF after them, so the chunk goes out in a single write. A pending
+     * response head goes out in that same write.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeBuffer() throws IOException {
+        int start = CHUNK_HEADER_SPACE;
+        int end = CHUNK_HEADER_SPACE + index;
+        if (chunked && index > 0) {
+            buffer[--start] = '\n';
+            buffer[--start] = '\r';
+            int size = index;
+            do {
+                buffer[--start] = HEX_DIGITS[size & 0xf];
+                size >>>= 4;
+            } while (size != 0);
+            buffer[end++] = '\r';
+            buffer[end++] = '\n';
+        }
+        if (headerEncoder.length() > 0) {
+            if (end - start <= MAX_COALESCE_SIZE) {
+                headerEncoder.append(buffer, start, end - start);
+                start = end;
+            }
+            outputStream.write(headerEncoder.array(), 0, headerEncoder.length());
+            headerEncoder.reset();
+        }
+        if (start < end) {
+            outputStream.write(buffer, start, end - start);
+        }
+        index = 0;
+    }
+
+    /**
+     * Choose how the body is delimited.
+     *
+     * <p>
+     * When the response is closed before it gets committed the whole body is
+     * in the buffer and a Content-Length is added. When it gets committed
+     * earlier and the client speaks HTTP/1.1 the body is chunked. Otherwise
+     * the body is delimited by closing the connection.
+     * </p>
+     */
+    private void determineFraming() {
+        if (status / 100 == 1 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED
+                || containsHeader("Content-Length") || containsHeader("Transfer-Encoding")) {
+            return;
+        }
+        HttpServletRequest request = getHttpRequest();
+        if (request != null && "HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (closed) {
+            setContentLengthLong(index);
+        } else if (request == null || !"HTTP/1.0".equals(request.getProtocol())) {
+            setHeader("Transfer-Encoding", "chunked");
+            chunked = true;
+        }
+    }
+
+    /**
+     * Is the body delimited by the headers.
+     *
+     * <p>
+     * If it is the connection can be kept open for the next request. A 101
+     * (Switching Protocols) hands the connection over to the upgrade handler,
+     * so it is not.
+     * </p>
+     *
+     * @return true if it is, false otherwise.
+     */
+    private boolean isBodyDelimited() {
+        String connection = getHeader("Connection");
+        if (status == SC_SWITCHING_PROTOCOLS || "close".equalsIgnoreCase(connection)) {
+            return false;
+        }
+        if (chunked || status / 100 == 1 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED
+                || containsHeader("Content-Length")) {
+            return true;
+        }
+        String transferEncoding = getHeader("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase().endsWith("chunked")) {
+            return true;
+        }
+        HttpServletRequest request = getHttpRequest();
+        return request != null && "HEAD".equals(request.getMethod());
+    }
+
+    /**
+     * Write the content language.
+     */
+    private void writeContentLanguage() {
         if (contentLanguage == null) {
             return;
         }
-        outputStream.write("Content-Language: ".getBytes());
-        outputStream.write(contentLanguage.getBytes());
-        outputStream.write("\n".getBytes());
+        headerEncoder.name("Content-Language");
+        headerEncoder.append(contentLanguage);
+        headerEncoder.crlf();
     }
 
     /**
      * Write the content type.
-     *
-     * @throws IOException when an I/O error occurs.
      */
-    private void writeContentType() throws IOException {
+    private void writeContentType() {
         if (contentType != null) {
-            outputStream.write("Content-Type: ".getBytes());
-            outputStream.write(contentType.getBytes());
+            headerEncoder.name("Content-Type");
+            headerEncoder.append(contentType);
             if (characterEncoding != null) {
-                outputStream.write(";charset=".getBytes());
-                outputStream.write(characterEncoding.getBytes());
+                headerEncoder.append(";charset=");
+                headerEncoder.append(characterEncoding);
             }
-            outputStream.write("\n".getBytes());
+            headerEncoder.crlf();
         }
     }
 
@@ -747,77 +1087,78 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      * Write out a cookie.
      *
      * @param cookie the cookie.
-     * @throws IOException when an I/O error occurs.
      */
-    private void writeCookie(Cookie cookie) throws IOException {
-        outputStream.write("Set-Cookie: ".getBytes());
-        outputStream.write(cookie.getName().getBytes());
-        outputStream.write("=".getBytes());
+    private void writeCookie(Cookie cookie) {
+        headerEncoder.name("Set-Cookie");
+        headerEncoder.append(cookie.getName());
+        headerEncoder.append("=");
         if (cookie.getValue() != null) {
-            outputStream.write(cookie.getValue().getBytes());
+            headerEncoder.append(cookie.getValue());
         }
         if (cookie.getMaxAge() > -1) {
-            outputStream.write(("; Max-Age=" + cookie.getMaxAge()).getBytes());
-            String expireDate = formatDateToGMT(Instant.now().plusSeconds(cookie.getMaxAge()).toEpochMilli());
-            outputStream.write(("; Expires=" + expireDate).getBytes());
+            headerEncoder.append("; Max-Age=");
+            headerEncoder.append(Integer.toString(cookie.getMaxAge()));
+            headerEncoder.append("; Expires=");
+            headerEncoder.append(HttpDate.format(System.currentTimeMillis() + cookie.getMaxAge() * 1000L));
         }
         if (cookie.getSecure()) {
-            outputStream.write("; Secure".getBytes());
+            headerEncoder.append("; Secure");
         }
         if (cookie.isHttpOnly()) {
-            outputStream.write("; HttpOnly".getBytes());
+            headerEncoder.append("; HttpOnly");
         }
         if (cookie.getPath() != null) {
-            outputStream.write(("; Path=" + cookie.getPath()).getBytes());
+            headerEncoder.append("; Path=");
+            headerEncoder.append(cookie.getPath());
         }
         if (cookie.getVersion() > 0) {
-            outputStream.write(("; Version=" + cookie.getVersion()).getBytes());
+            headerEncoder.append("; Version=");
+            headerEncoder.append(Integer.toString(cookie.getVersion()));
         }
-        outputStream.write("\n".getBytes());
+        headerEncoder.crlf();
     }
 
     /**
      * Write the cookies.
-     *
-     * @throws IOException when an I/O error occurs.
      */
-    private void writeCookies() throws IOException {
+    private void writeCookies() {
         for (Cookie cookie : cookies) {
             writeCookie(cookie);
         }
     }
 
     /**
-     * Write out a response header.
-     *
-     * @param name the name of the header.
-     * @throws IOException when an I/O error occurs.
+     * Write the Date header, unless the application set one.
      */
-    private void writeHeader(String name) throws IOException {
-        Iterator<String> values = getHeaders(name).iterator();
-        outputStream.write(name.getBytes());
-        outputStream.write(": ".getBytes());
-        while (values.hasNext()) {
-            String value = values.next();
-            if (value != null) {
-                outputStream.write(value.getBytes());
-                if (values.hasNext()) {
-                    outputStream.write(",".getBytes());
-                }
-            }
+    private void writeDate() {
+        if (status >= 200 && !headerManager.containsHeader("Date")) {
+            byte[] date = HttpDate.nowBytes();
+            headerEncoder.name("Date");
+            headerEncoder.append(date, 0, date.length);
+            headerEncoder.crlf();
         }
-        outputStream.write("\n".getBytes());
     }
 
+    /**
+     * Write the headers.
+     *
+     * <p>
+     * The headers are encoded into the header encoder and go out together
+     * with the first body bytes.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void writeHeaders() throws IOException {
+        writeDate();
         writeContentType();
         writeContentLanguage();
         writeCookies();
         for (String name : getHeaderNames()) {
-            writeHeader(name);
+            headerEncoder.header(name, getHeaders(name));
         }
-        outputStream.write("\n".getBytes());
+        headerEncoder.crlf();
     }
 
     /**
@@ -827,26 +1168,105 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
      */
     private void writeOut() throws IOException {
         if (!isBodyOnly()) {
+            determineFraming();
+            if (headCommitter != null) {
+                boolean keepAlive = headCommitter.commitHead(isBodyDelimited());
+                if (!containsHeader("Connection")) {
+                    if (!keepAlive) {
+                        setHeader("Connection", "close");
+                    } else if (isHttp10()) {
+                        setHeader("Connection", "keep-alive");
+                    }
+                }
+            }
             writeStatusLine();
             writeHeaders();
         }
-        if (!isCommitted()) {
-            outputStream.write(buffer, 0, index);
-            index = buffer.length;
-        }
         setCommitted(true);
+        writeBuffer();
     }
 
+    /**
+     * Write the status line.
+     *
+     * <p>
+     * The status line is encoded into the header encoder and goes out
+     * together with the headers and the first body bytes.
+     * </p>
+     *
+     * @throws IOException when an I/O error occurs.
+     */
     @Override
     public void writeStatusLine() throws IOException {
-        outputStream.write("HTTP/1.1".getBytes());
-        outputStream.write(" ".getBytes());
-        outputStream.write(Integer.toString(getStatus()).getBytes());
-        if (getStatusMessage() != null) {
-            outputStream.write(" ".getBytes());
-            outputStream.write(getStatusMessage().getBytes());
+        headerEncoder.statusLine(getStatus(), getStatusMessage());
+    }
+
+    /**
+     * {@return the recycled flag}
+     */
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    /**
+     * Recycle the response.
+     *
+     * <p>
+     * This resets the response to the state it had after construction while
+     * keeping the buffer so the instance can be used for another response.
+     * Until {@link #reuse()} is called any attempt to write to the response
+     * throws an IllegalStateException.
+     * </p>
+     */
+    public void recycle() {
+        bodyOnly = false;
+        if (buffer.length != CHUNK_HEADER_SPACE + DEFAULT_BUFFER_SIZE + CHUNK_TRAILER_SPACE) {
+            buffer = new byte[CHUNK_HEADER_SPACE + DEFAULT_BUFFER_SIZE + CHUNK_TRAILER_SPACE];
+        }
+        bufferResetting = false;
+        characterEncoding = ISO_8859_1;
+        characterEncodingSet = false;
+        chunked = false;
+        closed = false;
+        closing = false;
+        committed = false;
+        contentLength = 0;
+        contentType = null;
+        contentTypeSet = false;
+        cookies.clear();
+        gotOutput = false;
+        gotWriter = false;
+        headerEncoder.reset();
+        headerManager.clear();
+        index = 0;
+        locale = Locale.getDefault();
+        writer = null;
+        outputStream = null;
+        status = 200;
+        statusMessage = null;
+        webApplication = null;
+        contentLanguage = null;
+        responseCloser = null;
+        headCommitter = null;
+        recycled = true;
+    }
+
+    /**
+     * Mark a recycled response as in use again.
+     */
+    public void reuse() {
+        recycled = false;
+    }
+
+    /**
+     * Check the response is not used after it was recycled.
+     *
+     * @throws IllegalStateException when the response was recycled.
+     */
+    private void checkNotRecycled() {
+        if (recycled) {
+            throw new IllegalStateException("Response used after it was recycled");
         }
-        outputStream.write("\n".getBytes());
     }
 
     @Override
@@ -858,4 +1278,29 @@ public class DefaultWebApplicationResponse extends ServletOutputStream implement
     public void setResponseCloser(Runnable responseCloser) {
         this.responseCloser = responseCloser;
     }
+
+    /**
+     * {@return the head committer}
+     */
+    public HeadCommitter getHeadCommitter() {
+        return headCommitter;
+    }
+
+    /**
+     * Set the head committer.
+     *
+     * <p>
+     * It is called right before the status line and headers are written, with
+     * whether the headers delimit the body, and returns whether the
+     * connection is kept alive after the response. If not a "Connection:
+     * close" header is added, and if it is for an HTTP/1.0 request a
+     * "Connection: keep-alive" header, unless the application set a
+     * Connection header.
+     * </p>
+     *
+     * @param headCommitter the head committer.
+     */
+    public void setHeadCommitter(HeadCommitter headCommitter) {
+        this.headCommitter = headCommitter;
+    }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The formatter for HTTP dates.
+ *
+ * <p>
+ * Dates are formatted as an IMF-fixdate (RFC 9110), which pads the day to two
+ * digits, e.g. <code>Sun, 06 Nov 1994 08:49:37 GMT</code>. This is used for
+ * the Date header, date headers set by the application and cookie expiry
+ * dates.
+ * </p>
+ *
+ * <p>
+ * The date of the current second is cached as a String and as pre-encoded
+ * bytes, so the Date header of a response costs a volatile read except for
+ * the first response of every second. The cache is refreshed without locks,
+ * threads racing on a new second each format it once and one of them wins.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class HttpDate {
+
+    /**
+     * Stores the day names, starting at the epoch day (a Thursday).
+     */
+    private static final String[] DAYS = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};
+
+    /**
+     * Stores the month names.
+     */
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    /**
+     * Stores the date of the current second.
+     */
+    private static volatile CachedDate current = new CachedDate(Long.MIN_VALUE, null, null);
+
+    /**
+     * Stores the last date formatted for another second than the current.
+     */
+    private static volatile CachedDate last = new CachedDate(Long.MIN_VALUE, null, null);
+
+    /**
+     * Constructor.
+     */
+    private HttpDate() {
+    }
+
+    /**
+     * Format the given timestamp as an IMF-fixdate.
+     *
+     * @param timestamp the timestamp (in milliseconds since the epoch).
+     * @return the formatted date.
+     */
+    public static String format(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000);
+        CachedDate cached = current;
+        if (cached.second() == second) {
+            return cached.string();
+        }
+        cached = last;
+        if (cached.second() == second) {
+            return cached.string();
+        }
+        String string = encode(second);
+        last = new CachedDate(second, string, null);
+        return string;
+    }
+
+    /**
+     * {@return the current date as an IMF-fixdate}
+     */
+    static String now() {
+        return current().string();
+    }
+
+    /**
+     * {@return the current date as an IMF-fixdate encoded as US-ASCII, which
+     * must not be modified}
+     */
+    static byte[] nowBytes() {
+        return current().bytes();
+    }
+
+    /**
+     * {@return the cached date of the current second}
+     */
+    private static CachedDate current() {
+        long second = Math.floorDiv(System.currentTimeMillis(), 1000);
+        CachedDate cached = current;
+        if (cached.second() != second) {
+            String string = encode(second);
+            cached = new CachedDate(second, string, string.getBytes(US_ASCII));
+            current = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Encode the given second.
+     *
+     * @param second the second (since the epoch).
+     * @return the formatted date.
+     */
+    private static String encode(long second) {
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+        StringBuilder builder = new StringBuilder(29);
+        builder.append(DAYS[(int) Math.floorMod(Math.floorDiv(second, 86400), 7)]).append(", ");
+        appendTwoDigits(builder, dateTime.getDayOfMonth()).append(' ');
+        builder.append(MONTHS[dateTime.getMonthValue() - 1]).append(' ');
+        builder.append(dateTime.getYear()).append(' ');
+        appendTwoDigits(builder, dateTime.getHour()).append(':');
+        appendTwoDigits(builder, dateTime.getMinute()).append(':');
+        appendTwoDigits(builder, dateTime.getSecond()).append(" GMT");
+        return builder.toString();
+    }
+
+    /**
+     * Append a zero padded two digit number.
+     *
+     * @param builder the builder.
+     * @param value the value.
+     * @return the builder.
+     */
+    private static StringBuilder appendTwoDigits(StringBuilder builder, int value) {
+        return builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * The formatted date of a second.
+     *
+     * @param second the second (since the epoch).
+     * @param string the formatted date.
+     * @param bytes the formatted date encoded as US-ASCII.
+     */
+    private record CachedDate(long second, String string, byte[] bytes) {
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The attribute store of a session.
+ *
+ * <p>
+ * The attributes are kept in a ConcurrentHashMap, so concurrent requests on
+ * the same session can read and change them safely, and the attribute names
+ * are enumerated without copying them.
+ * </p>
+ *
+ * <p>
+ * Every change increments the modification count and records the name of
+ * the attribute as dirty. A backend that persists or replicates sessions can
+ * compare the modification count to see if a session changed, and drain the
+ * dirty names to see which attributes to write.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class HttpSessionAttributeStore {
+
+    /**
+     * Stores the attributes.
+     */
+    private final ConcurrentHashMap<String, Object> attributes;
+
+    /**
+     * Stores the names of the attributes changed since they were last drained.
+     */
+    private final Set<String> dirtyNames;
+
+    /**
+     * Stores the modification count.
+     */
+    private final AtomicLong modificationCount;
+
+    /**
+     * Constructor.
+     */
+    public HttpSessionAttributeStore() {
+        this.attributes = new ConcurrentHashMap<>();
+        this.dirtyNames = ConcurrentHashMap.newKeySet();
+        this.modificationCount = new AtomicLong();
+    }
+
+    /**
+     * Constructor for the attributes of a session that is restored.
+     *
+     * <p>
+     * The given attributes are not recorded as dirty.
+     * </p>
+     *
+     * @param attributes the attributes.
+     */
+    HttpSessionAttributeStore(Map<String, Object> attributes) {
+        this();
+        this.attributes.putAll(attributes);
+    }
+
+    /**
+     * Drain the dirty attribute names.
+     *
+     * <p>
+     * A change made while the names are drained is either returned now or
+     * kept for the next drain, so a backend that reads the attribute values
+     * after draining the names never misses a change.
+     * </p>
+     *
+     * @return the names of the attributes changed since the last drain.
+     */
+    public Set<String> drainDirtyNames() {
+        HashSet<String> drained = new HashSet<>();
+        Iterator<String> iterator = dirtyNames.iterator();
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * {@return the attribute value, or null if there is no such attribute}
+     * @param name the attribute name.
+     */
+    public Object get(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * {@return the names of the attributes changed since they were last
+     * drained}
+     */
+    public Set<String> getDirtyNames() {
+        return Collections.unmodifiableSet(dirtyNames);
+    }
+
+    /**
+     * {@return the modification count}
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * {@return the attribute names}
+     */
+    public Enumeration<String> getNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    /**
+     * {@return the attribute names as an array}
+     */
+    public String[] getNamesArray() {
+        return attributes.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Set an attribute.
+     *
+     * @param name the attribute name.
+     * @param value the attribute value.
+     * @return the previous value, or null if the attribute was added.
+     */
+    public Object put(String name, Object value) {
+        Object oldValue = attributes.put(name, value);
+        changed(name);
+        return oldValue;
+    }
+
+    /**
+     * Remove an attribute.
+     *
+     * @param name the attribute name.
+     * @return the removed value, or null if there was no such attribute.
+     */
+    public Object remove(String name) {
+        Object oldValue = attributes.remove(name);
+        if (oldValue != null) {
+            changed(name);
+        }
+        return oldValue;
+    }
+
+    /**
+     * {@return the number of attributes}
+     */
+    public int size() {
+        return attributes.size();
+    }
+
+    /**
+     * Record an attribute changed.
+     *
+     * @param name the attribute name.
+     */
+    private void changed(String name) {
+        dirtyNames.add(name);
+        modificationCount.incrementAndGet();
+    }
+}
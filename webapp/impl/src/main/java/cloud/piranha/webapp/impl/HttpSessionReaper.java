@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The reaper of expired HTTP sessions.
+ *
+ * <p>
+ * The sessions are kept in a hashed timing wheel of one second ticks, in the
+ * slot of the tick at which they expire. Every tick only the sessions in its
+ * slot are looked at, so the cost of reaping depends on the sessions that
+ * expire and not on the total number of sessions. A session that was accessed
+ * since it was scheduled is moved to the slot of its new expiry when its slot
+ * comes up, so accessing a session does not touch the wheel.
+ * </p>
+ *
+ * <p>
+ * One reaper is shared by all the session managers in the JVM. Its single
+ * daemon thread runs while at least one session manager uses it, and also
+ * runs the housekeeping tasks of the session managers so they do not hold up
+ * a request.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class HttpSessionReaper {
+
+    /**
+     * Stores the shared instance.
+     */
+    private static final HttpSessionReaper INSTANCE = new HttpSessionReaper();
+
+    /**
+     * Stores the tick in milliseconds.
+     */
+    private static final long TICK = 1000;
+
+    /**
+     * Stores the number of slots, which is a power of 2.
+     */
+    private static final int WHEEL_SIZE = 1024;
+
+    /**
+     * Stores the last tick that was reaped.
+     */
+    private volatile long lastTick;
+
+    /**
+     * Stores the lock held while reaping, which is not the lock of the
+     * reaper itself so a session manager can acquire or release the reaper
+     * while a session it invalidates calls back into it.
+     */
+    private final Object reapLock = new Object();
+
+    /**
+     * Stores the scheduler while the reaper is in use.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Stores the slots.
+     */
+    private final Set<DefaultHttpSession>[] slots;
+
+    /**
+     * Stores the number of users.
+     */
+    private int users;
+
+    /**
+     * Constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public HttpSessionReaper() {
+        lastTick = System.currentTimeMillis() / TICK - 1;
+        slots = new Set[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * {@return the shared instance}
+     */
+    public static HttpSessionReaper getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start using the reaper, which starts its thread for the first user.
+     */
+    public synchronized void acquire() {
+        if (users++ == 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "piranha-session-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> reap(System.currentTimeMillis()), TICK, TICK, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop using the reaper, which stops its thread after the last user.
+     */
+    public synchronized void release() {
+        if (users > 0 && --users == 0) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Run a task on the thread of the reaper.
+     *
+     * @param task the task.
+     * @return true if the task was submitted, false if the thread of the
+     * reaper is not running.
+     */
+    public synchronized boolean execute(Runnable task) {
+        if (scheduler == null) {
+            return false;
+        }
+        scheduler.execute(task);
+        return true;
+    }
+
+    /**
+     * {@return true if the thread of the reaper is running}
+     */
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Schedule the expiry of a session.
+     *
+     * <p>
+     * A session that is already scheduled is moved to the slot of its
+     * current expiry, and a session that never expires is cancelled.
+     * </p>
+     *
+     * @param session the session.
+     */
+    public void schedule(DefaultHttpSession session) {
+        long expiry = session.getExpiryTime();
+        if (expiry == -1) {
+            cancel(session);
+            return;
+        }
+        long tick = Math.max(Math.floorDiv(expiry + TICK - 1, TICK), lastTick + 1);
+        long oldTick = session.expiryTick;
+        session.expiryTick = tick;
+        if (oldTick != -1 && slot(oldTick) != slot(tick)) {
+            slots[slot(oldTick)].remove(session);
+        }
+        slots[slot(tick)].add(session);
+    }
+
+    /**
+     * Cancel the expiry of a session.
+     *
+     * @param session the session.
+     */
+    public void cancel(DefaultHttpSession session) {
+        long tick = session.expiryTick;
+        if (tick != -1) {
+            session.expiryTick = -1;
+            slots[slot(tick)].remove(session);
+        }
+    }
+
+    /**
+     * Reap the sessions that expired at the given time.
+     *
+     * @param now the time in milliseconds.
+     * @return the number of sessions that were invalidated.
+     */
+    public int reap(long now) {
+        synchronized (reapLock) {
+            long nowTick = now / TICK;
+            long tick = Math.max(lastTick + 1, nowTick - WHEEL_SIZE + 1);
+            int expired = 0;
+            for (; tick <= nowTick; tick++) {
+                expired += reapSlot(tick, now);
+            }
+            if (nowTick > lastTick) {
+                lastTick = nowTick;
+            }
+            return expired;
+        }
+    }
+
+    /**
+     * Reap the sessions in the slot of a tick.
+     *
+     * @param tick the tick.
+     * @param now the time in milliseconds.
+     * @return the number of sessions that were invalidated.
+     */
+    private int reapSlot(long tick, long now) {
+        int expired = 0;
+        long nowTick = now / TICK;
+        Iterator<DefaultHttpSession> iterator = slots[slot(tick)].iterator();
+        while (iterator.hasNext()) {
+            DefaultHttpSession session = iterator.next();
+            if (session.expiryTick > nowTick) {
+                // due in a later revolution of the wheel
+                continue;
+            }
+            long expiry = session.getExpiryTime();
+            if (expiry != -1 && expiry > now) {
+                long newTick = Math.floorDiv(expiry + TICK - 1, TICK);
+                session.expiryTick = newTick;
+                if (slot(newTick) != slot(tick)) {
+                    iterator.remove();
+                    slots[slot(newTick)].add(session);
+                }
+                continue;
+            }
+            iterator.remove();
+            session.expiryTick = -1;
+            if (expiry != -1) {
+                try {
+                    session.invalidate();
+                    expired++;
+                } catch (IllegalStateException ise) {
+                    // already invalidated
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * {@return the number of scheduled sessions}
+     */
+    public int size() {
+        int size = 0;
+        for (Set<DefaultHttpSession> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    /**
+     * {@return the slot of a tick}
+     * @param tick the tick.
+     */
+    private static int slot(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+}
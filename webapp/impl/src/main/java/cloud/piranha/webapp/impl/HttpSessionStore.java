@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The append-only, memory-mapped store of passivated sessions.
+ *
+ * <p>
+ * Every change is appended to the file as a record. A record starts with its
+ * length, which is written last, so a record that was not completely written
+ * is ignored when the file is opened again. The file is extended ahead of
+ * time, and the first record with a zero length marks the end of the log.
+ * </p>
+ *
+ * <p>
+ * A put record holds the session id, its expiry time and the serialized
+ * session. A remove record holds the session id. When more than half of the
+ * file no longer holds live sessions the live records are copied to a new
+ * file that replaces the old one.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class HttpSessionStore implements Closeable {
+
+    /**
+     * Stores the initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    /**
+     * Stores the size of the record header (length and type).
+     */
+    private static final int HEADER_SIZE = 5;
+
+    /**
+     * Stores the put record type.
+     */
+    private static final byte PUT = 1;
+
+    /**
+     * Stores the remove record type.
+     */
+    private static final byte REMOVE = 2;
+
+    /**
+     * Stores the mapped buffer.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Stores the file channel.
+     */
+    private FileChannel channel;
+
+    /**
+     * Stores the file.
+     */
+    private final Path file;
+
+    /**
+     * Stores the number of bytes held by live records.
+     */
+    private long liveBytes;
+
+    /**
+     * Stores the position of the live record of each session.
+     */
+    private final HashMap<String, Entry> entries;
+
+    /**
+     * Stores the position the next record is appended at.
+     */
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The live records of an existing file are read so the sessions survive
+     * a restart.
+     * </p>
+     *
+     * @param file the file.
+     * @throws IOException when an I/O error occurs.
+     */
+    HttpSessionStore(Path file) throws IOException {
+        this.file = file;
+        this.entries = new HashMap<>();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Session store is too large: " + file);
+        }
+        buffer = channel.map(READ_WRITE, 0, Math.max(INITIAL_CAPACITY, size));
+        scan();
+    }
+
+    /**
+     * Read the records from the start of the file.
+     */
+    private void scan() {
+        position = 0;
+        while (position <= buffer.capacity() - HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_SIZE + 2 || length > buffer.capacity() - position) {
+                break;
+            }
+            byte type = buffer.get(position + 4);
+            int idLength = buffer.getShort(position + HEADER_SIZE) & 0xFFFF;
+            if (HEADER_SIZE + 2 + idLength + (type == PUT ? 8 : 0) > length) {
+                break;
+            }
+            String id = readId(position, idLength);
+            if (type == PUT) {
+                long expiryTime = buffer.getLong(position + HEADER_SIZE + 2 + idLength);
+                put(id, new Entry(position, length, expiryTime));
+            } else if (type == REMOVE) {
+                remove(id);
+            } else {
+                break;
+            }
+            position += length;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * {@return true if the session is in the store, false otherwise}
+     * @param id the session id.
+     */
+    synchronized boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * {@return the ids of the sessions that expired}
+     * @param now the current time.
+     */
+    synchronized List<String> expired(long now) {
+        ArrayList<String> expired = new ArrayList<>();
+        entries.forEach((id, entry) -> {
+            if (entry.expiryTime() >= 0 && entry.expiryTime() <= now) {
+                expired.add(id);
+            }
+        });
+        return expired;
+    }
+
+    /**
+     * Force the records to the file.
+     */
+    synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Store a session.
+     *
+     * @param id the session id.
+     * @param expiryTime the expiry time, or -1 if the session does not
+     * expire.
+     * @param data the serialized session.
+     * @throws IOException when an I/O error occurs.
+     */
+    synchronized void put(String id, long expiryTime, byte[] data) throws IOException {
+        byte[] idBytes = id.getBytes(UTF_8);
+        int start = append(PUT, idBytes, 8 + data.length);
+        buffer.putLong(start, expiryTime);
+        buffer.put(start + 8, data);
+        int length = start + 8 + data.length - position;
+        commit(length);
+        put(id, new Entry(position - length, length, expiryTime));
+        compactIfNeeded();
+    }
+
+    /**
+     * {@return the number of sessions in the store}
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Take a session out of the store.
+     *
+     * @param id the session id.
+     * @return the serialized session, or null if it is not in the store.
+     * @throws IOException when an I/O error occurs.
+     */
+    synchronized byte[] take(String id) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        int offset = entry.position() + HEADER_SIZE + 2 + (buffer.getShort(entry.position() + HEADER_SIZE) & 0xFFFF) + 8;
+        byte[] data = new byte[entry.position() + entry.length() - offset];
+        buffer.get(offset, data);
+        delete(id);
+        return data;
+    }
+
+    /**
+     * Remove a session from the store.
+     *
+     * @param id the session id.
+     * @throws IOException when an I/O error occurs.
+     */
+    synchronized void delete(String id) throws IOException {
+        if (entries.containsKey(id)) {
+            commit(append(REMOVE, id.getBytes(UTF_8), 0) - position);
+            remove(id);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Append the start of a record.
+     *
+     * @param type the record type.
+     * @param idBytes the session id.
+     * @param bodyLength the length of the rest of the record.
+     * @return the position the rest of the record is written at.
+     * @throws IOException when an I/O error occurs.
+     */
+    private int append(byte type, byte[] idBytes, int bodyLength) throws IOException {
+        long length = (long) HEADER_SIZE + 2 + idBytes.length + bodyLength;
+        ensureCapacity(position + length + HEADER_SIZE);
+        buffer.put(position + 4, type);
+        buffer.putShort(position + HEADER_SIZE, (short) idBytes.length);
+        buffer.put(position + HEADER_SIZE + 2, idBytes);
+        return position + HEADER_SIZE + 2 + idBytes.length;
+    }
+
+    /**
+     * Make the record at the current position visible.
+     *
+     * @param length the record length.
+     */
+    private void commit(int length) {
+        buffer.putInt(position + length, 0);
+        buffer.putInt(position, length);
+        position += length;
+    }
+
+    /**
+     * Copy the live records to a new file once the file is mostly garbage.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void compactIfNeeded() throws IOException {
+        long garbage = position - liveBytes;
+        if (garbage < INITIAL_CAPACITY || garbage < liveBytes) {
+            return;
+        }
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        int capacity = (int) Math.max(INITIAL_CAPACITY, Math.min(Integer.MAX_VALUE, liveBytes * 2));
+        HashMap<String, Entry> compactedEntries = new HashMap<>();
+        try (FileChannel compactedChannel = FileChannel.open(compacted, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            MappedByteBuffer compactedBuffer = compactedChannel.map(READ_WRITE, 0, capacity);
+            int compactedPosition = 0;
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                compactedBuffer.put(compactedPosition, buffer, entry.position(), entry.length());
+                compactedEntries.put(mapEntry.getKey(), new Entry(compactedPosition, entry.length(), entry.expiryTime()));
+                compactedPosition += entry.length();
+            }
+            compactedBuffer.force();
+            channel.close();
+            Files.move(compacted, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            channel = FileChannel.open(file, READ, WRITE);
+            buffer = channel.map(READ_WRITE, 0, capacity);
+            position = compactedPosition;
+            entries.clear();
+            entries.putAll(compactedEntries);
+        }
+    }
+
+    /**
+     * Extend the file so the given number of bytes fit.
+     *
+     * @param required the required capacity.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void ensureCapacity(long required) throws IOException {
+        if (required > buffer.capacity()) {
+            if (required > Integer.MAX_VALUE) {
+                throw new IOException("Session store is full: " + file);
+            }
+            long capacity = Math.min(Integer.MAX_VALUE, Math.max(required, (long) buffer.capacity() * 2));
+            buffer = channel.map(READ_WRITE, 0, capacity);
+        }
+    }
+
+    /**
+     * Index a live record.
+     *
+     * @param id the session id.
+     * @param entry the entry.
+     */
+    private void put(String id, Entry entry) {
+        Entry previous = entries.put(id, entry);
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+        liveBytes += entry.length();
+    }
+
+    /**
+     * Read the session id of a record.
+     *
+     * @param start the start of the record.
+     * @param idLength the length of the session id.
+     * @return the session id.
+     */
+    private String readId(int start, int idLength) {
+        byte[] idBytes = new byte[idLength];
+        buffer.get(start + HEADER_SIZE + 2, idBytes);
+        return new String(idBytes, UTF_8);
+    }
+
+    /**
+     * Remove a record from the index.
+     *
+     * @param id the session id.
+     */
+    private void remove(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+    }
+
+    /**
+     * The position, length and expiry time of a live record.
+     *
+     * @param position the position.
+     * @param length the length.
+     * @param expiryTime the expiry time.
+     */
+    private record Entry(int position, int length, long expiryTime) {
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import jakarta.servlet.MultipartConfigElement;
+
+/**
+ * The streaming parser of a multipart/form-data request body.
+ *
+ * <p>
+ * The body is read once through a single buffer. The delimiter is searched
+ * for with the Boyer-Moore-Horspool algorithm and the content in front of it
+ * is handed to the part as soon as it can no longer be the start of a
+ * delimiter, so a part never has to fit in memory.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class MultiPartParser {
+
+    /**
+     * Stores the buffer size.
+     */
+    static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Stores the buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Stores the charset of the part headers.
+     */
+    private final Charset charset;
+
+    /**
+     * Stores the delimiter, which is CRLF followed by '--' and the boundary.
+     */
+    private final byte[] delimiter;
+
+    /**
+     * Stores whether the end of the input was reached.
+     */
+    private boolean endOfInput;
+
+    /**
+     * Stores the size after which a part is written to disk.
+     */
+    private final int fileSizeThreshold;
+
+    /**
+     * Stores the input.
+     */
+    private final InputStream input;
+
+    /**
+     * Stores the limit of the buffer.
+     */
+    private int limit;
+
+    /**
+     * Stores the location.
+     */
+    private final Path location;
+
+    /**
+     * Stores the maximum size of a part, or -1 for unlimited.
+     */
+    private final long maxFileSize;
+
+    /**
+     * Stores the maximum number of parts, or -1 for unlimited.
+     */
+    private final int maxPartCount;
+
+    /**
+     * Stores the maximum number of header lines of a part, or -1 for
+     * unlimited.
+     */
+    private final int maxPartHeaderCount;
+
+    /**
+     * Stores the maximum size of the request, or -1 for unlimited.
+     */
+    private final long maxRequestSize;
+
+    /**
+     * Stores the position in the buffer.
+     */
+    private int position;
+
+    /**
+     * Stores the number of bytes read from the input.
+     */
+    private long requestSize;
+
+    /**
+     * Stores the Boyer-Moore-Horspool shifts of the delimiter.
+     */
+    private final int[] shifts;
+
+    /**
+     * Constructor.
+     *
+     * @param input the input.
+     * @param boundary the boundary.
+     * @param charset the charset of the part headers.
+     * @param multipartConfig the multipart config.
+     * @param location the location.
+     * @param maxPartCount the maximum number of parts, or -1 for unlimited.
+     * @param maxPartHeaderCount the maximum number of header lines of a part,
+     * or -1 for unlimited.
+     */
+    MultiPartParser(InputStream input, String boundary, Charset charset,
+            MultipartConfigElement multipartConfig, Path location,
+            int maxPartCount, int maxPartHeaderCount) {
+        this.input = input;
+        this.charset = charset;
+        this.location = location;
+        this.maxPartCount = maxPartCount;
+        this.maxPartHeaderCount = maxPartHeaderCount;
+        this.fileSizeThreshold = Math.max(multipartConfig.getFileSizeThreshold(), 0);
+        this.maxFileSize = multipartConfig.getMaxFileSize();
+        this.maxRequestSize = multipartConfig.getMaxRequestSize();
+        this.delimiter = ("\r\n--" + boundary).getBytes(ISO_8859_1);
+        this.shifts = new int[256];
+        Arrays.fill(shifts, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            shifts[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        }
+        this.buffer = new byte[BUFFER_SIZE];
+        // the first delimiter is not preceded by a CRLF
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * Parse the parts.
+     *
+     * @return the parts.
+     * @throws IOException when an I/O error occurs or the body is malformed.
+     * @throws IllegalStateException when a part is larger than the maximum
+     * file size, the request is larger than the maximum request size, or has
+     * more parts or part header lines than allowed.
+     */
+    List<DefaultMultiPart> parse() throws IOException {
+        List<DefaultMultiPart> parts = new ArrayList<>();
+        try {
+            if (!skipPreamble()) {
+                if (requestSize == 0) {
+                    return parts;
+                }
+                throw new IOException("Multipart boundary not found");
+            }
+            while (true) {
+                if (!ensure(2)) {
+                    throw new IOException("Unexpected end of multipart body");
+                }
+                if (buffer[position] == '-' && buffer[position + 1] == '-') {
+                    break;
+                }
+                while (ensure(1) && (buffer[position] == ' ' || buffer[position] == '\t')) {
+                    position++;
+                }
+                if (!ensure(2) || buffer[position] != '\r' || buffer[position + 1] != '\n') {
+                    throw new IOException("Malformed multipart boundary");
+                }
+                position += 2;
+                if (maxPartCount != -1 && parts.size() == maxPartCount) {
+                    throw new IllegalStateException("Request has more than the maximum number of parts");
+                }
+                DefaultMultiPart part = readHeaders();
+                parts.add(part);
+                readContent(part);
+            }
+        } catch (IOException | RuntimeException e) {
+            parts.forEach(DefaultMultiPart::deleteTemporaryFile);
+            throw e;
+        }
+        return parts;
+    }
+
+    /**
+     * Skip the preamble up to and including the first delimiter.
+     *
+     * @return true if the delimiter was found, false otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    private boolean skipPreamble() throws IOException {
+        while (true) {
+            int index = indexOfDelimiter();
+            if (index != -1) {
+                position = index + delimiter.length;
+                return true;
+            }
+            position = Math.max(position, limit - delimiter.length + 1);
+            if (fill() == -1) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read the headers of a part.
+     *
+     * @return the part.
+     * @throws IOException when an I/O error occurs or the headers are
+     * malformed.
+     * @throws IllegalStateException when the part has more header lines than
+     * allowed.
+     */
+    private DefaultMultiPart readHeaders() throws IOException {
+        List<String> names = new ArrayList<>(2);
+        List<String> values = new ArrayList<>(2);
+        int lineCount = 0;
+        int scan = position;
+        while (true) {
+            int end = -1;
+            for (int i = scan; i < limit - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (end == -1) {
+                scan = Math.max(limit - 1, position) - position;
+                int read = fill();
+                if (read == 0) {
+                    throw new IOException("Multipart headers are too large");
+                }
+                if (read == -1) {
+                    throw new IOException("Unexpected end of multipart body");
+                }
+                scan += position;
+                continue;
+            }
+            if (end == position) {
+                position += 2;
+                return new DefaultMultiPart(names, values, location);
+            }
+            if (maxPartHeaderCount != -1 && ++lineCount > maxPartHeaderCount) {
+                throw new IllegalStateException("Part has more than the maximum number of header lines");
+            }
+            String line = new String(buffer, position, end - position, charset);
+            if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && !values.isEmpty()) {
+                int last = values.size() - 1;
+                values.set(last, values.get(last) + " " + line.trim());
+            } else {
+                int colon = line.indexOf(':');
+                if (colon < 1) {
+                    throw new IOException("Malformed multipart header");
+                }
+                names.add(line.substring(0, colon).trim());
+                values.add(line.substring(colon + 1).trim());
+            }
+            position = end + 2;
+            scan = position;
+        }
+    }
+
+    /**
+     * Read the content of a part up to the next delimiter.
+     *
+     * @param part the part.
+     * @throws IOException when an I/O error occurs or the body ends before
+     * the delimiter.
+     */
+    private void readContent(DefaultMultiPart part) throws IOException {
+        while (true) {
+            int index = indexOfDelimiter();
+            int end = index != -1 ? index : Math.max(position, limit - delimiter.length + 1);
+            if (end > position) {
+                if (maxFileSize != -1 && part.getSize() + end - position > maxFileSize) {
+                    throw new IllegalStateException("Part is larger than the maximum file size");
+                }
+                part.append(buffer, position, end - position, fileSizeThreshold);
+                position = end;
+            }
+            if (index != -1) {
+                position += delimiter.length;
+                part.complete();
+                return;
+            }
+            if (fill() == -1) {
+                throw new IOException("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    /**
+     * Find the delimiter between the position and the limit.
+     *
+     * @return the index of the delimiter, or -1 if not found.
+     */
+    private int indexOfDelimiter() {
+        int last = delimiter.length - 1;
+        int index = position;
+        while (index + last < limit) {
+            int i = last;
+            while (buffer[index + i] == delimiter[i]) {
+                if (i == 0) {
+                    return index;
+                }
+                i--;
+            }
+            index += shifts[buffer[index + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Ensure the given number of bytes is available after the position.
+     *
+     * @param count the number of bytes.
+     * @return true if they are available, false otherwise.
+     * @throws IOException when an I/O error occurs.
+     */
+    private boolean ensure(int count) throws IOException {
+        while (limit - position < count) {
+            if (fill() <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the unread bytes to the front of the buffer and read more.
+     *
+     * @return the number of bytes read, 0 if the buffer is full, or -1 at
+     * the end of the input.
+     * @throws IOException when an I/O error occurs.
+     */
+    private int fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (endOfInput) {
+            return -1;
+        }
+        if (limit == buffer.length) {
+            return 0;
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            endOfInput = true;
+            return -1;
+        }
+        requestSize += read;
+        if (maxRequestSize != -1 && requestSize > maxRequestSize) {
+            throw new IllegalStateException("Request is larger than the maximum request size");
+        }
+        limit += read;
+        return read;
+    }
+
+    /**
+     * Get the boundary of a multipart/form-data content type.
+     *
+     * @param contentType the content type.
+     * @return the boundary, or null if there is none.
+     */
+    static String getBoundary(String contentType) {
+        String boundary = getParameter(contentType, "boundary");
+        return boundary != null && !boundary.isEmpty() && boundary.length() <= 70 ? boundary : null;
+    }
+
+    /**
+     * Get a parameter of a header value.
+     *
+     * <p>
+     * The parameters follow the first ';' and are separated by ';'. A quoted
+     * value has its quotes removed and an escaped quote or backslash
+     * resolved, other backslashes (like in a Windows path) are kept.
+     * </p>
+     *
+     * @param value the header value.
+     * @param name the name of the parameter.
+     * @return the parameter, or null if not found.
+     */
+    static String getParameter(String value, String name) {
+        if (value == null) {
+            return null;
+        }
+        int index = value.indexOf(';');
+        while (index != -1) {
+            int start = index + 1;
+            while (start < value.length() && (value.charAt(start) == ' ' || value.charAt(start) == '\t')) {
+                start++;
+            }
+            int equals = start;
+            while (equals < value.length() && value.charAt(equals) != '=' && value.charAt(equals) != ';') {
+                equals++;
+            }
+            boolean matches = equals < value.length() && value.charAt(equals) == '='
+                    && value.substring(start, equals).trim().equalsIgnoreCase(name);
+            if (equals < value.length() && value.charAt(equals) == '=') {
+                int i = equals + 1;
+                while (i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '\t')) {
+                    i++;
+                }
+                if (i < value.length() && value.charAt(i) == '"') {
+                    StringBuilder builder = new StringBuilder();
+                    i++;
+                    while (i < value.length() && value.charAt(i) != '"') {
+                        if (value.charAt(i) == '\\' && i + 1 < value.length()
+                                && (value.charAt(i + 1) == '"' || value.charAt(i + 1) == '\\')) {
+                            i++;
+                        }
+                        builder.append(value.charAt(i++));
+                    }
+                    if (matches) {
+                        return builder.toString();
+                    }
+                    index = value.indexOf(';', i);
+                } else {
+                    int end = value.indexOf(';', i);
+                    if (matches) {
+                        return (end == -1 ? value.substring(i) : value.substring(i, end)).trim();
+                    }
+                    index = end;
+                }
+            } else {
+                index = equals < value.length() ? equals : -1;
+            }
+        }
+        return null;
+    }
+}
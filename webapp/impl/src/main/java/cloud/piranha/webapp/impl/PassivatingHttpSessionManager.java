@@ -0,0 +1,766 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionActivationListener;
+import jakarta.servlet.http.HttpSessionEvent;
+
+/**
+ * The passivating HTTP session manager.
+ *
+ * <p>
+ * Recently used sessions are kept in memory within a budget for the number of
+ * sessions and for their serialized size. The least recently used sessions
+ * beyond the budget, and sessions that are idle for longer than the maximum
+ * idle time, are passivated to an append-only, memory-mapped session store.
+ * A passivated session is activated again when a request asks for it. The
+ * attributes that are a HttpSessionActivationListener are notified.
+ * </p>
+ *
+ * <p>
+ * The budget is checked at most once per sweep interval, or as soon as there
+ * are more sessions than the maximum, when a request is done. The check runs
+ * on the thread of the session reaper, so the request does not wait for it. A
+ * session is never passivated while a request that obtained it is still in
+ * progress, and a session with an attribute that cannot be serialized stays
+ * in memory. When the manager is stopped all sessions are passivated, so they
+ * survive a restart when the next manager uses the same session store.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class PassivatingHttpSessionManager extends DefaultHttpSessionManager {
+
+    /**
+     * Stores the logger.
+     */
+    private static final Logger LOGGER = System.getLogger(PassivatingHttpSessionManager.class.getName());
+
+    /**
+     * Stores the name of the request attribute holding the id of the session
+     * the request uses.
+     */
+    private static final String SESSION_ATTRIBUTE = PassivatingHttpSessionManager.class.getName() + ".sessionId";
+
+    /**
+     * Stores the sessions that are being activated.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<HttpSession>> activating;
+
+    /**
+     * Stores the number of requests using each session.
+     */
+    private final ConcurrentHashMap<String, Integer> inUse;
+
+    /**
+     * Stores the lock guarding the session store and moving sessions between
+     * memory and the session store.
+     */
+    private final Object lock;
+
+    /**
+     * Stores the maximum serialized size (in bytes) of the sessions in memory.
+     */
+    protected long maxActiveBytes;
+
+    /**
+     * Stores the maximum number of sessions in memory.
+     */
+    protected int maxActiveSessions;
+
+    /**
+     * Stores the maximum idle time (in seconds) of a session in memory.
+     */
+    protected int maxIdleTime;
+
+    /**
+     * Stores the time of the next sweep.
+     */
+    private volatile long nextSweep;
+
+    /**
+     * Stores the sessions that are being passivated.
+     */
+    private final ConcurrentHashMap<String, DefaultHttpSession> passivating;
+
+    /**
+     * Stores the serialized size of the sessions in memory.
+     */
+    private final ConcurrentHashMap<String, SessionSize> sizes;
+
+    /**
+     * Stores the session store.
+     */
+    private HttpSessionStore store;
+
+    /**
+     * Stores the session store file.
+     */
+    private final Path storeFile;
+
+    /**
+     * Stores whether a sweep is submitted or running.
+     */
+    private final AtomicBoolean sweeping;
+
+    /**
+     * Stores the sweep interval (in milliseconds).
+     */
+    protected long sweepInterval;
+
+    /**
+     * Constructor.
+     *
+     * @param storeFile the session store file.
+     */
+    public PassivatingHttpSessionManager(Path storeFile) {
+        super();
+        this.activating = new ConcurrentHashMap<>();
+        this.inUse = new ConcurrentHashMap<>();
+        this.lock = new Object();
+        this.maxActiveBytes = -1;
+        this.maxActiveSessions = -1;
+        this.maxIdleTime = -1;
+        this.passivating = new ConcurrentHashMap<>();
+        this.sizes = new ConcurrentHashMap<>();
+        this.storeFile = storeFile;
+        this.sweeping = new AtomicBoolean();
+        this.sweepInterval = 10000;
+    }
+
+    @Override
+    public String changeSessionId(HttpServletRequest request) {
+        String sessionId = super.changeSessionId(request);
+        markInUse(request, sessionId);
+        return sessionId;
+    }
+
+    @Override
+    public HttpSession createSession(HttpServletRequest request) {
+        HttpSession session = super.createSession(request);
+        markInUse(request, session.getId());
+        return session;
+    }
+
+    @Override
+    public void destroySession(HttpSession session) {
+        synchronized (lock) {
+            if (session instanceof DefaultHttpSession defaultSession
+                    && passivating.remove(session.getId(), defaultSession)) {
+                sessions.put(session.getId(), session);
+            }
+        }
+        super.destroySession(session);
+        sizes.remove(session.getId());
+    }
+
+    /**
+     * {@return the maximum serialized size (in bytes) of the sessions in
+     * memory, or -1 if there is no maximum}
+     */
+    public long getMaxActiveBytes() {
+        return maxActiveBytes;
+    }
+
+    /**
+     * {@return the maximum number of sessions in memory, or -1 if there is no
+     * maximum}
+     */
+    public int getMaxActiveSessions() {
+        return maxActiveSessions;
+    }
+
+    /**
+     * {@return the maximum idle time (in seconds) of a session in memory, or
+     * -1 if there is no maximum}
+     */
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * {@return the number of passivated sessions}
+     */
+    public int getPassivatedSessionCount() {
+        synchronized (lock) {
+            try {
+                return getStore().size();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Unable to open session store", ioe);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * {@return the sweep interval (in milliseconds)}
+     */
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    @Override
+    public HttpSession getSession(HttpServletRequest request, String currentSessionId) {
+        markInUse(request, currentSessionId);
+        HttpSession session = sessions.get(currentSessionId);
+        if (session == null) {
+            session = activate(currentSessionId);
+        }
+        return session;
+    }
+
+    @Override
+    public boolean hasSession(String sessionId) {
+        if (super.hasSession(sessionId)) {
+            return true;
+        }
+        if (sessionId == null) {
+            return false;
+        }
+        synchronized (lock) {
+            if (passivating.containsKey(sessionId) || activating.containsKey(sessionId)) {
+                return true;
+            }
+            try {
+                return getStore().contains(sessionId);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Unable to open session store", ioe);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void releaseSession(HttpServletRequest request) {
+        if (request.getAttribute(SESSION_ATTRIBUTE) instanceof String sessionId) {
+            request.removeAttribute(SESSION_ATTRIBUTE);
+            release(sessionId);
+        }
+        long now = System.currentTimeMillis();
+        if ((now >= nextSweep || isOverSessionBudget()) && sweeping.compareAndSet(false, true)) {
+            nextSweep = now + sweepInterval;
+            startReaping();
+            if (!reaper.execute(this::sweep)) {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    /**
+     * Set the maximum serialized size (in bytes) of the sessions in memory.
+     *
+     * @param maxActiveBytes the maximum size, or -1 for no maximum.
+     */
+    public void setMaxActiveBytes(long maxActiveBytes) {
+        this.maxActiveBytes = maxActiveBytes;
+    }
+
+    /**
+     * Set the maximum number of sessions in memory.
+     *
+     * @param maxActiveSessions the maximum number, or -1 for no maximum.
+     */
+    public void setMaxActiveSessions(int maxActiveSessions) {
+        this.maxActiveSessions = maxActiveSessions;
+    }
+
+    /**
+     * Set the maximum idle time (in seconds) of a session in memory.
+     *
+     * @param maxIdleTime the maximum idle time, or -1 for no maximum.
+     */
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Set the sweep interval (in milliseconds).
+     *
+     * @param sweepInterval the sweep interval.
+     */
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * Passivate all sessions and close the session store.
+     */
+    @Override
+    public synchronized void stop() {
+        for (HttpSession session : List.copyOf(sessions.values())) {
+            passivate((DefaultHttpSession) session, true);
+        }
+        synchronized (lock) {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.WARNING, "Unable to close session store", ioe);
+                }
+                store = null;
+            }
+        }
+        super.stop();
+    }
+
+    /**
+     * Activate a passivated session.
+     *
+     * <p>
+     * Only taking the session out of the store happens under the lock. A
+     * session that is being passivated is handed back as is, and requests
+     * for a session that is being activated wait for that activation.
+     * </p>
+     *
+     * @param sessionId the session id.
+     * @return the session, or null if it is not passivated or expired.
+     */
+    private HttpSession activate(String sessionId) {
+        CompletableFuture<HttpSession> activation;
+        byte[] data;
+        synchronized (lock) {
+            HttpSession active = sessions.get(sessionId);
+            if (active != null) {
+                return active;
+            }
+            DefaultHttpSession claimed = passivating.remove(sessionId);
+            if (claimed != null) {
+                sessions.put(sessionId, claimed);
+                return claimed;
+            }
+            activation = activating.get(sessionId);
+            if (activation != null) {
+                data = null;
+            } else {
+                try {
+                    data = getStore().take(sessionId);
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.WARNING, "Unable to activate session", ioe);
+                    return null;
+                }
+                if (data == null) {
+                    return null;
+                }
+                activation = new CompletableFuture<>();
+                activating.put(sessionId, activation);
+            }
+        }
+        if (data == null) {
+            return activation.join();
+        }
+        HttpSession session = null;
+        try {
+            session = activate(sessionId, data);
+        } finally {
+            synchronized (lock) {
+                activating.remove(sessionId);
+            }
+            activation.complete(session);
+        }
+        return session;
+    }
+
+    /**
+     * Activate a session taken out of the session store.
+     *
+     * @param sessionId the session id.
+     * @param data the serialized session.
+     * @return the session, or null if it cannot be read or expired.
+     */
+    private HttpSession activate(String sessionId, byte[] data) {
+        DefaultHttpSession session;
+        try {
+            session = readSession(sessionId, data);
+        } catch (IOException | ClassNotFoundException e) {
+            LOGGER.log(Level.WARNING, "Unable to activate session", e);
+            return null;
+        }
+        session.setSessionManager(this);
+        synchronized (lock) {
+            sessions.put(sessionId, session);
+        }
+        long expiryTime = session.getExpiryTime();
+        if (expiryTime >= 0 && expiryTime <= System.currentTimeMillis()) {
+            session.invalidate();
+            return null;
+        }
+        scheduleSession(session);
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        for (String name : Collections.list(session.getAttributeNames())) {
+            if (session.getAttribute(name) instanceof HttpSessionActivationListener listener) {
+                listener.sessionDidActivate(event);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * {@return the session store, which is opened when needed}
+     * @throws IOException when an I/O error occurs.
+     */
+    private HttpSessionStore getStore() throws IOException {
+        if (store == null) {
+            store = new HttpSessionStore(storeFile);
+        }
+        return store;
+    }
+
+    /**
+     * {@return true if there are more sessions in memory than the maximum}
+     */
+    private boolean isOverSessionBudget() {
+        return maxActiveSessions >= 0 && sessions.size() > maxActiveSessions;
+    }
+
+    /**
+     * Record the request uses the session.
+     *
+     * <p>
+     * The request may change an attribute value in place, which does not
+     * change the modification count of the attributes, so the serialized size
+     * of the session is measured again once it is no longer used.
+     * </p>
+     *
+     * @param request the request.
+     * @param sessionId the session id.
+     */
+    private void markInUse(HttpServletRequest request, String sessionId) {
+        Object marked = request.getAttribute(SESSION_ATTRIBUTE);
+        if (!sessionId.equals(marked)) {
+            inUse.merge(sessionId, 1, Integer::sum);
+            sizes.computeIfPresent(sessionId, (key, size) -> new SessionSize(-1, size.bytes()));
+            request.setAttribute(SESSION_ATTRIBUTE, sessionId);
+            if (marked instanceof String markedSessionId) {
+                release(markedSessionId);
+            }
+        }
+    }
+
+    /**
+     * Passivate a session.
+     *
+     * <p>
+     * The session is taken out of memory under the lock, but it is serialized
+     * and its listeners are called outside of it. Only writing it to the
+     * session store happens under the lock again. A request that asks for the
+     * session in the meantime gets it back, and then it is not passivated.
+     * </p>
+     *
+     * @param session the session.
+     * @param stopping true if the manager is stopping, which passivates the
+     * session even if a request uses it.
+     * @return true if the session was passivated, false otherwise.
+     */
+    private boolean passivate(DefaultHttpSession session, boolean stopping) {
+        String sessionId = session.getId();
+        synchronized (lock) {
+            if (!stopping && inUse.containsKey(sessionId)) {
+                return false;
+            }
+            if (!sessions.remove(sessionId, session)) {
+                return false;
+            }
+            passivating.put(sessionId, session);
+        }
+        List<String> names;
+        HttpSessionEvent event = new HttpSessionEvent(session);
+        byte[] data;
+        try {
+            names = Collections.list(session.getAttributeNames());
+            for (String name : names) {
+                if (session.getAttribute(name) instanceof HttpSessionActivationListener listener) {
+                    listener.sessionWillPassivate(event);
+                }
+            }
+            data = writeSession(session);
+        } catch (IOException ioe) {
+            if (stopping) {
+                LOGGER.log(Level.WARNING, "Unable to passivate session " + sessionId
+                        + ", it is lost when the web application is restarted", ioe);
+            } else {
+                LOGGER.log(Level.DEBUG, "Unable to passivate session", ioe);
+            }
+            sizes.put(sessionId, new SessionSize(session.getAttributeStore().getModificationCount(), -1));
+            synchronized (lock) {
+                if (passivating.remove(sessionId, session)) {
+                    sessions.put(sessionId, session);
+                }
+            }
+            didActivate(session, event);
+            return false;
+        } catch (IllegalStateException ise) {
+            // invalidated while it was being passivated
+            passivating.remove(sessionId, session);
+            return false;
+        }
+        synchronized (lock) {
+            if (passivating.remove(sessionId, session)) {
+                try {
+                    getStore().put(sessionId, session.getExpiryTime(), data);
+                    reaper.cancel(session);
+                    sizes.remove(sessionId);
+                    return true;
+                } catch (IOException ioe) {
+                    LOGGER.log(stopping ? Level.WARNING : Level.DEBUG, "Unable to store session " + sessionId, ioe);
+                    sessions.put(sessionId, session);
+                }
+            }
+        }
+        didActivate(session, event);
+        return false;
+    }
+
+    /**
+     * Notify the listeners of a session that was not passivated after all.
+     *
+     * @param session the session.
+     * @param event the session event.
+     */
+    private void didActivate(DefaultHttpSession session, HttpSessionEvent event) {
+        try {
+            for (String name : Collections.list(session.getAttributeNames())) {
+                if (session.getAttribute(name) instanceof HttpSessionActivationListener listener) {
+                    listener.sessionDidActivate(event);
+                }
+            }
+        } catch (IllegalStateException ise) {
+            // invalidated while it was being passivated
+        }
+    }
+
+    /**
+     * Read a passivated session.
+     *
+     * @param sessionId the session id.
+     * @param data the serialized session.
+     * @return the session.
+     * @throws IOException when an I/O error occurs.
+     * @throws ClassNotFoundException when an attribute class is not found.
+     */
+    private DefaultHttpSession readSession(String sessionId, byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new SessionInputStream(new ByteArrayInputStream(data), webApplication.getClassLoader())) {
+            long creationTime = input.readLong();
+            long lastAccessedTime = input.readLong();
+            int maxInactiveInterval = input.readInt();
+            int count = input.readInt();
+            HashMap<String, Object> attributes = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                attributes.put(input.readUTF(), input.readObject());
+            }
+            return new DefaultHttpSession(webApplication, sessionId, creationTime, lastAccessedTime, maxInactiveInterval, attributes);
+        }
+    }
+
+    /**
+     * Release the session used by a request.
+     *
+     * @param sessionId the session id.
+     */
+    private void release(String sessionId) {
+        inUse.computeIfPresent(sessionId, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Passivate expired and idle sessions, and sessions beyond the budget, on
+     * the thread of the session reaper.
+     */
+    private void sweep() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (RuntimeException re) {
+            LOGGER.log(Level.WARNING, "Unable to passivate sessions", re);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Passivate expired and idle sessions, and sessions beyond the budget.
+     *
+     * @param now the current time.
+     */
+    private void sweep(long now) {
+        List<String> expired;
+        synchronized (lock) {
+            try {
+                expired = getStore().expired(now);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Unable to open session store", ioe);
+                return;
+            }
+        }
+        expired.forEach(this::activate);
+
+        List<DefaultHttpSession> active = sessions.values().stream()
+                .map(DefaultHttpSession.class::cast)
+                .sorted(Comparator.comparingLong(DefaultHttpSession::getAccessedTime))
+                .toList();
+        int count = active.size();
+        int maxCount = count;
+        if (maxActiveSessions >= 0 && count > maxActiveSessions) {
+            maxCount = maxActiveSessions - maxActiveSessions / 10;
+        }
+        long bytes = 0;
+        if (maxActiveBytes >= 0) {
+            for (DefaultHttpSession session : active) {
+                bytes += Math.max(0, getSize(session));
+            }
+        }
+        long idleBefore = maxIdleTime >= 0 ? now - maxIdleTime * 1000L : Long.MIN_VALUE;
+        for (DefaultHttpSession session : active) {
+            boolean withinBytes = maxActiveBytes < 0 || bytes <= maxActiveBytes;
+            if (count <= maxCount && withinBytes && session.getAccessedTime() >= idleBefore) {
+                break;
+            }
+            SessionSize size = sizes.get(session.getId());
+            if (size != null && size.bytes() < 0
+                    && size.modificationCount() == session.getAttributeStore().getModificationCount()) {
+                continue;
+            }
+            long sessionBytes = size != null ? Math.max(0, size.bytes()) : 0;
+            if (passivate(session, false)) {
+                count--;
+                bytes -= sessionBytes;
+            }
+        }
+    }
+
+    /**
+     * {@return the serialized size of the session, or -1 if it is unknown}
+     * @param session the session.
+     */
+    private long getSize(DefaultHttpSession session) {
+        SessionSize size = sizes.get(session.getId());
+        long modificationCount = session.getAttributeStore().getModificationCount();
+        if (size != null && size.modificationCount() == modificationCount) {
+            return size.bytes();
+        }
+        if (inUse.containsKey(session.getId())) {
+            return size != null ? size.bytes() : -1;
+        }
+        long bytes;
+        try {
+            bytes = writeSession(session).length;
+        } catch (IOException | RuntimeException e) {
+            bytes = -1;
+        }
+        sizes.put(session.getId(), new SessionSize(modificationCount, bytes));
+        return bytes;
+    }
+
+    /**
+     * Serialize a session.
+     *
+     * @param session the session.
+     * @return the serialized session.
+     * @throws IOException when an I/O error occurs, or an attribute cannot be
+     * serialized.
+     */
+    private byte[] writeSession(DefaultHttpSession session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            List<String> names = Collections.list(session.getAttributeNames());
+            output.writeLong(session.getCreationTime());
+            output.writeLong(session.getAccessedTime());
+            output.writeInt(session.getMaxInactiveInterval());
+            output.writeInt(names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+                output.writeObject(session.getAttribute(name));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The ObjectInputStream that resolves classes with the web application
+     * class loader.
+     */
+    private static class SessionInputStream extends ObjectInputStream {
+
+        /**
+         * Stores the class loader.
+         */
+        private final ClassLoader classLoader;
+
+        /**
+         * Constructor.
+         *
+         * @param input the input stream.
+         * @param classLoader the class loader.
+         * @throws IOException when an I/O error occurs.
+         */
+        SessionInputStream(InputStream input, ClassLoader classLoader) throws IOException {
+            super(input);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(description.getName(), false, classLoader);
+                } catch (ClassNotFoundException cnfe) {
+                    // fall back to the default resolution below
+                }
+            }
+            return super.resolveClass(description);
+        }
+    }
+
+    /**
+     * The serialized size of a session at a modification count of its
+     * attributes.
+     *
+     * @param modificationCount the modification count, or -1 if the session
+     * was used since its size was measured.
+     * @param bytes the serialized size, or -1 if it cannot be serialized.
+     */
+    private record SessionSize(long modificationCount, long bytes) {
+    }
+}
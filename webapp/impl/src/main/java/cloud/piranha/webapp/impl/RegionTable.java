@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+/**
+ * An immutable open addressing hash table with string keys that is looked up
+ * with a region of a string.
+ *
+ * <p>
+ * Looking up a path segment or an extension as a region of the path avoids
+ * allocating a substring for every lookup. It is used by the servlet mapping
+ * index and by the context path tree of the HTTP server integration.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ * @param <V> the type of the values.
+ */
+public final class RegionTable<V> {
+
+    /**
+     * Stores the keys.
+     */
+    private final String[] keys;
+
+    /**
+     * Stores the values.
+     */
+    private final Object[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param keys the keys.
+     * @param values the values.
+     */
+    private RegionTable(String[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Get the value for a region of a string.
+     *
+     * @param string the string.
+     * @param start the start of the region.
+     * @param end the end of the region.
+     * @return the value, or null if not found.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String string, int start, int end) {
+        if (keys.length == 0) {
+            return null;
+        }
+        int length = end - start;
+        int mask = keys.length - 1;
+        for (int i = hash(string, start, end) & mask;; i = (i + 1) & mask) {
+            String key = keys[i];
+            if (key == null) {
+                return null;
+            }
+            if (key.length() == length && string.regionMatches(start, key, 0, length)) {
+                return (V) values[i];
+            }
+        }
+    }
+
+    /**
+     * {@return the hash of a region of a string}
+     *
+     * @param string the string.
+     * @param start the start of the region.
+     * @param end the end of the region.
+     */
+    private static int hash(String string, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + string.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The builder of a region table.
+     *
+     * @param <V> the type of the values.
+     */
+    public static final class Builder<V> {
+
+        /**
+         * Stores the keys.
+         */
+        private String[] keys = new String[0];
+
+        /**
+         * Stores the values.
+         */
+        private Object[] values = new Object[0];
+
+        /**
+         * Stores the size.
+         */
+        private int size;
+
+        /**
+         * Put a value, keeping an existing value for the same key.
+         *
+         * @param key the key.
+         * @param value the value.
+         */
+        public void put(String key, V value) {
+            if (keys.length == 0 || (size + 1) * 2 > keys.length) {
+                resize(Math.max(8, keys.length * 2));
+            }
+            if (insert(keys, values, key, value)) {
+                size++;
+            }
+        }
+
+        /**
+         * Build the table.
+         *
+         * @return the table.
+         */
+        public RegionTable<V> build() {
+            return new RegionTable<>(keys, values);
+        }
+
+        /**
+         * Resize the table.
+         *
+         * @param capacity the new capacity.
+         */
+        private void resize(int capacity) {
+            String[] newKeys = new String[capacity];
+            Object[] newValues = new Object[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    insert(newKeys, newValues, keys[i], values[i]);
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        /**
+         * Insert a key and value.
+         *
+         * @param keys the keys.
+         * @param values the values.
+         * @param key the key.
+         * @param value the value.
+         * @return true if the key was inserted, false if it was present.
+         */
+        private static boolean insert(String[] keys, Object[] values, String key, Object value) {
+            int mask = keys.length - 1;
+            for (int i = hash(key, 0, key.length()) & mask;; i = (i + 1) & mask) {
+                if (keys[i] == null) {
+                    keys[i] = key;
+                    values[i] = value;
+                    return true;
+                }
+                if (keys[i].equals(key)) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The parameters of an application/x-www-form-urlencoded query string or
+ * form body.
+ *
+ * <p>
+ * The bytes are parsed in a single pass. The names are decoded up front while
+ * the values are kept as ranges of the bytes and only decoded (and then
+ * cached) when read. Percent escapes are decoded straight from the bytes as
+ * UTF-8, a '+' is a space and an invalid escape is kept as is. Empty names
+ * are skipped and a name without '=' has an empty value.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class UrlEncodedParameters {
+
+    /**
+     * Stores the bytes.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Stores the number of parameters.
+     */
+    private int count;
+
+    /**
+     * Stores the first index of every name.
+     */
+    private final HashMap<String, Integer> firstIndexes;
+
+    /**
+     * Stores the last index of every name, indexed by its first index.
+     */
+    private int[] lastIndexes;
+
+    /**
+     * Stores if parameters beyond the maximum number were dropped.
+     */
+    private boolean truncated;
+
+    /**
+     * Stores the decoded names.
+     */
+    private String[] names;
+
+    /**
+     * Stores the index of the next parameter with the same name, or -1.
+     */
+    private int[] nextIndexes;
+
+    /**
+     * Stores the start and end of every value in the bytes.
+     */
+    private int[] valueRanges;
+
+    /**
+     * Stores the decoded values.
+     */
+    private String[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param bytes the bytes.
+     */
+    private UrlEncodedParameters(byte[] bytes) {
+        this.bytes = bytes;
+        this.firstIndexes = new HashMap<>();
+        this.lastIndexes = new int[8];
+        this.names = new String[8];
+        this.nextIndexes = new int[8];
+        this.valueRanges = new int[16];
+        this.values = new String[8];
+    }
+
+    /**
+     * Parse the given bytes.
+     *
+     * <p>
+     * The bytes are not copied, so they must not be changed while the values
+     * are read. Parsing stops at the maximum number of parameters, see
+     * {@link #isTruncated()}.
+     * </p>
+     *
+     * @param bytes the bytes.
+     * @param offset the offset.
+     * @param length the number of bytes.
+     * @param maxParameterCount the maximum number of parameters.
+     * @return the parameters.
+     */
+    public static UrlEncodedParameters parse(byte[] bytes, int offset, int length, int maxParameterCount) {
+        UrlEncodedParameters parameters = new UrlEncodedParameters(bytes);
+        int end = offset + length;
+        int index = offset;
+        while (index < end) {
+            int pairStart = index;
+            int equals = -1;
+            while (index < end && bytes[index] != '&') {
+                if (bytes[index] == '=' && equals == -1) {
+                    equals = index;
+                }
+                index++;
+            }
+            int pairEnd = index++;
+            while (pairStart < pairEnd && (bytes[pairStart] & 0xff) <= ' ') {
+                pairStart++;
+            }
+            while (pairEnd > pairStart && (bytes[pairEnd - 1] & 0xff) <= ' ') {
+                pairEnd--;
+            }
+            int nameEnd = equals != -1 && equals < pairEnd ? equals : pairEnd;
+            if (nameEnd <= pairStart) {
+                continue;
+            }
+            if (parameters.count == maxParameterCount) {
+                parameters.truncated = true;
+                break;
+            }
+            parameters.add(decode(bytes, pairStart, nameEnd), nameEnd == pairEnd ? pairEnd : nameEnd + 1, pairEnd);
+        }
+        return parameters;
+    }
+
+    /**
+     * Parse the given string.
+     *
+     * @param string the string.
+     * @param maxParameterCount the maximum number of parameters.
+     * @return the parameters.
+     */
+    public static UrlEncodedParameters parse(String string, int maxParameterCount) {
+        byte[] bytes = string.getBytes(UTF_8);
+        return parse(bytes, 0, bytes.length, maxParameterCount);
+    }
+
+    /**
+     * Add the values to the given map, after the values already there.
+     *
+     * @param map the map.
+     */
+    public void addTo(Map<String, String[]> map) {
+        for (int i = 0; i < count; i++) {
+            String[] existing = map.get(names[i]);
+            if (existing == null) {
+                map.put(names[i], new String[]{getValue(i)});
+            } else {
+                String[] newValues = Arrays.copyOf(existing, existing.length + 1);
+                newValues[existing.length] = getValue(i);
+                map.put(names[i], newValues);
+            }
+        }
+    }
+
+    /**
+     * {@return the name of the given parameter}
+     *
+     * @param index the index of the parameter.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * {@return the (decoded) value of the given parameter}
+     *
+     * @param index the index of the parameter.
+     */
+    public String getValue(int index) {
+        String value = values[index];
+        if (value == null) {
+            value = decode(bytes, valueRanges[2 * index], valueRanges[2 * index + 1]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * {@return the first value of the given name, or null if not there}
+     *
+     * @param name the name.
+     */
+    public String getValue(String name) {
+        Integer index = firstIndexes.get(name);
+        return index != null ? getValue(index) : null;
+    }
+
+    /**
+     * {@return the values of the given name, or null if not there}
+     *
+     * @param name the name.
+     */
+    public String[] getValues(String name) {
+        Integer first = firstIndexes.get(name);
+        if (first == null) {
+            return null;
+        }
+        int length = 0;
+        for (int i = first; i != -1; i = nextIndexes[i]) {
+            length++;
+        }
+        String[] result = new String[length];
+        int position = 0;
+        for (int i = first; i != -1; i = nextIndexes[i]) {
+            result[position++] = getValue(i);
+        }
+        return result;
+    }
+
+    /**
+     * {@return true if parameters beyond the maximum number were dropped}
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * {@return the number of parameters}
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add a parameter.
+     *
+     * @param name the decoded name.
+     * @param valueStart the start of the value.
+     * @param valueEnd the end of the value.
+     */
+    private void add(String name, int valueStart, int valueEnd) {
+        if (count == names.length) {
+            int capacity = count * 2;
+            lastIndexes = Arrays.copyOf(lastIndexes, capacity);
+            names = Arrays.copyOf(names, capacity);
+            nextIndexes = Arrays.copyOf(nextIndexes, capacity);
+            valueRanges = Arrays.copyOf(valueRanges, capacity * 2);
+            values = Arrays.copyOf(values, capacity);
+        }
+        Integer first = firstIndexes.putIfAbsent(name, count);
+        if (first != null) {
+            name = names[first];
+            nextIndexes[lastIndexes[first]] = count;
+            lastIndexes[first] = count;
+        } else {
+            lastIndexes[count] = count;
+        }
+        names[count] = name;
+        nextIndexes[count] = -1;
+        valueRanges[2 * count] = valueStart;
+        valueRanges[2 * count + 1] = valueEnd;
+        count++;
+    }
+
+    /**
+     * Decode a range of the bytes.
+     *
+     * @param bytes the bytes.
+     * @param start the start.
+     * @param end the end.
+     * @return the decoded string.
+     */
+    private static String decode(byte[] bytes, int start, int end) {
+        int index = start;
+        while (index < end && bytes[index] != '%' && bytes[index] != '+' && bytes[index] >= 0) {
+            index++;
+        }
+        if (index == end) {
+            return new String(bytes, start, end - start, ISO_8859_1);
+        }
+        byte[] decoded = new byte[end - start];
+        int length = index - start;
+        System.arraycopy(bytes, start, decoded, 0, length);
+        while (index < end) {
+            byte b = bytes[index];
+            if (b == '+') {
+                decoded[length++] = ' ';
+                index++;
+            } else if (b == '%' && index + 2 < end && hexValue(bytes[index + 1]) != -1 && hexValue(bytes[index + 2]) != -1) {
+                decoded[length++] = (byte) (hexValue(bytes[index + 1]) << 4 | hexValue(bytes[index + 2]));
+                index += 3;
+            } else {
+                decoded[length++] = b;
+                index++;
+            }
+        }
+        return new String(decoded, 0, length, UTF_8);
+    }
+
+    /**
+     * {@return the value of the given hex digit, or -1 if it is not one}
+     *
+     * @param b the byte.
+     */
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+}
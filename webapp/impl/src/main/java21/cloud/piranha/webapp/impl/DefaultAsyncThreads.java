@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The threads used for asynchronous processing.
+ *
+ * <p>
+ * This is the JDK 21 version of this class, which uses virtual threads when
+ * the 'piranha.virtualThreads' system property is set.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+final class DefaultAsyncThreads {
+
+    /**
+     * Stores the virtual thread factory, or null if virtual threads are not
+     * enabled.
+     */
+    private static final ThreadFactory VIRTUAL = Boolean.getBoolean("piranha.virtualThreads")
+            ? Thread.ofVirtual().name("piranha-async-", 0).factory() : null;
+
+    /**
+     * Constructor.
+     */
+    private DefaultAsyncThreads() {
+    }
+
+    /**
+     * Create a new (unstarted) thread.
+     *
+     * @param runnable the runnable.
+     * @return the thread.
+     */
+    static Thread newThread(Runnable runnable) {
+        return VIRTUAL != null ? VIRTUAL.newThread(runnable) : new Thread(runnable);
+    }
+}
@@ -36,6 +36,7 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class CookieParserTest {
 
@@ -101,4 +102,28 @@ class CookieParserTest {
             assertEquals("ROCKET_LAUNCHER_0001", cookie2.getValue());
         }
     }
+
+    @Nested
+    class FindValue {
+        @Test
+        void findValue() {
+            String header = "_ga=GA1.2.3; JSESSIONID=abc123 ; _gid=GA1.2.4";
+            assertEquals("abc123", CookieParser.findValue(header, "JSESSIONID"));
+            assertEquals("GA1.2.4", CookieParser.findValue(header, "_gid"));
+            assertNull(CookieParser.findValue(header, "SESSION"));
+            assertNull(CookieParser.findValue(header, "JSESSION"));
+        }
+
+        @Test
+        void findValueRFC2109() {
+            String header = "$Version=\"1\"; Customer=\"WILE_E_COYOTE\"; $Path=\"/acme\", JSESSIONID=\"abc\"";
+            assertEquals("abc", CookieParser.findValue(header, "JSESSIONID"));
+            assertEquals("WILE_E_COYOTE", CookieParser.findValue(header, "Customer"));
+        }
+
+        @Test
+        void findValueNetscapeKeepsCommas() {
+            assertEquals("a,b", CookieParser.findValue("list=a,b; JSESSIONID=x", "list"));
+        }
+    }
 }
@@ -166,4 +166,76 @@ class DefaultHttpHeaderManagerTest {
         DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
         assertEquals(-1, manager.getIntHeader("NAME"));
     }
+
+    /**
+     * Test getHeader method ignores the case of the name.
+     */
+    @Test
+    void testGetHeaderIgnoresCase() {
+        DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
+        manager.addHeader("Content-Type", "text/plain");
+        manager.addHeader("content-type", "text/html");
+        assertEquals("text/plain", manager.getHeader("CONTENT-TYPE"));
+        assertTrue(manager.containsHeader("content-TYPE"));
+        Enumeration<String> names = manager.getHeaderNames();
+        assertEquals("Content-Type", names.nextElement());
+        assertFalse(names.hasMoreElements());
+    }
+
+    /**
+     * Test getHeaderNames method keeps the insertion order past the initial
+     * capacity.
+     */
+    @Test
+    void testGetHeaderNames2() {
+        DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
+        for (int i = 0; i < 100; i++) {
+            manager.addHeader("X-Header-" + i, "value" + i);
+        }
+        Enumeration<String> names = manager.getHeaderNames();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("X-Header-" + i, names.nextElement());
+            assertEquals("value" + i, manager.getHeader("x-header-" + i));
+        }
+        assertFalse(names.hasMoreElements());
+    }
+
+    /**
+     * Test setHeader method replaces all values.
+     */
+    @Test
+    void testSetHeader() {
+        DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
+        manager.addHeader("NAME", "VALUE");
+        manager.addHeader("NAME", "VALUE2");
+        manager.setHeader("name", "VALUE3");
+        Enumeration<String> values = manager.getHeaders("NAME");
+        assertEquals("VALUE3", values.nextElement());
+        assertFalse(values.hasMoreElements());
+        assertEquals("name", manager.getHeaderNames().nextElement());
+    }
+
+    /**
+     * Test clear method.
+     */
+    @Test
+    void testClear() {
+        DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
+        manager.addHeader("NAME", "VALUE");
+        manager.clear();
+        assertNull(manager.getHeader("NAME"));
+        assertFalse(manager.getHeaderNames().hasMoreElements());
+        manager.addHeader("NAME2", "VALUE2");
+        assertEquals("VALUE2", manager.getHeader("name2"));
+    }
+
+    /**
+     * Test getDateHeader method with an RFC 1123 date.
+     */
+    @Test
+    void testGetDateHeader4() {
+        DefaultHttpHeaderManager manager = new DefaultHttpHeaderManager();
+        manager.addHeader("If-Modified-Since", "Sun, 06 Nov 1994 08:49:37 GMT");
+        assertEquals(784111777000L, manager.getDateHeader("if-modified-since"));
+    }
 }
@@ -30,8 +30,13 @@ package cloud.piranha.webapp.impl.tests;
 import cloud.piranha.webapp.api.LocaleEncodingManager;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -56,7 +61,7 @@ class DefaultHttpServletResponseTest {
     void testAddDateHeader() {
         DefaultWebApplicationResponse response = new TestWebApplicationResponse();
         response.addDateHeader("name", 1234);
-        assertEquals("Thu, 1 Jan 1970 00:00:01 GMT", response.getHeader("name"));
+        assertEquals("Thu, 01 Jan 1970 00:00:01 GMT", response.getHeader("name"));
     }
 
     /**
@@ -425,6 +430,266 @@ class DefaultHttpServletResponseTest {
         response.setBodyOnly(false);
         response.flushBuffer();
 
-        assertTrue(new String(response.getResponseBytes()).contains("Content-Type: text/html;charset=UTF-8\n"));
+        assertTrue(new String(response.getResponseBytes()).contains("Content-Type: text/html;charset=UTF-8\r\n"));
+    }
+
+    /**
+     * Test closeResponse method when the body fits in the buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseResponseContentLength() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.getWriter().print("Hello World");
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Content-Length: 11\r\n"));
+        assertFalse(result.contains("Transfer-Encoding"));
+        assertTrue(result.endsWith("\r\n\r\nHello World"));
+    }
+
+    /**
+     * Test closeResponse method when the body does not fit in the buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseResponseChunked() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setBufferSize(16);
+        response.getOutputStream().print("0123456789abcdefXYZ");
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Transfer-Encoding: chunked\r\n"));
+        assertFalse(result.contains("Content-Length"));
+        assertTrue(result.endsWith("\r\n\r\n10\r\n0123456789abcdef\r\n3\r\nXYZ\r\n0\r\n\r\n"));
+    }
+
+    /**
+     * Test closeResponse method after an explicit flush.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseResponseChunked2() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.getOutputStream().print("Hello");
+        response.flushBuffer();
+        response.getOutputStream().print("World");
+        response.closeResponse();
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Transfer-Encoding: chunked\r\n"));
+        assertTrue(result.endsWith("\r\n\r\n5\r\nHello\r\n5\r\nWorld\r\n0\r\n\r\n"));
+    }
+
+    /**
+     * Test closeResponse method with a Content-Length set by the application.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCloseResponseContentLength2() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setBufferSize(16);
+        response.setContentLength(19);
+        response.getOutputStream().print("0123456789abcdefXYZ");
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Content-Length: 19\r\n"));
+        assertFalse(result.contains("Transfer-Encoding"));
+        assertTrue(result.endsWith("\r\n\r\n0123456789abcdefXYZ"));
+    }
+
+    /**
+     * Test the status line and headers are written with CRLF.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteHead() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setStatus(404);
+        response.setHeader("Cache-Control", "no-cache");
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.startsWith("HTTP/1.1 404 Not Found\r\n"));
+        assertTrue(result.contains("\r\nCache-Control: no-cache\r\n"));
+        assertTrue(result.endsWith("\r\nContent-Length: 0\r\n\r\n"));
+    }
+
+    /**
+     * Test write method with a byte array that fits in the buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteBytes() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setBufferSize(16);
+        response.getOutputStream().write("xx0123456789abcdefxx".getBytes(), 2, 16);
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Content-Length: 16\r\n"));
+        assertTrue(result.endsWith("\r\n\r\n0123456789abcdef"));
+    }
+
+    /**
+     * Test write method with byte arrays larger than the buffer.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteBytes2() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setBufferSize(16);
+        response.getOutputStream().write("0123456789abcdefXYZ".getBytes());
+        response.getOutputStream().write("0123456789abcdefghijklmnopqrstuv".getBytes());
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Transfer-Encoding: chunked\r\n"));
+        assertTrue(result.endsWith("\r\n\r\n10\r\n0123456789abcdef\r\n"
+                + "10\r\nXYZ0123456789abc\r\n13\r\ndefghijklmnopqrstuv\r\n0\r\n\r\n"));
+    }
+
+    /**
+     * Test write method bypasses the buffer when it is empty.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteBytes3() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setBufferSize(16);
+        response.flushBuffer();
+        response.getOutputStream().write("0123456789abcdefghijklmnopqrstuvwxyz".getBytes());
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.endsWith("\r\n\r\n24\r\n0123456789abcdefghijklmnopqrstuvwxyz\r\n0\r\n\r\n"));
+    }
+
+    /**
+     * Test write method with byte buffers.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteByteBuffer() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        ByteBuffer heap = ByteBuffer.wrap("Hello ".getBytes());
+        ByteBuffer direct = ByteBuffer.allocateDirect(5);
+        direct.put("World".getBytes()).flip();
+        response.write(heap);
+        response.write(direct);
+        response.closeResponse();
+        assertFalse(heap.hasRemaining());
+        assertFalse(direct.hasRemaining());
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("Content-Length: 11\r\n"));
+        assertTrue(result.endsWith("\r\n\r\nHello World"));
+    }
+
+    /**
+     * Test recycle method.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecycle() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setStatus(404);
+        response.setContentType("text/plain");
+        response.setHeader("X-Test", "value");
+        response.getWriter().print("Hello");
+        response.flushBuffer();
+        assertTrue(response.isCommitted());
+        response.recycle();
+        assertTrue(response.isRecycled());
+        assertThrows(IllegalStateException.class, () -> response.write(1));
+        assertThrows(IllegalStateException.class, response::getWriter);
+        response.reuse();
+        assertFalse(response.isRecycled());
+        assertFalse(response.isCommitted());
+        assertEquals(200, response.getStatus());
+        assertNull(response.getContentType());
+        assertNull(response.getHeader("X-Test"));
+        assertEquals(8192, response.getBufferSize());
+        assertNotNull(response.getOutputStream());
+    }
+
+    /**
+     * Test setDateHeader method formats an IMF-fixdate.
+     */
+    @Test
+    void testSetDateHeaderFormat() {
+        DefaultWebApplicationResponse response = new TestWebApplicationResponse();
+        long[] timestamps = {0, 784111777000L, 951782400000L, 4102444799000L, System.currentTimeMillis(), -86400000L};
+        for (long timestamp : timestamps) {
+            response.setDateHeader("Expires", timestamp);
+            assertEquals(DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+                    .format(Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC)),
+                    response.getHeader("Expires"));
+        }
+    }
+
+    /**
+     * Test the Date header is written.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteDateHeader() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.getWriter().print("Hello");
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("\r\nDate: "));
+        assertTrue(result.contains(" GMT\r\n"));
+        assertTrue(result.matches("(?s).*\r\nDate: [A-Z][a-z]{2}, \\d{2} [A-Z][a-z]{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT\r\n.*"));
+    }
+
+    /**
+     * Test the Date header set by the application is not duplicated.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteDateHeader2() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        response.setDateHeader("Date", 0);
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.contains("\r\nDate: Thu, 01 Jan 1970 00:00:00 GMT\r\n"));
+        assertEquals(result.indexOf("Date: "), result.lastIndexOf("Date: "));
+    }
+
+    /**
+     * Test the Expires attribute of a cookie is an IMF-fixdate.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWriteCookieExpires() throws Exception {
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setBodyOnly(false);
+        Cookie cookie = new Cookie("name", "value");
+        cookie.setMaxAge(0);
+        response.addCookie(cookie);
+        response.closeResponse();
+        String result = new String(response.getResponseBytes());
+        assertTrue(result.matches("(?s).*\r\nSet-Cookie: name=value; Max-Age=0; Expires="
+                + "[A-Z][a-z]{2}, \\d{2} [A-Z][a-z]{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT.*"), result);
     }
 }
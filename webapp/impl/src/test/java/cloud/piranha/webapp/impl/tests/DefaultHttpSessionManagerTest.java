@@ -29,13 +29,22 @@ package cloud.piranha.webapp.impl.tests;
 
 import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.HttpSessionReaper;
 import jakarta.servlet.SessionTrackingMode;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionIdListener;
+import jakarta.servlet.http.HttpSessionListener;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The JUnit tests for the DefaultHttpSessionManager class.
@@ -54,6 +63,169 @@ class DefaultHttpSessionManagerTest {
         assertThrows(NullPointerException.class, () -> sessionManager.createSession(null));
     }
 
+    /**
+     * Test createSession method uses the session timeout.
+     */
+    @Test
+    void testCreateSessionMaxInactiveInterval() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setWebApplication(webApp);
+        sessionManager.setSessionTimeout(5);
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        webApp.linkRequestAndResponse(request, response);
+        HttpSession session = sessionManager.createSession(request);
+        assertEquals(300, session.getMaxInactiveInterval());
+        sessionManager.stop();
+    }
+
+    /**
+     * Test createSession method with a session id generator that returns an
+     * id that is in use.
+     */
+    @Test
+    void testCreateSessionIdInUse() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setWebApplication(webApp);
+        Iterator<String> ids = List.of("a", "a", "b").iterator();
+        sessionManager.setSessionIdGenerator(ids::next);
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        webApp.linkRequestAndResponse(request, response);
+        assertEquals("a", sessionManager.createSession(request).getId());
+        HttpSession session = sessionManager.createSession(request);
+        assertEquals("b", session.getId());
+        assertSame(session, sessionManager.getSession(request, "b"));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test createSession method from several threads.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCreateSessionConcurrently() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setWebApplication(webApp);
+        sessionManager.setReaper(new HttpSessionReaper());
+        AtomicInteger destroyed = new AtomicInteger();
+        sessionManager.addListener(new HttpSessionListener() {
+            @Override
+            public void sessionDestroyed(HttpSessionEvent event) {
+                destroyed.incrementAndGet();
+            }
+        });
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    TestWebApplicationRequest request = new TestWebApplicationRequest();
+                    TestWebApplicationResponse response = new TestWebApplicationResponse();
+                    webApp.linkRequestAndResponse(request, response);
+                    HttpSession session = sessionManager.createSession(request);
+                    assertTrue(sessionManager.hasSession(session.getId()));
+                    if (j % 2 == 0) {
+                        session.invalidate();
+                    }
+                    webApp.unlinkRequestAndResponse(request, response);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, destroyed.get());
+        assertEquals(400, sessionManager.getReaper().size());
+        sessionManager.stop();
+    }
+
+    /**
+     * Test sessions that are not a DefaultHttpSession are not scheduled with
+     * the reaper, and are expired by reapSessions.
+     */
+    @Test
+    void testReapSessions() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        ForeignSessionManager sessionManager = new ForeignSessionManager();
+        sessionManager.setWebApplication(webApp);
+        sessionManager.setReaper(new HttpSessionReaper());
+        AtomicInteger invalidated = new AtomicInteger();
+        sessionManager.addSession("expired", System.currentTimeMillis() - 5000, invalidated);
+        sessionManager.addSession("active", System.currentTimeMillis(), invalidated);
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApp.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        sessionManager.createSession(request);
+        assertEquals(1, sessionManager.getReaper().size());
+        sessionManager.reapSessions();
+        assertEquals(1, invalidated.get());
+        sessionManager.stop();
+        assertEquals(0, sessionManager.getReaper().size());
+    }
+
+    /**
+     * Test destroySession method notifies the listeners once.
+     */
+    @Test
+    void testDestroySession() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setWebApplication(webApp);
+        AtomicInteger destroyed = new AtomicInteger();
+        sessionManager.addListener(new HttpSessionListener() {
+            @Override
+            public void sessionDestroyed(HttpSessionEvent event) {
+                destroyed.incrementAndGet();
+            }
+        });
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApp.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        HttpSession session = sessionManager.createSession(request);
+        sessionManager.destroySession(session);
+        sessionManager.destroySession(session);
+        assertEquals(1, destroyed.get());
+        assertFalse(sessionManager.hasSession(session.getId()));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test the session listeners are notified with one shared event.
+     */
+    @Test
+    void testListenersShareEvent() {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setWebApplication(webApp);
+        webApp.setHttpSessionManager(sessionManager);
+        List<HttpSessionEvent> events = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            sessionManager.addListener(new HttpSessionListener() {
+                @Override
+                public void sessionDestroyed(HttpSessionEvent event) {
+                    events.add(event);
+                }
+            });
+            sessionManager.addListener((HttpSessionIdListener) (event, oldSessionId) -> events.add(event));
+        }
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApp.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        request.setWebApplication(webApp);
+        HttpSession session = request.getSession(true);
+        request.setRequestedSessionId(session.getId());
+        sessionManager.changeSessionId(request);
+        assertEquals(2, events.size());
+        assertSame(events.get(0), events.get(1));
+        events.clear();
+        sessionManager.destroySession(session);
+        assertEquals(2, events.size());
+        assertSame(events.get(0), events.get(1));
+        sessionManager.stop();
+    }
+
     /**
      * Test getComment method.
      */
@@ -251,4 +423,38 @@ class DefaultHttpSessionManagerTest {
         assertEquals(sessionManager.getPath(), sessionCookie.getPath());
         assertTrue(sessionCookie.getSecure());
     }
+
+    /**
+     * The session manager that also keeps sessions that are not a
+     * DefaultHttpSession.
+     */
+    static class ForeignSessionManager extends DefaultHttpSessionManager {
+
+        /**
+         * Add a session with a max inactive interval of 1 second.
+         *
+         * @param sessionId the session id.
+         * @param lastAccessedTime the last accessed time.
+         * @param invalidated the number of invalidated sessions.
+         */
+        void addSession(String sessionId, long lastAccessedTime, AtomicInteger invalidated) {
+            sessions.put(sessionId, (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{HttpSession.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "getId" -> sessionId;
+                case "getLastAccessedTime" -> lastAccessedTime;
+                case "getMaxInactiveInterval" -> 1;
+                case "invalidate" -> {
+                    invalidated.incrementAndGet();
+                    sessions.remove(sessionId);
+                    yield null;
+                }
+                default -> null;
+            }));
+        }
+
+        @Override
+        public void reapSessions() {
+            super.reapSessions();
+        }
+    }
 }
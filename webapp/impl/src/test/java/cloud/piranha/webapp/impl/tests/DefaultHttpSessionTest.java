@@ -30,6 +30,9 @@ package cloud.piranha.webapp.impl.tests;
 import cloud.piranha.webapp.impl.DefaultHttpSession;
 import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
+import jakarta.servlet.http.HttpSessionAttributeListener;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -213,4 +216,40 @@ class DefaultHttpSessionTest {
         session.setAttribute("TEST", null);
         assertNull(session.getAttribute("TEST"));
     }
+
+    /**
+     * Test setAttribute method when requests set attributes concurrently.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testSetAttributeConcurrently() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        AtomicInteger added = new AtomicInteger();
+        sessionManager.addListener(new HttpSessionAttributeListener() {
+            @Override
+            public void attributeAdded(HttpSessionBindingEvent event) {
+                added.incrementAndGet();
+            }
+        });
+        DefaultHttpSession session = new DefaultHttpSession(webApp);
+        session.setSessionManager(sessionManager);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    session.setAttribute("name" + j, j);
+                    session.getAttributeNames().hasMoreElements();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, session.getValueNames().length);
+        assertEquals(1000, added.get());
+        assertEquals(4000, session.getAttributeStore().getModificationCount());
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import static jakarta.servlet.DispatcherType.REQUEST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.util.Set;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+import org.junit.jupiter.api.Test;
+
+import cloud.piranha.webapp.impl.DefaultInvocationFinder;
+import cloud.piranha.webapp.impl.DefaultServletInvocation;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.DefaultWebApplicationRequestMapper;
+
+/**
+ * The JUnit tests for the DefaultInvocationFinder class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultInvocationFinderTest {
+
+    /**
+     * Test findServletInvocationByPath method serves copies from the cache.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testFindServletInvocationByPathCached() throws Exception {
+        TestFinderWebApplication webApplication = new TestFinderWebApplication();
+        webApplication.addServlet("echo", new TestEcho1Servlet());
+        webApplication.addServletMapping("echo", "/echo/*");
+        webApplication.addFilter("filter", new TestPassThroughFilter());
+        webApplication.addFilterMapping("filter", "/*");
+        webApplication.initialize();
+        webApplication.start();
+        DefaultInvocationFinder finder = webApplication.getInvocationFinder();
+
+        DefaultServletInvocation first = finder.findServletInvocationByPath(REQUEST, "/echo", "/1");
+        DefaultServletInvocation second = finder.findServletInvocationByPath(REQUEST, "/echo", "/1");
+        assertEquals(1, webApplication.getInvocationCacheMisses());
+        assertEquals(1, webApplication.getInvocationCacheHits());
+        assertNotSame(first, second);
+        assertNotSame(first.getHttpServletMapping(), second.getHttpServletMapping());
+        assertSame(first.getFilterChain(), second.getFilterChain());
+        assertEquals("/echo", second.getServletPath());
+        assertEquals("/1", second.getPathInfo());
+        assertEquals("echo/1", second.getHttpServletMapping().getMatchValue());
+        assertEquals(1, second.getFilterEnvironments().size());
+    }
+
+    /**
+     * Test findServletInvocationByPath method after a mapping is added.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testFindServletInvocationByPathInvalidated() throws Exception {
+        TestFinderWebApplication webApplication = new TestFinderWebApplication();
+        webApplication.addServlet("echo", new TestEcho1Servlet());
+        webApplication.addServlet("echo2", new TestEcho1Servlet());
+        webApplication.addServletMapping("echo", "/*");
+        webApplication.initialize();
+        webApplication.start();
+        DefaultInvocationFinder finder = webApplication.getInvocationFinder();
+
+        assertEquals("echo", finder.findServletInvocationByPath(REQUEST, "/echo2", null).getServletName());
+        webApplication.addServletMapping("echo2", "/echo2");
+        assertEquals("echo2", finder.findServletInvocationByPath(REQUEST, "/echo2", null).getServletName());
+        assertEquals(2, webApplication.getInvocationCacheMisses());
+        assertEquals(0, webApplication.getInvocationCacheHits());
+    }
+
+    /**
+     * Test findServletInvocationByPath method does not serve an invocation
+     * resolved while a filter mapping is added.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testFindServletInvocationByPathFilterMappingAdded() throws Exception {
+        TestFinderWebApplication webApplication = new TestFinderWebApplication();
+        webApplication.setWebApplicationRequestMapper(new DefaultWebApplicationRequestMapper() {
+            @Override
+            public Set<String> addFilterMapping(Set<DispatcherType> dispatcherTypes, String filterName, String... urlPatterns) {
+                try {
+                    webApplication.getInvocationFinder().findServletInvocationByPath(REQUEST, "/echo", null);
+                } catch (IOException | ServletException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.addFilterMapping(dispatcherTypes, filterName, urlPatterns);
+            }
+        });
+        webApplication.addServlet("echo", new TestEcho1Servlet());
+        webApplication.addServletMapping("echo", "/echo");
+        webApplication.addFilter("filter", new TestPassThroughFilter());
+        webApplication.initialize();
+        webApplication.start();
+        DefaultInvocationFinder finder = webApplication.getInvocationFinder();
+
+        webApplication.addFilterMapping("filter", "/*");
+        assertEquals(1, finder.findServletInvocationByPath(REQUEST, "/echo", null).getFilterEnvironments().size());
+    }
+
+    /**
+     * A web application exposing its invocation finder.
+     */
+    static class TestFinderWebApplication extends DefaultWebApplication {
+
+        /**
+         * {@return the invocation finder}
+         */
+        DefaultInvocationFinder getInvocationFinder() {
+            return invocationFinder;
+        }
+    }
+
+    /**
+     * A filter passing the request on.
+     */
+    static class TestPassThroughFilter implements Filter {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            chain.doFilter(request, response);
+        }
+    }
+}
@@ -30,9 +30,31 @@ package cloud.piranha.webapp.impl.tests;
 import cloud.piranha.webapp.impl.DefaultMultiPartManager;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import cloud.piranha.webapp.impl.DefaultWebApplicationResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Part;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -73,4 +95,347 @@ class DefaultMultiPartManagerTest {
         request.setContentType("multipart/form-data; boundary=------------------------12345");
         assertNull(manager.getPart(webApplication, request, "notfound"));
     }
+
+    /**
+     * Test getParts method.
+     * 
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetParts2() throws Exception {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest(
+                "preamble\r\n"
+                + "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a \\\"b\\\".txt\"\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "line1\r\nline2\r\n"
+                + "--12345--\r\n"
+                + "epilogue");
+        request.setMultipartConfig(new MultipartConfigElement(null, -1, -1, 1024));
+        Collection<Part> parts = manager.getParts(webApplication, request);
+        assertEquals(2, parts.size());
+        Iterator<Part> iterator = parts.iterator();
+        Part field = iterator.next();
+        assertEquals("field", field.getName());
+        assertNull(field.getSubmittedFileName());
+        assertEquals("value", new String(field.getInputStream().readAllBytes(), UTF_8));
+        Part file = iterator.next();
+        assertEquals("file", file.getName());
+        assertEquals("a \"b\".txt", file.getSubmittedFileName());
+        assertEquals("text/plain", file.getContentType());
+        assertEquals("text/plain", file.getHeader("content-type"));
+        assertEquals(Arrays.asList("Content-Disposition", "Content-Type"), file.getHeaderNames());
+        assertEquals(12, file.getSize());
+        assertEquals("line1\r\nline2", new String(file.getInputStream().readAllBytes(), UTF_8));
+        assertSame(file, manager.getPart(webApplication, request, "file"));
+        assertSame(parts, manager.getParts(webApplication, request));
+    }
+
+    /**
+     * Test getParts method with an empty body.
+     * 
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetPartsEmptyBody() throws Exception {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest("");
+        request.setMultipartConfig(new MultipartConfigElement(""));
+        assertTrue(manager.getParts(webApplication, request).isEmpty());
+    }
+
+    /**
+     * Test getParts method with a body without the closing delimiter.
+     */
+    @Test
+    void testGetPartsMalformed() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value");
+        request.setMultipartConfig(new MultipartConfigElement(""));
+        assertThrows(ServletException.class, () -> manager.getParts(webApplication, request));
+    }
+
+    /**
+     * Test getParts method with an unsupported character encoding.
+     */
+    @Test
+    void testGetPartsUnsupportedCharacterEncoding() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        for (String encoding : new String[]{"bogus", "bo?gus"}) {
+            DefaultWebApplicationRequest request = new DefaultWebApplicationRequest() {
+                {
+                    characterEncoding = encoding;
+                }
+            };
+            request.setContentType("multipart/form-data; boundary=12345");
+            request.setInputStream(new ByteArrayInputStream("--12345--\r\n".getBytes(UTF_8)));
+            request.setMultipartConfig(new MultipartConfigElement(""));
+            assertThrows(ServletException.class, () -> manager.getParts(webApplication, request));
+        }
+    }
+
+    /**
+     * Test getParts method with a part larger than the maximum file size.
+     */
+    @Test
+    void testGetPartsMaxFileSize() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "0123456789\r\n"
+                + "--12345--\r\n");
+        request.setMultipartConfig(new MultipartConfigElement(null, 9, -1, 0));
+        assertThrows(IllegalStateException.class, () -> manager.getParts(webApplication, request));
+    }
+
+    /**
+     * Test getParts method with a request larger than the maximum request
+     * size.
+     */
+    @Test
+    void testGetPartsMaxRequestSize() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "0123456789\r\n"
+                + "--12345--\r\n");
+        request.setMultipartConfig(new MultipartConfigElement(null, -1, 32, 0));
+        assertThrows(IllegalStateException.class, () -> manager.getParts(webApplication, request));
+    }
+
+    /**
+     * Test getParts method with more parts than the maximum part count.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetPartsMaxPartCount() throws Exception {
+        Path location = Files.createTempDirectory("multipart");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            body.append("--12345\r\n")
+                    .append("Content-Disposition: form-data; name=\"file").append(i)
+                    .append("\"; filename=\"a.txt\"\r\n")
+                    .append("\r\n")
+                    .append("x\r\n");
+        }
+        body.append("--12345--\r\n");
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        manager.setMaxPartCount(3);
+        assertEquals(3, manager.getMaxPartCount());
+        DefaultWebApplicationRequest request = createRequest(body.toString());
+        request.setMultipartConfig(new MultipartConfigElement(location.toString(), -1, -1, 0));
+        assertThrows(IllegalStateException.class, () -> manager.getParts(webApplication, request));
+        assertEquals(0, countFiles(location));
+        Files.delete(location);
+    }
+
+    /**
+     * Test getParts method with a part that has more header lines than the
+     * maximum part header count.
+     */
+    @Test
+    void testGetPartsMaxPartHeaderCount() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        manager.setMaxPartHeaderCount(2);
+        assertEquals(2, manager.getMaxPartHeaderCount());
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "X-First: 1\r\n"
+                + "X-Second: 2\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--12345--\r\n");
+        request.setMultipartConfig(new MultipartConfigElement(""));
+        assertThrows(IllegalStateException.class, () -> manager.getParts(webApplication, request));
+    }
+
+    /**
+     * Test getParts method with a part that is written to disk.
+     * 
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGetPartsWrittenToDisk() throws Exception {
+        Path location = Files.createTempDirectory("multipart");
+        byte[] content = new byte[200000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        // a partial delimiter inside the content, across the buffer size
+        System.arraycopy("\r\n--1234".getBytes(UTF_8), 0, content, 65530, 8);
+        byte[] head = ("--12345\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n"
+                + "\r\n").getBytes(UTF_8);
+        byte[] tail = "\r\n--12345--\r\n".getBytes(UTF_8);
+        byte[] body = new byte[head.length + content.length + tail.length];
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(content, 0, body, head.length, content.length);
+        System.arraycopy(tail, 0, body, head.length + content.length, tail.length);
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultMultiPartManager manager = new DefaultMultiPartManager();
+        DefaultWebApplicationRequest request = createRequest(body);
+        request.setInputStream(new SlowInputStream(body));
+        request.setMultipartConfig(new MultipartConfigElement(location.toString(), -1, -1, 1024));
+        Part part = manager.getPart(webApplication, request, "file");
+        assertEquals(content.length, part.getSize());
+        assertArrayEquals(content, part.getInputStream().readAllBytes());
+        assertEquals(1, countFiles(location));
+        part.write("data.bin");
+        assertEquals(1, countFiles(location));
+        assertArrayEquals(content, Files.readAllBytes(location.resolve("data.bin")));
+        part.delete();
+        assertTrue(Files.exists(location.resolve("data.bin")));
+        Files.delete(location.resolve("data.bin"));
+        Files.delete(location);
+    }
+
+    /**
+     * Test getParameter method with a multipart/form-data request.
+     */
+    @Test
+    void testGetParameter() {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--12345--\r\n");
+        request.setWebApplication(webApplication);
+        request.setMultipartConfig(new MultipartConfigElement(""));
+        assertEquals("value", request.getParameter("field"));
+    }
+
+    /**
+     * Test the temporary files are deleted when the request is done.
+     * 
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testDeleteTemporaryFiles() throws Exception {
+        Path location = Files.createTempDirectory("multipart");
+        List<Path> files = new ArrayList<>();
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        webApplication.addServlet("Upload", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request,
+                    HttpServletResponse response) throws IOException, ServletException {
+                request.getPart("file");
+                try (Stream<Path> stream = Files.list(location)) {
+                    stream.forEach(files::add);
+                }
+            }
+        }).setMultipartConfig(new MultipartConfigElement(location.toString(), -1, -1, 1));
+        webApplication.addServletMapping("Upload", "/upload");
+        webApplication.initialize();
+        webApplication.start();
+        DefaultWebApplicationRequest request = createRequest(
+                "--12345\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+                + "\r\n"
+                + "hello\r\n"
+                + "--12345--\r\n");
+        request.setMethod("POST");
+        request.setServletPath("/upload");
+        request.setWebApplication(webApplication);
+        DefaultWebApplicationResponse response = new DefaultWebApplicationResponse();
+        response.setWebApplication(webApplication);
+        response.setUnderlyingOutputStream(new ByteArrayOutputStream());
+        webApplication.service(request, response);
+        assertEquals(1, files.size());
+        assertEquals(0, countFiles(location));
+        webApplication.stop();
+        Files.delete(location);
+    }
+
+    /**
+     * Create a multipart/form-data request.
+     *
+     * @param body the body.
+     * @return the request.
+     */
+    private static DefaultWebApplicationRequest createRequest(String body) {
+        return createRequest(body.getBytes(UTF_8));
+    }
+
+    /**
+     * Create a multipart/form-data request.
+     *
+     * @param body the body.
+     * @return the request.
+     */
+    private static DefaultWebApplicationRequest createRequest(byte[] body) {
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setContentType("multipart/form-data; boundary=12345");
+        request.setContentLength(body.length);
+        request.setInputStream(new ByteArrayInputStream(body));
+        return request;
+    }
+
+    /**
+     * Count the files in a directory.
+     *
+     * @param directory the directory.
+     * @return the number of files.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * An input stream that returns at most 1000 bytes per read.
+     */
+    static class SlowInputStream extends InputStream {
+
+        /**
+         * Stores the delegate.
+         */
+        private final InputStream delegate;
+
+        /**
+         * Constructor.
+         *
+         * @param bytes the bytes.
+         */
+        SlowInputStream(byte[] bytes) {
+            delegate = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return delegate.read(bytes, offset, Math.min(length, 1000));
+        }
+    }
 }
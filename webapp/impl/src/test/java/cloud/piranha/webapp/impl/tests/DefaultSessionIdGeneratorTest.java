@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.DefaultSessionIdGenerator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the DefaultSessionIdGenerator class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class DefaultSessionIdGeneratorTest {
+
+    /**
+     * Test generateId method.
+     */
+    @Test
+    void testGenerateId() {
+        DefaultSessionIdGenerator generator = new DefaultSessionIdGenerator();
+        assertEquals(16, generator.getLength());
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            String id = generator.generateId();
+            assertEquals(22, id.length());
+            assertTrue(id.matches("[A-Za-z0-9_-]+"));
+            ids.add(id);
+        }
+        assertEquals(10000, ids.size());
+    }
+
+    /**
+     * Test generateId method with a different length.
+     */
+    @Test
+    void testGenerateId2() {
+        DefaultSessionIdGenerator generator = new DefaultSessionIdGenerator(32);
+        assertEquals(43, generator.generateId().length());
+    }
+
+    /**
+     * Test generateId method from several threads.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testGenerateIdConcurrently() throws Exception {
+        DefaultSessionIdGenerator generator = new DefaultSessionIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    ids.add(generator.generateId());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, ids.size());
+    }
+
+    /**
+     * Test constructor with a length that is too short.
+     */
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new DefaultSessionIdGenerator(7));
+    }
+}
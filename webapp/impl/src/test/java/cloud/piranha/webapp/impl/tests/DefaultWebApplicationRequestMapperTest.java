@@ -33,6 +33,7 @@ import cloud.piranha.webapp.impl.DefaultWebApplicationRequestMapping;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Collection;
@@ -298,4 +299,42 @@ class DefaultWebApplicationRequestMapperTest {
         DefaultWebApplicationRequestMapping mapping = requestMapper.findServletMapping("/index.html?q=keyword");
         assertNotNull(mapping);
     }
+
+    /**
+     * Test findServletMapping method picks the longest prefix.
+     */
+    @Test
+    void testFindServletMappingLongestPrefix() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addServletMapping("all", "/*");
+        requestMapper.addServletMapping("api", "/api/*");
+        requestMapper.addServletMapping("users", "/api/users/*");
+        requestMapper.addServletMapping("exact", "/api/users");
+        assertEquals("/api/users/*", requestMapper.findServletMapping("/api/users/1").getPattern());
+        assertEquals("/api/users/*", requestMapper.findServletMapping("/api/users/").getPattern());
+        assertEquals("/api/*", requestMapper.findServletMapping("/api/usersx").getPattern());
+        assertEquals("/api/*", requestMapper.findServletMapping("/api").getPattern());
+        assertEquals("/*", requestMapper.findServletMapping("/apix/users").getPattern());
+        DefaultWebApplicationRequestMapping mapping = requestMapper.findServletMapping("/api/users");
+        assertTrue(mapping.isExact());
+        assertEquals("exact", requestMapper.getServletName(mapping.getPattern()));
+    }
+
+    /**
+     * Test findServletMapping method with extension mappings.
+     */
+    @Test
+    void testFindServletMappingExtension() {
+        DefaultWebApplicationRequestMapper requestMapper = new DefaultWebApplicationRequestMapper();
+        requestMapper.addServletMapping("gz", "*.gz");
+        requestMapper.addServletMapping("targz", "*.tar.gz");
+        requestMapper.addServletMapping("prefix", "/static/*");
+        DefaultWebApplicationRequestMapping mapping = requestMapper.findServletMapping("/files/archive.tar.gz");
+        assertTrue(mapping.isExtension());
+        assertEquals("*.tar.gz", mapping.getPattern());
+        assertEquals("files/archive", mapping.getMatchValue());
+        assertEquals("*.gz", requestMapper.findServletMapping("/files/data.gz").getPattern());
+        assertEquals("/static/*", requestMapper.findServletMapping("/static/data.gz").getPattern());
+        assertNull(requestMapper.findServletMapping("/files.gz/data"));
+    }
 }
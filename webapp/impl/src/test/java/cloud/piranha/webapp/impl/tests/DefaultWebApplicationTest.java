@@ -34,6 +34,7 @@ import cloud.piranha.webapp.api.LoggingManager;
 import cloud.piranha.webapp.api.MimeTypeManager;
 import cloud.piranha.webapp.api.ObjectInstanceManager;
 import cloud.piranha.webapp.api.SecurityManager;
+import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
 import cloud.piranha.webapp.impl.DefaultSecurityManager;
 import cloud.piranha.webapp.impl.DefaultServlet;
 import cloud.piranha.webapp.impl.DefaultWebApplication;
@@ -52,9 +53,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -958,6 +961,43 @@ class DefaultWebApplicationTest {
         assertEquals(404, response.getStatus());
     }
 
+    /**
+     * Test service method releases the session after the request destroyed
+     * listeners ran.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testService4() throws Exception {
+        List<String> events = new ArrayList<>();
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager() {
+            @Override
+            public void releaseSession(HttpServletRequest request) {
+                events.add("releaseSession");
+            }
+        };
+        sessionManager.setWebApplication(webApp);
+        webApp.setHttpSessionManager(sessionManager);
+        webApp.addListener(new ServletRequestListener() {
+            @Override
+            public void requestDestroyed(ServletRequestEvent event) {
+                events.add("requestDestroyed");
+            }
+        });
+        webApp.initialize();
+        webApp.start();
+
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setWebApplication(webApp);
+        request.setServletPath("/session");
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+
+        webApp.service(request, response);
+
+        assertEquals(List.of("requestDestroyed", "releaseSession"), events);
+    }
+
     /**
      * Test setAttribute method.
      */
@@ -179,7 +179,7 @@ class HttpServletResponseTest {
     void testSetDateHeader() {
         response.setDateHeader("header", 1000);
         response.setDateHeader("header", 2000);
-        assertEquals("Thu, 1 Jan 1970 00:00:02 GMT", response.getHeader("header"));
+        assertEquals("Thu, 01 Jan 1970 00:00:02 GMT", response.getHeader("header"));
     }
 
     /**
@@ -188,7 +188,7 @@ class HttpServletResponseTest {
     @Test
     void testSetDateHeader2() {
         response.setDateHeader("header", 1000);
-        assertEquals("Thu, 1 Jan 1970 00:00:01 GMT", response.getHeader("header"));
+        assertEquals("Thu, 01 Jan 1970 00:00:01 GMT", response.getHeader("header"));
     }
 
     /**
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.HttpSessionAttributeStore;
+import java.util.Collections;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HttpSessionAttributeStore class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HttpSessionAttributeStoreTest {
+
+    /**
+     * Test put and remove methods.
+     */
+    @Test
+    void testPutAndRemove() {
+        HttpSessionAttributeStore store = new HttpSessionAttributeStore();
+        assertNull(store.put("name", "value1"));
+        assertEquals("value1", store.put("name", "value2"));
+        assertEquals("value2", store.get("name"));
+        assertEquals(1, store.size());
+        assertArrayEquals(new String[]{"name"}, store.getNamesArray());
+        assertEquals("name", store.getNames().nextElement());
+        assertEquals("value2", store.remove("name"));
+        assertNull(store.remove("name"));
+        assertEquals(0, store.size());
+        assertThrows(NullPointerException.class, () -> store.put(null, "value"));
+    }
+
+    /**
+     * Test getModificationCount method.
+     */
+    @Test
+    void testGetModificationCount() {
+        HttpSessionAttributeStore store = new HttpSessionAttributeStore();
+        assertEquals(0, store.getModificationCount());
+        store.put("name", "value");
+        store.put("name", "value");
+        assertEquals(2, store.getModificationCount());
+        store.remove("unknown");
+        assertEquals(2, store.getModificationCount());
+        store.remove("name");
+        assertEquals(3, store.getModificationCount());
+    }
+
+    /**
+     * Test drainDirtyNames method.
+     */
+    @Test
+    void testDrainDirtyNames() {
+        HttpSessionAttributeStore store = new HttpSessionAttributeStore();
+        store.put("name1", "value");
+        store.put("name2", "value");
+        store.remove("name2");
+        assertEquals(Set.of("name1", "name2"), store.getDirtyNames());
+        assertEquals(Set.of("name1", "name2"), store.drainDirtyNames());
+        assertTrue(store.getDirtyNames().isEmpty());
+        assertEquals(Collections.emptySet(), store.drainDirtyNames());
+        store.put("name1", "value");
+        assertEquals(Set.of("name1"), store.drainDirtyNames());
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.DefaultHttpSession;
+import cloud.piranha.webapp.impl.DefaultHttpSessionManager;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.HttpSessionReaper;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the HttpSessionReaper class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class HttpSessionReaperTest {
+
+    /**
+     * Test reap method.
+     */
+    @Test
+    void testReap() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultHttpSessionManager sessionManager = createSessionManager(reaper);
+        List<String> destroyed = new ArrayList<>();
+        sessionManager.addListener(new HttpSessionListener() {
+            @Override
+            public void sessionDestroyed(HttpSessionEvent event) {
+                destroyed.add(event.getSession().getId());
+            }
+        });
+        HttpSession session = createSession(sessionManager);
+        session.setMaxInactiveInterval(60);
+        long expiry = session.getLastAccessedTime() + 60000;
+        assertEquals(1, reaper.size());
+        assertEquals(0, reaper.reap(expiry - 1000));
+        assertTrue(sessionManager.hasSession(session.getId()));
+        assertEquals(1, reaper.reap(expiry + 1000));
+        assertFalse(sessionManager.hasSession(session.getId()));
+        assertEquals(List.of(session.getId()), destroyed);
+        assertEquals(0, reaper.size());
+    }
+
+    /**
+     * Test reap method with a session that was accessed after it was
+     * scheduled.
+     */
+    @Test
+    void testReapAccessedSession() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultHttpSessionManager sessionManager = createSessionManager(reaper);
+        HttpSession session = createSession(sessionManager);
+        session.setMaxInactiveInterval(60);
+        long expiry = session.getLastAccessedTime() + 60000;
+        ((DefaultHttpSession) session).setLastAccessedTime(expiry - 30000);
+        assertEquals(0, reaper.reap(expiry + 1000));
+        assertTrue(sessionManager.hasSession(session.getId()));
+        assertEquals(1, reaper.size());
+        assertEquals(1, reaper.reap(expiry + 31000));
+        assertFalse(sessionManager.hasSession(session.getId()));
+    }
+
+    /**
+     * Test reap method with a session that expires after more than one
+     * revolution of the wheel.
+     */
+    @Test
+    void testReapLongInterval() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultHttpSessionManager sessionManager = createSessionManager(reaper);
+        HttpSession session = createSession(sessionManager);
+        session.setMaxInactiveInterval(3600);
+        long expiry = session.getLastAccessedTime() + 3600000;
+        for (long now = session.getLastAccessedTime(); now < expiry - 1000; now += 500) {
+            assertEquals(0, reaper.reap(now));
+        }
+        assertTrue(sessionManager.hasSession(session.getId()));
+        assertEquals(1, reaper.reap(expiry + 1000));
+    }
+
+    /**
+     * Test reap method with a session that never expires.
+     */
+    @Test
+    void testReapNeverExpires() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultHttpSessionManager sessionManager = createSessionManager(reaper);
+        HttpSession session = createSession(sessionManager);
+        session.setMaxInactiveInterval(0);
+        assertEquals(0, reaper.size());
+        assertEquals(0, reaper.reap(session.getLastAccessedTime() + 86400000L));
+        assertTrue(sessionManager.hasSession(session.getId()));
+    }
+
+    /**
+     * Test cancel method through invalidating a session.
+     */
+    @Test
+    void testCancel() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultHttpSessionManager sessionManager = createSessionManager(reaper);
+        HttpSession session = createSession(sessionManager);
+        assertEquals(1, reaper.size());
+        session.invalidate();
+        assertEquals(0, reaper.size());
+    }
+
+    /**
+     * Test acquire and release methods.
+     */
+    @Test
+    void testAcquireAndRelease() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        assertFalse(reaper.isRunning());
+        reaper.acquire();
+        reaper.acquire();
+        assertTrue(reaper.isRunning());
+        reaper.release();
+        assertTrue(reaper.isRunning());
+        reaper.release();
+        assertFalse(reaper.isRunning());
+        reaper.release();
+        assertFalse(reaper.isRunning());
+    }
+
+    /**
+     * Test the reaper is released when the web application is stopped.
+     */
+    @Test
+    void testStop() {
+        HttpSessionReaper reaper = new HttpSessionReaper();
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        DefaultHttpSessionManager sessionManager = (DefaultHttpSessionManager) webApplication.getHttpSessionManager();
+        sessionManager.setReaper(reaper);
+        assertSame(reaper, sessionManager.getReaper());
+        webApplication.initialize();
+        webApplication.start();
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApplication.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        HttpSession session = sessionManager.createSession(request);
+        assertTrue(reaper.isRunning());
+        assertEquals(1, reaper.size());
+        webApplication.stop();
+        assertFalse(reaper.isRunning());
+        assertEquals(0, reaper.size());
+        assertNotNull(sessionManager.getSession(request, session.getId()));
+        sessionManager.createSession(request);
+        assertTrue(reaper.isRunning());
+        assertEquals(2, reaper.size());
+        sessionManager.stop();
+        assertNull(sessionManager.getSession(request, "unknown"));
+    }
+
+    /**
+     * Create a session manager that uses the given reaper.
+     *
+     * @param reaper the reaper.
+     * @return the session manager.
+     */
+    private static DefaultHttpSessionManager createSessionManager(HttpSessionReaper reaper) {
+        DefaultHttpSessionManager sessionManager = new DefaultHttpSessionManager();
+        sessionManager.setReaper(reaper);
+        return sessionManager;
+    }
+
+    /**
+     * Create a session.
+     *
+     * @param sessionManager the session manager.
+     * @return the session.
+     */
+    private static HttpSession createSession(DefaultHttpSessionManager sessionManager) {
+        DefaultWebApplication webApplication = new DefaultWebApplication();
+        sessionManager.setWebApplication(webApplication);
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApplication.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        return sessionManager.createSession(request);
+    }
+}
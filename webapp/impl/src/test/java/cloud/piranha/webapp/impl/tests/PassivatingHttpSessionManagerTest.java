@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.DefaultHttpSession;
+import cloud.piranha.webapp.impl.DefaultWebApplication;
+import cloud.piranha.webapp.impl.HttpSessionReaper;
+import cloud.piranha.webapp.impl.PassivatingHttpSessionManager;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionActivationListener;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the PassivatingHttpSessionManager class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class PassivatingHttpSessionManagerTest {
+
+    /**
+     * Stores the web application.
+     */
+    private final DefaultWebApplication webApp = new DefaultWebApplication();
+
+    /**
+     * Test sessions beyond the maximum number of sessions are passivated and
+     * activated again.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxActiveSessions() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxActiveSessions(1);
+        TestActivationListener.ACTIVATED.set(0);
+        TestActivationListener.PASSIVATED.set(0);
+        HttpSession session1 = createSession(sessionManager, System.currentTimeMillis() - 2000);
+        session1.setAttribute("listener", new TestActivationListener());
+        HttpSession session2 = createSession(sessionManager, System.currentTimeMillis() - 1000);
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertEquals(1, TestActivationListener.PASSIVATED.get());
+        assertTrue(sessionManager.hasSession(session1.getId()));
+
+        HttpSession activated = getSession(sessionManager, session1.getId());
+        assertNotNull(activated);
+        assertTrue(activated.getAttribute("listener") instanceof TestActivationListener);
+        assertEquals(1, TestActivationListener.ACTIVATED.get());
+        assertSame(activated, getSession(sessionManager, session1.getId()));
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertTrue(sessionManager.hasSession(session2.getId()));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test the least recently used sessions beyond the maximum serialized
+     * size are passivated.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxActiveBytes() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxActiveBytes(25000);
+        sessionManager.setSweepInterval(0);
+        List<HttpSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TestWebApplicationRequest request = new TestWebApplicationRequest();
+            webApp.linkRequestAndResponse(request, new TestWebApplicationResponse());
+            HttpSession session = sessionManager.createSession(request);
+            session.setAttribute("data", new byte[10000]);
+            ((DefaultHttpSession) session).setLastAccessedTime(System.currentTimeMillis() - 3000 + i * 1000);
+            sessionManager.releaseSession(request);
+            awaitSweep(sessionManager);
+            sessions.add(session);
+        }
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertTrue(sessionManager.hasSession(sessions.get(0).getId()));
+        assertSame(sessions.get(1), getSession(sessionManager, sessions.get(1).getId()));
+        assertSame(sessions.get(2), getSession(sessionManager, sessions.get(2).getId()));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test the serialized size of a session is measured again after a request
+     * changed an attribute value in place.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxActiveBytesChangedInPlace() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxActiveBytes(25000);
+        sessionManager.setSweepInterval(0);
+        HttpSession session1 = createSession(sessionManager, System.currentTimeMillis() - 2000);
+        ArrayList<byte[]> data = new ArrayList<>();
+        data.add(new byte[10000]);
+        session1.setAttribute("data", data);
+        HttpSession session2 = createSession(sessionManager, System.currentTimeMillis() - 1000);
+        session2.setAttribute("data", new byte[10000]);
+        getSession(sessionManager, session2.getId());
+        assertEquals(0, sessionManager.getPassivatedSessionCount());
+
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        assertSame(session1, sessionManager.getSession(request, session1.getId()));
+        data.add(new byte[10000]);
+        sessionManager.releaseSession(request);
+        awaitSweep(sessionManager);
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertTrue(sessionManager.hasSession(session1.getId()));
+        assertSame(session2, getSession(sessionManager, session2.getId()));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test sessions that are idle for too long are passivated.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testMaxIdleTime() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxIdleTime(60);
+        HttpSession idle = createSession(sessionManager, System.currentTimeMillis() - 120000);
+        HttpSession active = createSession(sessionManager, System.currentTimeMillis());
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertSame(active, getSession(sessionManager, active.getId()));
+        assertNotNull(getSession(sessionManager, idle.getId()));
+        assertEquals(0, sessionManager.getPassivatedSessionCount());
+        sessionManager.stop();
+    }
+
+    /**
+     * Test a session is not passivated while a request uses it.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testSessionInUse() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxActiveSessions(0);
+        HttpSession session = createSession(sessionManager, System.currentTimeMillis() - 2000);
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        assertNotNull(sessionManager.getSession(request, session.getId()));
+        sessionManager.releaseSession(new TestWebApplicationRequest());
+        awaitSweep(sessionManager);
+        assertEquals(0, sessionManager.getPassivatedSessionCount());
+        sessionManager.releaseSession(request);
+        awaitSweep(sessionManager);
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        sessionManager.stop();
+    }
+
+    /**
+     * Test sessions are passivated on the thread of the session reaper and
+     * not on the thread of the request.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testSweepThread() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        sessionManager.setMaxActiveSessions(0);
+        TestActivationListener.PASSIVATING_THREAD.set(null);
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        webApp.linkRequestAndResponse(request, new TestWebApplicationResponse());
+        HttpSession session = sessionManager.createSession(request);
+        session.setAttribute("listener", new TestActivationListener());
+        sessionManager.releaseSession(request);
+        awaitSweep(sessionManager);
+        assertEquals(1, sessionManager.getPassivatedSessionCount());
+        assertNotNull(TestActivationListener.PASSIVATING_THREAD.get());
+        assertFalse(TestActivationListener.PASSIVATING_THREAD.get() == Thread.currentThread());
+        sessionManager.stop();
+    }
+
+    /**
+     * Test the sessions survive a restart.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRestart() throws Exception {
+        Path storeFile = createStoreFile();
+        PassivatingHttpSessionManager sessionManager = createSessionManager(storeFile);
+        HttpSession session = createSession(sessionManager, System.currentTimeMillis());
+        session.setAttribute("name", "value");
+        HttpSession unserializable = createSession(sessionManager, System.currentTimeMillis());
+        unserializable.setAttribute("name", new Object());
+        sessionManager.stop();
+        assertTrue(sessionManager.hasSession(unserializable.getId()));
+
+        PassivatingHttpSessionManager restarted = createSessionManager(storeFile);
+        assertTrue(restarted.hasSession(session.getId()));
+        assertFalse(restarted.hasSession(unserializable.getId()));
+        HttpSession activated = getSession(restarted, session.getId());
+        assertEquals("value", activated.getAttribute("name"));
+        assertEquals(session.getCreationTime(), activated.getCreationTime());
+        assertEquals(session.getMaxInactiveInterval(), activated.getMaxInactiveInterval());
+        assertFalse(activated.isNew());
+        restarted.stop();
+    }
+
+    /**
+     * Test an expired session is destroyed instead of activated.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testExpired() throws Exception {
+        Path storeFile = createStoreFile();
+        PassivatingHttpSessionManager sessionManager = createSessionManager(storeFile);
+        HttpSession session = createSession(sessionManager, System.currentTimeMillis());
+        session.setMaxInactiveInterval(1);
+        session.setAttribute("listener", new TestActivationListener());
+        sessionManager.stop();
+        Thread.sleep(1100);
+        TestActivationListener.ACTIVATED.set(0);
+
+        PassivatingHttpSessionManager restarted = createSessionManager(storeFile);
+        List<String> destroyed = new ArrayList<>();
+        restarted.addListener(new HttpSessionListener() {
+            @Override
+            public void sessionDestroyed(HttpSessionEvent event) {
+                destroyed.add(event.getSession().getId());
+            }
+        });
+        assertNull(getSession(restarted, session.getId()));
+        assertEquals(List.of(session.getId()), destroyed);
+        assertEquals(0, TestActivationListener.ACTIVATED.get());
+        assertFalse(restarted.hasSession(session.getId()));
+        restarted.stop();
+    }
+
+    /**
+     * Test the session manager can be used by other requests while the
+     * listeners of a session that is passivated run.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testPassivationListenerConcurrency() throws Exception {
+        PassivatingHttpSessionManager sessionManager = createSessionManager(createStoreFile());
+        HttpSession session1 = createSession(sessionManager, System.currentTimeMillis() - 2000);
+        session1.setAttribute("listener", new TestActivationListener());
+        HttpSession session2 = createSession(sessionManager, System.currentTimeMillis() - 1000);
+        AtomicReference<Boolean> hasSession = new AtomicReference<>();
+        TestActivationListener.ON_PASSIVATE.set(() -> {
+            Thread thread = new Thread(() -> hasSession.set(sessionManager.hasSession("unknown")));
+            thread.start();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            sessionManager.setMaxActiveSessions(1);
+            createSession(sessionManager, System.currentTimeMillis());
+        } finally {
+            TestActivationListener.ON_PASSIVATE.set(null);
+        }
+        assertEquals(Boolean.FALSE, hasSession.get());
+        assertNotNull(getSession(sessionManager, session1.getId()));
+        assertNotNull(getSession(sessionManager, session2.getId()));
+        sessionManager.stop();
+    }
+
+    /**
+     * Test the session store keeps the sessions when it is compacted.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCompaction() throws Exception {
+        Path storeFile = createStoreFile();
+        PassivatingHttpSessionManager sessionManager = createSessionManager(storeFile);
+        List<String> sessionIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            HttpSession session = createSession(sessionManager, System.currentTimeMillis());
+            session.setAttribute("data", new byte[100000]);
+            session.setAttribute("index", i);
+            sessionIds.add(session.getId());
+        }
+        for (int i = 0; i < 5; i++) {
+            sessionManager.stop();
+            for (String sessionId : sessionIds) {
+                assertNotNull(getSession(sessionManager, sessionId));
+            }
+        }
+        sessionManager.stop();
+        assertTrue(Files.size(storeFile) < 4 * 1024 * 1024);
+
+        PassivatingHttpSessionManager restarted = createSessionManager(storeFile);
+        for (int i = 0; i < sessionIds.size(); i++) {
+            assertEquals(i, getSession(restarted, sessionIds.get(i)).getAttribute("index"));
+        }
+        restarted.stop();
+    }
+
+    /**
+     * Create a session manager.
+     *
+     * @param storeFile the session store file.
+     * @return the session manager.
+     */
+    private PassivatingHttpSessionManager createSessionManager(Path storeFile) {
+        PassivatingHttpSessionManager sessionManager = new PassivatingHttpSessionManager(storeFile);
+        sessionManager.setWebApplication(webApp);
+        sessionManager.setReaper(new HttpSessionReaper());
+        return sessionManager;
+    }
+
+    /**
+     * Create a session store file.
+     *
+     * @return the session store file.
+     * @throws Exception when a serious error occurs.
+     */
+    private Path createStoreFile() throws Exception {
+        return Files.createTempDirectory("sessions").resolve("sessions.dat");
+    }
+
+    /**
+     * Create a session in a request.
+     *
+     * @param sessionManager the session manager.
+     * @param lastAccessedTime the last accessed time.
+     * @return the session.
+     */
+    private HttpSession createSession(PassivatingHttpSessionManager sessionManager, long lastAccessedTime) {
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        webApp.linkRequestAndResponse(request, response);
+        HttpSession session = sessionManager.createSession(request);
+        ((DefaultHttpSession) session).setLastAccessedTime(lastAccessedTime);
+        webApp.unlinkRequestAndResponse(request, response);
+        sessionManager.releaseSession(request);
+        awaitSweep(sessionManager);
+        return session;
+    }
+
+    /**
+     * Get a session in a request.
+     *
+     * @param sessionManager the session manager.
+     * @param sessionId the session id.
+     * @return the session, or null if there is no such session.
+     */
+    private HttpSession getSession(PassivatingHttpSessionManager sessionManager, String sessionId) {
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        HttpSession session = sessionManager.getSession(request, sessionId);
+        if (session != null) {
+            ((DefaultHttpSession) session).setLastAccessedTime(System.currentTimeMillis());
+        }
+        sessionManager.releaseSession(request);
+        awaitSweep(sessionManager);
+        return session;
+    }
+
+    /**
+     * Wait for the sweep submitted to the session reaper, if any.
+     *
+     * @param sessionManager the session manager.
+     */
+    private void awaitSweep(PassivatingHttpSessionManager sessionManager) {
+        CountDownLatch latch = new CountDownLatch(1);
+        if (sessionManager.getReaper().execute(latch::countDown)) {
+            try {
+                assertTrue(latch.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The serializable HttpSessionActivationListener used by the tests.
+     */
+    public static class TestActivationListener implements HttpSessionActivationListener, Serializable {
+
+        /**
+         * Stores the number of activations.
+         */
+        static final AtomicInteger ACTIVATED = new AtomicInteger();
+
+        /**
+         * Stores the number of passivations.
+         */
+        static final AtomicInteger PASSIVATED = new AtomicInteger();
+
+        /**
+         * Stores the thread of the last passivation.
+         */
+        static final AtomicReference<Thread> PASSIVATING_THREAD = new AtomicReference<>();
+
+        /**
+         * Stores the action run on passivation.
+         */
+        static final AtomicReference<Runnable> ON_PASSIVATE = new AtomicReference<>();
+
+        @Override
+        public void sessionDidActivate(HttpSessionEvent event) {
+            ACTIVATED.incrementAndGet();
+        }
+
+        @Override
+        public void sessionWillPassivate(HttpSessionEvent event) {
+            PASSIVATED.incrementAndGet();
+            PASSIVATING_THREAD.set(Thread.currentThread());
+            Runnable action = ON_PASSIVATE.get();
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+}
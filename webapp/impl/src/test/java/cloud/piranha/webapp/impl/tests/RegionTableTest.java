@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice, 
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its 
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.RegionTable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the RegionTable class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class RegionTableTest {
+
+    /**
+     * Test get method looks up a region of a string.
+     */
+    @Test
+    void testGet() {
+        RegionTable.Builder<String> builder = new RegionTable.Builder<>();
+        for (int i = 0; i < 100; i++) {
+            builder.put("key" + i, "value" + i);
+        }
+        RegionTable<String> table = builder.build();
+        assertEquals("value42", table.get("/key42/", 1, 6));
+        assertEquals("value7", table.get("/key7", 1, 5));
+        assertNull(table.get("/key4/", 1, 4));
+        assertNull(table.get("/key100", 1, 7));
+    }
+
+    /**
+     * Test get method on an empty table.
+     */
+    @Test
+    void testGetEmpty() {
+        RegionTable<String> table = new RegionTable.Builder<String>().build();
+        assertNull(table.get("key", 0, 3));
+    }
+
+    /**
+     * Test put method keeps the existing value for the same key.
+     */
+    @Test
+    void testPutExisting() {
+        RegionTable.Builder<String> builder = new RegionTable.Builder<>();
+        builder.put("key", "first");
+        builder.put("key", "second");
+        assertEquals("first", builder.build().get("key", 0, 3));
+    }
+}
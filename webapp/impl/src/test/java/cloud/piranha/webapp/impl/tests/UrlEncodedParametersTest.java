@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2021 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice, 
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its 
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package cloud.piranha.webapp.impl.tests;
+
+import cloud.piranha.webapp.impl.UrlEncodedParameters;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JUnit tests for the UrlEncodedParameters class.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class UrlEncodedParametersTest {
+
+    /**
+     * Test parse method.
+     */
+    @Test
+    void testParse() {
+        UrlEncodedParameters parameters = UrlEncodedParameters.parse("a=1&b=hello+world&a=2&c", 100);
+        assertEquals(4, parameters.size());
+        assertEquals("1", parameters.getValue("a"));
+        assertArrayEquals(new String[]{"1", "2"}, parameters.getValues("a"));
+        assertEquals("hello world", parameters.getValue("b"));
+        assertEquals("", parameters.getValue("c"));
+        assertNull(parameters.getValue("d"));
+        assertNull(parameters.getValues("d"));
+    }
+
+    /**
+     * Test parse method with percent escapes.
+     */
+    @Test
+    void testParseEscapes() {
+        UrlEncodedParameters parameters = UrlEncodedParameters.parse("na%6De=%E2%82%AC%3D&bad=%zz%4&x=a=b", 100);
+        assertEquals("\u20ac=", parameters.getValue("name"));
+        assertEquals("%zz%4", parameters.getValue("bad"));
+        assertEquals("a=b", parameters.getValue("x"));
+    }
+
+    /**
+     * Test parse method skips empty names and trims whitespace.
+     */
+    @Test
+    void testParseEmpty() {
+        byte[] bytes = " &&=value& a=1\r\n".getBytes(StandardCharsets.US_ASCII);
+        UrlEncodedParameters parameters = UrlEncodedParameters.parse(bytes, 0, bytes.length, 100);
+        assertEquals(1, parameters.size());
+        assertEquals("a", parameters.getName(0));
+        assertEquals("1", parameters.getValue(0));
+    }
+
+    /**
+     * Test parse method with too many parameters.
+     */
+    @Test
+    void testParseMaxParameterCount() {
+        UrlEncodedParameters parameters = UrlEncodedParameters.parse("a=1&b=2", 2);
+        assertEquals(2, parameters.size());
+        assertFalse(parameters.isTruncated());
+        parameters = UrlEncodedParameters.parse("a=1&b=2&c=3", 2);
+        assertEquals(2, parameters.size());
+        assertTrue(parameters.isTruncated());
+        assertEquals("2", parameters.getValue("b"));
+        assertNull(parameters.getValue("c"));
+    }
+
+    /**
+     * Test addTo method.
+     */
+    @Test
+    void testAddTo() {
+        Map<String, String[]> map = new HashMap<>();
+        map.put("a", new String[]{"0"});
+        UrlEncodedParameters.parse("a=1&b=2&a=3", 100).addTo(map);
+        assertArrayEquals(new String[]{"0", "1", "3"}, map.get("a"));
+        assertArrayEquals(new String[]{"2"}, map.get("b"));
+    }
+}
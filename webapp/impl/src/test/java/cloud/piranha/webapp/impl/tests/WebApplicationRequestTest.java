@@ -27,12 +27,21 @@
  */
 package cloud.piranha.webapp.impl.tests;
 
+import cloud.piranha.webapp.impl.DefaultWebApplication;
 import cloud.piranha.webapp.impl.DefaultWebApplicationRequest;
+import cloud.piranha.webapp.impl.DefaultWebApplicationRequestMapper;
 import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -200,4 +209,217 @@ class WebApplicationRequestTest {
         request.setServerPort(8080);
         assertEquals(8080, request.getServerPort());
     }
+
+    /**
+     * Test read method with a byte array stops at the content length.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testReadBytes() throws Exception {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setContentLength(5);
+        request.setInputStream(new ByteArrayInputStream("HelloWorld".getBytes()));
+        byte[] bytes = new byte[10];
+        assertEquals(5, request.read(bytes, 0, 10));
+        assertTrue(request.isFinished());
+        assertEquals(-1, request.read(bytes, 0, 10));
+        assertEquals("Hello", new String(bytes, 0, 5));
+    }
+
+    /**
+     * Test readNBytes and readAllBytes methods stop at the content length.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testReadNBytes() throws Exception {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setContentLength(8);
+        request.setInputStream(new ByteArrayInputStream("HelloWorld".getBytes()));
+        assertEquals("Hel", new String(request.readNBytes(3)));
+        assertEquals("loWo", new String(request.readNBytes(4)));
+        assertEquals("r", new String(request.readAllBytes()));
+        assertEquals(0, request.readNBytes(4).length);
+    }
+
+    /**
+     * Test transferTo method stops at the content length.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testTransferTo() throws Exception {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setContentLength(20000);
+        request.setInputStream(new ByteArrayInputStream(new byte[30000]));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(20000, request.transferTo(output));
+        assertEquals(20000, output.size());
+        assertTrue(request.isFinished());
+    }
+
+    /**
+     * Test getParameter method with a form body.
+     */
+    @Test
+    void testGetParameterFormBody() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        byte[] body = "a=1&b=hello+world".getBytes();
+        request.setMethod("POST");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContentLength(body.length);
+        request.setInputStream(new ByteArrayInputStream(body));
+        assertEquals("1", request.getParameter("a"));
+        assertEquals("hello world", request.getParameter("b"));
+    }
+
+    /**
+     * Test recycle method.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRecycle() throws Exception {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setMethod("POST");
+        request.setQueryString("a=1");
+        request.addHeader("X-Test", "value");
+        request.setAttribute("name", "value");
+        request.setCookies(new Cookie[] { new Cookie("name", "value") });
+        request.setContentLength(5);
+        request.setInputStream(new ByteArrayInputStream("Hello".getBytes()));
+        assertEquals("1", request.getParameter("a"));
+        request.recycle();
+        assertTrue(request.isRecycled());
+        assertThrows(IllegalStateException.class, request::read);
+        assertThrows(IllegalStateException.class, request::getInputStream);
+        request.reuse();
+        assertFalse(request.isRecycled());
+        assertEquals("GET", request.getMethod());
+        assertNull(request.getQueryString());
+        assertNull(request.getHeader("X-Test"));
+        assertEquals("*/*", request.getHeader("Accept"));
+        assertNull(request.getAttribute("name"));
+        assertNull(request.getCookies());
+        assertNull(request.getParameter("a"));
+        assertEquals(-1, request.getContentLength());
+        assertEquals(-1, request.read());
+    }
+
+    /**
+     * Test getParameterValues method aggregates the query string and the form
+     * body, query string first.
+     */
+    @Test
+    void testGetParameterValuesQueryAndFormBody() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        byte[] body = "a=2&b=3".getBytes();
+        request.setQueryString("a=1");
+        request.setMethod("POST");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContentLength(body.length);
+        request.setInputStream(new ByteArrayInputStream(body));
+        assertEquals("1", request.getParameter("a"));
+        assertEquals(2, request.getParameterValues("a").length);
+        assertEquals("2", request.getParameterValues("a")[1]);
+        assertEquals(2, request.getParameterMap().size());
+        assertEquals("3", request.getParameterMap().get("b")[0]);
+    }
+
+    /**
+     * Test getParameter method with a form body over the maximum size.
+     */
+    @Test
+    void testGetParameterMaxFormContentSize() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        byte[] body = "a=1234567890".getBytes();
+        request.setMaxFormContentSize(10);
+        request.setMethod("POST");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContentLength(body.length);
+        request.setInputStream(new ByteArrayInputStream(body));
+        request.setQueryString("b=2");
+        assertNull(request.getParameter("a"));
+        assertEquals("2", request.getParameter("b"));
+    }
+
+    /**
+     * Test getParameter method with more parameters than the maximum.
+     */
+    @Test
+    void testGetParameterMaxParameterCount() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setMaxParameterCount(2);
+        request.setQueryString("a=1&b=2&c=3");
+        assertEquals("1", request.getParameter("a"));
+        assertEquals("2", request.getParameter("b"));
+        assertNull(request.getParameter("c"));
+    }
+
+    /**
+     * Test a request over the parameter limits is still served.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testServiceOverParameterLimits() throws Exception {
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.setWebApplicationRequestMapper(new DefaultWebApplicationRequestMapper());
+        webApp.addServlet("Parameters", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().print(request.getParameter("a") + "," + request.getParameter("b")
+                        + "," + request.getParameter("c"));
+            }
+        });
+        webApp.addServletMapping("Parameters", "/parameters");
+        webApp.initialize();
+        webApp.start();
+
+        TestWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setWebApplication(webApp);
+        request.setMethod("POST");
+        request.setServletPath("/parameters");
+        request.setMaxParameterCount(2);
+        request.setQueryString("a=1&b=2&c=3");
+        TestWebApplicationResponse response = new TestWebApplicationResponse();
+        response.setWebApplication(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertTrue(new String(response.getResponseBytes()).endsWith("1,2,null"));
+
+        byte[] body = "b=1234567890".getBytes();
+        request = new TestWebApplicationRequest();
+        request.setWebApplication(webApp);
+        request.setMethod("POST");
+        request.setServletPath("/parameters");
+        request.setMaxFormContentSize(10);
+        request.setQueryString("a=1");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContentLength(body.length);
+        request.setInputStream(new ByteArrayInputStream(body));
+        response = new TestWebApplicationResponse();
+        response.setWebApplication(webApp);
+        webApp.service(request, response);
+        assertEquals(200, response.getStatus());
+        assertTrue(new String(response.getResponseBytes()).endsWith("1,null,null"));
+    }
+
+    /**
+     * Test getCookies method parses the Cookie header when asked.
+     */
+    @Test
+    void testGetCookiesFromCookieHeader() {
+        DefaultWebApplicationRequest request = new TestWebApplicationRequest();
+        request.setCookieHeader("a=1; b=2");
+        Cookie[] cookies = request.getCookies();
+        assertEquals(2, cookies.length);
+        assertEquals("b", cookies[1].getName());
+        assertEquals("2", cookies[1].getValue());
+        cookies[1].setValue("3");
+        assertEquals("2", request.getCookies()[1].getValue());
+        request.setCookies(null);
+        assertNull(request.getCookies());
+    }
 }
@@ -27,6 +27,7 @@
  */
 package cloud.piranha.webapp.impl.tests;
 
+import cloud.piranha.resource.AliasedDirectoryResource;
 import cloud.piranha.resource.DirectoryResource;
 import cloud.piranha.webapp.api.WelcomeFileManager;
 import cloud.piranha.webapp.impl.DefaultServlet;
@@ -37,7 +38,9 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.file.Files;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -96,4 +99,72 @@ class WelcomeFileTest {
         assertTrue(byteOutput.toString().contains("custom.html"));
         webApp.stop();
     }
+
+    /**
+     * Test a welcome file added to an exploded directory while servicing.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWelcomeFileAdded() throws Exception {
+        File directory = Files.createTempDirectory("welcome").toFile();
+        directory.deleteOnExit();
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new DirectoryResource(directory));
+        webApp.setDefaultServlet(new DefaultServlet());
+        webApp.initialize();
+        webApp.start();
+        assertFalse(service(webApp).contains("added index.html"));
+        assertFalse(service(webApp).contains("added index.html"));
+
+        File index = new File(directory, "index.html");
+        index.deleteOnExit();
+        Files.writeString(index.toPath(), "added index.html");
+        directory.setLastModified(directory.lastModified() + 2000);
+        assertTrue(service(webApp).contains("added index.html"));
+        webApp.stop();
+    }
+
+    /**
+     * Test a welcome file added to an aliased directory while servicing.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testWelcomeFileAddedToAliasedDirectory() throws Exception {
+        File directory = Files.createTempDirectory("welcome").toFile();
+        directory.deleteOnExit();
+        DefaultWebApplication webApp = new DefaultWebApplication();
+        webApp.addResource(new AliasedDirectoryResource(directory, ""));
+        webApp.setDefaultServlet(new DefaultServlet());
+        webApp.initialize();
+        webApp.start();
+        assertFalse(service(webApp).contains("added index.html"));
+        assertFalse(service(webApp).contains("added index.html"));
+
+        File index = new File(directory, "index.html");
+        index.deleteOnExit();
+        Files.writeString(index.toPath(), "added index.html");
+        directory.setLastModified(directory.lastModified() + 2000);
+        assertTrue(service(webApp).contains("added index.html"));
+        webApp.stop();
+    }
+
+    /**
+     * Service a request for the root directory.
+     *
+     * @param webApp the web application.
+     * @return the response body.
+     * @throws Exception when a serious error occurs.
+     */
+    private String service(DefaultWebApplication webApp) throws Exception {
+        DefaultWebApplicationRequest request = new DefaultWebApplicationRequest();
+        request.setWebApplication(webApp);
+        DefaultWebApplicationResponse response = new DefaultWebApplicationResponse();
+        response.setWebApplication(webApp);
+        ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        response.setUnderlyingOutputStream(byteOutput);
+        webApp.service(request, response);
+        return byteOutput.toString();
+    }
 }